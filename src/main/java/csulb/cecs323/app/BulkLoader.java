@@ -0,0 +1,524 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * BulkLoader streams seed and fixture files into the CookBook tables through JDBC batches.
+ * Every table is read from its own file, either a CSV file with a header row of column names (table.csv)
+ * or a JSON Lines file with one flat object per row (table.jsonl).
+ * Rows are read, bound and sent one batch at a time, so memory use does not depend on the size of the file.
+ * <p>
+ * The rows are inserted past JPA, so the tables and columns the persistence unit maintains from its own writes do not
+ * see them. {@link #rebuildAggregates()} counts those again once the load is done and {@link #refresh(EntityManagerFactory)}
+ * makes a factory that is already running read the loaded rows.
+ */
+public class BulkLoader {
+
+    private static final Logger LOGGER = Logger.getLogger(BulkLoader.class.getName());
+
+    /**
+     * Tables in the order they have to be loaded so that every foreign key points at rows that already exist
+     */
+    public static final List<String> TABLE_ORDER = Arrays.asList(
+            "user_table", "chef", "foodcritic", "followers", "cuisine", "chef_cuisine", "recipe",
+            "recipe_step", "ingredient", "ingredientamount", "cuisine_ingredient", "review");
+
+    /**
+     * Generated id columns and their id_generator counters, which have to be moved past explicitly loaded key values
+     */
+    private static final Map<String, String[]> GENERATED_IDS = new HashMap<>();
+    static {
+        GENERATED_IDS.put("user_table", new String[]{"user_id", "user"});
+        GENERATED_IDS.put("cuisine", new String[]{"cuisine_id", "cuisine"});
+        GENERATED_IDS.put("recipe", new String[]{"recipe_id", "recipe"});
+        GENERATED_IDS.put("review", new String[]{"review_id", "review"});
+    }
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_COMMIT_INTERVAL = 50000;
+
+    private final Connection connection;
+    private final int batchSize;
+    private final int commitInterval;
+
+    /**
+     * Constructor for a loader that writes through the given connection
+     * @param connection the connection to load with, auto commit is turned off while loading and restored afterwards
+     * @param batchSize the number of rows sent to the database in one JDBC batch
+     * @param commitInterval the number of rows between commits, 0 or less commits each table at its end on a connection
+     *                       in auto commit mode and leaves committing to the caller otherwise
+     */
+    public BulkLoader(Connection connection, int batchSize, int commitInterval) {
+        this.connection = connection;
+        this.batchSize = Math.max(1, batchSize);
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Loads every table that has a table.csv or table.jsonl file in the given directory, in foreign key order
+     * @param directory the directory that contains the data files
+     * @return the load statistics of every table that was loaded
+     */
+    public List<TableStats> loadDirectory(Path directory) throws SQLException, IOException {
+        List<TableStats> stats = new ArrayList<>();
+        for (String table : TABLE_ORDER) {
+            for (Format format : Format.values()) {
+                Path file = directory.resolve(table + format.extension);
+                if (Files.exists(file)) {
+                    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                        stats.add(load(table, format, reader));
+                    }
+                    break;
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Loads every table that has a table.csv or table.jsonl resource in the given classpath folder, in foreign key order
+     * @param folder the classpath folder that contains the data files, e.g. sql/seed
+     * @return the load statistics of every table that was loaded
+     */
+    public List<TableStats> loadResources(String folder) throws SQLException, IOException {
+        List<TableStats> stats = new ArrayList<>();
+        for (String table : TABLE_ORDER) {
+            for (Format format : Format.values()) {
+                InputStream stream = BulkLoader.class.getClassLoader().getResourceAsStream(folder + "/" + table + format.extension);
+                if (stream != null) {
+                    try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                        stats.add(load(table, format, reader));
+                    }
+                    break;
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Streams the rows of one data file into a table
+     * @param table the name of the table to insert into
+     * @param format the format of the data file
+     * @param reader the contents of the data file
+     * @return the load statistics of the table
+     */
+    public TableStats load(String table, Format format, Reader reader) throws SQLException, IOException {
+        long start = System.nanoTime();
+        boolean autoCommit = connection.getAutoCommit();
+        boolean commits = commitInterval > 0 || autoCommit;
+        connection.setAutoCommit(false);
+        long count = 0;
+        try {
+            RowReader rows = format == Format.CSV ? new CsvReader(reader) : new JsonLinesReader(reader);
+            List<String> columns = rows.columns();
+            if (columns != null) {
+                try (PreparedStatement insert = connection.prepareStatement(insertSql(table, columns))) {
+                    int[] types = parameterTypes(insert, columns.size());
+                    int pending = 0;
+                    List<String> row;
+                    while ((row = rows.next()) != null) {
+                        if (row.size() != columns.size()) {
+                            throw new IOException(String.format("Row %d of %s has %d values, expected %d", count + 1, table, row.size(), columns.size()));
+                        }
+                        for (int i = 0; i < row.size(); i++) {
+                            bind(insert, i + 1, types[i], row.get(i));
+                        }
+                        insert.addBatch();
+                        count++;
+                        if (++pending == batchSize) {
+                            insert.executeBatch();
+                            pending = 0;
+                        }
+                        if (commitInterval > 0 && count % commitInterval == 0) {
+                            if (pending > 0) {
+                                insert.executeBatch();
+                                pending = 0;
+                            }
+                            connection.commit();
+                        }
+                    }
+                    if (pending > 0) {
+                        insert.executeBatch();
+                    }
+                }
+                String[] generated = GENERATED_IDS.get(table.toLowerCase());
+                if (generated != null && columns.stream().anyMatch(generated[0]::equalsIgnoreCase)) {
+                    advanceGenerator(table, generated[0], generated[1]);
+                }
+            }
+            if (commits) {
+                connection.commit();
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            // the rows since the last commit are dropped, a transaction of the caller is the caller's to roll back
+            if (commits) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        TableStats stats = new TableStats(table, count, System.nanoTime() - start);
+        LOGGER.info(stats.toString());
+        return stats;
+    }
+
+    /**
+     * Counts everything the persistence unit keeps from its own writes again, so that it includes the loaded rows:
+     * the rating aggregates of the recipes, the ingredient usage of the chefs, the recipe counts of the ingredients
+     * and the number of reviews of the food critics. It is committed like a table, see the constructor.
+     * @throws SQLException if the database cannot be read or written, the counts are rolled back then
+     */
+    public void rebuildAggregates() throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        boolean commits = commitInterval > 0 || autoCommit;
+        connection.setAutoCommit(false);
+        try {
+            RatingAggregates.rebuild(connection);
+            IngredientUsage.rebuildChefs(connection);
+            IngredientUsage.rebuildIngredients(connection);
+            Counters.rebuild(connection);
+            if (commits) {
+                connection.commit();
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (commits) {
+                connection.rollback();
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Makes a factory read the rows loaded past it: the shared cache and the report cache are emptied,
+     * and the recipe search index, the ingredient dictionary and the chef leaderboard are read from the database
+     * again on next use
+     * @param factory the factory of the persistence unit that was loaded into
+     */
+    public static void refresh(EntityManagerFactory factory) {
+        factory.getCache().evictAll();
+        ReportCache.of(factory).clear();
+        RecipeSearchIndex.of(factory).invalidate();
+        IngredientDictionary.of(factory).invalidate();
+        ChefLeaderboard.of(factory).invalidate();
+    }
+
+    /**
+     * Builds the parameterized INSERT statement for a table and its columns
+     */
+    private static String insertSql(String table, List<String> columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append('(').append(String.join(", ", columns)).append(") VALUES (");
+        for (int i = 0; i < columns.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Looks up the SQL type of every parameter once, so that each value can be converted before binding
+     */
+    private static int[] parameterTypes(PreparedStatement insert, int count) throws SQLException {
+        ParameterMetaData metaData = insert.getParameterMetaData();
+        int[] types = new int[count];
+        for (int i = 0; i < count; i++) {
+            types[i] = metaData.getParameterType(i + 1);
+        }
+        return types;
+    }
+
+    /**
+     * Converts a text value from the data file to the column type and binds it, an absent value is bound as NULL
+     */
+    private static void bind(PreparedStatement insert, int index, int type, String value) throws SQLException {
+        if (value == null) {
+            insert.setNull(index, type);
+            return;
+        }
+        switch (type) {
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                insert.setInt(index, Integer.parseInt(value.trim()));
+                break;
+            case Types.BIGINT:
+                insert.setLong(index, Long.parseLong(value.trim()));
+                break;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                insert.setDouble(index, Double.parseDouble(value.trim()));
+                break;
+            case Types.DATE:
+                insert.setDate(index, Date.valueOf(value.trim()));
+                break;
+            case Types.TIMESTAMP:
+                insert.setTimestamp(index, Timestamp.valueOf(value.trim()));
+                break;
+            default:
+                insert.setString(index, value);
+        }
+    }
+
+    /**
+     * Moves the id_generator counter of a table past the highest key value that was loaded explicitly.
+     * Nothing is done while the id_generator table does not exist yet, its migration starts the counters itself.
+     */
+    private void advanceGenerator(String table, String column, String sequence) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, "ID_GENERATOR", null)) {
+            if (!tables.next()) {
+                return;
+            }
+        }
+        try (PreparedStatement update = connection.prepareStatement("UPDATE id_generator SET sequence_count = (SELECT MAX(" + column + ") FROM " + table
+                + ") WHERE sequence_name = ? AND sequence_count < (SELECT MAX(" + column + ") FROM " + table + ")")) {
+            update.setString(1, sequence);
+            update.executeUpdate();
+        }
+    }
+
+    /**
+     * Loads a directory of data files into the CookBook database and counts the maintained aggregates again.
+     * The schema is migrated first, which does not add any rows, so the files may hold any key values.
+     * Usage: BulkLoader directory [batchSize] [commitInterval]
+     * @param args the directory, followed by the optional batch size and commit interval
+     */
+    public static void main(String[] args) throws SQLException, IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: BulkLoader directory [batchSize] [commitInterval]");
+            return;
+        }
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+        int commitInterval = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_COMMIT_INTERVAL;
+        SchemaMigrator.Mode mode = SchemaMigrator.Mode.MIGRATE;
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook", mode.persistenceProperties());
+        try {
+            factory.createEntityManager().close();
+            new SchemaMigrator(factory).run(mode);
+            try (Connection connection = new Database(factory).connect()) {
+                connection.setAutoCommit(true);
+                BulkLoader loader = new BulkLoader(connection, batchSize, commitInterval);
+                for (TableStats stats : loader.loadDirectory(Paths.get(args[0]))) {
+                    System.out.println(stats);
+                }
+                loader.rebuildAggregates();
+            }
+            refresh(factory);
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * The supported data file formats and their file extensions
+     */
+    public enum Format {
+        CSV(".csv"), JSON_LINES(".jsonl");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * The number of rows loaded into one table and how long it took
+     */
+    public static class TableStats {
+        private final String table;
+        private final long rows;
+        private final long nanos;
+
+        private TableStats(String table, long rows, long nanos) {
+            this.table = table;
+            this.rows = rows;
+            this.nanos = nanos;
+        }
+
+        public String getTable() { return table; }
+
+        public long getRows() { return rows; }
+
+        public long getMillis() { return nanos / 1_000_000; }
+
+        /**
+         * Obtains the load throughput of the table
+         * @return the number of rows loaded per second
+         */
+        public double getRowsPerSecond() {
+            return nanos == 0 ? 0 : rows * 1_000_000_000.0 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d rows into %s in %d ms (%.0f rows/sec)", rows, table, getMillis(), getRowsPerSecond());
+        }
+    }
+
+    /**
+     * Reads the rows of a data file one at a time
+     */
+    private interface RowReader {
+        /**
+         * @return the column names of the file, or null if the file is empty
+         */
+        List<String> columns() throws IOException;
+
+        /**
+         * @return the values of the next row in column order, or null at the end of the file
+         */
+        List<String> next() throws IOException;
+    }
+
+    /**
+     * Streaming CSV reader: comma separated, double quotes around values that contain commas, quotes or line breaks,
+     * and "" for a quote inside a quoted value. An empty unquoted value is read as NULL.
+     */
+    private static class CsvReader implements RowReader {
+        private final BufferedReader reader;
+
+        private CsvReader(Reader reader) {
+            this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        }
+
+        @Override
+        public List<String> columns() throws IOException {
+            List<String> header = next();
+            if (header != null && !header.isEmpty() && header.get(0) != null && header.get(0).startsWith("\uFEFF")) {
+                header.set(0, header.get(0).substring(1));
+            }
+            return header;
+        }
+
+        @Override
+        public List<String> next() throws IOException {
+            int c = reader.read();
+            while (c == '\n' || c == '\r') {
+                c = reader.read();
+            }
+            if (c == -1) {
+                return null;
+            }
+            List<String> row = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            boolean inQuotes = false;
+            while (true) {
+                if (inQuotes) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted value in CSV file");
+                    }
+                    if (c == '"') {
+                        reader.mark(1);
+                        if (reader.read() == '"') {
+                            value.append('"');
+                        } else {
+                            reader.reset();
+                            inQuotes = false;
+                        }
+                    } else {
+                        value.append((char) c);
+                    }
+                } else if (c == '"') {
+                    inQuotes = true;
+                    quoted = true;
+                } else if (c == ',' || c == '\n' || c == '\r' || c == -1) {
+                    row.add(!quoted && value.length() == 0 ? null : value.toString());
+                    value.setLength(0);
+                    quoted = false;
+                    if (c != ',') {
+                        return row;
+                    }
+                } else {
+                    value.append((char) c);
+                }
+                c = reader.read();
+            }
+        }
+    }
+
+    /**
+     * Streaming JSON Lines reader for flat objects whose values are strings, numbers, booleans or null.
+     * The keys of the first object define the columns, later objects may list them in any order.
+     */
+    private static class JsonLinesReader implements RowReader {
+        private final BufferedReader reader;
+        private Map<String, String> first;
+        private List<String> columns;
+
+        private JsonLinesReader(Reader reader) {
+            this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        }
+
+        @Override
+        public List<String> columns() throws IOException {
+            first = nextObject();
+            columns = first == null ? null : new ArrayList<>(first.keySet());
+            return columns;
+        }
+
+        @Override
+        public List<String> next() throws IOException {
+            Map<String, String> object = first != null ? first : nextObject();
+            first = null;
+            if (object == null) {
+                return null;
+            }
+            List<String> row = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                row.add(object.get(column));
+            }
+            return row;
+        }
+
+        private Map<String, String> nextObject() throws IOException {
+            String line;
+            do {
+                line = reader.readLine();
+                if (line == null) {
+                    return null;
+                }
+                line = line.trim();
+            } while (line.isEmpty());
+            Map<String, String> object = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> member : Json.parseObject(line).entrySet()) {
+                Object value = member.getValue();
+                if (value instanceof Map || value instanceof List) {
+                    throw new IOException("Unsupported nested JSON value for " + member.getKey() + " in " + line);
+                }
+                object.put(member.getKey(), value instanceof BigDecimal ? ((BigDecimal) value).toPlainString() : value == null ? null : value.toString());
+            }
+            return object;
+        }
+    }
+}
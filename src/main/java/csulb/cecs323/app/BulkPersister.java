@@ -0,0 +1,47 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+
+/**
+ * BulkPersister writes large numbers of new entities (recipes with their steps, ingredients, ingredient amounts
+ * and reviews) through JDBC batch inserts.
+ * Ids come preallocated from the id_generator table, so EclipseLink never has to wait for the database to hand
+ * back a generated key, and at commit it groups the INSERT statements of each table into JDBC batches
+ * of eclipselink.jdbc.batch-writing.size rows.
+ */
+public class BulkPersister {
+
+    /**
+     * Persists every entity and commits them in a single transaction.
+     * Every new entity reachable from another one, such as a new Ingredient used by an IngredientAmount,
+     * has to be in the list as well since the relationships do not cascade persist.
+     * If a transaction is already active it is used and left open for the caller to commit.
+     * @param entityManager the entity manager to persist with
+     * @param entities the new entities to insert
+     * @return the number of entities persisted
+     */
+    public int persistAll(EntityManager entityManager, Iterable<?> entities) {
+        EntityTransaction transaction = entityManager.getTransaction();
+        boolean owner = !transaction.isActive();
+        if (owner) {
+            transaction.begin();
+        }
+        try {
+            int count = 0;
+            for (Object entity : entities) {
+                entityManager.persist(entity);
+                count++;
+            }
+            if (owner) {
+                transaction.commit();
+            }
+            return count;
+        } catch (RuntimeException e) {
+            if (owner && transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        }
+    }
+}
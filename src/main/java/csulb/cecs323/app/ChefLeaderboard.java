@@ -0,0 +1,526 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Recipe;
+import csulb.cecs323.model.Review;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.DescriptorEvent;
+import org.eclipse.persistence.descriptors.DescriptorEventAdapter;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.ObjectReferenceChangeRecord;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+import org.eclipse.persistence.queries.WriteObjectQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.changesets.ChangeRecord;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * ChefLeaderboard keeps the number of reviews of the recipes of every chef, ranked, so the chef with the most reviews
+ * and the first K chefs of the ranking are read in O(K) instead of grouping every review.
+ * The report of the chef with the most reviews is answered from it, see ReportRunner.
+ * <p>
+ * Every recipe is kept with its chef and its number of reviews, every chef with a review with its total,
+ * and the totals are ranked in buckets of chefs with the same number of reviews, highest first, equal chefs by id.
+ * A review moves its chef one bucket, a recipe that changes its chef moves all its reviews to the new one.
+ * <p>
+ * The leaderboard is built from the database on first use and kept up to date afterwards by listening to
+ * the reviews and recipes EclipseLink inserts, updates and deletes. They are collected in the unit of work and applied
+ * once it has committed, a rollback drops them. A change the leaderboard cannot place, like a review of a recipe
+ * it does not know, makes it read the database again on next use. Rows written past JPA, e.g. by the bulk loader,
+ * are picked up once {@link #invalidate()} is called, or by a new factory.
+ */
+public class ChefLeaderboard {
+
+    private static final Logger LOGGER = Logger.getLogger(ChefLeaderboard.class.getName());
+
+    private static final String PROPERTY = ChefLeaderboard.class.getName();
+
+    /** Property of the unit of work holding the changes to the leaderboard, in the order they were written */
+    private static final String CHANGES = ChefLeaderboard.class.getName() + ".changes";
+
+    /** every recipe id to its chef and number of reviews */
+    private final Map<Long, Entry> recipes = new HashMap<>();
+    /** every chef with a review to the number of reviews of its recipes */
+    private final Map<Long, Long> reviews = new HashMap<>();
+    /** the chefs by their number of reviews */
+    private final NavigableMap<Long, TreeSet<Long>> ranking = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean built;
+    /** set when a review was not counted as its recipe is not known, the leaderboard is out of date then */
+    private boolean unplaced;
+
+    /**
+     * The units of work that wrote changes to the leaderboard and have not committed or rolled back yet.
+     * A build that runs while one of them commits cannot tell whether it read its changes, so it is done again later.
+     */
+    private final Set<Object> pending = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+    /**
+     * The chef of one recipe and the number of reviews of the recipe, the chef is null for a recipe without one
+     */
+    private static class Entry {
+        Long chefId;
+        long reviews;
+    }
+
+    /**
+     * The place of a chef in the ranking
+     */
+    public static final class Standing {
+        private final long chefId;
+        private final long reviews;
+
+        Standing(long chefId, long reviews) {
+            this.chefId = chefId;
+            this.reviews = reviews;
+        }
+
+        public long getChefId() {
+            return chefId;
+        }
+
+        public long getReviews() {
+            return reviews;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Standing[chef = %d, reviews = %d]", chefId, reviews);
+        }
+    }
+
+    /**
+     * Creates a leaderboard for the session and keeps it up to date with every commit of the session
+     * @param session the session of the persistence unit, before it logs in
+     * @return the installed leaderboard
+     */
+    public static ChefLeaderboard install(Session session) {
+        ChefLeaderboard leaderboard = new ChefLeaderboard();
+        session.setProperty(PROPERTY, leaderboard);
+
+        ClassDescriptor reviewDescriptor = session.getDescriptor(Review.class);
+        ObjectReferenceMapping recipe = (ObjectReferenceMapping) reviewDescriptor.getMappingForAttributeName("recipe");
+        reviewDescriptor.getEventManager().addListener(new DescriptorEventAdapter() {
+
+            @Override
+            public void postInsert(DescriptorEvent event) {
+                Long recipeId = idOf(recipe, event);
+                changed(event, board -> board.reviewed(recipeId, 1));
+            }
+
+            @Override
+            public void postDelete(DescriptorEvent event) {
+                Long recipeId = idOf(recipe, event);
+                changed(event, board -> board.reviewed(recipeId, -1));
+            }
+
+            @Override
+            public void postUpdate(DescriptorEvent event) {
+                ChangeRecord recipeChange = changeOf(event, "recipe");
+                if (recipeChange == null) {
+                    return;
+                }
+                Long before = oldIdOf(recipe, recipeChange, event.getSession());
+                Long after = idOf(recipe, event);
+                changed(event, board -> {
+                    board.reviewed(before, -1);
+                    board.reviewed(after, 1);
+                });
+            }
+        });
+
+        ClassDescriptor recipeDescriptor = session.getDescriptor(Recipe.class);
+        ObjectReferenceMapping chef = (ObjectReferenceMapping) recipeDescriptor.getMappingForAttributeName("chefCreator");
+        recipeDescriptor.getEventManager().addListener(new DescriptorEventAdapter() {
+
+            @Override
+            public void postInsert(DescriptorEvent event) {
+                long recipeId = ((Recipe) event.getObject()).getRecipeId();
+                Long chefId = idOf(chef, event);
+                changed(event, board -> board.putRecipe(recipeId, chefId));
+            }
+
+            @Override
+            public void postDelete(DescriptorEvent event) {
+                long recipeId = ((Recipe) event.getObject()).getRecipeId();
+                changed(event, board -> board.removeRecipe(recipeId));
+            }
+
+            @Override
+            public void postUpdate(DescriptorEvent event) {
+                if (changeOf(event, "chefCreator") == null) {
+                    return;
+                }
+                long recipeId = ((Recipe) event.getObject()).getRecipeId();
+                Long chefId = idOf(chef, event);
+                changed(event, board -> board.putRecipe(recipeId, chefId));
+            }
+        });
+
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void prepareUnitOfWork(SessionEvent event) {
+                // the statements have run, the transaction commits next
+                if (event.getSession().getProperty(CHANGES) != null) {
+                    leaderboard.pending.add(event.getSession());
+                }
+            }
+
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                Session unitOfWork = event.getSession();
+                @SuppressWarnings("unchecked")
+                List<Consumer<ChefLeaderboard>> changes = (List<Consumer<ChefLeaderboard>>) unitOfWork.getProperty(CHANGES);
+                if (changes != null) {
+                    // the unit of work goes on after a commit, its next transaction starts without changes
+                    unitOfWork.removeProperty(CHANGES);
+                    leaderboard.apply(changes);
+                }
+                leaderboard.pending.remove(unitOfWork);
+            }
+
+            @Override
+            public void postReleaseUnitOfWork(SessionEvent event) {
+                // released without committing what it wrote, e.g. after a rollback
+                leaderboard.pending.remove(event.getSession());
+            }
+        });
+        return leaderboard;
+    }
+
+    /**
+     * Finds the leaderboard of a factory of the CookBook persistence unit
+     * @param factory the factory to look into
+     * @return the leaderboard of the factory
+     */
+    public static ChefLeaderboard of(EntityManagerFactory factory) {
+        Object leaderboard = factory.unwrap(JpaEntityManagerFactory.class).getServerSession().getProperty(PROPERTY);
+        if (leaderboard == null) {
+            throw new IllegalStateException("The chef leaderboard is not installed, check the session customizer in persistence.xml");
+        }
+        return (ChefLeaderboard) leaderboard;
+    }
+
+    /**
+     * Reads the chefs with the most reviews, in the columns of the report of the chef with the most reviews,
+     * building the leaderboard from the database if this is the first use
+     * @param entityManager the entity manager the names of the chefs are read with, also used to build the leaderboard
+     * @return the first name, last name, email and number of reviews of every chef tied for the most reviews, by chef id
+     */
+    public List<Object[]> report(EntityManager entityManager) {
+        List<Standing> leaders = leaders(entityManager);
+        List<Object[]> rows = new ArrayList<>();
+        if (leaders.isEmpty()) {
+            return rows;
+        }
+        List<Long> ids = new ArrayList<>();
+        for (Standing leader : leaders) {
+            ids.add(leader.getChefId());
+        }
+        Map<Long, Object[]> names = new HashMap<>();
+        for (Object[] row : entityManager.createNamedQuery(QueryCatalog.CHEF_NAMES_BY_IDS, Object[].class)
+                .setParameter(QueryCatalog.IDS, ids)
+                .getResultList()) {
+            names.put((Long) row[0], row);
+        }
+        for (Standing leader : leaders) {
+            // a chef removed since is simply left out
+            Object[] name = names.get(leader.getChefId());
+            if (name != null) {
+                rows.add(new Object[] {name[1], name[2], name[3], leader.getReviews()});
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Obtains the chefs tied for the most reviews, building the leaderboard from the database if this is the first use
+     * @param entityManager the entity manager the leaderboard is built with on first use
+     * @return the chefs with the most reviews by chef id, empty if there are no reviews
+     */
+    public List<Standing> leaders(EntityManager entityManager) {
+        if (!built) {
+            build(entityManager);
+        }
+        lock.readLock().lock();
+        try {
+            Map.Entry<Long, TreeSet<Long>> first = ranking.lastEntry();
+            List<Standing> leaders = new ArrayList<>();
+            if (first != null) {
+                for (Long chefId : first.getValue()) {
+                    leaders.add(new Standing(chefId, first.getKey()));
+                }
+            }
+            return leaders;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Obtains the first chefs of the ranking, building the leaderboard from the database if this is the first use
+     * @param entityManager the entity manager the leaderboard is built with on first use
+     * @param k the number of chefs
+     * @return at most k chefs, most reviews first and on equal numbers the lower chef id first
+     */
+    public List<Standing> top(EntityManager entityManager, int k) {
+        if (!built) {
+            build(entityManager);
+        }
+        return top(k);
+    }
+
+    /**
+     * Obtains the first chefs of the ranking of what is in the leaderboard
+     * @param k the number of chefs
+     * @return at most k chefs, most reviews first and on equal numbers the lower chef id first
+     */
+    public List<Standing> top(int k) {
+        List<Standing> top = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<Long, TreeSet<Long>> bucket : ranking.descendingMap().entrySet()) {
+                for (Long chefId : bucket.getValue()) {
+                    if (top.size() == k) {
+                        return top;
+                    }
+                    top.add(new Standing(chefId, bucket.getKey()));
+                }
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Obtains the number of reviews of the recipes of a chef
+     * @param chefId the id of the chef
+     * @return the number of reviews, 0 for a chef without any
+     */
+    public long reviewsOf(long chefId) {
+        lock.readLock().lock();
+        try {
+            return reviews.getOrDefault(chefId, 0L);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a recipe to the leaderboard or gives it another chef, its reviews move along
+     * @param recipeId the id of the recipe
+     * @param chefId the id of its chef, null for none
+     */
+    public void putRecipe(long recipeId, Long chefId) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = recipes.computeIfAbsent(recipeId, id -> new Entry());
+            count(entry.chefId, -entry.reviews);
+            entry.chefId = chefId;
+            count(entry.chefId, entry.reviews);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a recipe out of the leaderboard together with the reviews it still has
+     * @param recipeId the id of the recipe
+     */
+    public void removeRecipe(long recipeId) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = recipes.remove(recipeId);
+            if (entry != null) {
+                count(entry.chefId, -entry.reviews);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds reviews to a recipe, or takes them away
+     * @param recipeId the id of the recipe, null if it is not known
+     * @param count the number of reviews added, negative for removed ones
+     * @return false if the recipe is not in the leaderboard, nothing is counted then
+     */
+    public boolean reviewed(Long recipeId, long count) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = recipeId == null ? null : recipes.get(recipeId);
+            if (entry == null) {
+                unplaced = true;
+                return false;
+            }
+            entry.reviews += count;
+            count(entry.chefId, count);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Obtains the number of chefs with a review
+     * @return the number of ranked chefs
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return reviews.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every recipe with its chef and number of reviews from the database into the leaderboard,
+     * unless that has been done already
+     * @param entityManager the entity manager the recipes are read with
+     */
+    public void build(EntityManager entityManager) {
+        lock.writeLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+            long start = System.nanoTime();
+            recipes.clear();
+            reviews.clear();
+            ranking.clear();
+            unplaced = false;
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = entityManager.createNamedQuery(QueryCatalog.RECIPE_CHEF_REVIEW_COUNTS).getResultList();
+            for (Object[] row : rows) {
+                long recipeId = ((Number) row[0]).longValue();
+                putRecipe(recipeId, row[1] == null ? null : ((Number) row[1]).longValue());
+                reviewed(recipeId, ((Number) row[2]).longValue());
+            }
+            // a commit that ran while the recipes were read may or may not be in them, the next use reads them again
+            built = pending.isEmpty();
+            LOGGER.info(String.format("Built the chef leaderboard of %d recipes and %d chefs in %d ms",
+                    recipes.size(), reviews.size(), (System.nanoTime() - start) / 1_000_000));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empties the leaderboard, it is read from the database again on next use
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            built = false;
+            recipes.clear();
+            reviews.clear();
+            ranking.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the changes a unit of work committed
+     */
+    private void apply(List<Consumer<ChefLeaderboard>> changes) {
+        lock.writeLock().lock();
+        try {
+            if (!built) {
+                // the build reads the committed state anyway
+                return;
+            }
+            for (Consumer<ChefLeaderboard> change : changes) {
+                change.accept(this);
+            }
+            if (unplaced) {
+                LOGGER.info("The chef leaderboard missed a recipe of a review, it is read again on next use");
+                built = false;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves a chef to the bucket of its new number of reviews
+     */
+    private void count(Long chefId, long count) {
+        if (chefId == null || count == 0) {
+            return;
+        }
+        long before = reviews.getOrDefault(chefId, 0L);
+        long after = before + count;
+        if (before > 0) {
+            TreeSet<Long> bucket = ranking.get(before);
+            bucket.remove(chefId);
+            if (bucket.isEmpty()) {
+                ranking.remove(before);
+            }
+        }
+        if (after > 0) {
+            reviews.put(chefId, after);
+            ranking.computeIfAbsent(after, reviewCount -> new TreeSet<>()).add(chefId);
+        } else {
+            reviews.remove(chefId);
+        }
+    }
+
+    /**
+     * Collects a change in the unit of work of the event, in the order the statements ran
+     */
+    @SuppressWarnings("unchecked")
+    private static void changed(DescriptorEvent event, Consumer<ChefLeaderboard> change) {
+        AbstractSession session = event.getSession();
+        List<Consumer<ChefLeaderboard>> changes = (List<Consumer<ChefLeaderboard>>) session.getProperty(CHANGES);
+        if (changes == null) {
+            changes = new ArrayList<>();
+            session.setProperty(CHANGES, changes);
+        }
+        changes.add(change);
+    }
+
+    /**
+     * Obtains the change of an attribute in the update of the event, or null if the attribute did not change
+     */
+    private static ChangeRecord changeOf(DescriptorEvent event, String attribute) {
+        ObjectChangeSet change = ((WriteObjectQuery) event.getQuery()).getObjectChangeSet();
+        return change == null ? null : change.getChangesForAttributeNamed(attribute);
+    }
+
+    /**
+     * Reads the id of a reference off the foreign key, without loading the referenced object
+     */
+    private static Long idOf(ObjectReferenceMapping mapping, DescriptorEvent event) {
+        return (Long) mapping.extractPrimaryKeysForReferenceObject(event.getObject(), event.getSession());
+    }
+
+    private static Long oldIdOf(ObjectReferenceMapping mapping, ChangeRecord change, AbstractSession session) {
+        Object before = ((ObjectReferenceChangeRecord) change).getOldValue();
+        if (before instanceof ObjectChangeSet) {
+            return (Long) ((ObjectChangeSet) before).getId();
+        }
+        return before == null ? null : (Long) mapping.getReferenceDescriptor().getObjectBuilder().extractPrimaryKeyFromObject(before, session);
+    }
+}
@@ -0,0 +1,188 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * CommandScript runs the CookBook menu without a user, from a file of commands, as fast as it can.
+ * Every command is a block of lines separated from the next one by an empty line. The block holds the number of
+ * the menu entry followed by exactly what a user would type into that menu, lines starting with # are comments.
+ * ${n} in a command is replaced by the number of the command in the run, so repeated runs can create unique names.
+ * What the menus print is discarded, instead the latency of every kind of command and the overall rate are reported.
+ * Usage: CommandScript scriptFile [repeat] [-v], or CookBook with the same arguments
+ * With -v the latency of every single command is printed as well.
+ */
+public class CommandScript {
+
+    private static final Logger LOGGER = Logger.getLogger(CommandScript.class.getName());
+
+    private static final String[] MENU = {"create recipe", "update recipe", "delete food critic", "remove entity", "execute queries"};
+
+    private final List<String> commands;
+
+    /**
+     * Constructor for a script from its text
+     * @param text the commands, separated by empty lines
+     */
+    public CommandScript(String text) {
+        this.commands = new ArrayList<>();
+        StringBuilder command = new StringBuilder();
+        for (String line : text.split("\\R", -1)) {
+            if (line.trim().startsWith("#")) {
+                continue;
+            }
+            if (line.trim().isEmpty()) {
+                addCommand(command);
+            } else {
+                command.append(line).append('\n');
+            }
+        }
+        addCommand(command);
+    }
+
+    /**
+     * Reads a script from a file, or from the class path if there is no such file
+     * @param location path of the file or name of the resource
+     * @return the script
+     * @throws IOException if the script cannot be found or read
+     */
+    public static CommandScript load(String location) throws IOException {
+        Path path = Paths.get(location);
+        if (Files.exists(path)) {
+            return new CommandScript(Files.readString(path));
+        }
+        try (InputStream resource = CommandScript.class.getClassLoader().getResourceAsStream(location)) {
+            if (resource == null) {
+                throw new IOException("There is no command script " + location);
+            }
+            return new CommandScript(new String(resource.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: CommandScript scriptFile [repeat] [-v]");
+            System.exit(2);
+        }
+        boolean verbose = false;
+        List<String> positional = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("-v")) {
+                verbose = true;
+            } else {
+                positional.add(arg);
+            }
+        }
+        CommandScript script = load(positional.get(0));
+        int repeat = positional.size() > 1 ? Integer.parseInt(positional.get(1)) : 1;
+
+        SchemaMigrator.Mode mode = SchemaMigrator.Mode.fromSystemProperty();
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook", mode.persistenceProperties());
+        try {
+            factory.createEntityManager().close();
+            new SchemaMigrator(factory).run(mode);
+            int failures = script.run(factory, repeat, verbose, System.out);
+            if (failures > 0) {
+                System.exit(1);
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * Obtains the number of commands in the script
+     * @return the number of commands of one run
+     */
+    public int size() {
+        return commands.size();
+    }
+
+    /**
+     * Runs the script and reports the latency of each kind of command and the overall rate.
+     * Every command runs on its own input, so a command that fails or reads too little or too much
+     * does not throw off the ones after it.
+     * @param factory the factory the commands obtain their entity managers from
+     * @param repeat how often the whole script is run
+     * @param verbose whether the latency of every single command is reported as well
+     * @param report where the results are printed to
+     * @return the number of commands that failed
+     */
+    public int run(EntityManagerFactory factory, int repeat, boolean verbose, PrintStream report) {
+        Map<String, LatencyRecorder> latencies = new TreeMap<>();
+        int samples = Math.max(1, Math.min(repeat * commands.size(), 100_000));
+        LatencyRecorder overall = new LatencyRecorder(samples);
+        int failures = 0;
+        int sequence = 0;
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            for (int r = 0; r < repeat; r++) {
+                for (int c = 0; c < commands.size(); c++, sequence++) {
+                    Scanner input = new Scanner(commands.get(c).replace("${n}", String.valueOf(sequence)));
+                    CookBook cookBook = new CookBook(factory, input);
+                    String label = "unknown";
+                    long commandStart = System.nanoTime();
+                    String failure = null;
+                    try {
+                        int option = input.nextInt();
+                        label = option >= 1 && option <= MENU.length ? option + " " + MENU[option - 1] : String.valueOf(option);
+                        cookBook.execute(option);
+                        if (input.hasNext()) {
+                            failure = "input left over, starting at " + input.next();
+                        }
+                    } catch (InputMismatchException e) {
+                        failure = "unexpected input: " + (input.hasNext() ? input.next() : "");
+                    } catch (NoSuchElementException e) {
+                        failure = "ran out of input";
+                    } catch (RuntimeException e) {
+                        failure = e.toString();
+                    }
+                    long nanos = System.nanoTime() - commandStart;
+                    latencies.computeIfAbsent(label, l -> new LatencyRecorder(samples)).record(nanos);
+                    overall.record(nanos);
+                    if (failure != null) {
+                        failures++;
+                        LOGGER.warning(String.format("Command %d (line block %d, %s) failed: %s", sequence, c + 1, label, failure));
+                    }
+                    if (verbose) {
+                        console.printf("%6d  %-22s %9.3f ms%s%n", sequence, label, nanos / 1e6, failure == null ? "" : "  FAILED");
+                    }
+                }
+            }
+        } finally {
+            System.setOut(console);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (Map.Entry<String, LatencyRecorder> entry : latencies.entrySet()) {
+            report.printf("%-22s %s%n", entry.getKey(), entry.getValue());
+        }
+        report.printf("%-22s %s%n", "all commands", overall);
+        report.printf("%d commands in %.2f s, %.1f ops/sec, %d failed%n", sequence, seconds, sequence / seconds, failures);
+        return failures;
+    }
+
+    private void addCommand(StringBuilder command) {
+        if (command.length() > 0) {
+            commands.add(command.toString());
+            command.setLength(0);
+        }
+    }
+}
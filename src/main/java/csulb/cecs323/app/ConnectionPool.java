@@ -0,0 +1,532 @@
+package csulb.cecs323.app;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ConnectionPool keeps a bounded set of open JDBC connections to the CookBook database and lends them out,
+ * so that sessions do not pay for opening a new connection on every request.
+ * Each pooled connection also keeps its own cache of prepared statements, keyed by SQL text.
+ * Callers give a connection back by closing it. The live metrics of the pool are exported over JMX, see Metrics.
+ */
+public class ConnectionPool implements DataSource, ConnectionPoolMXBean, AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Settings settings;
+
+    private final Semaphore permits;
+    private final BlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong acquireTimeouts = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final LatencyRecorder acquireLatency = new LatencyRecorder(4096);
+    private volatile boolean closed;
+
+    /**
+     * Constructor which opens the minimum number of connections right away
+     * @param url the JDBC url of the database
+     * @param user the database user
+     * @param password the password of the database user
+     * @param settings the sizing, timeout, validation and statement cache settings
+     * @throws SQLException if the initial connections cannot be opened
+     */
+    public ConnectionPool(String url, String user, String password, Settings settings) throws SQLException {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.maxSize, true);
+        for (int i = 0; i < settings.minSize; i++) {
+            idle.offerLast(open());
+        }
+    }
+
+    /**
+     * Borrows a connection from the pool, waiting up to the acquire timeout when every connection is in use.
+     * Closing the returned connection gives it back to the pool.
+     * @return a connection that is reserved for the caller until it is closed
+     * @throws SQLTransientConnectionException if no connection became available within the acquire timeout
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(settings.acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                acquireTimeouts.incrementAndGet();
+                throw new SQLTransientConnectionException(String.format("No connection available within %d ms (active = %d, max = %d)", settings.acquireTimeoutMillis, active.get(), settings.maxSize));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        try {
+            PooledConnection pooled = takeIdle();
+            if (pooled == null) {
+                pooled = open();
+            }
+            active.incrementAndGet();
+            acquireLatency.record(System.nanoTime() - start);
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection, discarding the ones that fail validation
+     * @return a valid idle connection, or null if none is left
+     */
+    private PooledConnection takeIdle() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            if (!settings.validateOnBorrow || pooled.isValid(settings.validationTimeoutSeconds)) {
+                return pooled;
+            }
+            validationFailures.incrementAndGet();
+            discard(pooled);
+        }
+        return null;
+    }
+
+    /**
+     * Borrows a connection for the given credentials, which have to be the ones the pool was configured with
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!Objects.equals(username, this.user) || !Objects.equals(password, this.password)) {
+            throw new SQLFeatureNotSupportedException("The CookBook pool only hands out connections for its configured user");
+        }
+        return getConnection();
+    }
+
+    /**
+     * Opens a new physical connection
+     */
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        PooledConnection pooled;
+        try {
+            pooled = new PooledConnection(physical);
+        } catch (SQLException e) {
+            physical.close();
+            throw e;
+        }
+        total.incrementAndGet();
+        return pooled;
+    }
+
+    /**
+     * Gives a leased connection back to the pool, or throws it away if it can no longer be used
+     */
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (closed || pooled.physical.isClosed()) {
+                discard(pooled);
+            } else {
+                pooled.reset();
+                idle.offerFirst(pooled);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Discarding a connection that could not be reset", e);
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Closes the physical connection and its cached statements
+     */
+    private void discard(PooledConnection pooled) {
+        total.decrementAndGet();
+        pooled.closePhysical();
+    }
+
+    /**
+     * Closes every idle connection, connections still in use are closed when they are returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    /**
+     * Formats the live metrics of the pool
+     * @return a one line summary of the pool state
+     */
+    @Override
+    public String toString() {
+        return String.format("ConnectionPool[total = %d, active = %d, idle = %d, waiting = %d, timeouts = %d, wait = %d ms, acquire %s, statement cache hit rate = %.1f%%]",
+                getTotalConnections(), getActiveConnections(), getIdleConnections(), getThreadsAwaitingConnection(), getAcquireTimeouts(),
+                getTotalWaitMillis(), acquireLatency, getStatementCacheHitRate() * 100);
+    }
+
+    @Override
+    public int getMaxSize() { return settings.maxSize; }
+
+    @Override
+    public int getTotalConnections() { return total.get(); }
+
+    @Override
+    public int getActiveConnections() { return active.get(); }
+
+    @Override
+    public int getIdleConnections() { return idle.size(); }
+
+    @Override
+    public int getThreadsAwaitingConnection() { return waiting.get(); }
+
+    @Override
+    public long getAcquireCount() { return acquireLatency.getCount(); }
+
+    @Override
+    public long getAcquireTimeouts() { return acquireTimeouts.get(); }
+
+    @Override
+    public long getTotalWaitMillis() { return acquireLatency.getTotalNanos() / 1_000_000; }
+
+    @Override
+    public double getAcquireLatencyP50Millis() { return acquireLatency.percentile(50) / 1e6; }
+
+    @Override
+    public double getAcquireLatencyP95Millis() { return acquireLatency.percentile(95) / 1e6; }
+
+    @Override
+    public double getAcquireLatencyP99Millis() { return acquireLatency.percentile(99) / 1e6; }
+
+    @Override
+    public double getAcquireLatencyMaxMillis() { return acquireLatency.getMaxNanos() / 1e6; }
+
+    @Override
+    public long getValidationFailures() { return validationFailures.get(); }
+
+    @Override
+    public long getStatementCacheHits() { return statementCacheHits.get(); }
+
+    @Override
+    public long getStatementCacheMisses() { return statementCacheMisses.get(); }
+
+    @Override
+    public double getStatementCacheHitRate() {
+        long hits = statementCacheHits.get();
+        long lookups = hits + statementCacheMisses.get();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() { return DriverManager.getLogWriter(); }
+
+    @Override
+    public void setLogWriter(PrintWriter out) { DriverManager.setLogWriter(out); }
+
+    @Override
+    public void setLoginTimeout(int seconds) { DriverManager.setLoginTimeout(seconds); }
+
+    @Override
+    public int getLoginTimeout() { return DriverManager.getLoginTimeout(); }
+
+    @Override
+    public Logger getParentLogger() { return LOGGER; }
+
+    @Override
+    public <T> T unwrap(Class<T> type) throws SQLException {
+        if (type.isInstance(this)) {
+            return type.cast(this);
+        }
+        throw new SQLException("ConnectionPool does not wrap " + type.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> type) { return type.isInstance(this); }
+
+    /**
+     * The sizing, timeout, validation and statement cache settings of a pool
+     */
+    public static class Settings {
+        private final int minSize;
+        private final int maxSize;
+        private final long acquireTimeoutMillis;
+        private final boolean validateOnBorrow;
+        private final int validationTimeoutSeconds;
+        private final int statementCacheSize;
+
+        /**
+         * @param minSize the number of connections opened when the pool starts
+         * @param maxSize the largest number of connections open at the same time
+         * @param acquireTimeoutMillis how long a caller waits for a free connection before failing
+         * @param validateOnBorrow whether an idle connection is checked with Connection.isValid before it is lent out
+         * @param validationTimeoutSeconds the timeout passed to Connection.isValid
+         * @param statementCacheSize the number of prepared statements cached per connection, 0 disables the cache
+         */
+        public Settings(int minSize, int maxSize, long acquireTimeoutMillis, boolean validateOnBorrow, int validationTimeoutSeconds, int statementCacheSize) {
+            if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+                throw new IllegalArgumentException(String.format("Invalid pool size: min = %d, max = %d", minSize, maxSize));
+            }
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.acquireTimeoutMillis = acquireTimeoutMillis;
+            this.validateOnBorrow = validateOnBorrow;
+            this.validationTimeoutSeconds = validationTimeoutSeconds;
+            this.statementCacheSize = statementCacheSize;
+        }
+
+        public int getMinSize() { return minSize; }
+
+        public int getMaxSize() { return maxSize; }
+
+        public int getStatementCacheSize() { return statementCacheSize; }
+    }
+
+    /**
+     * A physical connection owned by the pool together with its prepared statement cache
+     * and the settings it was opened with, which every borrower gets
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final Map<String, CachedStatement> statements;
+        private final boolean autoCommit;
+        private final boolean readOnly;
+        private final int transactionIsolation;
+
+        private PooledConnection(Connection physical) throws SQLException {
+            this.physical = physical;
+            this.autoCommit = physical.getAutoCommit();
+            this.readOnly = physical.isReadOnly();
+            this.transactionIsolation = physical.getTransactionIsolation();
+            this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() > settings.statementCacheSize) {
+                        if (!eldest.getValue().inUse) {
+                            eldest.getValue().closeQuietly();
+                        } else {
+                            eldest.getValue().evicted = true;
+                        }
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        /**
+         * Rolls back what the borrower left uncommitted, restores the settings the connection was opened with
+         * and clears its warnings, so the next borrower does not inherit a read-only connection or another isolation level
+         * @throws SQLException if the connection cannot be reset, it is discarded then
+         */
+        private void reset() throws SQLException {
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+            }
+            if (physical.getTransactionIsolation() != transactionIsolation) {
+                physical.setTransactionIsolation(transactionIsolation);
+            }
+            if (physical.isReadOnly() != readOnly) {
+                physical.setReadOnly(readOnly);
+            }
+            if (physical.getAutoCommit() != autoCommit) {
+                physical.setAutoCommit(autoCommit);
+            }
+            physical.clearWarnings();
+        }
+
+        private boolean isValid(int timeoutSeconds) {
+            try {
+                return physical.isValid(timeoutSeconds);
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Wraps the physical connection for a single borrower. Closing the wrapper returns the connection to the pool
+         * and prepareStatement goes through the statement cache.
+         */
+        private Connection lease() {
+            InvocationHandler handler = new InvocationHandler() {
+                private boolean returned;
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                    String name = method.getName();
+                    if (name.equals("close")) {
+                        if (!returned) {
+                            returned = true;
+                            release(PooledConnection.this);
+                        }
+                        return null;
+                    }
+                    if (name.equals("isClosed")) {
+                        return returned || physical.isClosed();
+                    }
+                    if (returned) {
+                        throw new SQLException("Connection has already been returned to the pool");
+                    }
+                    if (name.equals("prepareStatement") && settings.statementCacheSize > 0 && cacheable(method)) {
+                        return prepare((Connection) proxy, method, args);
+                    }
+                    if (name.equals("unwrap") && ((Class<?>) args[0]).isInstance(physical)) {
+                        return physical;
+                    }
+                    return invokeOn(physical, method, args);
+                }
+            };
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+        }
+
+        /**
+         * Only the plain prepareStatement(sql) and prepareStatement(sql, resultSetType, resultSetConcurrency) calls are cached
+         */
+        private boolean cacheable(Method method) {
+            Class<?>[] types = method.getParameterTypes();
+            return types.length == 1 || (types.length == 3 && types[1] == int.class && types[2] == int.class);
+        }
+
+        /**
+         * Looks the statement up in the cache, preparing and caching it on a miss.
+         * A statement that is still open from an earlier call is not shared, a separate uncached one is prepared instead.
+         * A statement whose execution failed is replaced, see CachedStatement.
+         */
+        private PreparedStatement prepare(Connection owner, Method method, Object[] args) throws Throwable {
+            StringBuilder key = new StringBuilder((String) args[0]);
+            for (int i = 1; i < args.length; i++) {
+                key.append('\u0000').append(args[i]);
+            }
+            CachedStatement cached = statements.get(key.toString());
+            if (cached != null && cached.evicted) {
+                statements.remove(key.toString());
+                cached = null;
+            }
+            if (cached != null && !cached.inUse) {
+                statementCacheHits.incrementAndGet();
+                cached.inUse = true;
+                return cached.proxy;
+            }
+            statementCacheMisses.incrementAndGet();
+            PreparedStatement statement = (PreparedStatement) invokeOn(physical, method, args);
+            if (cached != null) {
+                return statement;
+            }
+            cached = new CachedStatement(statement, owner);
+            cached.inUse = true;
+            statements.put(key.toString(), cached);
+            return cached.proxy;
+        }
+
+        private void closePhysical() {
+            for (CachedStatement cached : statements.values()) {
+                cached.closeQuietly();
+            }
+            statements.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Unable to close a pooled connection", e);
+            }
+        }
+    }
+
+    /**
+     * A prepared statement kept open in the cache of a pooled connection. Closing it only makes it available again.
+     * A statement whose execution failed is closed instead and not handed out again: Derby 10.14 keeps the rows
+     * of a MERGE that ran into a duplicate key and inserts them again on every later execution of the statement.
+     */
+    private static class CachedStatement {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement statement, Connection owner) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "close":
+                        if (inUse) {
+                            inUse = false;
+                            if (evicted) {
+                                closeQuietly();
+                            } else {
+                                statement.clearParameters();
+                                statement.clearBatch();
+                            }
+                        }
+                        return null;
+                    case "isClosed":
+                        return !inUse || statement.isClosed();
+                    case "getConnection":
+                        return owner;
+                    default:
+                        try {
+                            return invokeOn(statement, method, args);
+                        } catch (SQLException e) {
+                            if (method.getName().startsWith("execute")) {
+                                evicted = true;
+                            }
+                            throw e;
+                        }
+                }
+            });
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "Unable to close a cached statement", e);
+            }
+        }
+    }
+
+    /**
+     * Invokes a JDBC method on the real object, unwrapping the reflection exception so callers see the SQLException
+     */
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.Connector;
+import org.eclipse.persistence.sessions.DatabaseLogin;
+import org.eclipse.persistence.sessions.DatasourceLogin;
+import org.eclipse.persistence.sessions.JNDIConnector;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.server.Server;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+/**
+ * ConnectionPoolCustomizer replaces the default EclipseLink connection handling of the CookBook persistence unit
+ * with a ConnectionPool built from the unit's JDBC settings and its cookbook.pool.* properties.
+ * It is applied by CookBookCustomizer, the session customizer configured in persistence.xml.
+ */
+public class ConnectionPoolCustomizer implements SessionCustomizer {
+
+    public static final String MIN_SIZE = "cookbook.pool.min-size";
+    public static final String MAX_SIZE = "cookbook.pool.max-size";
+    public static final String ACQUIRE_TIMEOUT = "cookbook.pool.acquire-timeout";
+    public static final String VALIDATE_ON_BORROW = "cookbook.pool.validate-on-borrow";
+    public static final String VALIDATION_TIMEOUT = "cookbook.pool.validation-timeout";
+    public static final String STATEMENT_CACHE_SIZE = "cookbook.pool.statement-cache-size";
+
+    /**
+     * Builds the pool and hands it to EclipseLink as an externally pooled data source.
+     * The pool is closed again when the session logs out, i.e. when the factory is closed.
+     * @param session the session of the persistence unit, before it logs in
+     */
+    @Override
+    public void customize(Session session) throws SQLException {
+        DatabaseLogin login = (DatabaseLogin) session.getDatasourceLogin();
+        ConnectionPool.Settings settings = new ConnectionPool.Settings(
+                intProperty(session, MIN_SIZE, 2),
+                intProperty(session, MAX_SIZE, 10),
+                intProperty(session, ACQUIRE_TIMEOUT, 5000),
+                Boolean.parseBoolean(property(session, VALIDATE_ON_BORROW, "true")),
+                intProperty(session, VALIDATION_TIMEOUT, 2),
+                intProperty(session, STATEMENT_CACHE_SIZE, 50));
+        // the login only keeps the password encrypted, so the plain one is read from the unit properties
+        String password = (String) session.getProperty("javax.persistence.jdbc.password");
+        ConnectionPool pool = new ConnectionPool(login.getConnectionString(), login.getUserName(), password, settings);
+        Metrics.export(session, "ConnectionPool", pool);
+
+        login.setConnector(new JNDIConnector(pool));
+        login.setUsesExternalConnectionPooling(true);
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postLogout(SessionEvent event) {
+                pool.close();
+            }
+        });
+    }
+
+    /**
+     * Finds the connection pool that a factory of the CookBook persistence unit is using
+     * @param factory the factory to look into
+     * @return the pool of the factory, or null if the customizer is not enabled for it
+     */
+    public static ConnectionPool poolOf(EntityManagerFactory factory) {
+        Server session = factory.unwrap(JpaEntityManagerFactory.class).getServerSession();
+        Connector connector = ((DatasourceLogin) session.getDatasourceLogin()).getConnector();
+        if (connector instanceof JNDIConnector) {
+            DataSource dataSource = ((JNDIConnector) connector).getDataSource();
+            if (dataSource instanceof ConnectionPool) {
+                return (ConnectionPool) dataSource;
+            }
+        }
+        return null;
+    }
+
+    private static String property(Session session, String name, String defaultValue) {
+        Object value = session.getProperty(name);
+        return value == null ? System.getProperty(name, defaultValue) : value.toString().trim();
+    }
+
+    private static int intProperty(Session session, String name, int defaultValue) {
+        return Integer.parseInt(property(session, name, String.valueOf(defaultValue)));
+    }
+}
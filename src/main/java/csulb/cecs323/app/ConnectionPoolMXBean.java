@@ -0,0 +1,39 @@
+package csulb.cecs323.app;
+
+/**
+ * Live metrics of the CookBook connection pool, exported over JMX as csulb.cecs323:type=ConnectionPool
+ */
+public interface ConnectionPoolMXBean {
+
+    int getMaxSize();
+
+    int getTotalConnections();
+
+    int getActiveConnections();
+
+    int getIdleConnections();
+
+    int getThreadsAwaitingConnection();
+
+    long getAcquireCount();
+
+    long getAcquireTimeouts();
+
+    long getTotalWaitMillis();
+
+    double getAcquireLatencyP50Millis();
+
+    double getAcquireLatencyP95Millis();
+
+    double getAcquireLatencyP99Millis();
+
+    double getAcquireLatencyMaxMillis();
+
+    long getValidationFailures();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+
+    double getStatementCacheHitRate();
+}
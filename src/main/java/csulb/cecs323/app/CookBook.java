@@ -4,28 +4,80 @@ import csulb.cecs323.model.*;
 
 import javax.persistence.*;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.Arrays;
 
 import java.util.Scanner;
 
 public class CookBook {
+    private final EntityManagerFactory factory;
+    private final Scanner input;
+    /**
+     * The entity manager of the menu command that is running, null between commands
+     */
     private EntityManager entityManager;
 
     private static final Logger LOGGER = Logger.getLogger(CookBook.class.getName());
-    private static final Scanner input = new Scanner(System.in);
 
-    public CookBook(EntityManager manager) {
-        this.entityManager = manager;
+    /**
+     * The number of best matching recipes a search shows
+     */
+    private static final int SEARCH_LIMIT = 20;
+
+    /**
+     * The number of rows a listing shows at a time
+     */
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * The queries of the six reports of queryExecution, the headers printed above their results
+     * and how each row is printed. The first report has no query, it is read off the ChefLeaderboard.
+     */
+    private static final String[] REPORT_QUERIES = {null, QueryCatalog.REPORT_CHEF_WITH_FEWEST_INGREDIENTS,
+            QueryCatalog.REPORT_UNUSED_INGREDIENTS, QueryCatalog.REPORT_RECIPES_ABOVE_AVERAGE_RATING, QueryCatalog.REPORT_FOOD_CRITIC_REVIEWS,
+            QueryCatalog.REPORT_RECIPE_STEPS};
+    private static final String[] REPORT_HEADERS = {"\nThe result of the chef with the most numbers of review",
+            "\nThe result of the chef that use the least amount of ingredients",
+            "\nThe ingredients that have never been used in a recipe",
+            "\nResult of average rating of recipe greater than overall average rating of all recipes, and a chef who created the recipe",
+            "\nResult of food critics and their reviews and recipes of these reviews",
+            "\nResult of the steps of the recipe"};
+    private static final List<Function<Object[], String>> REPORT_LINES = List.of(
+            row -> "Chef's First Name: " + row[0] + " Chef's Last Name: " + row[1] + " Chef's Email: " + row[2] + " Number of Reviews: " + row[3],
+            row -> "Chef's First Name: " + row[0] + " Chef's Last Name: " + row[1] + " Chef's ID: " + row[2] + " Chef's Email: " + row[3] + " Number of Ingredient: " + row[4],
+            row -> "Ingredient Name: " + row[0] + ", Ingredient Type: " + row[1],
+            row -> "Recipe: " + row[0] + ", Average Rating: " + row[1] + ", Chef First Name: " + row[2] + ", Chef Last Name: " + row[3],
+            row -> "Id: " + row[0] + ", Food Critic First Name: " + row[1] + ", Food Critic Last Name: " + row[2] + ", Review: " + row[3] + ", Recip: " + row[4],
+            row -> "Step Number: " + row[0] + " Step Description: " + row[1] + " Step Time: " + row[2]);
+
+    /**
+     * Constructor for a CookBook that reads the choices of the user from the given scanner
+     * @param factory the factory each menu command obtains its own entity manager from
+     * @param input the scanner the user input is read from
+     */
+    public CookBook(EntityManagerFactory factory, Scanner input) {
+        this.factory = factory;
+        this.input = input;
     }
 
-    public static void main(String[] args) {
-        LOGGER.fine("Creating EntityManagerFactory and EntityManager");
-        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook");
-        EntityManager manager = factory.createEntityManager();
-        CookBook cookBook = new CookBook(manager);
+    public static void main(String[] args) throws java.io.IOException {
+        if (args.length > 0) {
+            // a command script is given, run it without a user
+            CommandScript.main(args);
+            return;
+        }
+        LOGGER.fine("Creating EntityManagerFactory");
+        SchemaMigrator.Mode mode = SchemaMigrator.Mode.fromSystemProperty();
+        long bootstrapStart = System.nanoTime();
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook", mode.persistenceProperties());
+        factory.createEntityManager().close();
+        int migrations = new SchemaMigrator(factory).run(mode);
+        LOGGER.info(String.format("Bootstrap in %s mode completed in %d ms (%d migrations applied)", mode, (System.nanoTime() - bootstrapStart) / 1_000_000, migrations));
+        Scanner input = new Scanner(System.in);
+        CookBook cookBook = new CookBook(factory, input);
 
         boolean running = true;
         int option;
@@ -41,52 +93,84 @@ public class CookBook {
             System.out.println("\nCook Book Menu:\n1. Create new recipe\n2. Update a recipe\n3. Delete a food critic\n4. Remove an entity\n5. Execute queries\n6. Quit");
             System.out.print("Enter Here: ");
             option = input.nextInt();
+            running = cookBook.execute(option);
+        }
+        factory.close();
+    }
 
-            switch (option)
-            {
-                case 1:
-                    cookBook.addRecipe();
-                    break;
-                case 2:
-                    cookBook.changeRecipe();
-                    break;
-                case 3:
-                    cookBook.foodCriticDeletion();
-                    break;
-                case 4:
-                    cookBook.entityDeletion();
-                    break;
-                case 5:
-                    cookBook.queryExecution();
-                    break;
-                case 6:
-                    running = false;
-                    System.out.println("\nHave a nice day!");
-                    break;
-                default:
-                    System.out.println("\nInvalid Input, Try Again!");
-            }
-
+    /**
+     * Runs one choice of the main menu
+     * @param option the number of the menu entry
+     * @return false once the user chose to quit, true otherwise
+     */
+    public boolean execute(int option) {
+        switch (option)
+        {
+            case 1:
+                runCommand(this::addRecipe);
+                break;
+            case 2:
+                runCommand(this::changeRecipe);
+                break;
+            case 3:
+                runCommand(this::foodCriticDeletion);
+                break;
+            case 4:
+                runCommand(this::entityDeletion);
+                break;
+            case 5:
+                runCommand(this::queryExecution);
+                break;
+            case 6:
+                ConnectionPool pool = ConnectionPoolCustomizer.poolOf(factory);
+                if (pool != null) {
+                    LOGGER.info(pool.toString());
+                }
+                LOGGER.info(QueryCatalog.cacheStatistics(factory));
+                LOGGER.info(IngredientDictionary.of(factory).toString());
+                LOGGER.info(ReferenceCache.statistics(factory));
+                LOGGER.info(ReportCache.of(factory).toString());
+                System.out.println("\nHave a nice day!");
+                return false;
+            default:
+                System.out.println("\nInvalid Input, Try Again!");
         }
+        return true;
+    }
 
+    /**
+     * Runs a menu command in its own persistence context.
+     * The command gets a new entity manager, which is closed again when the command returns,
+     * so nothing the command loaded stays managed and the context never outgrows a single command.
+     * A transaction the command left open, e.g. because it failed, is rolled back.
+     * @param command the menu command to run
+     */
+    public void runCommand(Runnable command) {
+        entityManager = factory.createEntityManager();
+        try {
+            command.run();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+            entityManager = null;
+        }
     }
 
+    /**
+     * Persists new entities in the transaction the caller has begun on the entity manager,
+     * their INSERT statements are batched per table at commit, see BulkPersister
+     * @param entities the new entities, every new entity they reference has to be in the list as well
+     */
     public <E> void createEntity(List<E> entities) {
-        Iterator var2 = entities.iterator();
-
-        Object next;
-        while(var2.hasNext()) {
-            next = var2.next();
-            LOGGER.info("Persisting: " + next);
-            this.entityManager.persist(next);
+        for (E entity : entities) {
+            LOGGER.info("Persisting: " + entity);
         }
-        var2 = entities.iterator();
-
-        while(var2.hasNext()) {
-            next = var2.next();
-            LOGGER.info("Persisted object after flush (non-null id): " + next);
+        new BulkPersister().persistAll(this.entityManager, entities);
+        for (E entity : entities) {
+            LOGGER.info("Persisted object with its preallocated id: " + entity);
         }
-
     }
 
     /**
@@ -96,23 +180,19 @@ public class CookBook {
      */
     public void foodCriticDeletion() {
         EntityTransaction remove = this.entityManager.getTransaction();
-        Query foodCriticQuery;
-        List<FoodCritic> foodCritics;
-        int index;
+        FoodCritic foodCritic;
         char done = 'y';
         while(done != 'n') {
-            foodCriticQuery = this.entityManager.createQuery("SELECT DISTINCT f FROM FoodCritic f WHERE f.followers <> NULL");
-            foodCritics = foodCriticQuery.getResultList();
-            if (foodCritics.size() != 0) {
+            if (!Listing.FOOD_CRITICS_WITH_FOLLOWERS.isEmpty(this.entityManager)) {
                 System.out.println("\nBelow is a list of food critics that has followers.");
-                for (int i = 0; i < foodCritics.size(); i++) {
-                    System.out.println((i + 1) + ": " + foodCritics.get(i).getFirstName() + " " + foodCritics.get(i).getLastName() + ", email: " + foodCritics.get(i).getEmail());
-                }
-                System.out.print("\nSelect the food critic who you would like to delete [1-" + foodCritics.size() + "]: ");
-                index = input.nextInt();
+                foodCritic = pickEntity(Listing.FOOD_CRITICS_WITH_FOLLOWERS, "\nSelect the food critic who you would like to delete",
+                        f -> f.getFirstName() + " " + f.getLastName() + ", email: " + f.getEmail(),
+                        f -> this.entityManager.find(FoodCritic.class, f.getUserId()));
                 remove.begin();
-                this.entityManager.remove(foodCritics.get(index - 1));
+                this.entityManager.remove(foodCritic);
                 remove.commit();
+                // the list is queried again for the next deletion, so nothing loaded so far is needed anymore
+                this.entityManager.clear();
             } else {
                 System.out.println("\nSorry, there are no food critics that has followers!");
                 break;
@@ -136,9 +216,6 @@ public class CookBook {
         EntityTransaction create = this.entityManager.getTransaction();
         String name, description;
 
-        List<Recipe> recipes = new ArrayList<>();
-        List<Ingredient> ingredients = new ArrayList<>();
-        List<IngredientAmount> ingredientAmounts = new ArrayList<>();
         List<Step> steps = new ArrayList<>();
 
         /*
@@ -169,6 +246,8 @@ public class CookBook {
         System.out.println();
 
         Recipe newRecipe = new Recipe(name, description, prepTime, cookTime, difficultyRating, numberOfServings);
+        // whether an ingredient is new is answered from memory, all of them are created and fetched together at the end
+        NewRecipe creation = new NewRecipe(newRecipe, IngredientDictionary.of(factory));
 
         /*
             Start user prompt for ingredients needed.
@@ -187,20 +266,13 @@ public class CookBook {
             System.out.print("Ingredient name: ");
             name = input.nextLine();
 
-            Ingredient newIngredient;
-            IngredientAmount newIngredientAmount;
-            Query ingredientQuery = this.entityManager.createQuery("SELECT i FROM Ingredient i WHERE i.name = '" + name + "'");
-            List<Ingredient> sameIngredients = ingredientQuery.getResultList();
-
-            if (sameIngredients.isEmpty()) {
+            if (creation.isNewIngredient(this.entityManager, name)) {
                 System.out.println("Since this is a new ingredient in the system, please enter the following information.");
                 System.out.print("Ingredient type: ");
                 type = input.nextLine();
                 System.out.print("Ingredient Description: ");
                 description = input.nextLine();
-                newIngredient = new Ingredient(name, type, description);
-            } else {
-                newIngredient = sameIngredients.get(0);
+                creation.addIngredient(new Ingredient(name, type, description));
             }
 
             System.out.print("Units to measure for the ingredient(eg. grams, tbsp): ");
@@ -208,14 +280,8 @@ public class CookBook {
             System.out.print("Amount needed: ");
             amount = input.nextFloat();
             input.nextLine();
-            newIngredientAmount = new IngredientAmount(amount, units, newRecipe, newIngredient);
-            newIngredient.addIngredientAmount(newIngredientAmount);
-            newRecipe.addIngredientAmount(newIngredientAmount);
-            ingredientAmounts.add(newIngredientAmount);
+            creation.addAmount(name, units, amount);
 
-            if(sameIngredients.isEmpty()){
-                ingredients.add(newIngredient);
-            }
             System.out.print("Done adding ingredients (Y/N)? ");
             done = input.next().charAt(0);
             input.nextLine();
@@ -253,24 +319,12 @@ public class CookBook {
             User will choose one cuisine to assign it to the recipe.
             Cuisines are retrieved from the system.
          */
-        int index = 0;
         Cuisine newCuisine;
-        Query cuisineQuery = this.entityManager.createQuery("SELECT c FROM Cuisine c");
-        List<Cuisine> sampleCuisines= cuisineQuery.getResultList();
         System.out.println("Here are some cuisines.");
-        for(Cuisine c : sampleCuisines){
-            System.out.println((sampleCuisines.indexOf(c)+1)+ ". Cuisine Name: " + c.getName() + ", Region: " + c.getRegion() + ", Religion: " + c.getReligion());
-        }
-
-        System.out.print("Enter a cuisine from [1-" + sampleCuisines.size() + "]: ");
-        index = input.nextInt() - 1;
+        newCuisine = pickEntity(Listing.CUISINES, "Enter a cuisine from",
+                c -> "Cuisine Name: " + c.getName() + ", Region: " + c.getRegion() + ", Religion: " + c.getReligion(),
+                c -> this.entityManager.find(Cuisine.class, c.getCuisineId()));
         input.nextLine();
-        newCuisine = sampleCuisines.get(index);
-
-        newCuisine.addRecipe(newRecipe);
-        for(Ingredient i : ingredients){
-            newCuisine.addIngredient(i);
-        }
 
 
         /*
@@ -278,56 +332,45 @@ public class CookBook {
             User will choose one chef to assign it to the recipe.
             Chefs are retrieved from the system.
          */
-        Query chefQuery = this.entityManager.createQuery("SELECT ch FROM Chef ch");
-        List<Chef> sampleChefs = chefQuery.getResultList();
         Chef newChef;
         System.out.println("Here are some chefs.");
-        for(Chef ch : sampleChefs){
-            System.out.println((sampleChefs.indexOf(ch)+1)+ ". Chef: " + ch.getFirstName() + " " + ch.getLastName());
-        }
-        System.out.println("Please select one of these chefs for this recipe [1-"+ sampleChefs.size()+ "]: ");
-        index = input.nextInt()-1;
+        newChef = pickEntity(Listing.CHEFS, "Please select one of these chefs for this recipe",
+                ch -> "Chef: " + ch.getFirstName() + " " + ch.getLastName(),
+                ch -> this.entityManager.find(Chef.class, ch.getUserId()));
         input.nextLine();
-        newChef = sampleChefs.get(index);
-        newChef.addRecipe(newRecipe);
-        newChef.addCuisine(newCuisine);
-        recipes.add(newRecipe);
-
-        System.out.println("This recipe has been added. Thank you.");
 
         /*
-            Adding new information into the database
+            Adding new information into the database, see NewRecipe
+            New ingredients are upserted, so one that someone else created in the meantime is simply used
+            The links of the chef and cuisine are upserted too, so their other cuisines and ingredients are not read
          */
         create.begin();
-        createEntity(recipes);
-        createEntity(ingredients);
-        createEntity(ingredientAmounts);
+        for (String deleted : creation.create(this.entityManager, newChef, newCuisine)) {
+            System.out.println("The ingredient " + deleted + " has been deleted in the meantime and is left out.");
+        }
         create.commit();
+
+        System.out.println("This recipe has been added. Thank you.");
     }
 
     /**
      * This function allow user to change the description, preparation time, cook time, and difficulty rating of a recipe
-     * User will be prompt to input a string to search for the recipe by name then they will need to choose which attribute to change with an integer value
+     * User will be prompt to input words to search for the recipe by its name, description and steps then they will need to choose which attribute to change with an integer value
      * Description will require user to input a string to change the value of it
      * Prep time and Cook time require the user to input integer values in minutes
      * Difficulty rating require user to input an integer to change it
      * User will be prompt to continue
+     * Every change is committed on its own right after it is entered, no transaction stays open while the user is typing.
+     * If someone else changed the recipe in the meantime the change is rejected and the current recipe is shown again.
      */
     public void changeRecipe() {
-        Query getRecipeQuery;
-        Query changeRecipeQuery;
         List<Recipe> recipeList;
+        Recipe recipe;
         int recipeIndex;
         int attributeIndex;
-        boolean finishUpdate = false;
+        boolean finishUpdate;
         boolean completeSearching = false;
         char resumeChoice;
-        String newDescription = "";
-        int newPrepTime;
-        int newCookTime;
-        int newDifficultyRating;
-        EntityTransaction update = this.entityManager.getTransaction();
-        update.begin();
 
         // Check with user if they are with changing recipe, prompt again to check if they are done updating
         while(!completeSearching)
@@ -335,8 +378,7 @@ public class CookBook {
            System.out.print("\nInput the string of recipe to search for\nEnter here: ");
            // take in string input of user to search for one with similar with query
            String recipeSearch = input.next();
-           getRecipeQuery = this.entityManager.createQuery("SELECT r FROM Recipe r WHERE  LOWER(r.name) LIKE '%" + recipeSearch + "%'");
-           recipeList = getRecipeQuery.getResultList();
+           recipeList = RecipeSearchIndex.of(factory).findRecipes(this.entityManager, recipeSearch, SEARCH_LIMIT);
            if(recipeList.size() > 0)
            {
                System.out.println("\nBelow is a list of Recipe from the search:");
@@ -345,54 +387,67 @@ public class CookBook {
                }
                System.out.print("\nSelect the Recipe you would like to make changes to [1-"+recipeList.size()+"]: ");
                recipeIndex = input.nextInt();
+               recipe = recipeList.get(recipeIndex-1);
+               finishUpdate = false;
                // check if player is finish updating the actual recipe
                while(!finishUpdate)
                {
-                   System.out.print("Select the Integer values of " + recipeList.get(recipeIndex-1).getName() + " you would like to change: \n1. description\n2. prep time\n3. cook time\n4. difficulty rating\n");
+                   System.out.print("Select the Integer values of " + recipe.getName() + " you would like to change: \n1. description\n2. prep time\n3. cook time\n4. difficulty rating\n");
                    attributeIndex = input.nextInt();
+                   boolean saved = true;
                    switch(attributeIndex)
                    {
                        case 1:
                            // Change description of the recipe
                            System.out.println("Input the String value you would like to change the description to\nEnter Here: ");
-                           newDescription = input.next();
-                           newDescription += input.nextLine();
-
-                           changeRecipeQuery = this.entityManager.createQuery("UPDATE Recipe SET description = '" + newDescription + "' WHERE recipeId = " + recipeIndex);
-                           changeRecipeQuery.executeUpdate();
-                           System.out.println("Updated description of the recipe to " + newDescription);
+                           String newDescription = input.next() + input.nextLine();
+                           saved = commitRecipeChange(recipe, r -> r.setDescription(newDescription));
+                           if (saved) {
+                               System.out.println("Updated description of the recipe to " + newDescription);
+                           }
                            break;
                        case 2:
                            // Change prep time of the recipe
                            System.out.println("Input the Integer value you would like to change the prep time (in minutes) to\nEnter Here: ");
-                           newPrepTime = input.nextInt();
-
-                           changeRecipeQuery = this.entityManager.createQuery("UPDATE Recipe SET prepTime = '" + newPrepTime + "' WHERE recipeId = " + recipeIndex);
-                           changeRecipeQuery.executeUpdate();
-                           System.out.println("Updated prep time of the recipe to " + newPrepTime + " minutes");
+                           int newPrepTime = input.nextInt();
+                           saved = commitRecipeChange(recipe, r -> r.setPrepTime(newPrepTime));
+                           if (saved) {
+                               System.out.println("Updated prep time of the recipe to " + newPrepTime + " minutes");
+                           }
                            break;
                        case 3:
                            // change cook time of the recipe
                            System.out.println("Input the Integer value you would like to change the cook time (in minutes) to\nEnter Here: ");
-                           newCookTime = input.nextInt();
-
-                           changeRecipeQuery = this.entityManager.createQuery("UPDATE Recipe SET cookTime = '" + newCookTime + "' WHERE recipeId = " + recipeIndex);
-                           changeRecipeQuery.executeUpdate();
-                           System.out.println("Updated cook time of the recipe to " + newCookTime + " minutes");
+                           int newCookTime = input.nextInt();
+                           saved = commitRecipeChange(recipe, r -> r.setCookTime(newCookTime));
+                           if (saved) {
+                               System.out.println("Updated cook time of the recipe to " + newCookTime + " minutes");
+                           }
                            break;
                        case 4:
                            // change difficult rating of the recipe
                            System.out.println("Input the Integer value you would like to change the difficulty rating to\nEnter Here: ");
-                           newDifficultyRating = input.nextInt();
-
-                           changeRecipeQuery = this.entityManager.createQuery("UPDATE Recipe SET difficultyRating = '" + newDifficultyRating + "' WHERE recipeId = " + recipeIndex);
-                           changeRecipeQuery.executeUpdate();
-                           System.out.println("Updated difficulty rating of the recipe to " + newDifficultyRating);
+                           int newDifficultyRating = input.nextInt();
+                           saved = commitRecipeChange(recipe, r -> r.setDifficultyRating(newDifficultyRating));
+                           if (saved) {
+                               System.out.println("Updated difficulty rating of the recipe to " + newDifficultyRating);
+                           }
                            break;
                        default:
                            System.out.println("Invalid Input, Try Again!");
                    }
 
+                   if (!saved) {
+                       recipe = reloadRecipe(recipe.getRecipeId());
+                       if (recipe == null) {
+                           System.out.println("This recipe has been deleted in the meantime.");
+                           break;
+                       }
+                       System.out.println("Someone else changed this recipe in the meantime, your change was not saved. The recipe is now:\n"
+                               + "description: " + recipe.getDescription() + ", prep time: " + recipe.getPrepTime() + ", cook time: " + recipe.getCookTime()
+                               + ", difficulty rating: " + recipe.getDifficultyRating());
+                   }
+
                    System.out.println("Are you finish updating this recipe? (Y/N)");
                    resumeChoice = input.next().toLowerCase().charAt(0);
                    if(resumeChoice == 'y')
@@ -416,9 +471,100 @@ public class CookBook {
            }
 
         }
+    }
+
+    /**
+     * Applies one change to a recipe and commits it in a transaction of its own.
+     * The version of the recipe is checked on commit, so the change is only saved if the recipe
+     * has not been changed by anyone else since it was read.
+     * @param recipe the managed recipe to change
+     * @param change the change to apply to it
+     * @return true if the change was saved, false if the recipe had been changed or deleted in the meantime
+     */
+    public boolean commitRecipeChange(Recipe recipe, Consumer<Recipe> change) {
+        EntityTransaction update = this.entityManager.getTransaction();
+        update.begin();
+        change.accept(recipe);
+        try {
+            update.commit();
+            return true;
+        } catch (RollbackException e) {
+            if (e.getCause() instanceof OptimisticLockException) {
+                return false;
+            }
+            throw e;
+        }
+    }
 
+    /**
+     * Reads the current state of a recipe from the database, e.g. after a change to it was rejected
+     * @param recipeId the id of the recipe
+     * @return the managed recipe, or null if it does not exist anymore
+     */
+    public Recipe reloadRecipe(long recipeId) {
+        this.entityManager.clear();
+        Recipe recipe = this.entityManager.find(Recipe.class, recipeId);
+        if (recipe != null) {
+            this.entityManager.refresh(recipe);
+        }
+        return recipe;
+    }
 
-        update.commit();
+    /**
+     * Lists the rows of a listing a page at a time and lets the user pick one of them.
+     * The rows are numbered on from one page to the next, entering 0 shows the next page.
+     * Only the rows of the page shown are read, so the listing can be longer than what fits into memory.
+     * @param listing the listing to pick from, which must not be empty
+     * @param question the question asked below every page, the numbers that can be entered are added to it
+     * @param line formats a row for the console, without its number
+     * @return the picked row
+     */
+    public <T> T pick(Listing<T> listing, String question, Function<T, String> line) {
+        Page<T> page = listing.page(this.entityManager, null, PAGE_SIZE);
+        int first = 1;
+        while (true) {
+            List<T> rows = page.getRows();
+            if (rows.isEmpty()) {
+                // the rows after the last page shown were deleted in the meantime, the listing starts over
+                System.out.println("There are no more rows, here are the first ones again.");
+                page = listing.page(this.entityManager, null, PAGE_SIZE);
+                first = 1;
+                continue;
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                System.out.println((first + i) + ": " + line.apply(rows.get(i)));
+            }
+            int last = first + rows.size() - 1;
+            System.out.print(question + " [" + first + "-" + last + (page.hasNext() ? ", 0 for more" : "") + "]: ");
+            int choice = input.nextInt();
+            if (choice == 0 && page.hasNext()) {
+                page = listing.page(this.entityManager, page.getNextCursor(), PAGE_SIZE);
+                first = last + 1;
+            } else if (choice >= first && choice <= last) {
+                return rows.get(choice - first);
+            } else {
+                System.out.println("Invalid Input, Try Again!");
+            }
+        }
+    }
+
+    /**
+     * Lets the user pick a row of a listing like pick does and loads the entity of the picked row.
+     * When the entity was deleted since its page was read, the user picks again.
+     * @param listing the listing to pick from, which must not be empty
+     * @param question the question asked below every page
+     * @param line formats a row for the console, without its number
+     * @param load finds the entity of a row, or null if it does not exist anymore
+     * @return the entity of the picked row, managed by the entity manager of the command
+     */
+    public <T, E> E pickEntity(Listing<T> listing, String question, Function<T, String> line, Function<T, E> load) {
+        while (true) {
+            E entity = load.apply(pick(listing, question, line));
+            if (entity != null) {
+                return entity;
+            }
+            System.out.println("That one has just been deleted, Try Again!");
+        }
     }
 
     /**
@@ -430,29 +576,25 @@ public class CookBook {
      */
     public void entityDeletion(){
         EntityTransaction delete = this.entityManager.getTransaction();
-        int option, deletionOption, deletionIndex, size = 0;
+        int option, deletionIndex = 0;
         char done = 'y';
         Query entityQuery;
-        List<?> queryResult;
         String[] decisions = {"Chef","Cuisine", "Recipe", "Ingredient", "IngredientAmount", "Step", "FoodCritic", "Review"};
+        // the steps are picked from a recipe, so the steps are listed through the recipes
+        Listing<?>[] listings = {Listing.CHEFS, Listing.CUISINES, Listing.RECIPES, Listing.INGREDIENTS, Listing.INGREDIENT_AMOUNTS, Listing.RECIPES, Listing.FOOD_CRITICS, Listing.REVIEWS};
         String decisionName;
 
         while(done != 'n') {
+            // every listing is queried again for this round, so nothing loaded in the previous round is needed anymore
+            this.entityManager.clear();
 
             System.out.println("\nHere are the list of classes in the database:");
             for (int i = 0; i < decisions.length; i++) { System.out.println((i + 1) + ". " + decisions[i]); }
             System.out.print("\nWhich class would you like to delete from? ");
             option = input.nextInt();
             decisionName = decisions[option - 1];
-            if(option == 6){
-                entityQuery = this.entityManager.createQuery("SELECT o FROM " + decisions[option - 4] + " o");
-            } else {
-                entityQuery = this.entityManager.createQuery("SELECT o FROM " + decisionName + " o");
-            }
-            queryResult = entityQuery.getResultList();
-
-            if (queryResult.size() != 0) {
 
+            if (!listings[option - 1].isEmpty(this.entityManager)) {
                 System.out.println("\nYou chose to delete from " + decisionName + " class.\n");
                 System.out.print("Upon removing a " + decisionName + " entity, ");
 
@@ -496,114 +638,79 @@ public class CookBook {
                     System.out.println("\nBelow is a list of " + decisionName + "(s).");
                 }
 
-                List<Chef> chefs = null; List<Cuisine> cuisines = null; List<Recipe> recipes = null; List<Ingredient> ingredients = null; List<IngredientAmount> ingredientAmounts = null; List<Step> steps = null; List<FoodCritic> foodCritics = null; List<Review> reviews = null;
-                Recipe recipeStepDeletion = null; FoodCritic foodCriticReview = null;
+                String question = "\nWhich " + decisionName + " would you like to delete";
+                Object deletion = null;
+                Recipe recipeStepDeletion = null; List<Step> steps = null; FoodCritic foodCriticReview;
 
                 switch (option){
                     case 1:
-                        chefs = entityQuery.getResultList();
-                        size = chefs.size();
-                        for (int i = 0; i < chefs.size(); i++) {
-                            System.out.println((i + 1) + ": " + chefs.get(i).getFirstName() + " " + chefs.get(i).getLastName() + ", email: " + chefs.get(i).getEmail());
-                        }
+                        deletion = pickEntity(Listing.CHEFS, question, c -> c.getFirstName() + " " + c.getLastName() + ", email: " + c.getEmail(),
+                                c -> this.entityManager.find(Chef.class, c.getUserId()));
                         break;
                     case 2:
-                        cuisines = entityQuery.getResultList();
-                        size = cuisines.size();
-                        for (int i = 0; i < cuisines.size(); i++) {
-                            System.out.println((i + 1) + ": " + cuisines.get(i).getName() + ", region: " + cuisines.get(i).getRegion() + ", religion: " + cuisines.get(i).getReligion());
-                        }
+                        deletion = pickEntity(Listing.CUISINES, question, c -> c.getName() + ", region: " + c.getRegion() + ", religion: " + c.getReligion(),
+                                c -> this.entityManager.find(Cuisine.class, c.getCuisineId()));
                         break;
                     case 3:
-                        recipes = entityQuery.getResultList();
-                        size = recipes.size();
-                        for (int i = 0; i < recipes.size(); i++) {
-                            System.out.println((i + 1) + ": " + recipes.get(i).getName() + ", description: " + recipes.get(i).getDescription() + ", number of servings: " + recipes.get(i).getNumberOfServings());
-                        }
+                        deletion = pickEntity(Listing.RECIPES, question, r -> r.getName() + ", description: " + r.getDescription() + ", number of servings: " + r.getNumberOfServings(),
+                                r -> this.entityManager.find(Recipe.class, r.getRecipeId()));
                         break;
                     case 4:
-                        ingredients = entityQuery.getResultList();
-                        size = ingredients.size();
-                        for (int i = 0; i < ingredients.size(); i++) {
-                            System.out.println((i + 1) + ": " + ingredients.get(i).getName() + ", description: " + ingredients.get(i).getDescription() + ", type: " + ingredients.get(i).getType());
-                        }
+                        deletion = pickEntity(Listing.INGREDIENTS, question, i -> i.getName() + ", description: " + i.getDescription() + ", type: " + i.getType(),
+                                i -> this.entityManager.find(Ingredient.class, i.getName()));
                         break;
                     case 5:
-                        ingredientAmounts = entityQuery.getResultList();
-                        size = ingredientAmounts.size();
-                        for (int i = 0; i < ingredientAmounts.size(); i++) {
-                            System.out.println((i + 1) + ": recipe: " + ingredientAmounts.get(i).getRecipe().getName() + ", ingredient: " + ingredientAmounts.get(i).getIngredient().getName() + ", amount: " + ingredientAmounts.get(i).getAmount() + ", units: " + ingredientAmounts.get(i).getUnits());
-                        }
+                        deletion = pickEntity(Listing.INGREDIENT_AMOUNTS, question, a -> "recipe: " + a.getRecipeName() + ", ingredient: " + a.getIngredientName() + ", amount: " + a.getAmount() + ", units: " + a.getUnits(),
+                                a -> this.entityManager.createNamedQuery(QueryCatalog.INGREDIENT_AMOUNT_BY_KEY, IngredientAmount.class)
+                                        .setParameter(QueryCatalog.RECIPE_ID, a.getRecipeId())
+                                        .setParameter(QueryCatalog.NAME, a.getIngredientName())
+                                        .getResultStream().findFirst().orElse(null));
                         break;
                     case 6:
                         System.out.println("\nFrom the Recipes below, which one would you like to remove a Step from?");
-                        List<Recipe> recipeSteps = entityQuery.getResultList();
-                        for (int i = 0; i < recipeSteps.size(); i++) {
-                            System.out.println((i + 1) + ": " + recipeSteps.get(i).getName() + ", description: " + recipeSteps.get(i).getDescription() + ", number of servings: " + recipeSteps.get(i).getNumberOfServings());
-                        }
-                        System.out.print("Enter Here: ");
-                        deletionOption = input.nextInt();
-                        recipeStepDeletion = recipeSteps.get(deletionOption-1);
+                        recipeStepDeletion = pickEntity(Listing.RECIPES, "Enter Here", r -> r.getName() + ", description: " + r.getDescription() + ", number of servings: " + r.getNumberOfServings(),
+                                r -> this.entityManager.find(Recipe.class, r.getRecipeId()));
                         System.out.println("\nBelow is a list of " + decisionName + "(s) from recipe " + recipeStepDeletion.getName() + ".");
                         steps = recipeStepDeletion.getStepList();
-                        size = steps.size();
                         for (Step s: steps) {
                             System.out.println(s.getOrderNumber() + ":  description: " + s.getDescription() + ", time: " + s.getTime());
                         }
+                        System.out.print(question + " [1-" + steps.size() + "]: ");
+                        deletionIndex = input.nextInt() - 1;
                         break;
                     case 7:
-                        foodCritics = entityQuery.getResultList();
-                        size = foodCritics.size();
-                        for (int i = 0; i < foodCritics.size(); i++) {
-                            System.out.println((i + 1) + ": " + foodCritics.get(i).getFirstName() + " " + foodCritics.get(i).getLastName() + ", email: " + foodCritics.get(i).getEmail());
-                        }
+                        deletion = pickEntity(Listing.FOOD_CRITICS, question, f -> f.getFirstName() + " " + f.getLastName() + ", email: " + f.getEmail(),
+                                f -> this.entityManager.find(FoodCritic.class, f.getUserId()));
                         break;
                     case 8:
-                        reviews = entityQuery.getResultList();
-                        size = reviews.size();
-                        for (int i = 0; i < reviews.size(); i++) {
-                            System.out.println((i + 1) + ": food critic: " + reviews.get(i).getFoodCritic().getFirstName() + " " + reviews.get(i).getFoodCritic().getLastName() + ", recipe: " + reviews.get(i).getRecipe().getName() + ", description: " + reviews.get(i).getDescription() + ", rating: " + reviews.get(i).getRating());
-                        }
+                        deletion = pickEntity(Listing.REVIEWS, question, r -> "food critic: " + r.getFoodCriticFirstName() + " " + r.getFoodCriticLastName() + ", recipe: " + r.getRecipeName() + ", description: " + r.getDescription() + ", rating: " + r.getRating(),
+                                r -> this.entityManager.find(Review.class, r.getReviewId()));
                         break;
                 }
 
-                System.out.print("\nWhich " + decisionName + " would you like to delete [1-" + size + "]: ");
-                deletionOption = input.nextInt();
-                deletionIndex = deletionOption-1;
-
                 delete.begin();
                 switch (option){
-                    case 1:
-                        this.entityManager.remove(chefs.get(deletionIndex));
-                        break;
                     case 2:
-                        entityQuery = this.entityManager.createQuery("UPDATE Recipe SET cuisine = NULL WHERE cuisine.cuisineId = " + cuisines.get(deletionIndex).getCuisineId());
+                        entityQuery = this.entityManager.createNamedQuery(QueryCatalog.RECIPE_CLEAR_CUISINE)
+                                .setParameter(QueryCatalog.CUISINE_ID, ((Cuisine) deletion).getCuisineId());
                         entityQuery.executeUpdate();
-                        this.entityManager.remove(cuisines.get(deletionIndex));
-                        break;
-                    case 3:
-                        this.entityManager.remove(recipes.get(deletionIndex));
-                        break;
-                    case 4:
-                        this.entityManager.remove(ingredients.get(deletionIndex));
-                        break;
-                    case 5:
-                        this.entityManager.remove(ingredientAmounts.get(deletionIndex));
+                        this.entityManager.remove(deletion);
                         break;
                     case 6:
                         recipeStepDeletion.removeStep(steps.get(deletionIndex));
                         steps = recipeStepDeletion.getStepList();
                         for(int i = 0; i < steps.size(); i++) { steps.get(i).setOrderNumber(i+1); }
                         break;
-                    case 7:
-                        this.entityManager.remove(foodCritics.get(deletionIndex));
-                        break;
                     case 8:
-                        entityQuery = this.entityManager.createQuery("SELECT f FROM FoodCritic f WHERE f.userID = " + reviews.get(deletionIndex).getFoodCritic().getUserID());
+                        Review review = (Review) deletion;
+                        entityQuery = this.entityManager.createNamedQuery(QueryCatalog.FOOD_CRITIC_BY_ID)
+                                .setParameter(QueryCatalog.USER_ID, review.getFoodCritic().getUserID());
                         foodCriticReview = (FoodCritic)entityQuery.getSingleResult();
-                        foodCriticReview.removeReview(reviews.get(deletionIndex));
-                        this.entityManager.remove(reviews.get(deletionIndex));
+                        foodCriticReview.removeReview(review);
+                        this.entityManager.remove(review);
                         break;
+                    default:
+                        this.entityManager.remove(deletion);
                 }
                 delete.commit();
 
@@ -621,8 +728,9 @@ public class CookBook {
 
     /**
      * This Function Provide 6 different queries for the user to choose 3 from the list
-     * The queries will execute upon getting all three choice from the user
-     * The resulting output for the three queries will be listed and numbered of results
+     * The queries will execute upon getting all three choice from the user, at the same time on their own entity managers
+     * The resulting output for the three queries will be listed and numbered of results, in the order they were chosen,
+     * each with the time it took
      */
     public void queryExecution(){
         ArrayList<String> executionOptions = new ArrayList<String>(Arrays.asList("Find the chef with the most numbers of review","Find the name of the chef that use the least amount of ingredients","find the ingredient of a specific type that have never been used in a recipe","Show recipes, their average rating greater than overall average rating of all recipes, and a chef who created the recipe","show foodcritics and their reviews and recipes of these reviews","Let the user pick a chef and then the console displays the recipes that the chef made, finally the user picks a recipe and the steps are displayed for them"));
@@ -637,90 +745,30 @@ public class CookBook {
             resultOptions.add(originalOption.get(user_input-1));
             originalOption.remove(user_input-1);
         }
-        for (int i = 0; i < 3; i++){
-            int queryChoice = resultOptions.get(i);
-            switch(queryChoice){
-                case 1:
-                    System.out.println("\nThe result of the chef with the most numbers of review");
-                    Query chefQuery = this.entityManager.createNativeQuery("SELECT U.FIRST_NAME AS CHEF_FIRST_NAME, U.LAST_NAME AS CHEF_LAST_NAME, U.EMAIL AS CHEF_EMAIL, COUNT(*) AS NUMBER_OF_REVIEWS FROM USER_TABLE U INNER JOIN CHEF C on U.USER_ID = C.CHEF_ID INNER JOIN RECIPE R on C.CHEF_ID = R.CHEF_ID INNER JOIN REVIEW R2 on R.RECIPE_ID = R2.RECIPE_ID GROUP BY U.FIRST_NAME, U.LAST_NAME, U.EMAIL HAVING COUNT(*) >= ALL(SELECT COUNT(*) FROM USER_TABLE INNER JOIN CHEF on USER_TABLE.USER_ID = CHEF.CHEF_ID INNER JOIN RECIPE on CHEF.CHEF_ID = RECIPE.CHEF_ID INNER JOIN REVIEW on RECIPE.RECIPE_ID = REVIEW.RECIPE_ID GROUP BY USER_TABLE.USER_ID)");
-
-                    List<Object[]> chefs = chefQuery.getResultList();
-                    for(int i2 = 0; i2 < chefs.size(); i2++) {
-                        System.out.println((i2 + 1) + ": " + "Chef's First Name: " + chefs.get(i2)[0] + " Chef's Last Name: " + chefs.get(i2)[1] + " Chef's Email: " + chefs.get(i2)[2] + " Number of Reviews: " + chefs.get(i2)[3]);
-                    }
-
-                    break;
-                case 2:
-                    System.out.println("\nThe result of the chef that use the least amount of ingredients");
-                    Query singleChef = this.entityManager.createNativeQuery("SELECT U.FIRST_NAME AS CHEF_FIRST_NAME, U.LAST_NAME AS CHEF_LAST_NAME, U.USER_ID AS CHEF_ID, U.EMAIL AS CHEF_EMAIL, COUNT(I.INGREDIENT_NAME) as NUMBER_OF_INGREDIENT FROM CHEF C LEFT OUTER JOIN RECIPE R on C.CHEF_ID = R.CHEF_ID LEFT OUTER JOIN INGREDIENTAMOUNT I on R.RECIPE_ID = I.RECIPE_ID LEFT OUTER JOIN INGREDIENT I2 on I.INGREDIENT_NAME = I2.NAME LEFT OUTER JOIN USER_TABLE U on C.CHEF_ID = U.USER_ID WHERE C.CHEF_ID IN ( SELECT CHEF_ID FROM (SELECT C2.CHEF_ID, COUNT(I.INGREDIENT_NAME) as \"# ingredient\" FROM CHEF C2 LEFT OUTER JOIN RECIPE R on C2.CHEF_ID = R.CHEF_ID LEFT OUTER JOIN INGREDIENTAMOUNT I on R.RECIPE_ID = I.RECIPE_ID LEFT OUTER JOIN INGREDIENT I2 on I.INGREDIENT_NAME = I2.NAME GROUP BY C2.CHEF_ID) ingrCount WHERE \"# ingredient\" = (SELECT MIN(\"# ingredient\") FROM (SELECT COUNT(I.INGREDIENT_NAME) as \"# ingredient\" FROM CHEF C2 LEFT OUTER JOIN RECIPE R on C2.CHEF_ID = R.CHEF_ID LEFT OUTER JOIN INGREDIENTAMOUNT I on R.RECIPE_ID = I.RECIPE_ID LEFT OUTER JOIN INGREDIENT I2 on I.INGREDIENT_NAME = I2.NAME GROUP BY C2.CHEF_ID) as ingrCount2)) GROUP BY C.CHEF_ID, U.FIRST_NAME, U.LAST_NAME, U.USER_ID, U.EMAIL");
-                    List<Object[]> chef = singleChef.getResultList();
-                    for(int i2 = 0; i2 < chef.size(); i2++) {
-                        System.out.println((i2 + 1) + ": " + "Chef's First Name: " + chef.get(i2)[0] + " Chef's Last Name: " + chef.get(i2)[1] + " Chef's ID: " + chef.get(i2)[2] + " Chef's Email: " + chef.get(i2)[3] + " Number of Ingredient: " + chef.get(i2)[4]);
-                    }
-                    break;
-                case 3:
-                    System.out.println("\nThe ingredients that have never been used in a recipe");
-                    Query ingredientQuery =  this.entityManager.createNativeQuery("SELECT i1.NAME AS INGREDIENT_NAME, i1.TYPE AS INGREDIENT_TYPE\n" +
-                            "FROM INGREDIENT i1\n" +
-                            "EXCEPT\n" +
-                            "SELECT i2.NAME, i2.TYPE\n" +
-                            "FROM INGREDIENT i2 INNER JOIN INGREDIENTAMOUNT ON i2.NAME = INGREDIENT_NAME\n" +
-                            "                   INNER JOIN RECIPE USING(RECIPE_ID)\n");
-                    List<Object[]> ingredients = ingredientQuery.getResultList();
-                    for(int i2 = 0; i2 < ingredients.size(); i2++) {
-                        System.out.println((i2 + 1) + ": " + "Ingredient Name: " + ingredients.get(i2)[0] + ", Ingredient Type: " + ingredients.get(i2)[1]);
-                    }
-                    break;
-                case 4:
-                    System.out.println("\nResult of average rating of recipe greater than overall average rating of all recipes, and a chef who created the recipe");
-                    Query recipeAverageQuery =  this.entityManager.createNativeQuery("SELECT recipe.NAME as recipe, AVG(r1.rating) AS average_rating, user_table.FIRST_NAME AS chef_first_name, user_table.LAST_NAME AS chef_last_name\n" +
-                            "FROM recipe INNER JOIN review r1 ON recipe.RECIPE_ID = r1.RECIPE_ID\n" +
-                            "            INNER JOIN chef on recipe.CHEF_ID = chef.CHEF_ID\n" +
-                            "            INNER JOIN user_table on chef.CHEF_ID = user_table.USER_ID\n" +
-                            "GROUP BY recipe.NAME, USER_TABLE.FIRST_NAME, user_table.LAST_NAME\n" +
-                            "HAVING AVG(rating) > (SELECT AVG(rating) FROM review)");
-                    List<Object[]> recipes = recipeAverageQuery.getResultList();
-                    for(int i2 = 0; i2 < recipes.size(); i2++) {
-                        System.out.println((i2 + 1) + ": " + "Recipe: " + recipes.get(i2)[0] + ", Average Rating: " + recipes.get(i2)[1] + ", Chef First Name: " + recipes.get(i2)[2] + ", Chef Last Name: " + recipes.get(i2)[3]);
-                    }
-                    break;
-                case 5:
-                    System.out.println("\nResult of food critics and their reviews and recipes of these reviews");
-                    Query foodCriticsQuery =  this.entityManager.createNativeQuery("SELECT user_table.USER_ID AS id, user_table.FIRST_NAME AS food_critic_first_name, user_table.LAST_NAME AS food_critic_last_name, review.DESCRIPTION AS review, recipe.NAME AS recipe\n" +
-                            "FROM USER_TABLE\n" +
-                            "         INNER JOIN foodcritic ON USER_TABLE.USER_ID = FOODCRITIC.CRITIC_ID\n" +
-                            "         LEFT OUTER JOIN review ON FOODCRITIC.CRITIC_ID = review.CRITIC_ID\n" +
-                            "         LEFT OUTER JOIN recipe ON RECIPE.RECIPE_ID = review.RECIPE_ID");
-                    List<Object[]> foodCritics = foodCriticsQuery.getResultList();
-                    for(int i2 = 0; i2 < foodCritics.size(); i2++) {
-                        System.out.println((i2 + 1) + ": " + "Id: " + foodCritics.get(i2)[0] + ", Food Critic First Name: " + foodCritics.get(i2)[1] + ", Food Critic Last Name: " + foodCritics.get(i2)[2] + ", Review: " + foodCritics.get(i2)[3] + ", Recip: " + foodCritics.get(i2)[4]);
-                    }
-                    break;
-                case 6:
-
-                    Query recipeQuery = this.entityManager.createQuery("SELECT r FROM Recipe r");
-                    List<Recipe> recipeList = recipeQuery.getResultList();
-
-                    for(int i2 = 0; i2 < recipeList.size(); i2++) {
-                        System.out.println((i2 + 1) + ": " + recipeList.get(i2).getName());
-                    }
-                    System.out.print("\nSelect the Recipe you would like to make changes to [1-"+recipeList.size()+"]: ");
-                    int recipeIndex2 = input.nextInt();
-
-                    System.out.println("\nResult of food critics and their reviews and recipes of these reviews");
-                    Query stepsQuery =  this.entityManager.createNativeQuery("SELECT s.ORDER_NUMBER AS STEP_NUMBER, s.DESCRIPTION AS STEP_DESCRIPTION, s.TIME STEP_TIME\n" +
-                            "FROM CHEF INNER JOIN RECIPE R on CHEF.CHEF_ID = R.CHEF_ID\n" +
-                            "          INNER JOIN RECIPE_STEP S on R.RECIPE_ID = S.RECIPE_ID\n" +
-                            "WHERE R.RECIPE_ID = " + recipeIndex2);
-                    List<Object[]> steps = stepsQuery.getResultList();
-
-                    for(int i2 = 0; i2 < steps.size(); i2++) {
-                        System.out.println((i2 + 1) + ": " + "Step Number: " + steps.get(i2)[0] + " Step Description: " + steps.get(i2)[1] + " Step Time: " + steps.get(i2)[2]);
-                    }
-
-                    break;
+        // the recipe of the steps report is picked before the reports start, they run without the user
+        List<ReportRunner.Report> reports = new ArrayList<>();
+        for (int queryChoice : resultOptions) {
+            if (queryChoice == 6) {
+                RecipeView stepsRecipe = pick(Listing.RECIPE_NAMES, "\nSelect the Recipe you would like to see the steps of", RecipeView::getName);
+                reports.add(new ReportRunner.Report(REPORT_QUERIES[queryChoice - 1], stepsRecipe.getRecipeId()));
+            } else if (queryChoice == 1) {
+                reports.add(new ReportRunner.Report(ChefLeaderboard.of(factory)::report));
+            } else {
+                reports.add(new ReportRunner.Report(REPORT_QUERIES[queryChoice - 1]));
             }
         }
+        double[] sequentialMillis = {0};
+        long nanos = ReportRunner.of(factory).run(factory, reports, result -> {
+            int queryChoice = resultOptions.get(result.getIndex());
+            System.out.println(REPORT_HEADERS[queryChoice - 1]);
+            List<Object[]> rows = result.getRows();
+            for (int i2 = 0; i2 < rows.size(); i2++) {
+                System.out.println((i2 + 1) + ": " + REPORT_LINES.get(queryChoice - 1).apply(rows.get(i2)));
+            }
+            System.out.printf("(%d rows in %.1f ms)%n", rows.size(), result.getMillis());
+            sequentialMillis[0] += result.getMillis();
+        });
+        LOGGER.info(String.format("Ran %d reports in %.1f ms, %.1f ms one after another", reports.size(), nanos / 1e6, sequentialMillis[0]));
     }
 
 }
@@ -0,0 +1,66 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.sequencing.Sequence;
+import org.eclipse.persistence.sessions.DatasourceLogin;
+import org.eclipse.persistence.sessions.Session;
+
+/**
+ * CookBookCustomizer is the EclipseLink session customizer of the CookBook persistence unit,
+ * enabled in persistence.xml through the eclipselink.session.customizer property. In this order it installs:
+ * <ul>
+ * <li>the connection pool, see ConnectionPoolCustomizer</li>
+ * <li>the id preallocation size of every id generator, see ID_ALLOCATION_SIZE</li>
+ * <li>the JPQL parse cache that counts its hits, see JpqlParseCache</li>
+ * <li>the shared cache of the reference entities, see ReferenceCache</li>
+ * <li>the ReportCache and the ReportRunner</li>
+ * <li>the RecipeSearchIndex, the ChefLeaderboard and the IngredientDictionary</li>
+ * <li>the listener of Upserts</li>
+ * <li>the inverse collections of the shared cache, see InverseCollections</li>
+ * <li>the rating aggregates of the recipes, see RatingAggregates</li>
+ * <li>the ingredient usage of the chefs and the recipe counts of the ingredients, see IngredientUsage</li>
+ * <li>the review counts of the food critics, see Counters</li>
+ * </ul>
+ */
+public class CookBookCustomizer implements SessionCustomizer {
+
+    /**
+     * Number of ids reserved from the id_generator table in one round trip, overrides the allocationSize of the entities
+     */
+    public static final String ID_ALLOCATION_SIZE = "cookbook.id.allocation-size";
+
+    /**
+     * Number of parsed JPQL strings EclipseLink keeps, see JpqlParseCache
+     */
+    public static final String JPQL_PARSE_CACHE_SIZE = "cookbook.jpql.parse-cache-size";
+
+    @Override
+    public void customize(Session session) throws Exception {
+        new ConnectionPoolCustomizer().customize(session);
+
+        Object allocationSize = session.getProperty(ID_ALLOCATION_SIZE);
+        if (allocationSize != null) {
+            int size = Integer.parseInt(allocationSize.toString().trim());
+            for (Object sequence : ((DatasourceLogin) session.getDatasourceLogin()).getSequences().values()) {
+                ((Sequence) sequence).setPreallocationSize(size);
+            }
+        }
+
+        Object parseCacheSize = session.getProperty(JPQL_PARSE_CACHE_SIZE);
+        JpqlParseCache.install(session, parseCacheSize == null
+                ? session.getProject().getJPQLParseCacheMaxSize()
+                : Integer.parseInt(parseCacheSize.toString().trim()));
+
+        ReferenceCache.install(session);
+        ReportCache.install(session);
+        ReportRunner.install(session);
+        RecipeSearchIndex.install(session);
+        ChefLeaderboard.install(session);
+        IngredientDictionary.install(session);
+        Upserts.install(session);
+        InverseCollections.install(session);
+        RatingAggregates.install(session);
+        IngredientUsage.install(session);
+        Counters.install(session);
+    }
+}
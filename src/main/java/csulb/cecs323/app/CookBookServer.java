@@ -0,0 +1,731 @@
+package csulb.cecs323.app;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import csulb.cecs323.model.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
+import javax.persistence.RollbackException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * CookBookServer offers the operations of the CookBook menu as an HTTP service that exchanges JSON,
+ * so many clients can work with the cookbook at the same time.
+ * Every request is handled on a thread of a fixed pool with an entity manager of its own from the shared factory,
+ * which is closed again when the response has been sent.
+ * <pre>
+ * GET    /reports/{1-6}                  the reports of queryExecution, report 6 needs ?recipeId=
+ * GET    /reports?run=1,4,6              several reports at the same time as [{report, millis, rows}] in the order asked for
+ * GET    /recipes?search=[&limit=20]     the best matches of the recipe search index for the search words
+ * GET    /ingredients?unused[&type=]     the ingredients no recipe uses, of every type or of one
+ * GET    /recipes, /chefs, /cuisines, /ingredients, /ingredientamounts, /foodcritics, /reviews [?after=&limit=20]
+ *                                        a page of the entities in the order of their key as {items, next},
+ *                                        each item holding only the columns of the listing,
+ *                                        next is the after of the following page, null on the last page
+ * POST   /recipes                        creates a recipe like addRecipe
+ * POST   /cuisines                       creates a cuisine unless one with the same name and region exists, returns its id
+ * GET    /recipes/{id}                   a recipe with its steps and ingredients
+ * PATCH  /recipes/{id}                   changes description, prepTime, cookTime or difficultyRating like changeRecipe,
+ *                                        an optional version makes the change fail with 409 if the recipe was changed since
+ * DELETE /chefs/{id}, /cuisines/{id}, /recipes/{id}, /ingredients/{name}, /foodcritics/{id}, /reviews/{id},
+ *        /recipes/{id}/steps/{order}, /recipes/{id}/ingredients/{name}   removes an entity like entityDeletion
+ * DELETE /ingredients?unused[&type=]     removes the ingredients no recipe uses as {removed}
+ * GET    /metrics                        connection pool, query caches, reference caches and latency per route
+ * </pre>
+ * Usage: CookBookServer [port] [threads], with TCP_NODELAY on unless -Dsun.net.httpserver.nodelay=false is given
+ */
+public class CookBookServer {
+
+    private static final Logger LOGGER = Logger.getLogger(CookBookServer.class.getName());
+
+    /**
+     * The query of every report of queryExecution followed by the names of its columns,
+     * the first report has no query, it is read off the ChefLeaderboard
+     */
+    private static final String[][] REPORTS = {
+            {null, "firstName", "lastName", "email", "numberOfReviews"},
+            {QueryCatalog.REPORT_CHEF_WITH_FEWEST_INGREDIENTS, "firstName", "lastName", "chefId", "email", "numberOfIngredients"},
+            {QueryCatalog.REPORT_UNUSED_INGREDIENTS, "name", "type"},
+            {QueryCatalog.REPORT_RECIPES_ABOVE_AVERAGE_RATING, "recipe", "averageRating", "chefFirstName", "chefLastName"},
+            {QueryCatalog.REPORT_FOOD_CRITIC_REVIEWS, "id", "firstName", "lastName", "review", "recipe"},
+            {QueryCatalog.REPORT_RECIPE_STEPS, "stepNumber", "description", "time"}
+    };
+
+    private static final Set<String> RESOURCES = Set.of("reports", "recipes", "chefs", "cuisines", "ingredients", "ingredientamounts",
+            "foodcritics", "reviews", "metrics");
+
+    /**
+     * The most rows a page of a listing can have
+     */
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * System property that turns on TCP_NODELAY for every HttpServer of the JVM, it is read when the first one is created.
+     * The JDK server writes headers and body separately, without it every small response waits for a delayed ack.
+     * main sets it unless it is given, a program that embeds CookBookServer sets it at launch: -Dsun.net.httpserver.nodelay=true
+     */
+    public static final String NODELAY = "sun.net.httpserver.nodelay";
+
+    private final EntityManagerFactory factory;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, LatencyRecorder> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor for a server on the given port, it does not accept requests before start is called
+     * @param factory the factory every request obtains its entity manager from
+     * @param port the port to listen on, 0 for any free port
+     * @param threads the number of requests that are handled at the same time
+     * @throws IOException if the port cannot be bound
+     */
+    public CookBookServer(EntityManagerFactory factory, int port, int threads) throws IOException {
+        this.factory = factory;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        if (System.getProperty(NODELAY) == null) {
+            System.setProperty(NODELAY, "true");
+        }
+        SchemaMigrator.Mode mode = SchemaMigrator.Mode.fromSystemProperty();
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook", mode.persistenceProperties());
+        factory.createEntityManager().close();
+        new SchemaMigrator(factory).run(mode);
+
+        CookBookServer server = new CookBookServer(factory, port, threads);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            factory.close();
+        }));
+        LOGGER.info("CookBook service listening on port " + server.getPort() + " with " + threads + " threads");
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to a second for the running ones to finish
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Obtains the port the server listens on
+     * @return the port, also when the server was created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles one request with an entity manager of its own.
+     * A transaction the request left open, e.g. because it failed, is rolled back before the entity manager is closed.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/+");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String route = method + " " + routeOf(path);
+        int status = 200;
+        Object response;
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            response = route(method, path, query, exchange, entityManager);
+            if (response == null) {
+                status = 204;
+            } else if (method.equals("POST")) {
+                status = 201;
+            }
+        } catch (HttpError e) {
+            status = e.status;
+            response = error(e.getMessage());
+        } catch (RollbackException e) {
+            if (!(e.getCause() instanceof OptimisticLockException)) {
+                LOGGER.log(Level.WARNING, "Request " + route + " failed", e);
+            }
+            status = 409;
+            response = error(e.getCause() instanceof OptimisticLockException
+                    ? "Someone else changed this entity in the meantime" : "The change conflicts with the data in the database");
+        } catch (OptimisticLockException e) {
+            status = 409;
+            response = error("Someone else changed this entity in the meantime");
+        } catch (IOException | IllegalArgumentException | ClassCastException e) {
+            status = 400;
+            response = error(e.getMessage());
+        } catch (PersistenceException e) {
+            LOGGER.log(Level.WARNING, "Request " + route + " failed", e);
+            status = 409;
+            response = error("The change conflicts with the data in the database");
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.SEVERE, "Request " + route + " failed", e);
+            status = 500;
+            response = error("Internal error");
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+        }
+        send(exchange, status, response);
+        latencies.computeIfAbsent(route, r -> new LatencyRecorder(10_000)).record(System.nanoTime() - start);
+    }
+
+    private Object route(String method, String[] path, Map<String, String> query, HttpExchange exchange, EntityManager entityManager) throws IOException {
+        String resource = path[0];
+        if (method.equals("GET")) {
+            if (resource.equals("metrics") && path.length == 1) {
+                return metrics();
+            }
+            if (resource.equals("reports") && path.length == 2) {
+                return report(entityManager, (int) longId(path[1]), query.get("recipeId"));
+            }
+            if (resource.equals("reports") && path.length == 1 && query.containsKey("run")) {
+                return reports(query.get("run"), query.get("recipeId"));
+            }
+            if (resource.equals("recipes") && path.length == 1 && query.containsKey("search")) {
+                return searchRecipes(entityManager, query.getOrDefault("search", ""), (int) longId(query.getOrDefault("limit", "20")));
+            }
+            if (resource.equals("ingredients") && path.length == 1 && query.containsKey("unused")) {
+                return unusedIngredients(entityManager, query.get("type"));
+            }
+            if (resource.equals("recipes") && path.length == 2) {
+                return recipeToJson(findRecipe(entityManager, path[1]));
+            }
+            if (path.length == 1) {
+                return page(entityManager, resource, query.get("after"), (int) longId(query.getOrDefault("limit", "20")));
+            }
+        } else if (method.equals("POST") && resource.equals("recipes") && path.length == 1) {
+            return createRecipe(entityManager, Json.parseObject(readBody(exchange)));
+        } else if (method.equals("POST") && resource.equals("cuisines") && path.length == 1) {
+            return createCuisine(entityManager, Json.parseObject(readBody(exchange)));
+        } else if (method.equals("PATCH") && resource.equals("recipes") && path.length == 2) {
+            return changeRecipe(entityManager, path[1], Json.parseObject(readBody(exchange)));
+        } else if (method.equals("DELETE")) {
+            if (resource.equals("recipes") && path.length == 4 && path[2].equals("steps")) {
+                deleteStep(entityManager, path[1], (int) longId(path[3]));
+                return null;
+            }
+            if (resource.equals("recipes") && path.length == 4 && path[2].equals("ingredients")) {
+                deleteIngredientAmount(entityManager, path[1], path[3]);
+                return null;
+            }
+            if (resource.equals("ingredients") && path.length == 1 && query.containsKey("unused")) {
+                return removeUnusedIngredients(entityManager, query.get("type"));
+            }
+            if (path.length == 2) {
+                deleteEntity(entityManager, resource, path[1]);
+                return null;
+            }
+        }
+        throw new HttpError(404, "No route for " + method + " /" + String.join("/", path));
+    }
+
+    /**
+     * Runs one of the six reports of queryExecution
+     */
+    private List<Map<String, Object>> report(EntityManager entityManager, int number, String recipeId) {
+        ReportRunner.Report report = reportOf(number, recipeId);
+        return rowsToJson(REPORTS[number - 1], ReportRunner.rowsOf(factory, entityManager, report));
+    }
+
+    /**
+     * Runs several of the reports of queryExecution at the same time, each on an entity manager of its own
+     */
+    private List<Map<String, Object>> reports(String numbers, String recipeId) {
+        List<Integer> chosen = new ArrayList<>();
+        List<ReportRunner.Report> reports = new ArrayList<>();
+        for (String number : numbers.split(",")) {
+            chosen.add((int) longId(number.trim()));
+            reports.add(reportOf(chosen.get(chosen.size() - 1), recipeId));
+        }
+        List<Map<String, Object>> results = new ArrayList<>();
+        ReportRunner.of(factory).run(factory, reports, result -> {
+            int number = chosen.get(result.getIndex());
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("report", number);
+            json.put("millis", Math.round(result.getMillis() * 10) / 10.0);
+            json.put("rows", rowsToJson(REPORTS[number - 1], result.getRows()));
+            results.add(json);
+        });
+        return results;
+    }
+
+    private ReportRunner.Report reportOf(int number, String recipeId) {
+        if (number < 1 || number > REPORTS.length) {
+            throw new HttpError(404, "There are reports 1 to " + REPORTS.length);
+        }
+        String name = REPORTS[number - 1][0];
+        if (name == null) {
+            return new ReportRunner.Report(ChefLeaderboard.of(factory)::report);
+        }
+        if (name.equals(QueryCatalog.REPORT_RECIPE_STEPS)) {
+            if (recipeId == null) {
+                throw new HttpError(400, "The recipe steps report needs a recipeId");
+            }
+            return new ReportRunner.Report(name, longId(recipeId));
+        }
+        return new ReportRunner.Report(name);
+    }
+
+    private static List<Map<String, Object>> rowsToJson(String[] report, List<Object[]> reportRows) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Object[] columns : reportRows) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < columns.length; i++) {
+                row.put(report[i + 1], columns[i]);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Reads a page of one of the listings, the cursor of the next page is handed out as next
+     */
+    private Map<String, Object> page(EntityManager entityManager, String resource, String after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new HttpError(400, "The limit of a page is 1 to " + MAX_PAGE_SIZE);
+        }
+        try {
+            switch (resource) {
+                case "recipes":
+                    return pageToJson(Listing.RECIPES.page(entityManager, after, limit), recipe -> row(
+                            "recipeId", recipe.getRecipeId(), "name", recipe.getName(), "version", recipe.getVersion()));
+                case "chefs":
+                    return pageToJson(Listing.CHEFS.page(entityManager, after, limit), chef -> row(
+                            "chefId", chef.getUserId(), "firstName", chef.getFirstName(), "lastName", chef.getLastName(), "email", chef.getEmail()));
+                case "cuisines":
+                    return pageToJson(Listing.CUISINES.page(entityManager, after, limit), cuisine -> row(
+                            "cuisineId", cuisine.getCuisineId(), "name", cuisine.getName(), "region", cuisine.getRegion(), "religion", cuisine.getReligion()));
+                case "ingredients":
+                    return pageToJson(Listing.INGREDIENTS.page(entityManager, after, limit), ingredient -> row(
+                            "name", ingredient.getName(), "type", ingredient.getType(), "description", ingredient.getDescription()));
+                case "ingredientamounts":
+                    return pageToJson(Listing.INGREDIENT_AMOUNTS.page(entityManager, after, limit), amount -> row(
+                            "recipeId", amount.getRecipeId(), "recipe", amount.getRecipeName(),
+                            "ingredient", amount.getIngredientName(), "amount", amount.getAmount(), "units", amount.getUnits()));
+                case "foodcritics":
+                    return pageToJson(Listing.FOOD_CRITICS.page(entityManager, after, limit), critic -> row(
+                            "id", critic.getUserId(), "firstName", critic.getFirstName(), "lastName", critic.getLastName(), "email", critic.getEmail()));
+                case "reviews":
+                    return pageToJson(Listing.REVIEWS.page(entityManager, after, limit), review -> row(
+                            "reviewId", review.getReviewId(), "foodCriticId", review.getFoodCriticId(),
+                            "recipeId", review.getRecipeId(), "recipe", review.getRecipeName(),
+                            "rating", review.getRating(), "description", review.getDescription()));
+                default:
+                    throw new HttpError(404, "No route for GET /" + resource);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new HttpError(400, e.getMessage());
+        }
+    }
+
+    private static <T> Map<String, Object> pageToJson(Page<T> page, Function<T, Map<String, Object>> toJson) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (T row : page.getRows()) {
+            items.add(toJson.apply(row));
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("items", items);
+        json.put("next", page.getNextCursor());
+        return json;
+    }
+
+    /**
+     * Builds a JSON object from alternating keys and values
+     */
+    private static Map<String, Object> row(Object... keysAndValues) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            row.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    private List<Map<String, Object>> searchRecipes(EntityManager entityManager, String search, int limit) {
+        List<Recipe> recipes = RecipeSearchIndex.of(factory).findRecipes(entityManager, search, limit);
+        List<Map<String, Object>> found = new ArrayList<>();
+        for (Recipe recipe : recipes) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("recipeId", recipe.getRecipeId());
+            summary.put("name", recipe.getName());
+            summary.put("version", recipe.getVersion());
+            found.add(summary);
+        }
+        return found;
+    }
+
+    /**
+     * Creates a recipe through NewRecipe, the same way addRecipe does, in a single transaction.
+     * It is rejected if one of its ingredients has been deleted in the meantime.
+     */
+    private Map<String, Object> createRecipe(EntityManager entityManager, Map<String, Object> body) {
+        Recipe recipe = new Recipe(string(body, "name"), string(body, "description"), integer(body, "prepTime"),
+                integer(body, "cookTime"), integer(body, "difficultyRating"), integer(body, "numberOfServings"));
+        Cuisine cuisine = entityManager.find(Cuisine.class, longValue(body, "cuisineId"));
+        Chef chef = entityManager.find(Chef.class, longValue(body, "chefId"));
+        if (cuisine == null || chef == null) {
+            throw new HttpError(400, cuisine == null ? "Unknown cuisineId" : "Unknown chefId");
+        }
+
+        NewRecipe creation = new NewRecipe(recipe, IngredientDictionary.of(factory));
+        for (Map<String, Object> item : objects(body, "ingredients")) {
+            String name = string(item, "name");
+            if (creation.isNewIngredient(entityManager, name)) {
+                creation.addIngredient(new Ingredient(name, string(item, "type"), string(item, "description")));
+            }
+            creation.addAmount(name, string(item, "units"), number(item, "amount").floatValue());
+        }
+        int stepNumber = 1;
+        for (Map<String, Object> item : objects(body, "steps")) {
+            recipe.addStep(new Step(stepNumber++, string(item, "description"), integer(item, "time")));
+        }
+
+        entityManager.getTransaction().begin();
+        List<String> deleted = creation.create(entityManager, chef, cuisine);
+        if (!deleted.isEmpty()) {
+            throw new HttpError(409, "The ingredient " + deleted.get(0) + " has been deleted in the meantime");
+        }
+        entityManager.getTransaction().commit();
+        return recipeToJson(recipe);
+    }
+
+    /**
+     * Creates a cuisine unless one with the same name and region exists, either way its id is returned
+     */
+    private Map<String, Object> createCuisine(EntityManager entityManager, Map<String, Object> body) {
+        entityManager.getTransaction().begin();
+        long cuisineId = Upserts.cuisine(entityManager, string(body, "name"), string(body, "region"), string(body, "religion"));
+        entityManager.getTransaction().commit();
+        Map<String, Object> created = new LinkedHashMap<>();
+        created.put("cuisineId", cuisineId);
+        return created;
+    }
+
+    /**
+     * Changes the attributes changeRecipe offers in a transaction of its own, checked by the version of the recipe
+     */
+    private Map<String, Object> changeRecipe(EntityManager entityManager, String id, Map<String, Object> body) {
+        Recipe recipe = findRecipe(entityManager, id);
+        if (body.containsKey("version") && longValue(body, "version") != recipe.getVersion()) {
+            throw new HttpError(409, "The recipe is at version " + recipe.getVersion());
+        }
+        entityManager.getTransaction().begin();
+        if (body.containsKey("description")) {
+            recipe.setDescription(string(body, "description"));
+        }
+        if (body.containsKey("prepTime")) {
+            recipe.setPrepTime(integer(body, "prepTime"));
+        }
+        if (body.containsKey("cookTime")) {
+            recipe.setCookTime(integer(body, "cookTime"));
+        }
+        if (body.containsKey("difficultyRating")) {
+            recipe.setDifficultyRating(integer(body, "difficultyRating"));
+        }
+        entityManager.getTransaction().commit();
+        return recipeToJson(recipe);
+    }
+
+    private static List<Map<String, Object>> unusedIngredients(EntityManager entityManager, String type) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (IngredientView ingredient : IngredientUsage.unused(entityManager, type)) {
+            rows.add(row("name", ingredient.getName(), "type", ingredient.getType(), "description", ingredient.getDescription()));
+        }
+        return rows;
+    }
+
+    private static Map<String, Object> removeUnusedIngredients(EntityManager entityManager, String type) {
+        entityManager.getTransaction().begin();
+        int removed = IngredientUsage.removeUnused(entityManager, type);
+        entityManager.getTransaction().commit();
+        return row("removed", removed);
+    }
+
+    /**
+     * Removes an entity with the same consequences as entityDeletion
+     */
+    private void deleteEntity(EntityManager entityManager, String resource, String id) {
+        entityManager.getTransaction().begin();
+        switch (resource) {
+            case "chefs":
+                entityManager.remove(found(entityManager.find(Chef.class, longId(id)), "chef", id));
+                break;
+            case "cuisines":
+                Cuisine cuisine = found(entityManager.find(Cuisine.class, longId(id)), "cuisine", id);
+                entityManager.createNamedQuery(QueryCatalog.RECIPE_CLEAR_CUISINE)
+                        .setParameter(QueryCatalog.CUISINE_ID, cuisine.getCuisineId())
+                        .executeUpdate();
+                entityManager.remove(cuisine);
+                break;
+            case "recipes":
+                entityManager.remove(findRecipe(entityManager, id));
+                break;
+            case "ingredients":
+                entityManager.remove(found(entityManager.find(Ingredient.class, id), "ingredient", id));
+                break;
+            case "foodcritics":
+                entityManager.remove(found(entityManager.find(FoodCritic.class, longId(id)), "food critic", id));
+                break;
+            case "reviews":
+                Review review = found(entityManager.find(Review.class, longId(id)), "review", id);
+                review.getFoodCritic().removeReview(review);
+                entityManager.remove(review);
+                break;
+            default:
+                throw new HttpError(404, "No route for DELETE /" + resource + "/" + id);
+        }
+        entityManager.getTransaction().commit();
+    }
+
+    private void deleteStep(EntityManager entityManager, String recipeId, int orderNumber) {
+        Recipe recipe = findRecipe(entityManager, recipeId);
+        Step step = recipe.getStepList().stream()
+                .filter(s -> s.getOrderNumber() == orderNumber)
+                .findFirst()
+                .orElseThrow(() -> new HttpError(404, "Recipe " + recipeId + " has no step " + orderNumber));
+        entityManager.getTransaction().begin();
+        recipe.removeStep(step);
+        List<Step> steps = recipe.getStepList();
+        for (int i = 0; i < steps.size(); i++) {
+            steps.get(i).setOrderNumber(i + 1);
+        }
+        entityManager.getTransaction().commit();
+    }
+
+    private void deleteIngredientAmount(EntityManager entityManager, String recipeId, String ingredientName) {
+        Recipe recipe = findRecipe(entityManager, recipeId);
+        IngredientAmount ingredientAmount = recipe.getIngredientAmounts().stream()
+                .filter(a -> a.getIngredient().getName().equals(ingredientName))
+                .findFirst()
+                .orElseThrow(() -> new HttpError(404, "Recipe " + recipeId + " does not use " + ingredientName));
+        entityManager.getTransaction().begin();
+        entityManager.remove(ingredientAmount);
+        entityManager.getTransaction().commit();
+    }
+
+    private Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        ConnectionPool pool = ConnectionPoolCustomizer.poolOf(factory);
+        metrics.put("connectionPool", pool == null ? null : pool.toString());
+        metrics.put("queryCaches", QueryCatalog.cacheStatistics(factory));
+        metrics.put("ingredientDictionary", IngredientDictionary.of(factory).toString());
+        Map<String, Object> referenceCaches = new LinkedHashMap<>();
+        for (ReferenceCache cache : ReferenceCache.of(factory)) {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("type", cache.getType());
+            stats.put("size", cache.getSize());
+            stats.put("maxSize", cache.getMaxSize());
+            stats.put("hits", cache.getHits());
+            stats.put("misses", cache.getMisses());
+            stats.put("hitRate", cache.getHitRate());
+            stats.put("evictions", cache.getEvictions());
+            stats.put("expirations", cache.getExpirations());
+            referenceCaches.put(cache.getEntity(), stats);
+        }
+        metrics.put("referenceCaches", referenceCaches);
+        metrics.put("reportCache", ReportCache.of(factory).toString());
+        Map<String, Object> routes = new TreeMap<>();
+        latencies.forEach((route, latency) -> {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("count", latency.getCount());
+            stats.put("meanMs", latency.getMeanNanos() / 1e6);
+            stats.put("p50Ms", latency.percentile(50) / 1e6);
+            stats.put("p95Ms", latency.percentile(95) / 1e6);
+            stats.put("p99Ms", latency.percentile(99) / 1e6);
+            stats.put("maxMs", latency.getMaxNanos() / 1e6);
+            routes.put(route, stats);
+        });
+        metrics.put("routes", routes);
+        return metrics;
+    }
+
+    private static Map<String, Object> recipeToJson(Recipe recipe) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("recipeId", recipe.getRecipeId());
+        json.put("version", recipe.getVersion());
+        json.put("name", recipe.getName());
+        json.put("description", recipe.getDescription());
+        json.put("prepTime", recipe.getPrepTime());
+        json.put("cookTime", recipe.getCookTime());
+        json.put("difficultyRating", recipe.getDifficultyRating());
+        json.put("numberOfServings", recipe.getNumberOfServings());
+        json.put("chefId", recipe.getChefCreator() == null ? null : recipe.getChefCreator().getUserID());
+        json.put("cuisineId", recipe.getCuisine() == null ? null : recipe.getCuisine().getCuisineId());
+        List<Map<String, Object>> steps = new ArrayList<>();
+        for (Step step : recipe.getStepList()) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("orderNumber", step.getOrderNumber());
+            s.put("description", step.getDescription());
+            s.put("time", step.getTime());
+            steps.add(s);
+        }
+        json.put("steps", steps);
+        List<Map<String, Object>> ingredients = new ArrayList<>();
+        for (IngredientAmount ingredientAmount : recipe.getIngredientAmounts()) {
+            Map<String, Object> i = new LinkedHashMap<>();
+            i.put("name", ingredientAmount.getIngredient().getName());
+            i.put("amount", ingredientAmount.getAmount());
+            i.put("units", ingredientAmount.getUnits());
+            ingredients.add(i);
+        }
+        json.put("ingredients", ingredients);
+        return json;
+    }
+
+    private static Recipe findRecipe(EntityManager entityManager, String id) {
+        return found(entityManager.find(Recipe.class, longId(id)), "recipe", id);
+    }
+
+    private static <E> E found(E entity, String kind, String id) {
+        if (entity == null) {
+            throw new HttpError(404, "There is no " + kind + " " + id);
+        }
+        return entity;
+    }
+
+    /**
+     * The route a path belongs to for the latency metrics, with ids replaced by placeholders
+     */
+    private static String routeOf(String[] path) {
+        if (!RESOURCES.contains(path[0])) {
+            // unknown paths share one entry, so they cannot grow the metrics without bound
+            return "/{unknown}";
+        }
+        StringBuilder route = new StringBuilder();
+        for (int i = 0; i < path.length; i++) {
+            route.append('/').append(i % 2 == 1 && !path[0].equals("reports") ? "{id}" : path[i]);
+        }
+        return route.toString();
+    }
+
+    private static long longId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            throw new HttpError(400, "Not a number: " + id);
+        }
+    }
+
+    private static BigDecimal number(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        if (!(value instanceof BigDecimal)) {
+            throw new HttpError(400, "Expected a number for " + key);
+        }
+        return (BigDecimal) value;
+    }
+
+    private static int integer(Map<String, Object> json, String key) {
+        return number(json, key).intValue();
+    }
+
+    private static long longValue(Map<String, Object> json, String key) {
+        return number(json, key).longValue();
+    }
+
+    private static String string(Map<String, Object> json, String key) {
+        Object value = json.get(key);
+        if (!(value instanceof String)) {
+            throw new HttpError(400, "Expected a string for " + key);
+        }
+        return (String) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> objects(Map<String, Object> json, String key) {
+        Object value = json.getOrDefault(key, new ArrayList<>());
+        if (!(value instanceof List) || ((List<?>) value).stream().anyMatch(v -> !(v instanceof Map))) {
+            throw new HttpError(400, "Expected an array of objects for " + key);
+        }
+        return (List<Map<String, Object>>) value;
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("error", message);
+        return error;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new LinkedHashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                String name = equals < 0 ? pair : pair.substring(0, equals);
+                String value = equals < 0 ? "" : pair.substring(equals + 1);
+                query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, Object response) throws IOException {
+        byte[] body = response == null ? new byte[0] : Json.write(response).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * A request that cannot be served, with the HTTP status to answer it with
+     */
+    private static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.FoodCritic;
+import csulb.cecs323.model.Review;
+import org.eclipse.persistence.descriptors.DescriptorEvent;
+import org.eclipse.persistence.descriptors.DescriptorEventAdapter;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.ObjectReferenceChangeRecord;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+import org.eclipse.persistence.queries.DataModifyQuery;
+import org.eclipse.persistence.queries.WriteObjectQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.eclipse.persistence.sessions.changesets.ChangeRecord;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Counters keeps the count columns of the entities, such as the number of reviews of a food critic,
+ * in step with the rows they count. The entities do not write these columns themselves: a count read,
+ * changed in memory and written back as part of the whole row loses the changes of every transaction
+ * that did the same in between, which is what happens when one critic posts from many sessions at once.
+ * <p>
+ * The counted entities EclipseLink inserts or deletes, or moves to another owner, are collected by counter and owner
+ * in the unit of work. Once the statements of a flush or commit have run, and before its transaction commits,
+ * every count involved is raised or lowered with one UPDATE that adds to the value in the row, so the counts
+ * commit or roll back together with the rows and concurrent writers wait for each other's row lock instead of
+ * overwriting each other. After the commit the owners are invalidated in the shared cache, so they are read again
+ * with their count on next use. An entity manager that holds an owner keeps the count it read until it refreshes it.
+ * <p>
+ * Each counter is one {@link Counter}, another count column of the same kind is one more entry in {@link #COUNTERS}.
+ * Rows written with plain JDBC, like the seed data, are not seen. {@link #rebuild(Connection)} counts them again
+ * and reports the counts that were off, a data migration runs it after the seed data is loaded.
+ * Usage: Counters, recounts the counters of the database of the persistence unit
+ */
+public final class Counters {
+
+    private static final Logger LOGGER = Logger.getLogger(Counters.class.getName());
+
+    /** Property of the unit of work holding the changes of its rows to the counts, by counter and owner id */
+    private static final String CHANGES = Counters.class.getName() + ".changes";
+
+    /** Property of the unit of work holding the owners whose counts it changed, invalidated once it commits */
+    private static final String CHANGED = Counters.class.getName() + ".changed";
+
+    /** The counters, the reviews of a food critic in number_of_reviews */
+    private static final List<Counter> COUNTERS = Arrays.asList(
+            new Counter(Review.class, "foodCritic", FoodCritic.class, "foodcritic", "critic_id", "number_of_reviews", "review", "critic_id")
+    );
+
+    private Counters() {
+    }
+
+    public static void main(String[] args) throws SQLException {
+        SchemaMigrator.Mode mode = SchemaMigrator.Mode.MIGRATE;
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook", mode.persistenceProperties());
+        try {
+            factory.createEntityManager().close();
+            new SchemaMigrator(factory).run(mode);
+            try (Connection connection = new Database(factory).connect()) {
+                connection.setAutoCommit(false);
+                rebuild(connection);
+                connection.commit();
+            }
+            factory.getCache().evictAll();
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * Writes the count of the owner of every counted entity EclipseLink inserts, deletes or moves to another owner
+     * @param session the session of the persistence unit, before it logs in
+     */
+    public static void install(Session session) {
+        for (int i = 0; i < COUNTERS.size(); i++) {
+            int index = i;
+            Counter counter = COUNTERS.get(i);
+            ObjectReferenceMapping owner = (ObjectReferenceMapping) session.getDescriptor(counter.counted)
+                    .getMappingForAttributeName(counter.reference);
+
+            session.getDescriptor(counter.counted).getEventManager().addListener(new DescriptorEventAdapter() {
+                @Override
+                public void postInsert(DescriptorEvent event) {
+                    count(event, owner.extractPrimaryKeysForReferenceObject(event.getObject(), event.getSession()), 1);
+                }
+
+                @Override
+                public void postDelete(DescriptorEvent event) {
+                    count(event, owner.extractPrimaryKeysForReferenceObject(event.getObject(), event.getSession()), -1);
+                }
+
+                @Override
+                public void postUpdate(DescriptorEvent event) {
+                    ObjectChangeSet change = ((WriteObjectQuery) event.getQuery()).getObjectChangeSet();
+                    ChangeRecord ownerChange = change == null ? null : change.getChangesForAttributeNamed(counter.reference);
+                    if (ownerChange == null) {
+                        return;
+                    }
+                    count(event, owner.extractPrimaryKeysForReferenceObject(event.getObject(), event.getSession()), 1);
+                    Object before = ((ObjectReferenceChangeRecord) ownerChange).getOldValue();
+                    if (before instanceof ObjectChangeSet) {
+                        count(event, ((ObjectChangeSet) before).getId(), -1);
+                    } else if (before != null) {
+                        count(event, owner.getReferenceDescriptor().getObjectBuilder()
+                                .extractPrimaryKeyFromObject(before, event.getSession()), -1);
+                    }
+                }
+
+                private void count(DescriptorEvent event, Object ownerId, long count) {
+                    if (ownerId != null) {
+                        changesOf(event.getSession(), index).merge(ownerId, count, Long::sum);
+                    }
+                }
+            });
+        }
+
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void prepareUnitOfWork(SessionEvent event) {
+                // every statement of the flush or commit has run, its transaction has not committed yet
+                UnitOfWork unitOfWork = (UnitOfWork) event.getSession();
+                @SuppressWarnings("unchecked")
+                Map<Integer, Map<Object, Long>> changes = (Map<Integer, Map<Object, Long>>) unitOfWork.getProperty(CHANGES);
+                if (changes != null) {
+                    unitOfWork.removeProperty(CHANGES);
+                    apply((AbstractSession) unitOfWork, changes);
+                }
+            }
+
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                UnitOfWork unitOfWork = (UnitOfWork) event.getSession();
+                @SuppressWarnings("unchecked")
+                List<Object[]> changed = (List<Object[]>) unitOfWork.getProperty(CHANGED);
+                if (changed != null) {
+                    unitOfWork.removeProperty(CHANGED);
+                    AbstractSession sharedCache = ((AbstractSession) unitOfWork).getParent();
+                    for (Object[] owner : changed) {
+                        sharedCache.getIdentityMapAccessor().invalidateObject(owner[1], (Class<?>) owner[0]);
+                    }
+                }
+            }
+
+            @Override
+            public void postReleaseUnitOfWork(SessionEvent event) {
+                // rolled back, the counts in the database did not change
+                event.getSession().removeProperty(CHANGED);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Object, Long> changesOf(AbstractSession session, int counter) {
+        Map<Integer, Map<Object, Long>> changes = (Map<Integer, Map<Object, Long>>) session.getProperty(CHANGES);
+        if (changes == null) {
+            // counts are written in the order of the counters and owner ids, so two transactions cannot deadlock on them
+            changes = new TreeMap<>();
+            session.setProperty(CHANGES, changes);
+        }
+        return changes.computeIfAbsent(counter, c -> new TreeMap<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void apply(AbstractSession session, Map<Integer, Map<Object, Long>> changes) {
+        List<Object[]> changed = (List<Object[]>) session.getProperty(CHANGED);
+        if (changed == null) {
+            changed = new ArrayList<>();
+            session.setProperty(CHANGED, changed);
+        }
+        for (Map.Entry<Integer, Map<Object, Long>> counts : changes.entrySet()) {
+            Counter counter = COUNTERS.get(counts.getKey());
+            for (Map.Entry<Object, Long> count : counts.getValue().entrySet()) {
+                if (count.getValue() != 0) {
+                    execute(session, counter.add, count.getValue(), count.getKey());
+                    changed.add(new Object[] {counter.owner, count.getKey()});
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs a statement through the session, in the transaction of the unit of work.
+     * It is not batched, the pending batch of the flush is sent first.
+     * @return the number of rows changed
+     */
+    private static int execute(AbstractSession session, String sql, Object... arguments) {
+        DataModifyQuery query = new DataModifyQuery(sql);
+        query.setIsBatchExecutionSupported(false);
+        for (int i = 0; i < arguments.length; i++) {
+            query.addArgument(String.valueOf(i + 1));
+        }
+        return (Integer) session.executeQuery(query, Arrays.asList(arguments));
+    }
+
+    /**
+     * Counts the rows of every counter again and writes the counts that are off
+     * @param connection the connection to rebuild on, the caller commits
+     * @return the number of counts that were off
+     * @throws SQLException if the database cannot be read or written
+     */
+    public static int rebuild(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        int drift = 0;
+        int owners = 0;
+        try (Statement statement = connection.createStatement()) {
+            for (Counter counter : COUNTERS) {
+                try (ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + counter.ownerTable)) {
+                    result.next();
+                    owners += result.getInt(1);
+                }
+                drift += statement.executeUpdate(counter.recount);
+            }
+        }
+        LOGGER.info(String.format("Recounted %d counts in %d ms, %d were off",
+                owners, (System.nanoTime() - start) / 1_000_000, drift));
+        return drift;
+    }
+
+    /**
+     * A count column of an owner entity, holding the number of rows of a counted entity that reference it
+     */
+    private static class Counter {
+        private final Class<?> counted;
+        private final String reference;
+        private final Class<?> owner;
+        private final String ownerTable;
+        /** adds the first argument to the count of the owner with the id of the second */
+        private final String add;
+        /** writes every count that differs from the number of rows */
+        private final String recount;
+
+        /**
+         * @param counted the entity whose rows are counted
+         * @param reference the attribute of the counted entity referencing the owner
+         * @param owner the entity holding the count
+         * @param ownerTable the table of the count column
+         * @param ownerKey the primary key column of the owner in that table
+         * @param column the count column
+         * @param countedTable the table of the counted rows
+         * @param countedKey the foreign key column of the owner in that table
+         */
+        private Counter(Class<?> counted, String reference, Class<?> owner, String ownerTable, String ownerKey, String column,
+                        String countedTable, String countedKey) {
+            this.counted = counted;
+            this.reference = reference;
+            this.owner = owner;
+            this.ownerTable = ownerTable;
+            this.add = "UPDATE " + ownerTable + " SET " + column + " = COALESCE(" + column + ", 0) + ? WHERE " + ownerKey + " = ?";
+            String count = "(SELECT COUNT(*) FROM " + countedTable + " c WHERE c." + countedKey + " = o." + ownerKey + ")";
+            this.recount = "UPDATE " + ownerTable + " o SET " + column + " = " + count
+                    + " WHERE o." + column + " IS NULL OR o." + column + " <> " + count;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package csulb.cecs323.app;
+
+/**
+ * CuisineView holds the columns of a cuisine that the list screens show, read with a constructor expression
+ * instead of loading the Cuisine with its collections
+ */
+public final class CuisineView {
+
+    private final long cuisineId;
+    private final String name;
+    private final String region;
+    private final String religion;
+
+    public CuisineView(long cuisineId, String name, String region, String religion) {
+        this.cuisineId = cuisineId;
+        this.name = name;
+        this.region = region;
+        this.religion = religion;
+    }
+
+    public long getCuisineId() { return cuisineId; }
+
+    public String getName() { return name; }
+
+    public String getRegion() { return region; }
+
+    public String getReligion() { return religion; }
+}
@@ -0,0 +1,41 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Database hands out plain JDBC connections to the same database the CookBook persistence unit uses.
+ * It is used by the parts of the application that work below JPA, such as schema migrations and bulk loads.
+ * When the persistence unit runs on a ConnectionPool, the connections are borrowed from that pool.
+ */
+public class Database {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final ConnectionPool pool;
+
+    /**
+     * Constructor which reads the JDBC connection settings from the persistence unit of the given factory
+     * @param factory the factory created for the CookBook persistence unit
+     */
+    public Database(EntityManagerFactory factory) {
+        Map<String, Object> properties = factory.getProperties();
+        this.url = String.valueOf(properties.get("javax.persistence.jdbc.url"));
+        this.user = (String) properties.get("javax.persistence.jdbc.user");
+        this.password = (String) properties.get("javax.persistence.jdbc.password");
+        this.pool = ConnectionPoolCustomizer.poolOf(factory);
+    }
+
+    /**
+     * Obtains a connection to the CookBook database, the caller is responsible for closing it
+     * @return a new JDBC connection
+     * @throws SQLException if the database cannot be reached
+     */
+    public Connection connect() throws SQLException {
+        return pool != null ? pool.getConnection() : DriverManager.getConnection(url, user, password);
+    }
+}
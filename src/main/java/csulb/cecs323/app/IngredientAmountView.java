@@ -0,0 +1,32 @@
+package csulb.cecs323.app;
+
+/**
+ * IngredientAmountView holds an ingredient amount together with the name of its recipe, as the list screens show it,
+ * read in one statement with a constructor expression
+ */
+public final class IngredientAmountView {
+
+    private final long recipeId;
+    private final String recipeName;
+    private final String ingredientName;
+    private final float amount;
+    private final String units;
+
+    public IngredientAmountView(long recipeId, String recipeName, String ingredientName, float amount, String units) {
+        this.recipeId = recipeId;
+        this.recipeName = recipeName;
+        this.ingredientName = ingredientName;
+        this.amount = amount;
+        this.units = units;
+    }
+
+    public long getRecipeId() { return recipeId; }
+
+    public String getRecipeName() { return recipeName; }
+
+    public String getIngredientName() { return ingredientName; }
+
+    public float getAmount() { return amount; }
+
+    public String getUnits() { return units; }
+}
@@ -0,0 +1,218 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Ingredient;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * IngredientDictionary knows the name of every ingredient in the database, so whether an ingredient a user types
+ * is new can be answered from memory instead of with a query per ingredient.
+ * The ingredients that exist are then fetched together, with a single query for all the ingredients of a recipe.
+ * <p>
+ * The names are read on first use and kept up to date by listening to the commits of the persistence unit,
+ * ingredients persisted or removed through JPA, or inserted by Upserts, are added or taken out once committed.
+ * Ingredients written past JPA, e.g. by the bulk loader, are picked up once {@link #invalidate()} is called.
+ * A hit is a lookup of an ingredient that exists and a miss one of a new ingredient.
+ */
+public class IngredientDictionary implements IngredientDictionaryMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(IngredientDictionary.class.getName());
+
+    private static final String PROPERTY = IngredientDictionary.class.getName();
+
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private volatile boolean loaded;
+
+    /**
+     * Creates a dictionary for the session, keeps it up to date with every commit of the session
+     * and exports its metrics over JMX until the session logs out
+     * @param session the session of the persistence unit, before it logs in
+     * @return the installed dictionary
+     */
+    public static IngredientDictionary install(Session session) {
+        IngredientDictionary dictionary = new IngredientDictionary();
+        session.setProperty(PROPERTY, dictionary);
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                dictionary.apply((UnitOfWorkImpl) event.getSession());
+            }
+        });
+
+        Metrics.export(session, "IngredientDictionary", dictionary);
+        return dictionary;
+    }
+
+    /**
+     * Finds the dictionary of a factory of the CookBook persistence unit
+     * @param factory the factory to look into
+     * @return the dictionary of the factory
+     */
+    public static IngredientDictionary of(EntityManagerFactory factory) {
+        return of(factory.unwrap(JpaEntityManagerFactory.class).getServerSession());
+    }
+
+    static IngredientDictionary of(Session session) {
+        Object dictionary = session.getProperty(PROPERTY);
+        if (dictionary == null) {
+            throw new IllegalStateException("The ingredient dictionary is not installed, check the session customizer in persistence.xml");
+        }
+        return (IngredientDictionary) dictionary;
+    }
+
+    /**
+     * Tells whether there is an ingredient with the given name, reading the names from the database on first use
+     * @param entityManager the entity manager the names are read with on first use
+     * @param name the name of the ingredient
+     * @return true if the ingredient exists
+     */
+    public boolean contains(EntityManager entityManager, String name) {
+        if (!loaded) {
+            load(entityManager);
+        }
+        boolean found = names.contains(name);
+        (found ? hits : misses).incrementAndGet();
+        return found;
+    }
+
+    /**
+     * Fetches existing ingredients with a single query
+     * @param entityManager the entity manager the ingredients are loaded into
+     * @param names the names of the ingredients
+     * @return the ingredients by name, an ingredient removed in the meantime is missing from the map
+     */
+    public Map<String, Ingredient> fetch(EntityManager entityManager, Collection<String> names) {
+        Map<String, Ingredient> ingredients = new HashMap<>();
+        if (names.isEmpty()) {
+            return ingredients;
+        }
+        fetches.incrementAndGet();
+        for (Ingredient ingredient : entityManager.createNamedQuery(QueryCatalog.INGREDIENTS_BY_NAMES, Ingredient.class)
+                .setParameter(QueryCatalog.NAMES, new ArrayList<>(new LinkedHashSet<>(names)))
+                .getResultList()) {
+            ingredients.put(ingredient.getName(), ingredient);
+        }
+        return ingredients;
+    }
+
+    /**
+     * Reads the names of every ingredient from the database, unless that has been done already
+     * @param entityManager the entity manager the names are read with
+     */
+    public synchronized void load(EntityManager entityManager) {
+        if (loaded) {
+            return;
+        }
+        names.addAll(entityManager.createNamedQuery(QueryCatalog.INGREDIENT_NAMES, String.class).getResultList());
+        loaded = true;
+        LOGGER.info("Loaded the ingredient dictionary: " + this);
+    }
+
+    /**
+     * Forgets the names, they are read from the database again on next use.
+     * A lookup running at the same time may take an existing ingredient for a new one, which Upserts creates idempotently.
+     */
+    public synchronized void invalidate() {
+        loaded = false;
+        names.clear();
+    }
+
+    /**
+     * Adds ingredients that were created without JPA once their transaction committed
+     * @param created the names of the ingredients
+     */
+    synchronized void added(Collection<String> created) {
+        // before the names are loaded there is nothing to update, loading reads the committed state
+        if (loaded) {
+            names.addAll(created);
+        }
+    }
+
+    /**
+     * Adds the ingredients a unit of work persisted and takes out the ones it removed
+     */
+    private synchronized void apply(UnitOfWorkImpl unitOfWork) {
+        UnitOfWorkChangeSet changes = (UnitOfWorkChangeSet) unitOfWork.getUnitOfWorkChangeSet();
+        if (changes == null || !loaded) {
+            // before the names are loaded there is nothing to update, loading reads the committed state
+            return;
+        }
+        String ingredientClass = Ingredient.class.getName();
+        for (ObjectChangeSet deleted : changes.getDeletedObjects().keySet()) {
+            if (ingredientClass.equals(deleted.getClassName())) {
+                names.remove((String) deleted.getId());
+            }
+        }
+        for (ObjectChangeSet changed : changes.getAllChangeSets().keySet()) {
+            if (changed.isNew() && ingredientClass.equals(changed.getClassName())) {
+                names.add((String) changed.getId());
+            }
+        }
+    }
+
+    /**
+     * Formats the live metrics of the dictionary
+     * @return a one line summary of the dictionary state
+     */
+    @Override
+    public String toString() {
+        return String.format("IngredientDictionary[size = %d, hits = %d, misses = %d, hit rate = %.1f%%, fetches = %d, memory = %.1f KB]",
+                getSize(), getHits(), getMisses(), getHitRate() * 100, getFetches(), getEstimatedBytes() / 1024.0);
+    }
+
+    @Override
+    public int getSize() { return names.size(); }
+
+    @Override
+    public long getHits() { return hits.get(); }
+
+    @Override
+    public long getMisses() { return misses.get(); }
+
+    @Override
+    public double getHitRate() {
+        long found = hits.get();
+        long lookups = found + misses.get();
+        return lookups == 0 ? 0 : (double) found / lookups;
+    }
+
+    @Override
+    public long getFetches() { return fetches.get(); }
+
+    /**
+     * Estimates the heap the names take: per name a String of 24 bytes with a byte array of 16 bytes plus its characters,
+     * and a map node of 32 bytes with its slot in the table, on a 64 bit JVM with compressed references
+     */
+    @Override
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (String name : names) {
+            bytes += 24 + align(16 + name.length()) + 32 + 8;
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) / 8 * 8;
+    }
+}
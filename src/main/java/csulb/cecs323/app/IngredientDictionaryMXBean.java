@@ -0,0 +1,19 @@
+package csulb.cecs323.app;
+
+/**
+ * Live metrics of the ingredient dictionary of the CookBook persistence unit, exported over JMX as csulb.cecs323:type=IngredientDictionary
+ */
+public interface IngredientDictionaryMXBean {
+
+    int getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    long getFetches();
+
+    long getEstimatedBytes();
+}
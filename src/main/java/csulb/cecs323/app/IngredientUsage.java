@@ -0,0 +1,519 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Chef;
+import csulb.cecs323.model.Cuisine;
+import csulb.cecs323.model.Ingredient;
+import csulb.cecs323.model.IngredientAmount;
+import csulb.cecs323.model.Recipe;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.DescriptorEvent;
+import org.eclipse.persistence.descriptors.DescriptorEventAdapter;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.ObjectReferenceChangeRecord;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+import org.eclipse.persistence.queries.DataModifyQuery;
+import org.eclipse.persistence.queries.WriteObjectQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.eclipse.persistence.sessions.changesets.ChangeRecord;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.TypedQuery;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * IngredientUsage keeps the chef_ingredient_usage and chef_usage tables in step with the ingredient amounts
+ * of the recipes: for every chef how many ingredient amounts of its recipes use each ingredient,
+ * and in total the number of ingredient amounts and of different ingredients. The report of the chef using the fewest
+ * ingredients reads chef_usage, where every chef has a row, instead of joining every recipe and ingredient amount,
+ * see the Report.chefWithFewestIngredients query. The lowest, highest or rank of a count is a lookup in the index of chef_usage.
+ * <p>
+ * The ingredient amounts EclipseLink inserts or deletes are collected by chef and ingredient in the unit of work.
+ * Once the statements of a flush or commit have run, and before its transaction commits, the rows of every chef involved
+ * are changed with SQL, so the counts commit or roll back together with the ingredient amounts.
+ * A recipe that changes its chef, e.g. through Chef.addRecipe, has the rows of its old and new chef computed again
+ * from their recipes. New chefs get a row of zeros, removed chefs lose their rows.
+ * <p>
+ * The same ingredient amounts keep ingredient_recipe_count, the number of recipes using every ingredient next to its type.
+ * An ingredient amount is the use of one ingredient by one recipe, so the count goes up and down with them,
+ * also when they go with their recipe or ingredient. New ingredients get a row with a count of zero, removed ones lose it,
+ * and a changed type is copied over. The unused ingredients, of every type or of one, are then read from its index,
+ * see the Report.unusedIngredients query, {@link #unused(EntityManager, String)} and {@link #removeUnused(EntityManager, String)}.
+ * <p>
+ * Ingredient amounts written with plain JDBC, like the seed data, are not seen. {@link #rebuildChefs(Connection)}
+ * and {@link #rebuildIngredients(Connection)} compute the tables from scratch and report the rows that were off,
+ * data migrations run them after the seed data is loaded.
+ * Usage: IngredientUsage, rebuilds the usage counts of the database of the persistence unit
+ */
+public final class IngredientUsage {
+
+    private static final Logger LOGGER = Logger.getLogger(IngredientUsage.class.getName());
+
+    /** Property of the unit of work holding the changes of its ingredient amounts to the counts, by chef id */
+    private static final String CHANGES = IngredientUsage.class.getName() + ".changes";
+
+    /** Property of the unit of work holding the changes of its ingredient amounts to the recipe counts, by ingredient name */
+    private static final String INGREDIENT_CHANGES = IngredientUsage.class.getName() + ".ingredientChanges";
+
+    private static final String APPLY =
+            "UPDATE chef_ingredient_usage SET amount_count = amount_count + ? WHERE chef_id = ? AND ingredient_name = ?";
+
+    private static final String ADD =
+            "INSERT INTO chef_ingredient_usage (chef_id, ingredient_name, amount_count) VALUES (?, ?, ?)";
+
+    private static final String DROP_UNUSED =
+            "DELETE FROM chef_ingredient_usage WHERE chef_id = ? AND amount_count <= 0";
+
+    private static final String DROP =
+            "DELETE FROM chef_ingredient_usage WHERE chef_id = ?";
+
+    private static final String COMPUTE =
+            "INSERT INTO chef_ingredient_usage (chef_id, ingredient_name, amount_count) " +
+            "SELECT r.chef_id, a.ingredient_name, COUNT(*) FROM recipe r JOIN ingredientamount a ON a.recipe_id = r.recipe_id " +
+            "WHERE r.chef_id = ? GROUP BY r.chef_id, a.ingredient_name";
+
+    private static final String TOTAL =
+            "UPDATE chef_usage SET amount_count = (SELECT COALESCE(SUM(amount_count), 0) FROM chef_ingredient_usage WHERE chef_id = ?), " +
+            "ingredient_count = (SELECT COUNT(*) FROM chef_ingredient_usage WHERE chef_id = ?) WHERE chef_id = ?";
+
+    private static final String ADD_TOTAL =
+            "INSERT INTO chef_usage (chef_id, amount_count, ingredient_count) " +
+            "SELECT c.chef_id, (SELECT COALESCE(SUM(u.amount_count), 0) FROM chef_ingredient_usage u WHERE u.chef_id = c.chef_id), " +
+            "(SELECT COUNT(*) FROM chef_ingredient_usage u WHERE u.chef_id = c.chef_id) FROM chef c WHERE c.chef_id = ?";
+
+    private static final String DROP_TOTAL =
+            "DELETE FROM chef_usage WHERE chef_id = ?";
+
+    private static final String COMPUTE_ALL =
+            "SELECT r.chef_id, a.ingredient_name, COUNT(*) FROM recipe r JOIN ingredientamount a ON a.recipe_id = r.recipe_id " +
+            "WHERE r.chef_id IS NOT NULL GROUP BY r.chef_id, a.ingredient_name";
+
+    private static final String READ_ALL =
+            "SELECT chef_id, ingredient_name, amount_count FROM chef_ingredient_usage";
+
+    private static final String COMPUTE_ALL_TOTALS =
+            "SELECT c.chef_id, COALESCE(SUM(u.amount_count), 0), COUNT(u.ingredient_name) " +
+            "FROM chef c LEFT JOIN chef_ingredient_usage u ON u.chef_id = c.chef_id GROUP BY c.chef_id";
+
+    private static final String COUNT_RECIPES =
+            "UPDATE ingredient_recipe_count SET recipe_count = recipe_count + ?, " +
+            "ingredient_type = (SELECT type FROM ingredient WHERE name = ?) WHERE ingredient_name = ?";
+
+    private static final String ADD_INGREDIENT =
+            "INSERT INTO ingredient_recipe_count (ingredient_name, ingredient_type, recipe_count) " +
+            "SELECT name, type, ? FROM ingredient WHERE name = ?";
+
+    private static final String DROP_INGREDIENT =
+            "DELETE FROM ingredient_recipe_count WHERE ingredient_name = ?";
+
+    /** Counted per ingredient in the index of the foreign key, Derby runs the outer join grouped by ingredient in quadratic time */
+    private static final String COMPUTE_ALL_INGREDIENTS =
+            "SELECT i.name, i.type, (SELECT COUNT(*) FROM ingredientamount a WHERE a.ingredient_name = i.name) FROM ingredient i";
+
+    private IngredientUsage() {
+    }
+
+    public static void main(String[] args) throws SQLException {
+        SchemaMigrator.Mode mode = SchemaMigrator.Mode.MIGRATE;
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook", mode.persistenceProperties());
+        try {
+            factory.createEntityManager().close();
+            new SchemaMigrator(factory).run(mode);
+            try (Connection connection = new Database(factory).connect()) {
+                connection.setAutoCommit(false);
+                rebuildChefs(connection);
+                rebuildIngredients(connection);
+                connection.commit();
+            }
+            ReportCache.of(factory).clear();
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * Writes the usage counts of the chef and the recipe count of the ingredient of every ingredient amount
+     * EclipseLink inserts or deletes, of every recipe that changes its chef, of every chef that is added or removed
+     * and of every ingredient that is added, removed or changes its type
+     * @param session the session of the persistence unit, before it logs in
+     */
+    public static void install(Session session) {
+        ClassDescriptor amountDescriptor = session.getDescriptor(IngredientAmount.class);
+        ObjectReferenceMapping recipe = (ObjectReferenceMapping) amountDescriptor.getMappingForAttributeName("recipe");
+        ObjectReferenceMapping ingredient = (ObjectReferenceMapping) amountDescriptor.getMappingForAttributeName("ingredient");
+        ClassDescriptor recipeDescriptor = session.getDescriptor(Recipe.class);
+        ObjectReferenceMapping chef = (ObjectReferenceMapping) recipeDescriptor.getMappingForAttributeName("chefCreator");
+
+        amountDescriptor.getEventManager().addListener(new DescriptorEventAdapter() {
+
+            @Override
+            public void postInsert(DescriptorEvent event) {
+                count(event, 1);
+            }
+
+            @Override
+            public void postDelete(DescriptorEvent event) {
+                count(event, -1);
+            }
+
+            /**
+             * Counts the ingredient amount for its ingredient and for the chef its recipe has in the unit of work.
+             * When the recipe also changes its chef, both chefs are computed again anyway.
+             */
+            private void count(DescriptorEvent event, long count) {
+                Object name = ingredient.extractPrimaryKeysForReferenceObject(event.getObject(), event.getSession());
+                if (name == null) {
+                    return;
+                }
+                ingredientChangeOf(event, name).recipes += count;
+                Object ofRecipe = recipe.getRealAttributeValueFromObject(event.getObject(), event.getSession());
+                Object chefId = ofRecipe == null ? null : chef.extractPrimaryKeysForReferenceObject(ofRecipe, event.getSession());
+                if (chefId != null) {
+                    changeOf(event, chefId).amounts.merge((String) name, count, Long::sum);
+                }
+            }
+        });
+
+        recipeDescriptor.getEventManager().addListener(new DescriptorEventAdapter() {
+            @Override
+            public void postUpdate(DescriptorEvent event) {
+                ObjectChangeSet change = ((WriteObjectQuery) event.getQuery()).getObjectChangeSet();
+                ChangeRecord chefChange = change == null ? null : change.getChangesForAttributeNamed("chefCreator");
+                if (chefChange == null) {
+                    return;
+                }
+                // the ingredient amounts of the recipe move to another chef, both are computed again from their recipes
+                Object after = chef.extractPrimaryKeysForReferenceObject(event.getObject(), event.getSession());
+                if (after != null) {
+                    changeOf(event, after).recompute = true;
+                }
+                Object before = ((ObjectReferenceChangeRecord) chefChange).getOldValue();
+                if (before instanceof ObjectChangeSet) {
+                    changeOf(event, ((ObjectChangeSet) before).getId()).recompute = true;
+                } else if (before != null) {
+                    changeOf(event, chef.getReferenceDescriptor().getObjectBuilder()
+                            .extractPrimaryKeyFromObject(before, event.getSession())).recompute = true;
+                }
+            }
+        });
+
+        session.getDescriptor(Chef.class).getEventManager().addListener(new DescriptorEventAdapter() {
+            @Override
+            public void postInsert(DescriptorEvent event) {
+                changeOf(event, ((Chef) event.getObject()).getUserID());
+            }
+
+            @Override
+            public void postDelete(DescriptorEvent event) {
+                changeOf(event, ((Chef) event.getObject()).getUserID()).removed = true;
+            }
+        });
+
+        session.getDescriptor(Ingredient.class).getEventManager().addListener(new DescriptorEventAdapter() {
+            @Override
+            public void postInsert(DescriptorEvent event) {
+                ingredientChangeOf(event, ((Ingredient) event.getObject()).getName());
+            }
+
+            @Override
+            public void postUpdate(DescriptorEvent event) {
+                // the row of the count reads the type again from the ingredient whenever it is written
+                ObjectChangeSet change = ((WriteObjectQuery) event.getQuery()).getObjectChangeSet();
+                if (change != null && change.getChangesForAttributeNamed("type") != null) {
+                    ingredientChangeOf(event, ((Ingredient) event.getObject()).getName());
+                }
+            }
+
+            @Override
+            public void postDelete(DescriptorEvent event) {
+                ingredientChangeOf(event, ((Ingredient) event.getObject()).getName()).removed = true;
+            }
+        });
+
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void prepareUnitOfWork(SessionEvent event) {
+                // every statement of the flush or commit has run, its transaction has not committed yet
+                UnitOfWork unitOfWork = (UnitOfWork) event.getSession();
+                @SuppressWarnings("unchecked")
+                Map<Object, Change> changes = (Map<Object, Change>) unitOfWork.getProperty(CHANGES);
+                if (changes != null) {
+                    unitOfWork.removeProperty(CHANGES);
+                    apply((AbstractSession) unitOfWork, changes);
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, IngredientChange> ingredientChanges = (Map<String, IngredientChange>) unitOfWork.getProperty(INGREDIENT_CHANGES);
+                if (ingredientChanges != null) {
+                    unitOfWork.removeProperty(INGREDIENT_CHANGES);
+                    applyIngredients((AbstractSession) unitOfWork, ingredientChanges);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Change changeOf(DescriptorEvent event, Object chefId) {
+        AbstractSession session = event.getSession();
+        Map<Object, Change> changes = (Map<Object, Change>) session.getProperty(CHANGES);
+        if (changes == null) {
+            // rows are written in the order of the chef ids, so two transactions writing the same chefs cannot deadlock
+            changes = new TreeMap<>();
+            session.setProperty(CHANGES, changes);
+        }
+        return changes.computeIfAbsent(chefId, id -> new Change());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static IngredientChange ingredientChangeOf(DescriptorEvent event, Object name) {
+        AbstractSession session = event.getSession();
+        Map<String, IngredientChange> changes = (Map<String, IngredientChange>) session.getProperty(INGREDIENT_CHANGES);
+        if (changes == null) {
+            // in the order of the names, after the chefs, for the same reason
+            changes = new TreeMap<>();
+            session.setProperty(INGREDIENT_CHANGES, changes);
+        }
+        return changes.computeIfAbsent((String) name, n -> new IngredientChange());
+    }
+
+    private static void apply(AbstractSession session, Map<Object, Change> changes) {
+        for (Map.Entry<Object, Change> entry : changes.entrySet()) {
+            Object chefId = entry.getKey();
+            Change change = entry.getValue();
+            if (change.removed) {
+                execute(session, DROP, chefId);
+                execute(session, DROP_TOTAL, chefId);
+                continue;
+            }
+            if (change.recompute) {
+                execute(session, DROP, chefId);
+                execute(session, COMPUTE, chefId);
+            } else {
+                boolean removed = false;
+                for (Map.Entry<String, Long> amounts : new TreeMap<>(change.amounts).entrySet()) {
+                    long count = amounts.getValue();
+                    if (count == 0) {
+                        continue;
+                    }
+                    int updated = execute(session, APPLY, count, chefId, amounts.getKey());
+                    if (updated == 0 && count > 0) {
+                        // the first ingredient amount of the chef with this ingredient
+                        execute(session, ADD, chefId, amounts.getKey(), count);
+                    }
+                    removed |= count < 0;
+                }
+                if (removed) {
+                    execute(session, DROP_UNUSED, chefId);
+                }
+            }
+            if (execute(session, TOTAL, chefId, chefId, chefId) == 0) {
+                execute(session, ADD_TOTAL, chefId);
+            }
+        }
+    }
+
+    private static void applyIngredients(AbstractSession session, Map<String, IngredientChange> changes) {
+        for (Map.Entry<String, IngredientChange> entry : changes.entrySet()) {
+            String name = entry.getKey();
+            IngredientChange change = entry.getValue();
+            if (change.removed) {
+                execute(session, DROP_INGREDIENT, name);
+            } else if (execute(session, COUNT_RECIPES, change.recipes, name, name) == 0) {
+                // a new ingredient, or one the table does not have yet
+                execute(session, ADD_INGREDIENT, change.recipes, name);
+            }
+        }
+    }
+
+    /**
+     * Reads the ingredients no recipe uses from the index of ingredient_recipe_count, in the order of their names
+     * @param entityManager the entity manager to read with
+     * @param type the type of the ingredients to read, null for every type
+     * @return the unused ingredients
+     */
+    public static List<IngredientView> unused(EntityManager entityManager, String type) {
+        TypedQuery<IngredientView> query;
+        if (type == null) {
+            query = entityManager.createNamedQuery(QueryCatalog.UNUSED_INGREDIENTS, IngredientView.class);
+        } else {
+            query = entityManager.createNamedQuery(QueryCatalog.UNUSED_INGREDIENTS_OF_TYPE, IngredientView.class)
+                    .setParameter(QueryCatalog.TYPE, type);
+        }
+        return query.getResultList();
+    }
+
+    /**
+     * Removes the ingredients no recipe uses, after disconnecting them from their cuisines,
+     * in the transaction of the entity manager the caller begins and commits
+     * @param entityManager the entity manager to remove with
+     * @param type the type of the ingredients to remove, null for every type
+     * @return the number of ingredients removed
+     */
+    public static int removeUnused(EntityManager entityManager, String type) {
+        List<String> names = new ArrayList<>();
+        for (IngredientView view : unused(entityManager, type)) {
+            names.add(view.getName());
+        }
+        if (names.isEmpty()) {
+            return 0;
+        }
+        List<Ingredient> ingredients = entityManager.createNamedQuery(QueryCatalog.INGREDIENTS_BY_NAMES, Ingredient.class)
+                .setParameter(QueryCatalog.NAMES, names)
+                .getResultList();
+        for (Ingredient ingredient : ingredients) {
+            for (Cuisine cuisine : new ArrayList<>(ingredient.getCuisinesAffected())) {
+                ingredient.removeCuisine(cuisine);
+            }
+            entityManager.remove(ingredient);
+        }
+        return ingredients.size();
+    }
+
+    /**
+     * Runs a statement through the session, so the report cache sees the table it writes.
+     * It is not batched, the pending batch of the flush is sent first and the count of the statement is the real one.
+     * @return the number of rows changed
+     */
+    private static int execute(AbstractSession session, String sql, Object... arguments) {
+        DataModifyQuery query = new DataModifyQuery(sql);
+        query.setIsBatchExecutionSupported(false);
+        for (int i = 0; i < arguments.length; i++) {
+            query.addArgument(String.valueOf(i + 1));
+        }
+        return (Integer) session.executeQuery(query, Arrays.asList(arguments));
+    }
+
+    /**
+     * Computes the usage counts of every chef from its recipes and replaces the tables with them
+     * @param connection the connection to rebuild on, the caller commits
+     * @return the number of chefs whose rows were missing, out of date or left over
+     * @throws SQLException if the database cannot be read or written
+     */
+    public static int rebuildChefs(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        Map<Long, Map<String, Long>> computed = read(connection, COMPUTE_ALL);
+        Map<Long, Map<String, Long>> stored = read(connection, READ_ALL);
+        Map<Long, long[]> storedTotals = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT chef_id, amount_count, ingredient_count FROM chef_usage")) {
+            while (result.next()) {
+                storedTotals.put(result.getLong(1), new long[] {result.getLong(2), result.getLong(3)});
+            }
+        }
+        int drift = 0;
+        int chefs = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT chef_id FROM chef")) {
+            while (result.next()) {
+                long chefId = result.getLong(1);
+                long[] total = storedTotals.remove(chefId);
+                Map<String, Long> amounts = computed.getOrDefault(chefId, new HashMap<>());
+                if (!amounts.equals(stored.getOrDefault(chefId, new HashMap<>())) || total == null
+                        || total[0] != sum(amounts) || total[1] != amounts.size()) {
+                    drift++;
+                }
+                chefs++;
+            }
+        }
+        drift += storedTotals.size();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM chef_ingredient_usage");
+            statement.executeUpdate("INSERT INTO chef_ingredient_usage (chef_id, ingredient_name, amount_count) " + COMPUTE_ALL);
+            statement.executeUpdate("DELETE FROM chef_usage");
+            statement.executeUpdate("INSERT INTO chef_usage (chef_id, amount_count, ingredient_count) " + COMPUTE_ALL_TOTALS);
+        }
+        LOGGER.info(String.format("Rebuilt the ingredient usage of %d chefs in %d ms, %d were off",
+                chefs, (System.nanoTime() - start) / 1_000_000, drift));
+        return drift;
+    }
+
+    /**
+     * Computes the recipe count of every ingredient from the ingredient amounts and replaces the table with them
+     * @param connection the connection to rebuild on, the caller commits
+     * @return the number of ingredients whose rows were missing, out of date or left over
+     * @throws SQLException if the database cannot be read or written
+     */
+    public static int rebuildIngredients(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        Map<String, Object[]> stored = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT ingredient_name, ingredient_type, recipe_count FROM ingredient_recipe_count")) {
+            while (result.next()) {
+                stored.put(result.getString(1), new Object[] {result.getString(2), result.getLong(3)});
+            }
+        }
+        int drift = 0;
+        int ingredients = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(COMPUTE_ALL_INGREDIENTS)) {
+            while (result.next()) {
+                Object[] row = stored.remove(result.getString(1));
+                if (row == null || !Objects.equals(row[0], result.getString(2)) || (long) row[1] != result.getLong(3)) {
+                    drift++;
+                }
+                ingredients++;
+            }
+        }
+        drift += stored.size();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM ingredient_recipe_count");
+            statement.executeUpdate("INSERT INTO ingredient_recipe_count (ingredient_name, ingredient_type, recipe_count) " + COMPUTE_ALL_INGREDIENTS);
+        }
+        LOGGER.info(String.format("Rebuilt the recipe counts of %d ingredients in %d ms, %d were off",
+                ingredients, (System.nanoTime() - start) / 1_000_000, drift));
+        return drift;
+    }
+
+    /**
+     * What the ingredient amounts of one chef written in a unit of work change about its counts
+     */
+    private static class Change {
+        /** the ingredient amounts added, negative for removed ones, by ingredient name */
+        private final Map<String, Long> amounts = new HashMap<>();
+        private boolean recompute;
+        private boolean removed;
+    }
+
+    /**
+     * What the ingredient amounts of one ingredient written in a unit of work change about its recipe count
+     */
+    private static class IngredientChange {
+        /** the ingredient amounts added, less the removed ones */
+        private long recipes;
+        private boolean removed;
+    }
+
+    private static Map<Long, Map<String, Long>> read(Connection connection, String sql) throws SQLException {
+        Map<Long, Map<String, Long>> rows = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            while (result.next()) {
+                rows.computeIfAbsent(result.getLong(1), id -> new HashMap<>()).put(result.getString(2), result.getLong(3));
+            }
+        }
+        return rows;
+    }
+
+    private static long sum(Map<String, Long> amounts) {
+        long sum = 0;
+        for (long count : amounts.values()) {
+            sum += count;
+        }
+        return sum;
+    }
+}
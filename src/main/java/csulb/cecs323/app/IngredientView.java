@@ -0,0 +1,24 @@
+package csulb.cecs323.app;
+
+/**
+ * IngredientView holds the columns of an ingredient that the list screens show, read with a constructor expression
+ * instead of loading the Ingredient with its cuisines and amounts
+ */
+public final class IngredientView {
+
+    private final String name;
+    private final String type;
+    private final String description;
+
+    public IngredientView(String name, String type, String description) {
+        this.name = name;
+        this.type = type;
+        this.description = description;
+    }
+
+    public String getName() { return name; }
+
+    public String getType() { return type; }
+
+    public String getDescription() { return description; }
+}
@@ -0,0 +1,164 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.CollectionChangeRecord;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.ObjectReferenceChangeRecord;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.mappings.CollectionMapping;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.ManyToManyMapping;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.changesets.ChangeRecord;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * InverseCollections keeps the collections of the shared cache that are mapped by the other side of a relationship,
+ * such as the reviews of a recipe, in step with the relationships a transaction added.
+ * The entities only add to such a collection when it is loaded in the entity manager (see the model's Associations),
+ * so adding a review does not read every review of its recipe. The recipe in the shared cache may have its reviews
+ * loaded all the same, and as EclipseLink only merges the collections a transaction changed, they would miss the review.
+ * Once a transaction commits, every entity whose loaded collection in the shared cache misses an element
+ * the transaction added on the owning side is invalidated, so it is read again on next use.
+ */
+public final class InverseCollections {
+
+    private InverseCollections() {
+    }
+
+    /**
+     * Checks the inverse collections after every commit
+     * @param session the session of the persistence unit, before it logs in
+     */
+    public static void install(Session session) {
+        session.getEventManager().addListener(new SessionEventAdapter() {
+
+            /** The inverse collection of every owning mapping, by class name and attribute of the owning side */
+            private volatile Map<String, CollectionMapping> inverses = new HashMap<>();
+
+            @Override
+            public void postLogin(SessionEvent event) {
+                inverses = inversesOf(event.getSession());
+            }
+
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                invalidateStale((UnitOfWorkImpl) event.getSession(), inverses);
+            }
+        });
+    }
+
+    /**
+     * Pairs the collections mapped by another attribute with that attribute.
+     * A one to many names it in mappedBy, a many to many that is mapped by another one is read only
+     * and shares its relation table.
+     */
+    private static Map<String, CollectionMapping> inversesOf(Session session) {
+        Map<String, CollectionMapping> inverses = new HashMap<>();
+        for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+            for (DatabaseMapping mapping : descriptor.getMappings()) {
+                if (!(mapping instanceof CollectionMapping)) {
+                    continue;
+                }
+                CollectionMapping inverse = (CollectionMapping) mapping;
+                ClassDescriptor owner = inverse.getReferenceDescriptor();
+                if (owner == null) {
+                    continue;
+                }
+                if (inverse.getMappedBy() != null) {
+                    inverses.put(key(owner.getJavaClassName(), inverse.getMappedBy()), inverse);
+                } else if (inverse instanceof ManyToManyMapping && inverse.isReadOnly()) {
+                    for (DatabaseMapping owning : owner.getMappings()) {
+                        if (owning instanceof ManyToManyMapping && !owning.isReadOnly()
+                                && ((ManyToManyMapping) owning).getRelationTable().equals(((ManyToManyMapping) inverse).getRelationTable())) {
+                            inverses.put(key(owner.getJavaClassName(), owning.getAttributeName()), inverse);
+                        }
+                    }
+                }
+            }
+        }
+        return inverses;
+    }
+
+    /**
+     * Invalidates the entities of the shared cache whose loaded inverse collection misses an element added by the transaction
+     */
+    private static void invalidateStale(UnitOfWorkImpl unitOfWork, Map<String, CollectionMapping> inverses) {
+        UnitOfWorkChangeSet changes = (UnitOfWorkChangeSet) unitOfWork.getUnitOfWorkChangeSet();
+        if (changes == null || inverses.isEmpty()) {
+            return;
+        }
+        AbstractSession sharedCache = unitOfWork.getParent();
+        for (ObjectChangeSet change : changes.getAllChangeSets().keySet()) {
+            if (change.isNew()) {
+                // a new entity is merged as a whole and has no change records, its references are read off its clone
+                Object clone = change.getUnitOfWorkClone();
+                for (DatabaseMapping mapping : unitOfWork.getDescriptor(clone).getMappings()) {
+                    CollectionMapping inverse = inverses.get(key(change.getClassName(), mapping.getAttributeName()));
+                    if (inverse == null) {
+                        continue;
+                    }
+                    Object value = mapping.getRealAttributeValueFromObject(clone, unitOfWork);
+                    Collection<?> targets = value instanceof Collection ? (Collection<?>) value
+                            : value == null ? Collections.emptyList() : Collections.singletonList(value);
+                    for (Object target : targets) {
+                        Object id = unitOfWork.getDescriptor(target).getObjectBuilder().extractPrimaryKeyFromObject(target, unitOfWork);
+                        invalidateIfMissing(sharedCache, inverse, id, target.getClass(), change);
+                    }
+                }
+                continue;
+            }
+            for (ChangeRecord record : change.getChanges()) {
+                CollectionMapping inverse = inverses.get(key(change.getClassName(), record.getAttribute()));
+                if (inverse == null) {
+                    continue;
+                }
+                if (record instanceof ObjectReferenceChangeRecord) {
+                    ObjectChangeSet target = (ObjectChangeSet) ((ObjectReferenceChangeRecord) record).getNewValue();
+                    if (target != null) {
+                        invalidateIfMissing(sharedCache, inverse, target.getId(), target.getClassType(sharedCache), change);
+                    }
+                } else if (record instanceof CollectionChangeRecord) {
+                    for (ObjectChangeSet target : ((CollectionChangeRecord) record).getAddObjectList().keySet()) {
+                        invalidateIfMissing(sharedCache, inverse, target.getId(), target.getClassType(sharedCache), change);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void invalidateIfMissing(AbstractSession sharedCache, CollectionMapping inverse, Object id, Class<?> type, ObjectChangeSet added) {
+        Object owner = id == null ? null : sharedCache.getIdentityMapAccessorInstance().getFromIdentityMap(id, type);
+        if (owner == null) {
+            return;
+        }
+        Object collection = inverse.getAttributeValueFromObject(owner);
+        if (!inverse.getIndirectionPolicy().objectIsInstantiated(collection)) {
+            // read from the database on first use, where the element is now
+            return;
+        }
+        Object element = original(sharedCache, added);
+        if (element == null || !((Collection<?>) collection).contains(element)) {
+            sharedCache.getIdentityMapAccessor().invalidateObject(owner);
+        }
+    }
+
+    private static Object original(AbstractSession sharedCache, ObjectChangeSet change) {
+        if (change.getId() == null) {
+            return null;
+        }
+        return sharedCache.getIdentityMapAccessorInstance().getFromIdentityMap(change.getId(), change.getClassType(sharedCache));
+    }
+
+    private static String key(String className, String attribute) {
+        return className + "." + attribute;
+    }
+}
@@ -0,0 +1,99 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.internal.helper.ConcurrentFixedCache;
+import org.eclipse.persistence.sessions.Project;
+import org.eclipse.persistence.sessions.Session;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * JpqlParseCache replaces the cache EclipseLink keeps of parsed JPQL strings, so its hits and misses can be counted.
+ * Named queries are parsed once when the persistence unit is deployed and never reach this cache,
+ * every query created from a JPQL string looks itself up here before it is parsed.
+ */
+public class JpqlParseCache extends ConcurrentFixedCache implements JpqlParseCacheMXBean {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(JpqlParseCache.class.getName());
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructor for a cache that keeps the given number of parsed queries
+     * @param maxSize the number of parsed queries kept
+     */
+    public JpqlParseCache(int maxSize) {
+        super(maxSize);
+    }
+
+    /**
+     * Installs a counting parse cache on the session and exports its metrics over JMX until the session logs out
+     * @param session the session of the persistence unit, before it logs in
+     * @param maxSize the number of parsed queries kept
+     * @return the installed cache
+     */
+    public static JpqlParseCache install(Session session, int maxSize) {
+        JpqlParseCache cache = new JpqlParseCache(maxSize);
+        try {
+            // EclipseLink only offers a protected setter for the parse cache
+            Method setter = Project.class.getDeclaredMethod("setJPQLParseCache", ConcurrentFixedCache.class);
+            setter.setAccessible(true);
+            setter.invoke(session.getProject(), cache);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.WARNING, "Unable to install the counting JPQL parse cache", e);
+            session.getProject().setJPQLParseCacheMaxSize(maxSize);
+            return cache;
+        }
+
+        Metrics.export(session, "JpqlParseCache", cache);
+        return cache;
+    }
+
+    /**
+     * Finds the counting parse cache of a session
+     * @param session the session to look into
+     * @return the parse cache of the session, or null if the default EclipseLink cache is in use
+     */
+    public static JpqlParseCache of(Session session) {
+        ConcurrentFixedCache cache = session.getProject().getJPQLParseCache();
+        return cache instanceof JpqlParseCache ? (JpqlParseCache) cache : null;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = super.get(key);
+        (value == null ? misses : hits).incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Formats the live metrics of the cache
+     * @return a one line summary of the cache state
+     */
+    @Override
+    public String toString() {
+        return String.format("JpqlParseCache[size = %d/%d, hits = %d, misses = %d, hit rate = %.1f%%]",
+                getSize(), getMaxSize(), getHits(), getMisses(), getHitRate() * 100);
+    }
+
+    @Override
+    public int getSize() { return getCache().size(); }
+
+    @Override
+    public long getHits() { return hits.get(); }
+
+    @Override
+    public long getMisses() { return misses.get(); }
+
+    @Override
+    public double getHitRate() {
+        long found = hits.get();
+        long lookups = found + misses.get();
+        return lookups == 0 ? 0 : (double) found / lookups;
+    }
+}
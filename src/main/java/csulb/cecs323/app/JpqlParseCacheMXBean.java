@@ -0,0 +1,17 @@
+package csulb.cecs323.app;
+
+/**
+ * Live metrics of the JPQL parse cache of the CookBook persistence unit, exported over JMX as csulb.cecs323:type=JpqlParseCache
+ */
+public interface JpqlParseCacheMXBean {
+
+    int getMaxSize();
+
+    int getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+}
@@ -0,0 +1,264 @@
+package csulb.cecs323.app;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Json reads and writes the small JSON documents exchanged with the bulk loader and the HTTP service.
+ * Objects are read as LinkedHashMap, arrays as ArrayList, numbers as BigDecimal so no digits are lost,
+ * and true, false and null as Boolean and null.
+ */
+public final class Json {
+
+    private final String text;
+    private int position;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses a complete JSON document
+     * @param text the JSON text
+     * @return the value the text describes
+     * @throws IOException if the text is not valid JSON
+     */
+    public static Object parse(String text) throws IOException {
+        Json parser = new Json(text);
+        parser.skipWhitespace();
+        Object value = parser.value();
+        parser.skipWhitespace();
+        if (parser.position != text.length()) {
+            throw new IOException("Unexpected content at position " + parser.position + " of " + text);
+        }
+        return value;
+    }
+
+    /**
+     * Parses a JSON document that has to be an object
+     * @param text the JSON text
+     * @return the members of the object in the order they appear
+     * @throws IOException if the text is not a valid JSON object
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String text) throws IOException {
+        Object value = parse(text);
+        if (!(value instanceof Map)) {
+            throw new IOException("Expected a JSON object but found " + text);
+        }
+        return (Map<String, Object>) value;
+    }
+
+    /**
+     * Formats a value as JSON. Maps become objects, iterables and arrays become arrays,
+     * numbers and booleans are written as they are and every other value as the string of its toString.
+     * @param value the value to format
+     * @return the JSON text
+     */
+    public static String write(Object value) {
+        StringBuilder out = new StringBuilder();
+        write(value, out);
+        return out.toString();
+    }
+
+    private static void write(Object value, StringBuilder out) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof BigDecimal) {
+            out.append(((BigDecimal) value).toPlainString());
+        } else if (value instanceof Number) {
+            double number = ((Number) value).doubleValue();
+            out.append(Double.isNaN(number) || Double.isInfinite(number) ? "null" : value.toString());
+        } else if (value instanceof Map) {
+            out.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                writeString(String.valueOf(entry.getKey()), out);
+                out.append(':');
+                write(entry.getValue(), out);
+            }
+            out.append('}');
+        } else if (value instanceof Iterable || value instanceof Object[]) {
+            out.append('[');
+            boolean first = true;
+            for (Object element : value instanceof Object[] ? Arrays.asList((Object[]) value) : (Iterable<?>) value) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                write(element, out);
+            }
+            out.append(']');
+        } else {
+            writeString(value.toString(), out);
+        }
+    }
+
+    private static void writeString(String value, StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                case '\b': out.append("\\b"); break;
+                case '\f': out.append("\\f"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private Object value() throws IOException {
+        char c = peek();
+        switch (c) {
+            case '{': return object();
+            case '[': return array();
+            case '"': return string();
+            default: return literal();
+        }
+    }
+
+    private Map<String, Object> object() throws IOException {
+        Map<String, Object> object = new LinkedHashMap<>();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            String key = string();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            object.put(key, value());
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                return object;
+            }
+            if (c != ',') {
+                throw new IOException("Expected ',' or '}' at position " + (position - 1) + " of " + text);
+            }
+        }
+    }
+
+    private List<Object> array() throws IOException {
+        List<Object> array = new ArrayList<>();
+        expect('[');
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+        while (true) {
+            skipWhitespace();
+            array.add(value());
+            skipWhitespace();
+            char c = next();
+            if (c == ']') {
+                return array;
+            }
+            if (c != ',') {
+                throw new IOException("Expected ',' or ']' at position " + (position - 1) + " of " + text);
+            }
+        }
+    }
+
+    private Object literal() throws IOException {
+        int start = position;
+        while (position < text.length() && ",}] \t\r\n".indexOf(text.charAt(position)) < 0) {
+            position++;
+        }
+        String literal = text.substring(start, position);
+        switch (literal) {
+            case "null": return null;
+            case "true": return Boolean.TRUE;
+            case "false": return Boolean.FALSE;
+            default:
+                try {
+                    return new BigDecimal(literal);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Unsupported JSON value '" + literal + "' at position " + start + " of " + text);
+                }
+        }
+    }
+
+    private String string() throws IOException {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\') {
+                char escaped = next();
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 't': value.append('\t'); break;
+                    case 'r': value.append('\r'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw new IOException("Unterminated JSON string in " + text);
+                        }
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (position >= text.length() || text.charAt(position) != expected) {
+            throw new IOException("Expected '" + expected + "' at position " + position + " of " + text);
+        }
+        position++;
+    }
+
+    private char next() throws IOException {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private char peek() throws IOException {
+        if (position >= text.length()) {
+            throw new IOException("Unexpected end of JSON in " + text);
+        }
+        return text.charAt(position);
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+}
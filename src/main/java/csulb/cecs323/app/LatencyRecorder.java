@@ -0,0 +1,99 @@
+package csulb.cecs323.app;
+
+import java.util.Arrays;
+
+/**
+ * LatencyRecorder keeps the most recent latency samples of an operation in a fixed size ring,
+ * so percentiles can be read at any time without the memory use growing with the number of samples.
+ * Count, total and maximum cover every sample ever recorded, the percentiles cover the samples still in the ring.
+ */
+public class LatencyRecorder {
+
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * Constructor for a recorder that keeps the given number of recent samples
+     * @param capacity the number of samples the percentiles are computed over
+     */
+    public LatencyRecorder(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    /**
+     * Adds a single latency sample
+     * @param nanos the latency of one operation in nanoseconds
+     */
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * Obtains the number of samples recorded since creation
+     * @return the total number of samples
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Obtains the sum of every sample recorded since creation
+     * @return the total latency in nanoseconds
+     */
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * Obtains the largest sample recorded since creation
+     * @return the maximum latency in nanoseconds
+     */
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * Obtains the mean of every sample recorded since creation
+     * @return the mean latency in nanoseconds, 0 if nothing was recorded
+     */
+    public synchronized double getMeanNanos() {
+        return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    /**
+     * Computes a percentile over the recent samples
+     * @param percentile the percentile to compute, between 0 and 100
+     * @return the latency in nanoseconds at that percentile, 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (size == 0) {
+                return 0;
+            }
+            sorted = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Formats the count, mean and main percentiles in milliseconds
+     * @return a one line summary of the recorded latencies
+     */
+    @Override
+    public String toString() {
+        return String.format("count = %d, mean = %.3f ms, p50 = %.3f ms, p95 = %.3f ms, p99 = %.3f ms, max = %.3f ms",
+                getCount(), getMeanNanos() / 1e6, percentile(50) / 1e6, percentile(95) / 1e6, percentile(99) / 1e6, getMaxNanos() / 1e6);
+    }
+}
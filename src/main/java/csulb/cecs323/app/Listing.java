@@ -0,0 +1,140 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Listing reads the instances of an entity one page at a time in the order of their primary key,
+ * as views that hold only the columns a list screen shows.
+ * A page continues right after the key of the last row of the page before it (keyset pagination),
+ * so reading a page costs the same wherever it is in the listing, and rows created or removed in the meantime
+ * neither repeat nor skip the rows of the next page.
+ * The key of the last row is handed out as an opaque cursor, which the next call to {@link #page} takes back.
+ * <p>
+ * Every listing has two named queries in META-INF/orm.xml, one for the first page and one for the pages after a key,
+ * see QueryCatalog.page and QueryCatalog.pageAfter.
+ * @param <T> the view of the entity listed
+ */
+public final class Listing<T> {
+
+    public static final Listing<UserView> CHEFS = new Listing<>("Chef", UserView.class,
+            chef -> new Object[] {chef.getUserId()}, Long.class);
+    public static final Listing<CuisineView> CUISINES = new Listing<>("Cuisine", CuisineView.class,
+            cuisine -> new Object[] {cuisine.getCuisineId()}, Long.class);
+    public static final Listing<RecipeView> RECIPES = new Listing<>("Recipe", RecipeView.class,
+            recipe -> new Object[] {recipe.getRecipeId()}, Long.class);
+    /** The recipes with their names only, without the description */
+    public static final Listing<RecipeView> RECIPE_NAMES = new Listing<>("Recipe.names", RecipeView.class,
+            recipe -> new Object[] {recipe.getRecipeId()}, Long.class);
+    public static final Listing<IngredientView> INGREDIENTS = new Listing<>("Ingredient", IngredientView.class,
+            ingredient -> new Object[] {ingredient.getName()}, String.class);
+    /** Ordered by recipe and ingredient */
+    public static final Listing<IngredientAmountView> INGREDIENT_AMOUNTS = new Listing<>("IngredientAmount", IngredientAmountView.class,
+            amount -> new Object[] {amount.getRecipeId(), amount.getIngredientName()}, Long.class, String.class);
+    public static final Listing<UserView> FOOD_CRITICS = new Listing<>("FoodCritic", UserView.class,
+            critic -> new Object[] {critic.getUserId()}, Long.class);
+    public static final Listing<UserView> FOOD_CRITICS_WITH_FOLLOWERS = new Listing<>("FoodCritic.withFollowers", UserView.class,
+            critic -> new Object[] {critic.getUserId()}, Long.class);
+    public static final Listing<ReviewView> REVIEWS = new Listing<>("Review", ReviewView.class,
+            review -> new Object[] {review.getReviewId()}, Long.class);
+
+    /** Names of the parameters the pageAfter queries take the key of the last row in, one per key column */
+    private static final String[] AFTER = {QueryCatalog.AFTER, QueryCatalog.AFTER_NAME};
+
+    private static final String SEPARATOR = "\n";
+
+    private final String name;
+    private final Class<T> type;
+    private final Function<T, Object[]> key;
+    private final Class<?>[] keyTypes;
+
+    private Listing(String name, Class<T> type, Function<T, Object[]> key, Class<?>... keyTypes) {
+        this.name = name;
+        this.type = type;
+        this.key = key;
+        this.keyTypes = keyTypes;
+    }
+
+    /**
+     * Reads one page of the listing
+     * @param entityManager the entity manager that reads the rows
+     * @param cursor null for the first page, otherwise the next cursor of the page before
+     * @param size the largest number of rows on the page
+     * @return the rows of the page, the page is only empty if the listing is
+     * @throws IllegalArgumentException if the cursor was not handed out by this listing
+     */
+    public Page<T> page(EntityManager entityManager, String cursor, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("A page has at least one row");
+        }
+        TypedQuery<T> query;
+        if (cursor == null) {
+            query = entityManager.createNamedQuery(QueryCatalog.page(name), type);
+        } else {
+            Object[] after = decode(cursor);
+            query = entityManager.createNamedQuery(QueryCatalog.pageAfter(name), type);
+            for (int i = 0; i < after.length; i++) {
+                query.setParameter(AFTER[i], after[i]);
+            }
+        }
+        // one row more than the page tells whether there is a next page without counting the rows
+        List<T> rows = query.setMaxResults(size + 1).getResultList();
+        if (rows.size() <= size) {
+            return new Page<>(rows, null);
+        }
+        rows = new ArrayList<>(rows.subList(0, size));
+        return new Page<>(rows, encode(key.apply(rows.get(size - 1))));
+    }
+
+    /**
+     * Tells whether the listing has no rows at all
+     * @param entityManager the entity manager that looks for a row
+     * @return true if there is nothing to list
+     */
+    public boolean isEmpty(EntityManager entityManager) {
+        return entityManager.createNamedQuery(QueryCatalog.page(name), type).setMaxResults(1).getResultList().isEmpty();
+    }
+
+    /**
+     * Obtains the name of the listing, its queries are named after it
+     * @return the name, e.g. Recipe
+     */
+    public String getName() {
+        return name;
+    }
+
+    private String encode(Object[] values) {
+        StringBuilder text = new StringBuilder(name);
+        for (Object value : values) {
+            text.append(SEPARATOR).append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Object[] decode(String cursor) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR, keyTypes.length + 1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Not a cursor: " + cursor, e);
+        }
+        // the last key column is the only one that can be a string, so the separator can only be in it
+        if (parts.length != keyTypes.length + 1 || !parts[0].equals(name)) {
+            throw new IllegalArgumentException("Not a cursor of the " + name + " listing: " + cursor);
+        }
+        Object[] values = new Object[keyTypes.length];
+        for (int i = 0; i < values.length; i++) {
+            try {
+                values[i] = keyTypes[i] == Long.class ? (Object) Long.valueOf(parts[i + 1]) : parts[i + 1];
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Not a cursor of the " + name + " listing: " + cursor, e);
+            }
+        }
+        return values;
+    }
+}
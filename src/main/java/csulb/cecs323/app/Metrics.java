@@ -0,0 +1,67 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Metrics exports the MXBeans of the caches, the ingredient dictionary and the connection pool of a session over JMX
+ * as csulb.cecs323:type={type},name={session name} and unregisters them when the session logs out.
+ * A name that is registered already, e.g. by a second factory of the same persistence unit, is left to its owner,
+ * and a bean that cannot be registered is only logged, the session runs without its metrics then.
+ */
+public final class Metrics {
+
+    private static final Logger LOGGER = Logger.getLogger(Metrics.class.getName());
+
+    private Metrics() {
+    }
+
+    /**
+     * Exports the metrics of a part of the session until it logs out
+     * @param session the session the bean belongs to
+     * @param type the type key of the name, the simple name of the class of the bean
+     * @param bean the MXBean to register
+     */
+    public static void export(Session session, String type, Object bean) {
+        export(session, type, null, bean);
+    }
+
+    /**
+     * Exports the metrics of a part of the session that exists once per entity until the session logs out
+     * @param session the session the bean belongs to
+     * @param type the type key of the name, the simple name of the class of the bean
+     * @param entity the entity key of the name, or null for a bean of the whole session
+     * @param bean the MXBean to register
+     */
+    public static void export(Session session, String type, String entity, Object bean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("csulb.cecs323:type=" + type + ",name=" + ObjectName.quote(session.getName())
+                    + (entity == null ? "" : ",entity=" + entity));
+            if (server.isRegistered(name)) {
+                return;
+            }
+            server.registerMBean(bean, name);
+            session.getEventManager().addListener(new SessionEventAdapter() {
+                @Override
+                public void postLogout(SessionEvent event) {
+                    try {
+                        server.unregisterMBean(name);
+                    } catch (JMException e) {
+                        LOGGER.log(Level.FINE, "Unable to unregister the metrics " + name, e);
+                    }
+                }
+            });
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Unable to register the " + type + " metrics", e);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Chef;
+import csulb.cecs323.model.Cuisine;
+import csulb.cecs323.model.Ingredient;
+import csulb.cecs323.model.IngredientAmount;
+import csulb.cecs323.model.Recipe;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * NewRecipe gathers a recipe that is being created, the amounts of its ingredients by name and the ingredients
+ * that do not exist yet, and writes all of it in one transaction. The addRecipe menu of CookBook and
+ * POST /recipes of CookBookServer both create their recipes through it.
+ * <p>
+ * Whether an ingredient is new is answered from the IngredientDictionary. The new ingredients are upserted,
+ * so one that someone else created in the meantime is simply used, and they are added to the ingredients of the cuisine.
+ * The links of the chef and the cuisine are upserted too, so their other cuisines and ingredients are not read, see Upserts.
+ */
+public final class NewRecipe {
+
+    private final Recipe recipe;
+    private final IngredientDictionary dictionary;
+    private final Map<String, Ingredient> newIngredients = new LinkedHashMap<>();
+    private final List<String> amountNames = new ArrayList<>();
+    private final List<String> amountUnits = new ArrayList<>();
+    private final List<Float> amountValues = new ArrayList<>();
+
+    /**
+     * Starts a new recipe, its steps are added to the recipe itself
+     * @param recipe the recipe to create
+     * @param dictionary the ingredient dictionary of the persistence unit
+     */
+    public NewRecipe(Recipe recipe, IngredientDictionary dictionary) {
+        this.recipe = recipe;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Tells whether an ingredient is neither in the database nor one of the new ingredients of the recipe
+     * @param entityManager the entity manager to load the dictionary with, the first time it is used
+     * @param name the name of the ingredient
+     * @return true if the ingredient has to be created with the recipe
+     */
+    public boolean isNewIngredient(EntityManager entityManager, String name) {
+        return !newIngredients.containsKey(name) && !dictionary.contains(entityManager, name);
+    }
+
+    /**
+     * Adds an ingredient that is created with the recipe, unless it exists by then
+     * @param ingredient the new ingredient
+     */
+    public void addIngredient(Ingredient ingredient) {
+        newIngredients.put(ingredient.getName(), ingredient);
+    }
+
+    /**
+     * Adds the amount of an ingredient the recipe needs
+     * @param ingredientName the name of an existing or new ingredient
+     * @param units the units the amount is measured in
+     * @param amount the amount needed
+     */
+    public void addAmount(String ingredientName, String units, float amount) {
+        amountNames.add(ingredientName);
+        amountUnits.add(units);
+        amountValues.add(amount);
+    }
+
+    /**
+     * Writes the recipe with its steps, new ingredients and ingredient amounts for the chef and cuisine,
+     * in the transaction of the entity manager, which the caller began and commits
+     * @param entityManager the entity manager to write with
+     * @param chef the chef of the recipe
+     * @param cuisine the cuisine of the recipe
+     * @return the names of the ingredients that have been deleted in the meantime, their amounts are left out
+     */
+    public List<String> create(EntityManager entityManager, Chef chef, Cuisine cuisine) {
+        Upserts.ingredients(entityManager, newIngredients.values());
+        Map<String, Ingredient> usedIngredients = dictionary.fetch(entityManager, amountNames);
+        List<Ingredient> cuisineIngredients = new ArrayList<>();
+        for (String name : newIngredients.keySet()) {
+            if (usedIngredients.containsKey(name)) {
+                cuisineIngredients.add(usedIngredients.get(name));
+            }
+        }
+
+        cuisine.addRecipe(recipe);
+        chef.addRecipe(recipe);
+        Upserts.familiarCuisine(entityManager, chef, cuisine);
+        Upserts.cuisineIngredients(entityManager, cuisine, cuisineIngredients);
+
+        List<Object> entities = new ArrayList<>();
+        entities.add(recipe);
+        List<String> deleted = new ArrayList<>();
+        for (int i = 0; i < amountNames.size(); i++) {
+            Ingredient ingredient = usedIngredients.get(amountNames.get(i));
+            if (ingredient == null) {
+                deleted.add(amountNames.get(i));
+                continue;
+            }
+            // the amount adds itself to the amounts of the recipe, and of the ingredient only if those are loaded
+            entities.add(new IngredientAmount(amountValues.get(i), amountUnits.get(i), recipe, ingredient));
+        }
+        new BulkPersister().persistAll(entityManager, entities);
+        return deleted;
+    }
+}
@@ -0,0 +1,43 @@
+package csulb.cecs323.app;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Page holds the rows of one page of a Listing, together with the cursor that continues the listing after them
+ * @param <T> the type of the rows
+ */
+public final class Page<T> {
+
+    private final List<T> rows;
+    private final String nextCursor;
+
+    Page(List<T> rows, String nextCursor) {
+        this.rows = Collections.unmodifiableList(rows);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Obtains the rows of the page in the order of the listing
+     * @return the rows, which must not be changed
+     */
+    public List<T> getRows() {
+        return rows;
+    }
+
+    /**
+     * Obtains the cursor to pass to Listing.page for the page after this one
+     * @return the cursor, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Tells whether there are rows after this page
+     * @return true if getNextCursor leads to another page
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
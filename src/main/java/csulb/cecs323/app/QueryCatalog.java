@@ -0,0 +1,99 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * QueryCatalog lists the names and parameters of the named queries defined in META-INF/orm.xml.
+ * Every query of the application is looked up by one of these names and given its values as bind parameters,
+ * so the JPQL is parsed once at deployment and the SQL text stays the same from one execution to the next.
+ */
+public final class QueryCatalog {
+
+    public static final String INGREDIENTS_BY_NAMES = "Ingredient.findByNames";
+    public static final String INGREDIENT_NAMES = "Ingredient.names";
+    public static final String RECIPES_BY_IDS = "Recipe.findByIds";
+    public static final String CUISINE_BY_NAME_AND_REGION = "Cuisine.findIdByNameAndRegion";
+    public static final String FOOD_CRITIC_BY_ID = "FoodCritic.findById";
+    public static final String INGREDIENT_AMOUNT_BY_KEY = "IngredientAmount.findByKey";
+    public static final String FOOD_CRITICS_WITH_FOLLOWERS = "FoodCritic.findWithFollowers";
+
+    /** Texts the RecipeSearchIndex is built from */
+    public static final String RECIPE_SEARCH_TEXTS = "Recipe.searchTexts";
+    public static final String RECIPE_STEP_DESCRIPTIONS = "Recipe.stepDescriptions";
+
+    /** Native query of the recipes with their chef and number of reviews, the ChefLeaderboard is built from */
+    public static final String RECIPE_CHEF_REVIEW_COUNTS = "Recipe.chefReviewCounts";
+    public static final String CHEF_NAMES_BY_IDS = "Chef.namesByIds";
+
+    /** Ingredients no recipe uses, read from the recipe counts IngredientUsage keeps */
+    public static final String UNUSED_INGREDIENTS = "Ingredient.unused";
+    public static final String UNUSED_INGREDIENTS_OF_TYPE = "Ingredient.unusedOfType";
+
+    public static final String RECIPE_CLEAR_CUISINE = "Recipe.clearCuisine";
+
+    public static final String REPORT_CHEF_WITH_FEWEST_INGREDIENTS = "Report.chefWithFewestIngredients";
+    public static final String REPORT_UNUSED_INGREDIENTS = "Report.unusedIngredients";
+    public static final String REPORT_RECIPES_ABOVE_AVERAGE_RATING = "Report.recipesAboveAverageRating";
+    public static final String REPORT_FOOD_CRITIC_REVIEWS = "Report.foodCriticReviews";
+    /** Native query, the recipe id is bound as positional parameter 1 */
+    public static final String REPORT_RECIPE_STEPS = "Report.recipeSteps";
+
+    public static final String NAME = "name";
+    public static final String NAMES = "names";
+    public static final String REGION = "region";
+    public static final String TYPE = "type";
+    public static final String IDS = "ids";
+    public static final String USER_ID = "userId";
+    public static final String CUISINE_ID = "cuisineId";
+    public static final String RECIPE_ID = "recipeId";
+    /** Key of the last row of the page before, see Listing */
+    public static final String AFTER = "after";
+    public static final String AFTER_NAME = "afterName";
+
+    private QueryCatalog() {
+    }
+
+    /**
+     * Obtains the name of the query listing every instance of an entity
+     * @param entityName the entity name, e.g. Chef or IngredientAmount
+     * @return the name of the findAll query of that entity
+     */
+    public static String findAll(String entityName) {
+        return entityName + ".findAll";
+    }
+
+    /**
+     * Obtains the name of the query reading the first page of a listing
+     * @param listingName the name of the listing, e.g. Recipe
+     * @return the name of the query, ordered by the key of the listing
+     */
+    public static String page(String listingName) {
+        return listingName + ".page";
+    }
+
+    /**
+     * Obtains the name of the query reading the page of a listing after a key
+     * @param listingName the name of the listing, e.g. Recipe
+     * @return the name of the query, it takes the key in the parameters after and, for a second key column, afterName
+     */
+    public static String pageAfter(String listingName) {
+        return listingName + ".pageAfter";
+    }
+
+    /**
+     * Formats the hit rates of the JPQL parse cache and the JDBC statement cache of a factory
+     * @param factory the factory created for the CookBook persistence unit
+     * @return a one line summary of both caches
+     */
+    public static String cacheStatistics(EntityManagerFactory factory) {
+        JpqlParseCache parseCache = JpqlParseCache.of(factory.unwrap(JpaEntityManagerFactory.class).getServerSession());
+        ConnectionPool pool = ConnectionPoolCustomizer.poolOf(factory);
+        return String.format("Query caches[%s, statement cache hits = %s, misses = %s, hit rate = %s]",
+                parseCache == null ? "JpqlParseCache[not installed]" : parseCache,
+                pool == null ? "n/a" : pool.getStatementCacheHits(),
+                pool == null ? "n/a" : pool.getStatementCacheMisses(),
+                pool == null ? "n/a" : String.format("%.1f%%", pool.getStatementCacheHitRate() * 100));
+    }
+}
@@ -0,0 +1,345 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Review;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.DescriptorEvent;
+import org.eclipse.persistence.descriptors.DescriptorEventAdapter;
+import org.eclipse.persistence.exceptions.DatabaseException;
+import org.eclipse.persistence.internal.databaseaccess.DatabaseCall;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.ObjectReferenceChangeRecord;
+import org.eclipse.persistence.mappings.ObjectReferenceMapping;
+import org.eclipse.persistence.queries.DataModifyQuery;
+import org.eclipse.persistence.queries.WriteObjectQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.eclipse.persistence.sessions.changesets.ChangeRecord;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * RatingAggregates keeps the recipe_rating table, the number of reviews of every recipe and the sum, lowest and highest
+ * of their ratings, in step with the review table. The report of the recipes rated above the average reads it
+ * instead of grouping every review, see the Report.recipesAboveAverageRating query.
+ * <p>
+ * The reviews EclipseLink inserts, updates or deletes are collected by recipe in the unit of work. Once the statements
+ * of a flush or commit have run, and before its transaction commits, the row of every recipe involved is changed
+ * with one SQL statement, so the aggregates commit or roll back together with the reviews.
+ * Only removing the lowest or highest rating of a recipe reads the remaining ratings of that recipe.
+ * The first reviews of a recipe insert its row from their own ratings with a MERGE, so two transactions adding
+ * the first reviews of the same recipe at the same time do not wait for each other's reviews.
+ * An update that changes the rating or the recipe of a review computes the rows of the recipes involved again.
+ * The average of all recipes is the sum of the rating sums over the sum of the counts, so no single row
+ * is written by every review.
+ * <p>
+ * Reviews written with plain JDBC, like the seed data, are not seen. {@link #rebuild(Connection)} computes the table
+ * from scratch and reports the recipes whose row was off, a data migration runs it after the seed data is loaded.
+ * Usage: RatingAggregates, rebuilds the aggregates of the database of the persistence unit
+ */
+public final class RatingAggregates {
+
+    private static final Logger LOGGER = Logger.getLogger(RatingAggregates.class.getName());
+
+    /** Property of the unit of work holding the changes of its reviews to the aggregates, by recipe id */
+    private static final String CHANGES = RatingAggregates.class.getName() + ".changes";
+
+    // the lowest and highest are only read again when a removed rating was one of them
+    private static final String APPLY =
+            "UPDATE recipe_rating SET review_count = review_count + ?, rating_sum = rating_sum + ?, " +
+            "min_rating = CASE WHEN min_rating >= ? THEN COALESCE((SELECT MIN(rating) FROM review WHERE recipe_id = ?), min_rating) " +
+            "WHEN ? < min_rating THEN ? ELSE min_rating END, " +
+            "max_rating = CASE WHEN max_rating <= ? THEN COALESCE((SELECT MAX(rating) FROM review WHERE recipe_id = ?), max_rating) " +
+            "WHEN ? > max_rating THEN ? ELSE max_rating END " +
+            "WHERE recipe_id = ?";
+
+    // without reviews removed nothing is read, Derby runs the subqueries above even when their CASE is not taken
+    // and they would wait for the reviews other transactions are adding to the same recipe.
+    // It also adds the ratings when the insert of MERGE_ADD ran into the row another transaction inserted
+    private static final String ADD =
+            "UPDATE recipe_rating SET review_count = review_count + ?, rating_sum = rating_sum + ?, " +
+            "min_rating = CASE WHEN ? < min_rating THEN ? ELSE min_rating END, " +
+            "max_rating = CASE WHEN ? > max_rating THEN ? ELSE max_rating END " +
+            "WHERE recipe_id = ?";
+
+    // the first reviews of a recipe insert its row from their ratings alone, reading the reviews of the recipe
+    // would wait for the reviews other transactions are adding to it, while they wait for this one's
+    private static final String MERGE_ADD =
+            "MERGE INTO recipe_rating t USING SYSIBM.SYSDUMMY1 ON t.recipe_id = ? " +
+            "WHEN MATCHED THEN UPDATE SET review_count = t.review_count + ?, rating_sum = t.rating_sum + ?, " +
+            "min_rating = CASE WHEN ? < t.min_rating THEN ? ELSE t.min_rating END, " +
+            "max_rating = CASE WHEN ? > t.max_rating THEN ? ELSE t.max_rating END " +
+            "WHEN NOT MATCHED THEN INSERT (recipe_id, review_count, rating_sum, min_rating, max_rating) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DROP_EMPTY =
+            "DELETE FROM recipe_rating WHERE recipe_id = ? AND review_count <= 0";
+
+    private static final String DROP =
+            "DELETE FROM recipe_rating WHERE recipe_id = ?";
+
+    private static final String COMPUTE =
+            "INSERT INTO recipe_rating (recipe_id, review_count, rating_sum, min_rating, max_rating) " +
+            "SELECT recipe_id, COUNT(*), SUM(CAST(rating AS DOUBLE)), MIN(rating), MAX(rating) FROM review WHERE recipe_id = ? GROUP BY recipe_id";
+
+    private static final String COMPUTE_ALL =
+            "SELECT recipe_id, COUNT(*), SUM(CAST(rating AS DOUBLE)), MIN(rating), MAX(rating) FROM review GROUP BY recipe_id";
+
+    private static final String READ_ALL =
+            "SELECT recipe_id, review_count, rating_sum, min_rating, max_rating FROM recipe_rating";
+
+    private static final String DUPLICATE_KEY = "23505";
+
+    private RatingAggregates() {
+    }
+
+    public static void main(String[] args) throws SQLException {
+        SchemaMigrator.Mode mode = SchemaMigrator.Mode.MIGRATE;
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook", mode.persistenceProperties());
+        try {
+            factory.createEntityManager().close();
+            new SchemaMigrator(factory).run(mode);
+            try (Connection connection = new Database(factory).connect()) {
+                connection.setAutoCommit(false);
+                rebuild(connection);
+                connection.commit();
+            }
+            ReportCache.of(factory).clear();
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * Writes the aggregates of the recipe of every review EclipseLink inserts, updates or deletes
+     * @param session the session of the persistence unit, before it logs in
+     */
+    public static void install(Session session) {
+        ClassDescriptor descriptor = session.getDescriptor(Review.class);
+        ObjectReferenceMapping recipe = (ObjectReferenceMapping) descriptor.getMappingForAttributeName("recipe");
+        descriptor.getEventManager().addListener(new DescriptorEventAdapter() {
+
+            @Override
+            public void postInsert(DescriptorEvent event) {
+                changeOf(event, recipeId(event)).add(((Review) event.getObject()).getRating());
+            }
+
+            @Override
+            public void postDelete(DescriptorEvent event) {
+                changeOf(event, recipeId(event)).remove(((Review) event.getObject()).getRating());
+            }
+
+            @Override
+            public void postUpdate(DescriptorEvent event) {
+                ObjectChangeSet change = ((WriteObjectQuery) event.getQuery()).getObjectChangeSet();
+                if (change == null) {
+                    return;
+                }
+                ChangeRecord recipeChange = change.getChangesForAttributeNamed("recipe");
+                if (recipeChange == null && change.getChangesForAttributeNamed("rating") == null) {
+                    return;
+                }
+                // the rating before the update is not at hand, the recipes involved are computed again from their reviews
+                changeOf(event, recipeId(event)).recompute = true;
+                if (recipeChange != null) {
+                    Object before = ((ObjectReferenceChangeRecord) recipeChange).getOldValue();
+                    if (before instanceof ObjectChangeSet) {
+                        changeOf(event, ((ObjectChangeSet) before).getId()).recompute = true;
+                    } else if (before != null) {
+                        changeOf(event, recipe.getReferenceDescriptor().getObjectBuilder()
+                                .extractPrimaryKeyFromObject(before, event.getSession())).recompute = true;
+                    }
+                }
+            }
+
+            /**
+             * Reads the id of the review's recipe off the foreign key, without loading the recipe
+             */
+            private Object recipeId(DescriptorEvent event) {
+                return recipe.extractPrimaryKeysForReferenceObject(event.getObject(), event.getSession());
+            }
+        });
+
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void prepareUnitOfWork(SessionEvent event) {
+                // every statement of the flush or commit has run, its transaction has not committed yet
+                UnitOfWork unitOfWork = (UnitOfWork) event.getSession();
+                @SuppressWarnings("unchecked")
+                Map<Object, Change> changes = (Map<Object, Change>) unitOfWork.getProperty(CHANGES);
+                if (changes != null) {
+                    unitOfWork.removeProperty(CHANGES);
+                    apply((AbstractSession) unitOfWork, changes);
+                }
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Change changeOf(DescriptorEvent event, Object recipeId) {
+        if (recipeId == null) {
+            // a review always has a recipe, the change would not be written anywhere
+            return new Change();
+        }
+        AbstractSession session = event.getSession();
+        Map<Object, Change> changes = (Map<Object, Change>) session.getProperty(CHANGES);
+        if (changes == null) {
+            // rows are written in the order of the recipe ids, so two transactions writing the same recipes cannot deadlock
+            changes = new TreeMap<>();
+            session.setProperty(CHANGES, changes);
+        }
+        return changes.computeIfAbsent(recipeId, id -> new Change());
+    }
+
+    private static void apply(AbstractSession session, Map<Object, Change> changes) {
+        for (Map.Entry<Object, Change> entry : changes.entrySet()) {
+            Object recipeId = entry.getKey();
+            Change change = entry.getValue();
+            if (change.recompute) {
+                execute(session, DROP, recipeId);
+                execute(session, COMPUTE, recipeId);
+                continue;
+            }
+            if (!change.removed) {
+                add(session, recipeId, change);
+                continue;
+            }
+            int updated = execute(session, APPLY, change.count, change.sum, change.minRemoved, recipeId, change.minAdded, change.minAdded,
+                    change.maxRemoved, recipeId, change.maxAdded, change.maxAdded, recipeId);
+            if (updated == 0 && change.count > 0) {
+                // reviews added and removed in the same unit of work were the first of the recipe
+                execute(session, COMPUTE, recipeId);
+            } else if (updated > 0) {
+                execute(session, DROP_EMPTY, recipeId);
+            }
+        }
+    }
+
+    /**
+     * Adds the ratings to the row of the recipe, or inserts the row for the first reviews of the recipe.
+     * A transaction that inserted the row first but has not committed yet is waited for and its row is updated.
+     * Only when both looked for the missing row at the same time does the insert fail on the key of the other one's row,
+     * that statement alone is rolled back and the ratings are added to the row the other one inserted.
+     */
+    private static void add(AbstractSession session, Object recipeId, Change change) {
+        try {
+            execute(session, MERGE_ADD, recipeId, change.count, change.sum, change.minAdded, change.minAdded,
+                    change.maxAdded, change.maxAdded, recipeId, change.count, change.sum, change.minAdded, change.maxAdded);
+        } catch (DatabaseException e) {
+            // the statements of the flush still batched are sent before the MERGE, their failures are not this one's
+            if (!(e.getCall() instanceof DatabaseCall) || !MERGE_ADD.equals(((DatabaseCall) e.getCall()).getSQLString())
+                    || !(e.getInternalException() instanceof SQLException)
+                    || !DUPLICATE_KEY.equals(((SQLException) e.getInternalException()).getSQLState())) {
+                throw e;
+            }
+            execute(session, ADD, change.count, change.sum, change.minAdded, change.minAdded,
+                    change.maxAdded, change.maxAdded, recipeId);
+        }
+    }
+
+    /**
+     * Runs a statement through the session, so the report cache sees the table it writes.
+     * It is not batched, the pending batch of the flush is sent first and the count of the statement is the real one.
+     * @return the number of rows changed
+     */
+    private static int execute(AbstractSession session, String sql, Object... arguments) {
+        DataModifyQuery query = new DataModifyQuery(sql);
+        query.setIsBatchExecutionSupported(false);
+        for (int i = 0; i < arguments.length; i++) {
+            query.addArgument(String.valueOf(i + 1));
+        }
+        return (Integer) session.executeQuery(query, Arrays.asList(arguments));
+    }
+
+    /**
+     * Computes the aggregates of every recipe from its reviews and replaces the table with them
+     * @param connection the connection to rebuild on, the caller commits
+     * @return the number of recipes whose row was missing, out of date or left over
+     * @throws SQLException if the database cannot be read or written
+     */
+    public static int rebuild(Connection connection) throws SQLException {
+        long start = System.nanoTime();
+        Map<Long, Object[]> computed = read(connection, COMPUTE_ALL);
+        Map<Long, Object[]> stored = read(connection, READ_ALL);
+        int drift = 0;
+        for (Map.Entry<Long, Object[]> row : computed.entrySet()) {
+            if (!same(row.getValue(), stored.remove(row.getKey()))) {
+                drift++;
+            }
+        }
+        drift += stored.size();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM recipe_rating");
+            statement.executeUpdate("INSERT INTO recipe_rating (recipe_id, review_count, rating_sum, min_rating, max_rating) " + COMPUTE_ALL);
+        }
+        LOGGER.info(String.format("Rebuilt the rating aggregates of %d recipes in %d ms, %d were off",
+                computed.size(), (System.nanoTime() - start) / 1_000_000, drift));
+        return drift;
+    }
+
+    /**
+     * What the reviews of one recipe written in a unit of work change about its aggregate.
+     * A removed rating that is not below the lowest or above the highest cannot have been either of them,
+     * the extreme values of the float range stand for no rating at all.
+     */
+    private static class Change {
+        private long count;
+        private double sum;
+        private float minAdded = Float.MAX_VALUE;
+        private float maxAdded = -Float.MAX_VALUE;
+        private float minRemoved = Float.MAX_VALUE;
+        private float maxRemoved = -Float.MAX_VALUE;
+        private boolean removed;
+        private boolean recompute;
+
+        void add(float rating) {
+            count++;
+            sum += rating;
+            minAdded = Math.min(minAdded, rating);
+            maxAdded = Math.max(maxAdded, rating);
+        }
+
+        void remove(float rating) {
+            count--;
+            sum -= rating;
+            minRemoved = Math.min(minRemoved, rating);
+            maxRemoved = Math.max(maxRemoved, rating);
+            removed = true;
+        }
+    }
+
+    private static Map<Long, Object[]> read(Connection connection, String sql) throws SQLException {
+        Map<Long, Object[]> rows = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            while (result.next()) {
+                rows.put(result.getLong(1), new Object[] {result.getLong(2), result.getDouble(3), result.getFloat(4), result.getFloat(5)});
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Compares two aggregates, the sums may differ in the last bits as the ratings were added up in another order
+     */
+    private static boolean same(Object[] computed, Object[] stored) {
+        if (stored == null) {
+            return false;
+        }
+        double sum = (Double) computed[1];
+        return computed[0].equals(stored[0]) && Math.abs(sum - (Double) stored[1]) <= 1e-9 * Math.max(1, Math.abs(sum))
+                && Objects.equals(computed[2], stored[2]) && Objects.equals(computed[3], stored[3]);
+    }
+}
@@ -0,0 +1,549 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Recipe;
+import csulb.cecs323.model.Step;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * RecipeSearchIndex is an inverted index over the name, the description and the step descriptions of every recipe.
+ * Texts are split into lower case words, and every word points to the recipes that use it and how often.
+ * A search finds the recipes that contain every word of the query, where a query word also matches the words
+ * it is the beginning of, and ranks them by how often and how rarely the matching words occur, words in the name count most.
+ * A search scores the recipes of the query word with the fewest uses and looks them up in the sorted ids of the other
+ * query words, or walks those ids where they are not many more than the candidates, so a query with one rare word stays
+ * cheap however many recipes there are. A query of common words, or of a short prefix alone, still costs about the number of
+ * recipes they match, which grows with the number of recipes.
+ * <p>
+ * The index is built from the database on the first search and kept up to date afterwards by listening to
+ * the commits of the persistence unit, so recipes created, changed or removed through JPA are found as soon as
+ * they are committed. Rows written past JPA, e.g. by the bulk loader, are picked up once {@link #invalidate()} is called.
+ */
+public class RecipeSearchIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(RecipeSearchIndex.class.getName());
+
+    private static final String PROPERTY = RecipeSearchIndex.class.getName();
+
+    static final int NAME_WEIGHT = 3;
+    static final int DESCRIPTION_WEIGHT = 1;
+    static final int STEP_WEIGHT = 1;
+    /** A query word that only is the beginning of a word scores this much of an exact match */
+    static final double PREFIX_FACTOR = 0.5;
+
+    /** every word to the recipes that use it */
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean built;
+
+    /**
+     * The words of one recipe and their weights, kept to take them out of the index again when the recipe changes.
+     * Name and description are kept apart from the steps, as the steps of a recipe are not always loaded when it changes.
+     */
+    private static class Document {
+        String[] textWords = new String[0];
+        int[] textWeights = new int[0];
+        String[] stepWords = new String[0];
+        int[] stepWeights = new int[0];
+    }
+
+    /**
+     * The recipes that use one word, as ids in ascending order with the weighted number of times each recipe uses the word.
+     * Plain arrays keep an entry at 12 bytes, so millions of recipes fit in memory, and new recipes, having the highest ids,
+     * are appended at the end.
+     */
+    private static class Postings {
+        final String word;
+        long[] ids = new long[2];
+        int[] weights = new int[2];
+        int size;
+
+        Postings(String word) {
+            this.word = word;
+        }
+
+        void add(long id, int weight) {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if (slot >= 0) {
+                weights[slot] += weight;
+                return;
+            }
+            slot = -slot - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            System.arraycopy(ids, slot, ids, slot + 1, size - slot);
+            System.arraycopy(weights, slot, weights, slot + 1, size - slot);
+            ids[slot] = id;
+            weights[slot] = weight;
+            size++;
+        }
+
+        void subtract(long id, int weight) {
+            int slot = Arrays.binarySearch(ids, 0, size, id);
+            if (slot < 0) {
+                return;
+            }
+            weights[slot] -= weight;
+            if (weights[slot] <= 0) {
+                System.arraycopy(ids, slot + 1, ids, slot, size - slot - 1);
+                System.arraycopy(weights, slot + 1, weights, slot, size - slot - 1);
+                size--;
+            }
+        }
+    }
+
+    /**
+     * The postings one query word matches, with the weight a use counts for in each of them
+     */
+    private static class Match {
+        final Postings[] postings;
+        final double[] weights;
+        int size;
+        /** the number of uses in all of the postings, at least the number of recipes the query word matches */
+        long uses;
+
+        Match(int capacity) {
+            postings = new Postings[capacity];
+            weights = new double[capacity];
+        }
+
+        void add(Postings matching, double weight) {
+            postings[size] = matching;
+            weights[size] = weight;
+            size++;
+            uses += matching.size;
+        }
+
+        /**
+         * Scores every recipe that uses one of the words
+         */
+        Map<Long, Double> scores() {
+            Map<Long, Double> scores = new HashMap<>();
+            for (int p = 0; p < size; p++) {
+                Postings uses = postings[p];
+                for (int i = 0; i < uses.size; i++) {
+                    scores.merge(uses.ids[i], uses.weights[i] * weights[p], Double::sum);
+                }
+            }
+            return scores;
+        }
+
+        /**
+         * Scores the candidates that use one of the words. The candidates are looked up in the sorted ids of a word
+         * that is used by many more recipes, the ids of a word used by about as many are walked instead.
+         * @param candidates the recipes to score, by id
+         * @return the scores of the candidates that use one of the words
+         */
+        Map<Long, Double> scores(Map<Long, Double> candidates) {
+            Map<Long, Double> scores = new HashMap<>();
+            for (int p = 0; p < size; p++) {
+                Postings uses = postings[p];
+                double weight = weights[p];
+                if ((long) candidates.size() * (64 - Long.numberOfLeadingZeros(uses.size)) < uses.size) {
+                    for (Long id : candidates.keySet()) {
+                        int slot = Arrays.binarySearch(uses.ids, 0, uses.size, id);
+                        if (slot >= 0) {
+                            scores.merge(id, uses.weights[slot] * weight, Double::sum);
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < uses.size; i++) {
+                        if (candidates.containsKey(uses.ids[i])) {
+                            scores.merge(uses.ids[i], uses.weights[i] * weight, Double::sum);
+                        }
+                    }
+                }
+            }
+            return scores;
+        }
+    }
+
+
+    /**
+     * Creates an index for the session and keeps it up to date with every commit of the session
+     * @param session the session of the persistence unit, before it logs in
+     * @return the installed index
+     */
+    public static RecipeSearchIndex install(Session session) {
+        RecipeSearchIndex index = new RecipeSearchIndex();
+        session.setProperty(PROPERTY, index);
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                index.apply((UnitOfWorkImpl) event.getSession());
+            }
+        });
+        return index;
+    }
+
+    /**
+     * Finds the index of a factory of the CookBook persistence unit
+     * @param factory the factory to look into
+     * @return the index of the factory
+     */
+    public static RecipeSearchIndex of(EntityManagerFactory factory) {
+        Object index = factory.unwrap(JpaEntityManagerFactory.class).getServerSession().getProperty(PROPERTY);
+        if (index == null) {
+            throw new IllegalStateException("The recipe search index is not installed, check the session customizer in persistence.xml");
+        }
+        return (RecipeSearchIndex) index;
+    }
+
+    /**
+     * Splits a text into the lower case words the index is made of
+     * @param text the text to split, may be null
+     * @return the words in the order they appear
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text != null) {
+            for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Searches the recipes and loads the best matches
+     * @param entityManager the entity manager the recipes are loaded with, also used to build the index on first use
+     * @param query the words to search for
+     * @param limit the maximum number of recipes returned
+     * @return the matching recipes, best match first
+     */
+    public List<Recipe> findRecipes(EntityManager entityManager, String query, int limit) {
+        List<Long> ids = search(entityManager, query, limit);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Recipe> found = new HashMap<>();
+        for (Recipe recipe : entityManager.createNamedQuery(QueryCatalog.RECIPES_BY_IDS, Recipe.class)
+                .setParameter(QueryCatalog.IDS, ids)
+                .getResultList()) {
+            found.put(recipe.getRecipeId(), recipe);
+        }
+        List<Recipe> recipes = new ArrayList<>();
+        for (Long id : ids) {
+            // a recipe removed since the search is simply left out
+            Recipe recipe = found.get(id);
+            if (recipe != null) {
+                recipes.add(recipe);
+            }
+        }
+        return recipes;
+    }
+
+    /**
+     * Searches the recipes, building the index from the database if this is the first search
+     * @param entityManager the entity manager the index is built with on first use
+     * @param query the words to search for
+     * @param limit the maximum number of ids returned
+     * @return the ids of the matching recipes, best match first
+     */
+    public List<Long> search(EntityManager entityManager, String query, int limit) {
+        if (!built) {
+            build(entityManager);
+        }
+        return search(query, limit);
+    }
+
+    /**
+     * Searches the recipes that are in the index
+     * @param query the words to search for
+     * @param limit the maximum number of ids returned
+     * @return the ids of the matching recipes, best match first
+     */
+    public List<Long> search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            List<Match> matches = new ArrayList<>();
+            for (String word : words) {
+                Match match = match(word);
+                if (match.uses == 0) {
+                    return new ArrayList<>();
+                }
+                matches.add(match);
+            }
+            // only recipes matching every word are candidates, so only the recipes of the rarest word are scored
+            // and the other words are looked up for them, the rarer ones first to drop the candidates early
+            matches.sort(Comparator.comparingLong(match -> match.uses));
+            Map<Long, Double> result = matches.get(0).scores();
+            for (int i = 1; i < matches.size() && !result.isEmpty(); i++) {
+                Map<Long, Double> scores = matches.get(i).scores(result);
+                result.keySet().retainAll(scores.keySet());
+                result.replaceAll((id, score) -> score + scores.get(id));
+            }
+            return best(result, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a recipe to the index or replaces what the index knows about it
+     * @param recipeId the id of the recipe
+     * @param name the name of the recipe
+     * @param description the description of the recipe
+     * @param steps the descriptions of the steps, or null to keep the steps the index knows of
+     */
+    public void put(long recipeId, String name, String description, Collection<String> steps) {
+        lock.writeLock().lock();
+        try {
+            Document document = documents.computeIfAbsent(recipeId, id -> new Document());
+            unpost(recipeId, document.textWords, document.textWeights);
+            Map<String, Integer> text = new HashMap<>();
+            count(text, name, NAME_WEIGHT);
+            count(text, description, DESCRIPTION_WEIGHT);
+            document.textWords = post(recipeId, text);
+            document.textWeights = weights(text, document.textWords);
+            if (steps != null) {
+                unpost(recipeId, document.stepWords, document.stepWeights);
+                Map<String, Integer> stepText = new HashMap<>();
+                for (String step : steps) {
+                    count(stepText, step, STEP_WEIGHT);
+                }
+                document.stepWords = post(recipeId, stepText);
+                document.stepWeights = weights(stepText, document.stepWords);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes a recipe out of the index
+     * @param recipeId the id of the recipe
+     */
+    public void remove(long recipeId) {
+        lock.writeLock().lock();
+        try {
+            Document document = documents.remove(recipeId);
+            if (document != null) {
+                unpost(recipeId, document.textWords, document.textWeights);
+                unpost(recipeId, document.stepWords, document.stepWeights);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Obtains the number of recipes in the index
+     * @return the number of recipes
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Obtains the number of different words in the index
+     * @return the number of words
+     */
+    public int words() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads every recipe from the database into the index, unless that has been done already
+     * @param entityManager the entity manager the recipes are read with
+     */
+    public void build(EntityManager entityManager) {
+        lock.writeLock().lock();
+        try {
+            if (built) {
+                return;
+            }
+            long start = System.nanoTime();
+            Map<Long, List<String>> steps = new HashMap<>();
+            for (Object[] row : entityManager.createNamedQuery(QueryCatalog.RECIPE_STEP_DESCRIPTIONS, Object[].class).getResultList()) {
+                steps.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add((String) row[1]);
+            }
+            for (Object[] row : entityManager.createNamedQuery(QueryCatalog.RECIPE_SEARCH_TEXTS, Object[].class).getResultList()) {
+                long id = (Long) row[0];
+                put(id, (String) row[1], (String) row[2], steps.getOrDefault(id, Collections.emptyList()));
+            }
+            built = true;
+            LOGGER.info(String.format("Built the recipe search index of %d recipes and %d words in %d ms",
+                    documents.size(), postings.size(), (System.nanoTime() - start) / 1_000_000));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empties the index, it is built from the database again on the next search
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            built = false;
+            postings.clear();
+            documents.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Brings the index up to date with the recipes a unit of work committed.
+     * Recipes whose name, description and steps did not change are left alone.
+     */
+    private void apply(UnitOfWorkImpl unitOfWork) {
+        UnitOfWorkChangeSet changes = (UnitOfWorkChangeSet) unitOfWork.getUnitOfWorkChangeSet();
+        if (changes == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!built) {
+                // the build reads the committed state anyway
+                return;
+            }
+            String recipeClass = Recipe.class.getName();
+            for (ObjectChangeSet deleted : changes.getDeletedObjects().keySet()) {
+                if (recipeClass.equals(deleted.getClassName())) {
+                    remove((Long) deleted.getId());
+                }
+            }
+            for (ObjectChangeSet changed : changes.getAllChangeSets().keySet()) {
+                if (!recipeClass.equals(changed.getClassName()) || changes.getDeletedObjects().containsKey(changed)) {
+                    continue;
+                }
+                List<String> attributes = changed.getChangedAttributeNames();
+                boolean stepsChanged = changed.isNew() || attributes.contains("stepList");
+                if (stepsChanged || attributes.contains("name") || attributes.contains("description")) {
+                    Recipe recipe = (Recipe) changed.getUnitOfWorkClone();
+                    List<String> steps = null;
+                    if (stepsChanged) {
+                        steps = new ArrayList<>();
+                        for (Step step : recipe.getStepList()) {
+                            steps.add(step.getDescription());
+                        }
+                    }
+                    put(recipe.getRecipeId(), recipe.getName(), recipe.getDescription(), steps);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the postings of a query word, of the word itself and of the words it is the beginning of
+     */
+    private Match match(String word) {
+        Collection<Postings> matching = postings.subMap(word, true, word + Character.MAX_VALUE, false).values();
+        Match match = new Match(matching.size());
+        double recipes = Math.max(1, documents.size());
+        for (Postings uses : matching) {
+            // words used by few recipes tell more about a recipe than words used by all of them
+            match.add(uses, Math.log(1 + recipes / uses.size) * (uses.word.equals(word) ? 1 : PREFIX_FACTOR));
+        }
+        return match;
+    }
+
+    /**
+     * Picks the highest scores, on equal scores the lower id comes first
+     */
+    private static List<Long> best(Map<Long, Double> scores, int limit) {
+        Comparator<Map.Entry<Long, Double>> ranking = Map.Entry.<Long, Double>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<Long, Double>> top = new PriorityQueue<>(ranking.reversed());
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            top.add(entry);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        List<Map.Entry<Long, Double>> ranked = new ArrayList<>(top);
+        ranked.sort(ranking);
+        List<Long> ids = new ArrayList<>();
+        for (Map.Entry<Long, Double> entry : ranked) {
+            ids.add(entry.getKey());
+        }
+        return ids;
+    }
+
+    private static void count(Map<String, Integer> words, String text, int weight) {
+        for (String word : tokenize(text)) {
+            words.merge(word, weight, Integer::sum);
+        }
+    }
+
+    /**
+     * Adds the words of a recipe to their postings
+     * @return the words, as the instances the postings keep, so every word is held in memory only once
+     */
+    private String[] post(long recipeId, Map<String, Integer> words) {
+        String[] posted = new String[words.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> word : words.entrySet()) {
+            Postings uses = postings.computeIfAbsent(word.getKey(), Postings::new);
+            uses.add(recipeId, word.getValue());
+            posted[i++] = uses.word;
+        }
+        return posted;
+    }
+
+    private void unpost(long recipeId, String[] words, int[] weights) {
+        for (int i = 0; i < words.length; i++) {
+            Postings uses = postings.get(words[i]);
+            if (uses != null) {
+                uses.subtract(recipeId, weights[i]);
+                if (uses.size == 0) {
+                    postings.remove(words[i]);
+                }
+            }
+        }
+    }
+
+    private static int[] weights(Map<String, Integer> counts, String[] words) {
+        int[] weights = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            weights[i] = counts.get(words[i]);
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,43 @@
+package csulb.cecs323.app;
+
+/**
+ * RecipeView holds the columns of a recipe that the list screens show, read with a constructor expression
+ * instead of loading the Recipe with its steps, reviews and ingredient amounts.
+ * Screens that only show the name leave the description, the longest column of a recipe, unread.
+ */
+public final class RecipeView {
+
+    private final long recipeId;
+    private final String name;
+    private final String description;
+    private final int numberOfServings;
+    private final long version;
+
+    public RecipeView(long recipeId, String name) {
+        this(recipeId, name, null, 0, 0);
+    }
+
+    public RecipeView(long recipeId, String name, String description, int numberOfServings, long version) {
+        this.recipeId = recipeId;
+        this.name = name;
+        this.description = description;
+        this.numberOfServings = numberOfServings;
+        this.version = version;
+    }
+
+    public long getRecipeId() { return recipeId; }
+
+    public String getName() { return name; }
+
+    /**
+     * @return the description, null if the view was read with the name only
+     */
+    public String getDescription() { return description; }
+
+    public int getNumberOfServings() { return numberOfServings; }
+
+    /**
+     * @return the version a change of the recipe is checked against, 0 if the view was read with the name only
+     */
+    public long getVersion() { return version; }
+}
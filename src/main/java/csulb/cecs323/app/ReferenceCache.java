@@ -0,0 +1,385 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.invalidation.TimeToLiveCacheInvalidationPolicy;
+import org.eclipse.persistence.internal.identitymaps.CacheIdentityMap;
+import org.eclipse.persistence.internal.identitymaps.CacheKey;
+import org.eclipse.persistence.internal.identitymaps.IdentityMap;
+import org.eclipse.persistence.internal.identitymaps.SoftCacheWeakIdentityMap;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.queries.QueryResultsCachePolicy;
+import org.eclipse.persistence.queries.ReadAllQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReferenceCache configures the shared EclipseLink cache of an entity that is read far more often than it is written,
+ * such as Cuisine, Ingredient and Chef, and counts how well the cache serves it.
+ * The entities and their settings come from the cookbook.cache.* properties of the persistence unit:
+ * <pre>
+ * cookbook.cache.entities              the entity names, separated by commas
+ * cookbook.cache.{entity}.type         lru keeps at most size entities and drops the least recently used one,
+ *                                      soft keeps the size most recently used ones and the rest until memory runs low
+ * cookbook.cache.{entity}.size         the number of entities kept, see type
+ * cookbook.cache.{entity}.time-to-live seconds after which a cached entity is read again, 0 keeps it until it changes
+ * </pre>
+ * The results of the findAll query of each entity are kept as well and dropped when an entity is created or removed.
+ * Commits through JPA update the cache, writes that bypass JPA invalidate what they touched, see Upserts and SchemaMigrator.
+ * A hit is a find, a relationship or a cached list query answered without the database, a miss one that had to read it.
+ * An eviction is an entity dropped for the size limit or reclaimed by the garbage collector,
+ * an expiration an entity found past its time to live.
+ * The entities of an inheritance hierarchy share a single cache, so the type and size of Chef apply to every User,
+ * its evictions count users of every kind while its size only counts chefs.
+ * <p>
+ * The lru and soft caches subclass the identity maps of org.eclipse.persistence.internal.identitymaps and override
+ * their eviction, which is not a public API of EclipseLink. They are written against EclipseLink 2.7.8, the version
+ * in the pom, and have to be checked again on every upgrade. The public @Cache settings, CacheType.CACHE and
+ * CacheType.SOFT_WEAK, give the same caches without the eviction counts.
+ */
+public class ReferenceCache implements ReferenceCacheMXBean {
+
+    public static final String ENTITIES = "cookbook.cache.entities";
+
+    private static final String PREFIX = "cookbook.cache.";
+    private static final String PROPERTY = ReferenceCache.class.getName();
+    private static final String MAP_PROPERTY = ReferenceCache.class.getName() + ".identityMap";
+
+    private final String entity;
+    private final Class<?> entityClass;
+    private final String type;
+    private final int maxSize;
+    private final long timeToLiveSeconds;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private volatile IdentityMap identityMap;
+
+    private ReferenceCache(String entity, Class<?> entityClass, String type, int maxSize, long timeToLiveSeconds) {
+        this.entity = entity;
+        this.entityClass = entityClass;
+        this.type = type;
+        this.maxSize = maxSize;
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    /**
+     * Configures the cache of every entity listed in cookbook.cache.entities, counts its use
+     * and exports the metrics of every entity over JMX until the session logs out
+     * @param session the session of the persistence unit, before it logs in
+     * @return the caches, in the order of the property
+     */
+    public static List<ReferenceCache> install(Session session) {
+        List<ReferenceCache> caches = new ArrayList<>();
+        Object entities = session.getProperty(ENTITIES);
+        if (entities == null || entities.toString().trim().isEmpty()) {
+            return caches;
+        }
+        for (String entity : entities.toString().split(",")) {
+            entity = entity.trim();
+            ClassDescriptor descriptor = session.getDescriptorForAlias(entity);
+            if (descriptor == null) {
+                throw new IllegalArgumentException(ENTITIES + " names " + entity + ", which is not an entity of " + session.getName());
+            }
+            String type = property(session, entity, "type", "lru").toLowerCase();
+            int size = Integer.parseInt(property(session, entity, "size", "1000"));
+            long timeToLive = Long.parseLong(property(session, entity, "time-to-live", "0"));
+            ReferenceCache cache = new ReferenceCache(entity, descriptor.getJavaClass(), type, size, timeToLive);
+
+            // the entities of an inheritance hierarchy share the cache of its root, e.g. Chef the one of User
+            ClassDescriptor root = descriptor.hasInheritance() ? descriptor.getInheritancePolicy().getRootParentDescriptor() : descriptor;
+            if (type.equals("lru")) {
+                root.setIdentityMapClass(LruIdentityMap.class);
+            } else if (type.equals("soft")) {
+                root.setIdentityMapClass(SoftIdentityMap.class);
+            } else {
+                throw new IllegalArgumentException(PREFIX + entity + ".type is " + type + ", expected lru or soft");
+            }
+            root.setIdentityMapSize(size);
+            root.setProperty(MAP_PROPERTY, cache);
+            if (timeToLive > 0) {
+                descriptor.setCacheInvalidationPolicy(new TimeToLive(cache, timeToLive * 1000));
+            }
+            descriptor.setProperty(PROPERTY, cache);
+            caches.add(cache);
+        }
+        if (caches.isEmpty()) {
+            return caches;
+        }
+        session.setProfiler(new Profiler());
+        session.setProperty(PROPERTY, caches);
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postLogin(SessionEvent event) {
+                // the named queries of orm.xml are only known to the session once it logged in
+                for (ReferenceCache cache : caches) {
+                    cacheResults(event.getSession(), cache);
+                }
+            }
+
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                dropResults((UnitOfWorkImpl) event.getSession(), caches);
+            }
+        });
+
+        for (ReferenceCache cache : caches) {
+            Metrics.export(session, "ReferenceCache", cache.entity, cache);
+        }
+        return caches;
+    }
+
+    /**
+     * Finds the reference caches of a factory of the CookBook persistence unit
+     * @param factory the factory to look into
+     * @return the caches, empty if no entity is configured
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ReferenceCache> of(EntityManagerFactory factory) {
+        Object caches = factory.unwrap(JpaEntityManagerFactory.class).getServerSession().getProperty(PROPERTY);
+        return caches == null ? new ArrayList<>() : (List<ReferenceCache>) caches;
+    }
+
+    /**
+     * Formats the metrics of every reference cache of a factory
+     * @param factory the factory of the CookBook persistence unit
+     * @return one line per cached entity
+     */
+    public static String statistics(EntityManagerFactory factory) {
+        StringBuilder statistics = new StringBuilder("Reference caches");
+        for (ReferenceCache cache : of(factory)) {
+            statistics.append(System.lineSeparator()).append("  ").append(cache);
+        }
+        return statistics.toString();
+    }
+
+    /**
+     * Keeps the results of the findAll query of the entity, for as long as its entities are kept
+     */
+    private static void cacheResults(Session session, ReferenceCache cache) {
+        DatabaseQuery query = session.getQuery(QueryCatalog.findAll(cache.entity));
+        if (!(query instanceof ReadAllQuery)) {
+            return;
+        }
+        QueryResultsCachePolicy policy = cache.timeToLiveSeconds > 0
+                ? new QueryResultsCachePolicy(new TimeToLiveCacheInvalidationPolicy(cache.timeToLiveSeconds * 1000))
+                : new QueryResultsCachePolicy();
+        // changes to an entity do not change which entities there are, inserts and deletes are handled by dropResults
+        policy.setInvalidateOnChange(false);
+        ((ReadAllQuery) query).setQueryResultsCachePolicy(policy);
+    }
+
+    /**
+     * Drops the cached query results of every entity the unit of work created or removed an instance of.
+     * EclipseLink would drop them on any change, even when a recipe is only added to the collection of a cuisine.
+     */
+    private static void dropResults(UnitOfWorkImpl unitOfWork, List<ReferenceCache> caches) {
+        UnitOfWorkChangeSet changes = (UnitOfWorkChangeSet) unitOfWork.getUnitOfWorkChangeSet();
+        if (changes == null) {
+            return;
+        }
+        Set<String> changed = new HashSet<>();
+        for (ObjectChangeSet deleted : changes.getDeletedObjects().keySet()) {
+            changed.add(deleted.getClassName());
+        }
+        for (ObjectChangeSet change : changes.getAllChangeSets().keySet()) {
+            if (change.isNew()) {
+                changed.add(change.getClassName());
+            }
+        }
+        for (ReferenceCache cache : caches) {
+            if (changed.contains(cache.entityClass.getName())) {
+                unitOfWork.getParent().getIdentityMapAccessor().clearQueryCache(QueryCatalog.findAll(cache.entity));
+            }
+        }
+    }
+
+    private static String property(Session session, String entity, String name, String defaultValue) {
+        Object value = session.getProperty(PREFIX + entity + "." + name);
+        return value == null ? defaultValue : value.toString().trim();
+    }
+
+    private static ReferenceCache of(ClassDescriptor descriptor) {
+        return descriptor == null ? null : (ReferenceCache) descriptor.getProperty(PROPERTY);
+    }
+
+    /**
+     * Formats the live metrics of the cache
+     * @return a one line summary of the cache state
+     */
+    @Override
+    public String toString() {
+        return String.format("%s[%s, size = %d/%d, time to live = %d s, hits = %d, misses = %d, hit rate = %.1f%%, evictions = %d, expirations = %d]",
+                entity, type, getSize(), maxSize, timeToLiveSeconds, getHits(), getMisses(), getHitRate() * 100,
+                getEvictions(), getExpirations());
+    }
+
+    @Override
+    public String getEntity() { return entity; }
+
+    @Override
+    public String getType() { return type; }
+
+    @Override
+    public int getMaxSize() { return maxSize; }
+
+    @Override
+    public int getSize() {
+        IdentityMap map = identityMap;
+        return map == null ? 0 : map.getSize(entityClass, true);
+    }
+
+    @Override
+    public long getTimeToLiveSeconds() { return timeToLiveSeconds; }
+
+    @Override
+    public long getHits() { return hits.get(); }
+
+    @Override
+    public long getMisses() { return misses.get(); }
+
+    @Override
+    public double getHitRate() {
+        long found = hits.get();
+        long lookups = found + misses.get();
+        return lookups == 0 ? 0 : (double) found / lookups;
+    }
+
+    @Override
+    public long getEvictions() { return evictions.get(); }
+
+    @Override
+    public long getExpirations() { return expirations.get(); }
+
+    /**
+     * Counts the cache hits and misses EclipseLink reports for the queries of the configured entities
+     */
+    private static class Profiler extends SessionProfilerAdapter {
+
+        @Override
+        public void occurred(String operationName, DatabaseQuery query, AbstractSession session) {
+            if (query == null) {
+                return;
+            }
+            boolean hit = operationName.equals(SessionProfiler.CacheHits);
+            if (!hit && !operationName.equals(SessionProfiler.CacheMisses)) {
+                return;
+            }
+            ClassDescriptor descriptor = query.getDescriptor();
+            if (descriptor == null && query.getReferenceClass() != null) {
+                descriptor = session.getDescriptor(query.getReferenceClass());
+            }
+            ReferenceCache cache = of(descriptor);
+            if (cache != null) {
+                (hit ? cache.hits : cache.misses).incrementAndGet();
+            }
+        }
+
+        @Override
+        public int getProfileWeight() {
+            return SessionProfiler.NORMAL;
+        }
+    }
+
+    /**
+     * Keeps a fixed number of entities and drops the least recently used one to make room for a new one
+     */
+    public static class LruIdentityMap extends CacheIdentityMap {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ReferenceCache cache;
+
+        public LruIdentityMap(int size, ClassDescriptor descriptor, AbstractSession session, boolean isolated) {
+            super(size, descriptor, session, isolated);
+            this.cache = (ReferenceCache) descriptor.getProperty(MAP_PROPERTY);
+            if (cache != null && !isolated) {
+                cache.identityMap = this;
+            }
+        }
+
+        @Override
+        protected void ensureFixedSize() {
+            int before = getSize();
+            super.ensureFixedSize();
+            if (cache != null && getSize() < before) {
+                cache.evictions.addAndGet(before - getSize());
+            }
+        }
+    }
+
+    /**
+     * Keeps the most recently used entities and the rest as long as the garbage collector leaves them
+     */
+    public static class SoftIdentityMap extends SoftCacheWeakIdentityMap {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ReferenceCache cache;
+
+        public SoftIdentityMap(int size, ClassDescriptor descriptor, AbstractSession session, boolean isolated) {
+            super(size, descriptor, session, isolated);
+            this.cache = (ReferenceCache) descriptor.getProperty(MAP_PROPERTY);
+            if (cache != null && !isolated) {
+                cache.identityMap = this;
+            }
+        }
+
+        @Override
+        protected void cleanupDeadCacheKeys() {
+            int before = getSize();
+            super.cleanupDeadCacheKeys();
+            if (cache != null && getSize() < before) {
+                cache.evictions.addAndGet(before - getSize());
+            }
+        }
+    }
+
+    /**
+     * Expires an entity a fixed time after it was read, counting every entity once when it is found expired
+     */
+    private static class TimeToLive extends TimeToLiveCacheInvalidationPolicy {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ReferenceCache cache;
+
+        TimeToLive(ReferenceCache cache, long timeToLiveMillis) {
+            super(timeToLiveMillis);
+            this.cache = cache;
+        }
+
+        @Override
+        public boolean isInvalidated(CacheKey key, long currentTimeMillis) {
+            if (key.getInvalidationState() == CacheKey.CACHE_KEY_INVALID) {
+                return true;
+            }
+            if (!super.isInvalidated(key, currentTimeMillis)) {
+                return false;
+            }
+            if (key.getReadTime() == 0) {
+                // the keys of a unit of work are checked as well, they are never read from the database themselves
+                return true;
+            }
+            // marked invalid until it is read again, which resets the state, so it is counted once
+            key.setInvalidationState(CacheKey.CACHE_KEY_INVALID);
+            cache.expirations.incrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package csulb.cecs323.app;
+
+/**
+ * Live metrics of the shared cache of one reference entity, exported over JMX as csulb.cecs323:type=ReferenceCache
+ */
+public interface ReferenceCacheMXBean {
+
+    String getEntity();
+
+    String getType();
+
+    int getMaxSize();
+
+    int getSize();
+
+    long getTimeToLiveSeconds();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    long getEvictions();
+
+    long getExpirations();
+}
@@ -0,0 +1,429 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.internal.helper.DatabaseField;
+import org.eclipse.persistence.internal.sessions.ObjectChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkChangeSet;
+import org.eclipse.persistence.internal.sessions.UnitOfWorkImpl;
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.mappings.AggregateCollectionMapping;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.DirectCollectionMapping;
+import org.eclipse.persistence.mappings.ManyToManyMapping;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.UnitOfWork;
+import org.eclipse.persistence.sessions.changesets.ChangeRecord;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReportCache keeps the results of the report queries of queryExecution, by report and parameters,
+ * until one of the tables the report reads is written.
+ * <p>
+ * The tables of a report are the mapped tables its SQL names. Every table has a change counter that goes up
+ * when a commit wrote to it, a result remembers the counters of its tables from before it was read
+ * and is only served while they are unchanged. A report read while a commit is on its way is therefore
+ * at worst read again, never served out of date.
+ * The tables a commit wrote are taken from its change sets, from the bulk updates and deletes it ran
+ * and from the writes that bypass JPA, see {@link #written(EntityManager, String...)}.
+ * <p>
+ * A hit is a report answered from the cache, a miss one that ran its query,
+ * an invalidation a cached result found out of date. The age of the results served shows how old they get.
+ */
+public class ReportCache implements ReportCacheMXBean {
+
+    /**
+     * Number of report results kept, the least recently used one is dropped first, 0 disables the cache
+     */
+    public static final String SIZE = "cookbook.report-cache.size";
+
+    private static final String PROPERTY = ReportCache.class.getName();
+    private static final String WRITTEN_TABLES = ReportCache.class.getName() + ".writtenTables";
+    private static final String ALL_TABLES = "*";
+
+    private final Session session;
+    private final int maxSize;
+    private final Map<List<Object>, CachedResult> entries;
+    private final Map<String, AtomicLong> changes = new ConcurrentHashMap<>();
+    private final Map<String, String[]> dependencies = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final LatencyRecorder hitAges = new LatencyRecorder(10_000);
+    private volatile Set<String> tables;
+
+    private ReportCache(Session session, int maxSize) {
+        this.session = session;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<List<Object>, CachedResult>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedResult> eldest) {
+                if (size() > ReportCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Creates the report cache of the session, follows the tables every commit writes
+     * and exports the metrics of the cache over JMX until the session logs out
+     * @param session the session of the persistence unit, before it logs in
+     * @return the installed cache
+     */
+    public static ReportCache install(Session session) {
+        Object size = session.getProperty(SIZE);
+        ReportCache cache = new ReportCache(session, size == null ? 100 : Integer.parseInt(size.toString().trim()));
+        session.setProperty(PROPERTY, cache);
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postExecuteQuery(SessionEvent event) {
+                DatabaseQuery query = event.getQuery();
+                if (!query.isModifyQuery() || query.isObjectLevelModifyQuery()) {
+                    // the inserts, updates and deletes of single objects are found in the change set of the commit
+                    return;
+                }
+                // bulk updates and deletes write the tables of their entity, native statements the tables their SQL names,
+                // the id generators' updates of the sequence table name none of the mapped tables
+                Set<String> written = new HashSet<>();
+                if (query.isModifyAllQuery() && query.getDescriptor() != null) {
+                    addTables(query.getDescriptor(), written);
+                } else if (query.getSQLString() != null) {
+                    written.addAll(cache.tablesIn(query.getSQLString()));
+                } else {
+                    written.add(ALL_TABLES);
+                }
+                if (written.isEmpty()) {
+                    return;
+                }
+                if (event.getSession().isUnitOfWork()) {
+                    pending((UnitOfWork) event.getSession()).addAll(written);
+                } else {
+                    cache.changed(written);
+                }
+            }
+
+            @Override
+            public void postCommitUnitOfWork(SessionEvent event) {
+                cache.changed(tablesWritten((UnitOfWorkImpl) event.getSession()));
+            }
+        });
+
+        Metrics.export(session, "ReportCache", cache);
+        return cache;
+    }
+
+    /**
+     * Finds the report cache of a factory of the CookBook persistence unit
+     * @param factory the factory to look into
+     * @return the report cache of the factory
+     */
+    public static ReportCache of(EntityManagerFactory factory) {
+        Object cache = factory.unwrap(JpaEntityManagerFactory.class).getServerSession().getProperty(PROPERTY);
+        if (cache == null) {
+            throw new IllegalStateException("The report cache is not installed, check the session customizer in persistence.xml");
+        }
+        return (ReportCache) cache;
+    }
+
+    /**
+     * Records tables written without JPA in the transaction of the entity manager,
+     * the reports that read them are invalidated once the transaction commits
+     * @param entityManager an entity manager with an active transaction
+     * @param tables the names of the tables written
+     */
+    public static void written(EntityManager entityManager, String... tables) {
+        Set<String> pending = pending(entityManager.unwrap(UnitOfWork.class));
+        for (String table : tables) {
+            pending.add(table.toUpperCase());
+        }
+    }
+
+    /**
+     * Runs a report, or answers it from the cache if none of its tables was written since it last ran.
+     * Within a transaction the report always runs, it could see changes that are not committed yet.
+     * @param entityManager the entity manager the report runs with
+     * @param name the name of the report query, see QueryCatalog
+     * @param parameters the positional parameters of the report
+     * @return the rows of the report, which must not be changed
+     */
+    public List<Object[]> getResultList(EntityManager entityManager, String name, Object... parameters) {
+        if (maxSize <= 0 || entityManager.getTransaction().isActive()) {
+            return execute(entityManager, name, parameters);
+        }
+        List<Object> key = new ArrayList<>(parameters.length + 1);
+        key.add(name);
+        key.addAll(Arrays.asList(parameters));
+        String[] reportTables = dependenciesOf(name);
+
+        CachedResult entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            if (entry.isCurrent(this)) {
+                hits.incrementAndGet();
+                hitAges.record(System.nanoTime() - entry.createdNanos);
+                return entry.rows;
+            }
+            invalidations.incrementAndGet();
+            synchronized (entries) {
+                entries.remove(key, entry);
+            }
+        }
+        misses.incrementAndGet();
+        // the counters are taken before the report is read, a commit while it runs makes the result out of date at once
+        long[] counters = counters(reportTables);
+        long created = System.nanoTime();
+        List<Object[]> rows = Collections.unmodifiableList(execute(entityManager, name, parameters));
+        synchronized (entries) {
+            entries.put(key, new CachedResult(rows, reportTables, counters, created));
+        }
+        return rows;
+    }
+
+    /**
+     * Drops every cached result, for writes to the database the cache cannot follow
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Obtains the tables a report reads
+     * @param name the name of the report query
+     * @return the names of the mapped tables its SQL names
+     */
+    public String[] dependenciesOf(String name) {
+        return dependencies.computeIfAbsent(name, n -> {
+            DatabaseQuery query = session.getQuery(n);
+            if (query == null || query.getSQLString() == null) {
+                throw new IllegalArgumentException("There is no native report query " + n);
+            }
+            return tablesIn(query.getSQLString()).toArray(new String[0]);
+        });
+    }
+
+    /**
+     * Finds the mapped tables an SQL statement names
+     */
+    private Set<String> tablesIn(String sql) {
+        Set<String> words = new HashSet<>(Arrays.asList(sql.toUpperCase().split("[^A-Z0-9_]+")));
+        words.retainAll(tables());
+        return words;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object[]> execute(EntityManager entityManager, String name, Object... parameters) {
+        Query query = entityManager.createNamedQuery(name);
+        for (int i = 0; i < parameters.length; i++) {
+            query.setParameter(i + 1, parameters[i]);
+        }
+        return query.getResultList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> pending(UnitOfWork unitOfWork) {
+        Set<String> pending = (Set<String>) unitOfWork.getProperty(WRITTEN_TABLES);
+        if (pending == null) {
+            pending = new HashSet<>();
+            unitOfWork.setProperty(WRITTEN_TABLES, pending);
+        }
+        return pending;
+    }
+
+    /**
+     * Collects the tables a committed unit of work wrote to
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<String> tablesWritten(UnitOfWorkImpl unitOfWork) {
+        Set<String> written = new HashSet<>();
+        // the unit of work lives on in the entity manager after the commit, so the tables are taken off it
+        Set<String> pending = (Set<String>) unitOfWork.getProperty(WRITTEN_TABLES);
+        if (pending != null) {
+            written.addAll(pending);
+            unitOfWork.removeProperty(WRITTEN_TABLES);
+        }
+        UnitOfWorkChangeSet changes = (UnitOfWorkChangeSet) unitOfWork.getUnitOfWorkChangeSet();
+        if (changes == null) {
+            return written;
+        }
+        for (ObjectChangeSet deleted : changes.getDeletedObjects().keySet()) {
+            addTablesWithRelations(deleted.getDescriptor(), written);
+        }
+        for (ObjectChangeSet changed : changes.getAllChangeSets().keySet()) {
+            ClassDescriptor descriptor = changed.getDescriptor();
+            if (changed.isNew()) {
+                addTablesWithRelations(descriptor, written);
+                continue;
+            }
+            for (ChangeRecord record : changed.getChanges()) {
+                DatabaseMapping mapping = descriptor.getMappingForAttributeName(record.getAttribute());
+                if (mapping == null) {
+                    continue;
+                }
+                if (mapping.isCollectionMapping()) {
+                    // a collection mapped by the other side has no table of its own, the other side's change set has it
+                    addRelationTable(mapping, written);
+                    continue;
+                }
+                for (DatabaseField field : mapping.getFields()) {
+                    written.add(field.getTableName().isEmpty()
+                            ? descriptor.getTableName().toUpperCase() : field.getTableName().toUpperCase());
+                }
+            }
+        }
+        return written;
+    }
+
+    private static void addTables(ClassDescriptor descriptor, Set<String> tables) {
+        for (Object table : descriptor.getTableNames()) {
+            tables.add(table.toString().toUpperCase());
+        }
+    }
+
+    private static void addTablesWithRelations(ClassDescriptor descriptor, Set<String> tables) {
+        addTables(descriptor, tables);
+        for (DatabaseMapping mapping : descriptor.getMappings()) {
+            addRelationTable(mapping, tables);
+        }
+    }
+
+    private static void addRelationTable(DatabaseMapping mapping, Set<String> tables) {
+        if (mapping instanceof ManyToManyMapping) {
+            tables.add(((ManyToManyMapping) mapping).getRelationTableName().toUpperCase());
+        } else if (mapping instanceof DirectCollectionMapping) {
+            tables.add(((DirectCollectionMapping) mapping).getReferenceTableName().toUpperCase());
+        } else if (mapping instanceof AggregateCollectionMapping) {
+            addTables(mapping.getReferenceDescriptor(), tables);
+        }
+    }
+
+    /**
+     * Obtains every table of the persistence unit, including join and collection tables
+     */
+    private Set<String> tables() {
+        if (tables == null) {
+            Set<String> all = new HashSet<>();
+            for (ClassDescriptor descriptor : session.getDescriptors().values()) {
+                addTablesWithRelations(descriptor, all);
+            }
+            tables = all;
+        }
+        return tables;
+    }
+
+    private void changed(Set<String> written) {
+        if (written.contains(ALL_TABLES)) {
+            written = tables();
+        }
+        for (String table : written) {
+            changes.computeIfAbsent(table, t -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    private long[] counters(String[] reportTables) {
+        long[] counters = new long[reportTables.length];
+        for (int i = 0; i < reportTables.length; i++) {
+            AtomicLong counter = changes.get(reportTables[i]);
+            counters[i] = counter == null ? 0 : counter.get();
+        }
+        return counters;
+    }
+
+    /**
+     * Formats the live metrics of the cache
+     * @return a one line summary of the cache state
+     */
+    @Override
+    public String toString() {
+        return String.format("ReportCache[size = %d/%d, hits = %d, misses = %d, hit rate = %.1f%%, invalidations = %d, evictions = %d, " +
+                        "age of hits mean = %.1f ms, max = %.1f ms, table changes = %s]",
+                getSize(), maxSize, getHits(), getMisses(), getHitRate() * 100, getInvalidations(), getEvictions(),
+                getMeanHitAgeMillis(), getMaxHitAgeMillis(), getTableChanges());
+    }
+
+    @Override
+    public int getMaxSize() { return maxSize; }
+
+    @Override
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public long getHits() { return hits.get(); }
+
+    @Override
+    public long getMisses() { return misses.get(); }
+
+    @Override
+    public double getHitRate() {
+        long found = hits.get();
+        long lookups = found + misses.get();
+        return lookups == 0 ? 0 : (double) found / lookups;
+    }
+
+    @Override
+    public long getInvalidations() { return invalidations.get(); }
+
+    @Override
+    public long getEvictions() { return evictions.get(); }
+
+    @Override
+    public double getMeanHitAgeMillis() { return hitAges.getMeanNanos() / 1e6; }
+
+    @Override
+    public double getMaxHitAgeMillis() { return hitAges.getMaxNanos() / 1e6; }
+
+    @Override
+    public Map<String, Long> getTableChanges() {
+        Map<String, Long> counts = new TreeMap<>();
+        changes.forEach((table, counter) -> counts.put(table, counter.get()));
+        return counts;
+    }
+
+    /**
+     * The rows of a report together with the change counters of its tables when it was read
+     */
+    private static class CachedResult {
+        private final List<Object[]> rows;
+        private final String[] tables;
+        private final long[] counters;
+        private final long createdNanos;
+
+        CachedResult(List<Object[]> rows, String[] tables, long[] counters, long createdNanos) {
+            this.rows = rows;
+            this.tables = tables;
+            this.counters = counters;
+            this.createdNanos = createdNanos;
+        }
+
+        boolean isCurrent(ReportCache cache) {
+            return Arrays.equals(counters, cache.counters(tables));
+        }
+    }
+}
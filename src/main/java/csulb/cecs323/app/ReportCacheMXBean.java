@@ -0,0 +1,29 @@
+package csulb.cecs323.app;
+
+import java.util.Map;
+
+/**
+ * Live metrics of the report result cache of the CookBook persistence unit, exported over JMX as csulb.cecs323:type=ReportCache
+ */
+public interface ReportCacheMXBean {
+
+    int getMaxSize();
+
+    int getSize();
+
+    long getHits();
+
+    long getMisses();
+
+    double getHitRate();
+
+    long getInvalidations();
+
+    long getEvictions();
+
+    double getMeanHitAgeMillis();
+
+    double getMaxHitAgeMillis();
+
+    Map<String, Long> getTableChanges();
+}
@@ -0,0 +1,235 @@
+package csulb.cecs323.app;
+
+import org.eclipse.persistence.jpa.JpaEntityManagerFactory;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * ReportRunner runs a batch of reports at the same time, each on a thread of its own pool
+ * with an entity manager of its own, so a batch takes about as long as its slowest report
+ * instead of the sum of all of them.
+ * The reports are read like a single report is, see {@link #rowsOf(EntityManagerFactory, EntityManager, Report)}.
+ * The results are handed back in the order the reports were given, each one as soon as it and the ones before it are done.
+ * <p>
+ * The threads belong to the session of the persistence unit, they are started on first use and stopped when it logs out.
+ */
+public class ReportRunner {
+
+    /**
+     * Number of reports that run at the same time, each holds a connection of the pool while it runs
+     */
+    public static final String THREADS = "cookbook.report-runner.threads";
+
+    private static final String PROPERTY = ReportRunner.class.getName();
+
+    private final ExecutorService executor;
+
+    private ReportRunner(String sessionName, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "report-runner-" + sessionName + "-" + count.incrementAndGet());
+            // a session that is never logged out must not keep the application alive
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the report runner of the session, its threads stop when the session logs out
+     * @param session the session of the persistence unit, before it logs in
+     * @return the installed runner
+     */
+    public static ReportRunner install(Session session) {
+        Object threads = session.getProperty(THREADS);
+        ReportRunner runner = new ReportRunner(session.getName(), threads == null ? 4 : Integer.parseInt(threads.toString().trim()));
+        session.setProperty(PROPERTY, runner);
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            public void postLogout(SessionEvent event) {
+                runner.executor.shutdownNow();
+            }
+        });
+        return runner;
+    }
+
+    /**
+     * Finds the report runner of a factory of the CookBook persistence unit
+     * @param factory the factory to look into
+     * @return the report runner of the factory
+     */
+    public static ReportRunner of(EntityManagerFactory factory) {
+        Object runner = factory.unwrap(JpaEntityManagerFactory.class).getServerSession().getProperty(PROPERTY);
+        if (runner == null) {
+            throw new IllegalStateException("The report runner is not installed, check the session customizer in persistence.xml");
+        }
+        return (ReportRunner) runner;
+    }
+
+    /**
+     * Runs the reports concurrently
+     * @param factory the factory every report obtains its entity manager from
+     * @param reports the reports to run
+     * @param each called with the result of every report in the order of the reports, on the calling thread
+     * @return the time the whole batch took in nanoseconds
+     * @throws RuntimeException the failure of the first report that failed, once the results before it are handed out,
+     *                          the reports after it are cancelled
+     */
+    public long run(EntityManagerFactory factory, List<Report> reports, Consumer<Result> each) {
+        long start = System.nanoTime();
+        List<Future<Result>> running = new ArrayList<>(reports.size());
+        for (int i = 0; i < reports.size(); i++) {
+            Report report = reports.get(i);
+            int index = i;
+            running.add(executor.submit(() -> execute(factory, report, index)));
+        }
+        try {
+            for (Future<Result> result : running) {
+                each.accept(result.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("A report failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the reports");
+        } finally {
+            for (Future<Result> result : running) {
+                result.cancel(true);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static Result execute(EntityManagerFactory factory, Report report, int index) {
+        long start = System.nanoTime();
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            return new Result(report, index, rowsOf(factory, entityManager, report), System.nanoTime() - start);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Reads the rows of one report, a named query goes through the ReportCache, any other report is read by its function
+     * @param factory the factory of the entity manager
+     * @param entityManager the entity manager the report is read with
+     * @param report the report to read
+     * @return the rows of the report, which must not be changed
+     */
+    public static List<Object[]> rowsOf(EntityManagerFactory factory, EntityManager entityManager, Report report) {
+        if (report.reader != null) {
+            return report.reader.apply(entityManager);
+        }
+        return ReportCache.of(factory).getResultList(entityManager, report.name, report.parameters);
+    }
+
+    /**
+     * A report to run, either a named query of QueryCatalog with its positional parameters,
+     * or a function that reads the rows, like the report of the chef with the most reviews off the ChefLeaderboard
+     */
+    public static final class Report {
+        private final String name;
+        private final Object[] parameters;
+        private final Function<EntityManager, List<Object[]>> reader;
+
+        /**
+         * Constructor for a report query with the given parameters
+         * @param name the name of the report query
+         * @param parameters the positional parameters of the query
+         */
+        public Report(String name, Object... parameters) {
+            this.name = name;
+            this.parameters = parameters;
+            this.reader = null;
+        }
+
+        /**
+         * Constructor for a report that is not a query
+         * @param reader reads the rows of the report with the entity manager of the report,
+         *               the rows are not changed afterwards
+         */
+        public Report(Function<EntityManager, List<Object[]>> reader) {
+            this.name = null;
+            this.parameters = new Object[0];
+            this.reader = reader;
+        }
+
+        /**
+         * Obtains the name of the report query
+         * @return the name of the query, or null if the report is read by a function
+         */
+        public String getName() {
+            return name;
+        }
+
+        public Object[] getParameters() {
+            return parameters;
+        }
+    }
+
+    /**
+     * The rows of a report that ran together with the time it took
+     */
+    public static final class Result {
+        private final Report report;
+        private final int index;
+        private final List<Object[]> rows;
+        private final long nanos;
+
+        Result(Report report, int index, List<Object[]> rows, long nanos) {
+            this.report = report;
+            this.index = index;
+            this.rows = rows;
+            this.nanos = nanos;
+        }
+
+        public Report getReport() {
+            return report;
+        }
+
+        /**
+         * Obtains the position of the report in the list the batch was run with
+         * @return the index of the report, from 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Obtains the rows of the report
+         * @return the rows, which must not be changed
+         */
+        public List<Object[]> getRows() {
+            return rows;
+        }
+
+        /**
+         * Obtains the time the report took on its thread, from obtaining its entity manager until its rows were read
+         * @return the time in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getMillis() {
+            return nanos / 1e6;
+        }
+    }
+}
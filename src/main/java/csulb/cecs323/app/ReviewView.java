@@ -0,0 +1,45 @@
+package csulb.cecs323.app;
+
+/**
+ * ReviewView holds a review together with the names of its food critic and recipe, as the list screens show it,
+ * read in one statement with a constructor expression
+ */
+public final class ReviewView {
+
+    private final long reviewId;
+    private final long foodCriticId;
+    private final String foodCriticFirstName;
+    private final String foodCriticLastName;
+    private final long recipeId;
+    private final String recipeName;
+    private final String description;
+    private final float rating;
+
+    public ReviewView(long reviewId, long foodCriticId, String foodCriticFirstName, String foodCriticLastName,
+                      long recipeId, String recipeName, String description, float rating) {
+        this.reviewId = reviewId;
+        this.foodCriticId = foodCriticId;
+        this.foodCriticFirstName = foodCriticFirstName;
+        this.foodCriticLastName = foodCriticLastName;
+        this.recipeId = recipeId;
+        this.recipeName = recipeName;
+        this.description = description;
+        this.rating = rating;
+    }
+
+    public long getReviewId() { return reviewId; }
+
+    public long getFoodCriticId() { return foodCriticId; }
+
+    public String getFoodCriticFirstName() { return foodCriticFirstName; }
+
+    public String getFoodCriticLastName() { return foodCriticLastName; }
+
+    public long getRecipeId() { return recipeId; }
+
+    public String getRecipeName() { return recipeName; }
+
+    public String getDescription() { return description; }
+
+    public float getRating() { return rating; }
+}
@@ -0,0 +1,310 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * SchemaMigrator keeps the CookBook database schema up to date without dropping it on every launch.
+ * The versions that have already been applied are recorded in the SCHEMA_VERSION table, and on startup
+ * only the migrations with a higher version number are executed, each one inside its own transaction.
+ * Migration scripts follow the same rule as the JPA load script: one statement per line, no semicolons.
+ * A database created before the migrations existed, by the drop-and-create schema generation, has the tables of V1
+ * but no SCHEMA_VERSION table. It is recorded at V1 without running the script and migrated from there.
+ * The sample data of sql/seed is not a migration, it is only loaded into the schema REBUILD generates.
+ */
+public class SchemaMigrator {
+
+    private static final Logger LOGGER = Logger.getLogger(SchemaMigrator.class.getName());
+
+    /**
+     * System property that selects the startup mode, e.g. -Dcookbook.schema.mode=migrate
+     */
+    public static final String MODE_PROPERTY = "cookbook.schema.mode";
+
+    private static final String SEED_FOLDER = "sql/seed";
+
+    /** A table of the baseline schema, its presence without a version table marks a database created before V1 */
+    private static final String BASELINE_TABLE = "RECIPE";
+
+    /**
+     * The versioned migrations for the csulb.cecs323.model entities, in the order they must be applied.
+     * New schema changes are added at the end of this list with the next version number.
+     * V2 loaded the sample data, which REBUILD alone loads now, databases that applied it keep it on record.
+     */
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            Migration.script(1, "baseline schema", "sql/migrations/V1__baseline_schema.sql"),
+            Migration.script(3, "table id generator", "sql/migrations/V3__table_id_generator.sql"),
+            Migration.script(4, "optimistic locking", "sql/migrations/V4__optimistic_locking.sql"),
+            Migration.script(5, "recipe rating aggregates", "sql/migrations/V5__recipe_rating.sql"),
+            Migration.data(6, "rebuild recipe rating aggregates", RatingAggregates::rebuild),
+            Migration.script(7, "chef ingredient usage", "sql/migrations/V7__chef_ingredient_usage.sql"),
+            Migration.data(8, "rebuild chef ingredient usage", IngredientUsage::rebuildChefs),
+            Migration.script(9, "ingredient recipe counts", "sql/migrations/V9__ingredient_recipe_count.sql"),
+            Migration.data(10, "rebuild ingredient recipe counts", IngredientUsage::rebuildIngredients),
+            Migration.data(11, "recount food critic reviews", Counters::rebuild)
+    );
+
+    /**
+     * The two ways the application can start up.
+     * REBUILD drops and recreates every table from the entity metadata, loads the sample data
+     * and reruns the data migrations (development).
+     * MIGRATE keeps the existing schema and data and only applies the pending migrations.
+     */
+    public enum Mode {
+        REBUILD, MIGRATE;
+
+        /**
+         * Reads the startup mode from the cookbook.schema.mode system property, defaulting to REBUILD
+         * @return the selected startup mode
+         */
+        public static Mode fromSystemProperty() {
+            return Mode.valueOf(System.getProperty(MODE_PROPERTY, REBUILD.name()).trim().toUpperCase());
+        }
+
+        /**
+         * Builds the persistence unit overrides for this mode
+         * @return the properties to pass to Persistence.createEntityManagerFactory
+         */
+        public Map<String, Object> persistenceProperties() {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("javax.persistence.schema-generation.database.action", this == REBUILD ? "drop-and-create" : "none");
+            return properties;
+        }
+    }
+
+    private final EntityManagerFactory factory;
+    private final Database database;
+
+    /**
+     * Constructor for a migrator of the database behind the given factory
+     * @param factory the factory created for the CookBook persistence unit
+     */
+    public SchemaMigrator(EntityManagerFactory factory) {
+        this.factory = factory;
+        this.database = new Database(factory);
+    }
+
+    /**
+     * Brings the schema version table in line with the selected startup mode.
+     * In REBUILD mode the schema was just generated from metadata, so the sample data is loaded, only the data migrations
+     * are executed and every migration is recorded as applied.
+     * In MIGRATE mode every migration newer than the recorded version is executed.
+     * @param mode the startup mode that the factory was created with
+     * @return the number of migrations that were executed
+     */
+    public int run(Mode mode) {
+        try (Connection connection = database.connect()) {
+            connection.setAutoCommit(false);
+            createVersionTable(connection);
+            if (mode == Mode.REBUILD) {
+                return baseline(connection);
+            }
+            return migrate(connection);
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Unable to migrate the CookBook schema", e);
+        } finally {
+            // the migrations write through JDBC, nothing read before them can be trusted in the shared cache
+            factory.getCache().evictAll();
+            ReportCache.of(factory).clear();
+        }
+    }
+
+    /**
+     * Applies every migration that is newer than the current schema version, one transaction per migration
+     * @param connection the connection to run the migrations on, with auto commit disabled
+     * @return the number of migrations that were executed
+     */
+    private int migrate(Connection connection) throws SQLException, IOException {
+        int current = currentVersion(connection);
+        if (current == 0 && hasTable(connection, BASELINE_TABLE)) {
+            // created by the schema generation before the migrations existed, the tables of V1 are already there
+            record(connection, MIGRATIONS.get(0));
+            current = MIGRATIONS.get(0).version;
+            LOGGER.info("Found the tables of a CookBook database without a schema version, recorded it at V" + current);
+        }
+        connection.commit();
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= current) {
+                continue;
+            }
+            apply(connection, migration);
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Runs the data migrations and records every known migration as applied,
+     * used after the schema was regenerated from the entity metadata
+     * @param connection the connection to update the schema version table on
+     * @return the number of migrations that were executed
+     */
+    private int baseline(Connection connection) throws SQLException, IOException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DELETE FROM SCHEMA_VERSION");
+        }
+        new BulkLoader(connection, BulkLoader.DEFAULT_BATCH_SIZE, 0).loadResources(SEED_FOLDER);
+        int applied = 0;
+        for (Migration migration : MIGRATIONS) {
+            if (migration.generatedFromMetadata) {
+                record(connection, migration);
+            } else {
+                apply(connection, migration);
+                applied++;
+            }
+        }
+        connection.commit();
+        return applied;
+    }
+
+    /**
+     * Executes a single migration and records it, all inside one transaction
+     * @param connection the connection to run the migration on, with auto commit disabled
+     * @param migration the migration to apply
+     */
+    private void apply(Connection connection, Migration migration) throws SQLException, IOException {
+        long start = System.nanoTime();
+        try {
+            migration.step.apply(connection);
+            record(connection, migration);
+            connection.commit();
+        } catch (SQLException | IOException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        }
+        LOGGER.info(String.format("Applied migration V%d (%s) in %d ms", migration.version, migration.description, (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Creates the schema version table if this database has never been migrated before
+     * @param connection the connection to create the table on
+     */
+    private void createVersionTable(Connection connection) throws SQLException {
+        if (hasTable(connection, "SCHEMA_VERSION")) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE SCHEMA_VERSION (VERSION INTEGER NOT NULL, DESCRIPTION VARCHAR(255), APPLIED_ON TIMESTAMP NOT NULL, PRIMARY KEY (VERSION))");
+        }
+        connection.commit();
+    }
+
+    /**
+     * Tells whether the database has a table, in any schema
+     * @param connection the connection to read the metadata of
+     * @param name the name of the table in upper case, as Derby keeps unquoted names
+     * @return true if the table exists
+     */
+    private boolean hasTable(Connection connection, String name) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        try (ResultSet tables = metaData.getTables(null, null, name, null)) {
+            return tables.next();
+        }
+    }
+
+    /**
+     * Obtains the highest migration version that has been applied to the database
+     * @param connection the connection to read the schema version table from
+     * @return the current schema version, 0 for an empty database
+     */
+    private int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT MAX(VERSION) FROM SCHEMA_VERSION")) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Inserts a row for the given migration into the schema version table
+     * @param connection the connection to insert with
+     * @param migration the migration that has been applied
+     */
+    private void record(Connection connection, Migration migration) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement("INSERT INTO SCHEMA_VERSION(VERSION, DESCRIPTION, APPLIED_ON) VALUES (?, ?, ?)")) {
+            insert.setInt(1, migration.version);
+            insert.setString(2, migration.description);
+            insert.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            insert.executeUpdate();
+        }
+    }
+
+    /**
+     * The work done by a single migration, executed on a connection with auto commit disabled
+     */
+    private interface MigrationStep {
+        void apply(Connection connection) throws SQLException, IOException;
+    }
+
+    /**
+     * A single versioned migration, either a schema script on the classpath or a data load
+     */
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final boolean generatedFromMetadata;
+        private final MigrationStep step;
+
+        private Migration(int version, String description, boolean generatedFromMetadata, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.generatedFromMetadata = generatedFromMetadata;
+            this.step = step;
+        }
+
+        /**
+         * Creates a migration that changes the schema, skipped in REBUILD mode since the entity metadata already covers it
+         * @param resource the classpath location of the script
+         */
+        private static Migration script(int version, String description, String resource) {
+            return new Migration(version, description, true, connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    for (String sql : statements(resource)) {
+                        statement.execute(sql);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Creates a migration that changes data, executed in both startup modes
+         */
+        private static Migration data(int version, String description, MigrationStep step) {
+            return new Migration(version, description, false, step);
+        }
+
+        /**
+         * Reads the statements of a script, skipping blank lines and -- comments
+         * @return the statements of the script in order
+         */
+        private static List<String> statements(String resource) throws IOException {
+            InputStream stream = SchemaMigrator.class.getClassLoader().getResourceAsStream(resource);
+            if (stream == null) {
+                throw new IOException("Missing migration script " + resource);
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                return reader.lines()
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("--"))
+                        .collect(Collectors.toList());
+            }
+        }
+    }
+}
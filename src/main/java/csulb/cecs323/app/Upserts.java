@@ -0,0 +1,372 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Chef;
+import csulb.cecs323.model.Cuisine;
+import csulb.cecs323.model.Ingredient;
+import org.eclipse.persistence.sessions.IdentityMapAccessor;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionEvent;
+import org.eclipse.persistence.sessions.SessionEventAdapter;
+import org.eclipse.persistence.sessions.UnitOfWork;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.persistence.PersistenceUnitUtil;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Upserts creates ingredients and cuisines unless they exist, with a single MERGE statement per row and no SELECT before it,
+ * so two sessions adding the same ingredient at the same time both succeed instead of one failing on the primary key.
+ * The same way it links a chef to a cuisine and a cuisine to its ingredients without loading the collections
+ * of the links the chef or cuisine has already, which JPA would read in full to add a single one.
+ * The statements of a call are sent as one JDBC batch on the connection of the entity manager's transaction.
+ * <p>
+ * Derby waits for a row another transaction inserted but has not committed yet and then finds it matched.
+ * Only when two sessions check for the same missing row at exactly the same time can the second insert run
+ * into the first one's key, that statement alone is rolled back and the row is counted as existing, nothing is retried.
+ * Derby's MERGE needs a table to merge from, so the one row table SYSIBM.SYSDUMMY1 stands in for the values.
+ */
+public final class Upserts {
+
+    /** Property of the unit of work listing the names of the ingredients its upserts inserted */
+    private static final String INSERTED_INGREDIENTS = Upserts.class.getName() + ".insertedIngredients";
+
+    /** Property of the unit of work set when its upserts inserted a cuisine */
+    private static final String INSERTED_CUISINE = Upserts.class.getName() + ".insertedCuisine";
+
+    private static final String MERGE_INGREDIENT =
+            "MERGE INTO ingredient t USING SYSIBM.SYSDUMMY1 ON t.name = ? " +
+            "WHEN NOT MATCHED THEN INSERT (name, type, description) VALUES (?, ?, ?)";
+
+    private static final String MERGE_CUISINE =
+            "MERGE INTO cuisine t USING SYSIBM.SYSDUMMY1 ON t.name = ? AND t.region = ? " +
+            "WHEN NOT MATCHED THEN INSERT (cuisine_id, name, region, religion) VALUES (?, ?, ?, ?)";
+
+    /** Property of the unit of work listing the entities whose link collections its upserts wrote past */
+    private static final String LINKED_ENTITIES = Upserts.class.getName() + ".linkedEntities";
+
+    private static final String MERGE_CHEF_CUISINE =
+            "MERGE INTO chef_cuisine t USING SYSIBM.SYSDUMMY1 ON t.chef_id = ? AND t.cuisine_id = ? " +
+            "WHEN NOT MATCHED THEN INSERT (chef_id, cuisine_id) VALUES (?, ?)";
+
+    private static final String MERGE_CUISINE_INGREDIENT =
+            "MERGE INTO cuisine_ingredient t USING SYSIBM.SYSDUMMY1 ON t.cuisine_id = ? AND t.ingredient_name = ? " +
+            "WHEN NOT MATCHED THEN INSERT (cuisine_id, ingredient_name) VALUES (?, ?)";
+
+    private static final String DUPLICATE_KEY = "23505";
+
+    private Upserts() {
+    }
+
+    /**
+     * Creates the ingredients that do not exist yet, ingredients that exist are left as they are
+     * @param entityManager an entity manager with an active transaction, the rows are written in that transaction
+     * @param ingredients the ingredients to create, they are not made managed
+     * @return the names of the ingredients this call inserted
+     */
+    public static Set<String> ingredients(EntityManager entityManager, Collection<Ingredient> ingredients) {
+        Set<String> inserted = new LinkedHashSet<>();
+        if (ingredients.isEmpty()) {
+            return inserted;
+        }
+        // rows are written in the order of their keys, so two transactions upserting the same ingredients
+        // wait for each other's new rows in the same order and cannot deadlock
+        List<Ingredient> rows = new ArrayList<>(ingredients);
+        rows.sort(Comparator.comparing(Ingredient::getName));
+        try (PreparedStatement merge = connection(entityManager).prepareStatement(MERGE_INGREDIENT)) {
+            int[] counts = executeBatch(merge, rows.size(), i -> {
+                Ingredient ingredient = rows.get(i);
+                merge.setString(1, ingredient.getName());
+                merge.setString(2, ingredient.getName());
+                merge.setString(3, ingredient.getType());
+                merge.setString(4, ingredient.getDescription());
+            });
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    inserted.add(rows.get(i).getName());
+                }
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Unable to upsert the ingredients", e);
+        }
+        if (!inserted.isEmpty()) {
+            ReportCache.written(entityManager, "INGREDIENT");
+        }
+        rememberInsertedIngredients(entityManager, inserted);
+        return inserted;
+    }
+
+    /**
+     * Creates a cuisine unless there is one with the same name and region already
+     * @param entityManager an entity manager with an active transaction, the row is written in that transaction
+     * @param name the name of the cuisine
+     * @param region the region of the cuisine
+     * @param religion the religion of the cuisine, only used if the cuisine is created
+     * @return the id of the created or the existing cuisine
+     */
+    public static long cuisine(EntityManager entityManager, String name, String region, String religion) {
+        if (name == null || region == null) {
+            throw new IllegalArgumentException("A cuisine is identified by its name and region, neither can be null");
+        }
+        // an id is drawn from the preallocated ones up front, it is simply not used if the cuisine exists
+        long id = entityManager.unwrap(Session.class).getNextSequenceNumberValue(Cuisine.class).longValue();
+        int[] counts;
+        try (PreparedStatement merge = connection(entityManager).prepareStatement(MERGE_CUISINE)) {
+            counts = executeBatch(merge, 1, i -> {
+                merge.setString(1, name);
+                merge.setString(2, region);
+                merge.setLong(3, id);
+                merge.setString(4, name);
+                merge.setString(5, region);
+                merge.setString(6, religion);
+            });
+        } catch (SQLException e) {
+            throw new PersistenceException("Unable to upsert the cuisine", e);
+        }
+        if (counts[0] > 0) {
+            entityManager.unwrap(UnitOfWork.class).setProperty(INSERTED_CUISINE, Boolean.TRUE);
+            ReportCache.written(entityManager, "CUISINE");
+            return id;
+        }
+        return entityManager.createNamedQuery(QueryCatalog.CUISINE_BY_NAME_AND_REGION, Long.class)
+                .setParameter(QueryCatalog.NAME, name)
+                .setParameter(QueryCatalog.REGION, region)
+                .getSingleResult();
+    }
+
+    /**
+     * Makes a chef familiar with a cuisine unless it is already.
+     * When the cuisines of the chef are loaded, or the chef is new, the cuisine is added to them through Chef.addCuisine,
+     * otherwise the link is written with a MERGE and the collections of both stay unread.
+     * @param entityManager an entity manager with an active transaction, the link is written in that transaction
+     * @param chef a chef, managed by the entity manager
+     * @param cuisine a cuisine, managed by the entity manager and in the database already unless the chef is new
+     * @return true if the chef was not familiar with the cuisine before
+     */
+    public static boolean familiarCuisine(EntityManager entityManager, Chef chef, Cuisine cuisine) {
+        PersistenceUnitUtil loaded = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        if (loaded.isLoaded(chef, "familiarCuisines")) {
+            if (chef.getFamiliarCuisines().contains(cuisine)) {
+                return false;
+            }
+            chef.addCuisine(cuisine);
+            return true;
+        }
+        int[] counts;
+        try (PreparedStatement merge = connection(entityManager).prepareStatement(MERGE_CHEF_CUISINE)) {
+            counts = executeBatch(merge, 1, i -> {
+                merge.setLong(1, chef.getUserID());
+                merge.setLong(2, cuisine.getCuisineId());
+                merge.setLong(3, chef.getUserID());
+                merge.setLong(4, cuisine.getCuisineId());
+            });
+        } catch (SQLException e) {
+            throw new PersistenceException("Unable to upsert the cuisine of the chef", e);
+        }
+        if (counts[0] == 0) {
+            return false;
+        }
+        if (loaded.isLoaded(cuisine, "expertChefs")) {
+            cuisine.getExpertChefs().add(chef);
+        }
+        ReportCache.written(entityManager, "CHEF_CUISINE");
+        rememberLinked(entityManager, chef, cuisine);
+        return true;
+    }
+
+    /**
+     * Adds ingredients to a cuisine unless they are used by it already.
+     * When the ingredients of the cuisine are loaded, or the cuisine is new, they are added through Cuisine.addIngredient,
+     * otherwise the links are written with one batch of MERGE statements and the collections stay unread.
+     * @param entityManager an entity manager with an active transaction, the links are written in that transaction
+     * @param cuisine a cuisine, managed by the entity manager
+     * @param ingredients ingredients, managed by the entity manager and in the database already unless the cuisine is new
+     * @return the names of the ingredients the cuisine did not use before
+     */
+    public static Set<String> cuisineIngredients(EntityManager entityManager, Cuisine cuisine, Collection<Ingredient> ingredients) {
+        Set<String> linked = new LinkedHashSet<>();
+        PersistenceUnitUtil loaded = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+        if (loaded.isLoaded(cuisine, "ingredientsUsed")) {
+            for (Ingredient ingredient : ingredients) {
+                if (!cuisine.getIngredientsUsed().contains(ingredient)) {
+                    cuisine.addIngredient(ingredient);
+                    linked.add(ingredient.getName());
+                }
+            }
+            return linked;
+        }
+        if (ingredients.isEmpty()) {
+            return linked;
+        }
+        // in the order of the keys like the ingredients, so two transactions linking the same ones cannot deadlock
+        List<Ingredient> rows = new ArrayList<>(ingredients);
+        rows.sort(Comparator.comparing(Ingredient::getName));
+        try (PreparedStatement merge = connection(entityManager).prepareStatement(MERGE_CUISINE_INGREDIENT)) {
+            int[] counts = executeBatch(merge, rows.size(), i -> {
+                merge.setLong(1, cuisine.getCuisineId());
+                merge.setString(2, rows.get(i).getName());
+                merge.setLong(3, cuisine.getCuisineId());
+                merge.setString(4, rows.get(i).getName());
+            });
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    Ingredient ingredient = rows.get(i);
+                    linked.add(ingredient.getName());
+                    if (loaded.isLoaded(ingredient, "cuisinesAffected")) {
+                        ingredient.getCuisinesAffected().add(cuisine);
+                    }
+                    rememberLinked(entityManager, ingredient);
+                }
+            }
+        } catch (SQLException e) {
+            throw new PersistenceException("Unable to upsert the ingredients of the cuisine", e);
+        }
+        if (!linked.isEmpty()) {
+            ReportCache.written(entityManager, "CUISINE_INGREDIENT");
+            rememberLinked(entityManager, cuisine);
+        }
+        return linked;
+    }
+
+    /**
+     * Keeps the shared cache and the ingredient dictionary in step with the rows upserted by a transaction once it commits.
+     * An ingredient read in the transaction that inserted its row is built from uncommitted data, EclipseLink cannot
+     * keep such an instance coherent in the shared cache, so it is invalidated and read again on next use.
+     * The cached results of the findAll queries of ingredients and cuisines no longer list every row, so they are dropped.
+     * The entities linked with a MERGE are invalidated as well, their link collections in the shared cache miss the link.
+     * @param session the session of the persistence unit, before it logs in, after the ingredient dictionary is installed
+     */
+    public static void install(Session session) {
+        IngredientDictionary dictionary = IngredientDictionary.of(session);
+        session.getEventManager().addListener(new SessionEventAdapter() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void postCommitUnitOfWork(SessionEvent event) {
+                UnitOfWork unitOfWork = (UnitOfWork) event.getSession();
+                // the unit of work lives on in the entity manager after the commit, so the names are taken off it
+                Set<String> inserted = (Set<String>) unitOfWork.getProperty(INSERTED_INGREDIENTS);
+                IdentityMapAccessor sharedCache = unitOfWork.getParent().getIdentityMapAccessor();
+                if (inserted != null) {
+                    unitOfWork.removeProperty(INSERTED_INGREDIENTS);
+                    for (String name : inserted) {
+                        sharedCache.invalidateObject(name, Ingredient.class);
+                    }
+                    sharedCache.clearQueryCache(QueryCatalog.findAll("Ingredient"));
+                    dictionary.added(inserted);
+                }
+                List<Object> linked = (List<Object>) unitOfWork.getProperty(LINKED_ENTITIES);
+                if (linked != null) {
+                    unitOfWork.removeProperty(LINKED_ENTITIES);
+                    for (Object entity : linked) {
+                        sharedCache.invalidateObject(entity);
+                    }
+                }
+                if (unitOfWork.getProperty(INSERTED_CUISINE) != null) {
+                    unitOfWork.removeProperty(INSERTED_CUISINE);
+                    sharedCache.clearQueryCache(QueryCatalog.findAll("Cuisine"));
+                }
+            }
+        });
+    }
+
+    private interface Binder {
+        void bind(int row) throws SQLException;
+    }
+
+    /**
+     * Runs the statement for every row as one batch.
+     * A row that fails on a duplicate key was inserted by a concurrent transaction and counts as existing,
+     * the rows after it are sent again as a new batch.
+     * @return the number of rows each statement inserted
+     */
+    private static int[] executeBatch(PreparedStatement statement, int rows, Binder binder) throws SQLException {
+        int[] counts = new int[rows];
+        int next = 0;
+        while (next < rows) {
+            for (int i = next; i < rows; i++) {
+                binder.bind(i);
+                statement.addBatch();
+            }
+            try {
+                int[] done = statement.executeBatch();
+                System.arraycopy(done, 0, counts, next, done.length);
+                next = rows;
+            } catch (BatchUpdateException e) {
+                if (!DUPLICATE_KEY.equals(sqlState(e))) {
+                    throw e;
+                }
+                int[] done = e.getUpdateCounts();
+                if (done.length == rows - next) {
+                    // the driver went on after the failure and marked the failed rows, they exist now as well
+                    for (int i = 0; i < done.length; i++) {
+                        counts[next + i] = Math.max(done[i], 0);
+                    }
+                    break;
+                }
+                System.arraycopy(done, 0, counts, next, done.length);
+                // the failed row exists now, which is all an upsert asks for
+                counts[next + done.length] = 0;
+                next += done.length + 1;
+                statement.clearBatch();
+            }
+        }
+        return counts;
+    }
+
+    private static String sqlState(SQLException e) {
+        for (SQLException cause = e; cause != null; cause = cause.getNextException()) {
+            if (cause.getSQLState() != null && !cause.getSQLState().isEmpty()) {
+                return cause.getSQLState();
+            }
+        }
+        return null;
+    }
+
+    private static Connection connection(EntityManager entityManager) {
+        if (!entityManager.getTransaction().isActive()) {
+            throw new IllegalStateException("Upserts have to run in a transaction");
+        }
+        return entityManager.unwrap(Connection.class);
+    }
+
+    /**
+     * Leaves the linked entities on the unit of work, so they can be invalidated in the shared cache once the transaction commits
+     */
+    @SuppressWarnings("unchecked")
+    private static void rememberLinked(EntityManager entityManager, Object... entities) {
+        UnitOfWork unitOfWork = entityManager.unwrap(UnitOfWork.class);
+        List<Object> linked = (List<Object>) unitOfWork.getProperty(LINKED_ENTITIES);
+        if (linked == null) {
+            linked = new ArrayList<>();
+            unitOfWork.setProperty(LINKED_ENTITIES, linked);
+        }
+        Collections.addAll(linked, entities);
+    }
+
+    /**
+     * Leaves the inserted names on the unit of work, so the ingredient dictionary can add them once the transaction commits
+     */
+    @SuppressWarnings("unchecked")
+    private static void rememberInsertedIngredients(EntityManager entityManager, Set<String> inserted) {
+        if (inserted.isEmpty()) {
+            return;
+        }
+        UnitOfWork unitOfWork = entityManager.unwrap(UnitOfWork.class);
+        Set<String> names = (Set<String>) unitOfWork.getProperty(INSERTED_INGREDIENTS);
+        if (names == null) {
+            names = new LinkedHashSet<>();
+            unitOfWork.setProperty(INSERTED_INGREDIENTS, names);
+        }
+        names.addAll(inserted);
+    }
+}
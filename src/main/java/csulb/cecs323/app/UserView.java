@@ -0,0 +1,28 @@
+package csulb.cecs323.app;
+
+/**
+ * UserView holds the columns of a chef or a food critic that the list screens show, read with a constructor expression
+ * instead of loading the user with its followers, cuisines, recipes or reviews
+ */
+public final class UserView {
+
+    private final long userId;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+
+    public UserView(long userId, String firstName, String lastName, String email) {
+        this.userId = userId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.email = email;
+    }
+
+    public long getUserId() { return userId; }
+
+    public String getFirstName() { return firstName; }
+
+    public String getLastName() { return lastName; }
+
+    public String getEmail() { return email; }
+}
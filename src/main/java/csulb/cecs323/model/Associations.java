@@ -0,0 +1,28 @@
+package csulb.cecs323.model;
+
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUtil;
+
+/**
+ * Associations tells the bidirectional helpers of the entities whether the collection on the other side
+ * of a relationship is loaded, so adding one element does not read the whole collection just to keep it in step.
+ * Only the owning side writes the relationship, a collection that is mapped by it and not loaded yet
+ * reads the new element from the database when it is first used after the transaction was flushed.
+ */
+final class Associations {
+
+    private static final PersistenceUtil PERSISTENCE = Persistence.getPersistenceUtil();
+
+    private Associations() {
+    }
+
+    /**
+     * Tells whether an attribute of an entity is in memory
+     * @param entity the entity, managed, detached or new
+     * @param attribute the name of the attribute
+     * @return true if using the attribute does not read the database, always true for a new entity
+     */
+    static boolean isLoaded(Object entity, String attribute) {
+        return PERSISTENCE.isLoaded(entity, attribute);
+    }
+}
@@ -85,13 +85,15 @@ public class Chef extends User{
     }
 
     /**
-     * Adds a new cuisine that the chef have familiarized with into the chef's cuisines Set
-     * and the specific cuisine entity will also add the chef that is associated with
+     * Adds a new cuisine that the chef have familiarized with into the chef's cuisines Set, which writes the link
+     * and loads the Set if needed, and the specific cuisine entity will also add the chef if its chefs are loaded already
      * @param cuisine   the new cuisine that will be added into the cuisine Set
      */
     public void addCuisine(Cuisine cuisine){
         this.familiarCuisines.add(cuisine);
-        cuisine.getExpertChefs().add(this);
+        if (Associations.isLoaded(cuisine, "expertChefs")) {
+            cuisine.getExpertChefs().add(this);
+        }
     }
 
     /**
@@ -113,12 +115,14 @@ public class Chef extends User{
     }
 
     /**
-     * Adds a new recipe that the chef has recently made
+     * Adds a new recipe that the chef has recently made, if the chef's recipes are loaded already,
      * and that specific recipe entity will have an assigned chef
      * @param recipe   the new recipe that was made
      */
     public void addRecipe(Recipe recipe){
-        this.recipesProduced.add(recipe);
+        if (Associations.isLoaded(this, "recipesProduced")) {
+            this.recipesProduced.add(recipe);
+        }
         recipe.setChefCreator(this);
     }
 
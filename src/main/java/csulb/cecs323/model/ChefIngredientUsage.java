@@ -0,0 +1,65 @@
+package csulb.cecs323.model;
+
+import org.eclipse.persistence.annotations.ReadOnly;
+
+import javax.persistence.*;
+
+/**
+ * contain how many ingredient amounts of a chef's recipes use one ingredient,
+ * a chef stops using an ingredient when the count drops to zero, so its number of different ingredients is kept without
+ * reading the recipes again
+ * the rows are written with SQL in the same transaction as the ingredient amounts they count, see csulb.cecs323.app.IngredientUsage,
+ * an ingredient the chef does not use has no row
+ */
+@Entity
+@ReadOnly
+@Cacheable(false)
+@Table(name = "chef_ingredient_usage")
+@IdClass(ChefIngredientUsageId.class)
+public class ChefIngredientUsage {
+
+    @Id
+    @Column(name = "chef_id")
+    private long chefId;
+
+    @Id
+    @Column(name = "ingredient_name")
+    private String ingredientName;
+
+    @Column(name = "amount_count", nullable = false)
+    private long amountCount;
+
+    /**
+     * an empty constructor for the ingredient usage of a chef
+     */
+    public ChefIngredientUsage() {}
+
+    /**
+     * get the id of the chef the usage is of
+     * @return id of the chef in long
+     */
+    public long getChefId() {
+        return chefId;
+    }
+
+    /**
+     * get the name of the ingredient the usage is of
+     * @return name of the ingredient in String
+     */
+    public String getIngredientName() {
+        return ingredientName;
+    }
+
+    /**
+     * get the number of ingredient amounts of the chef's recipes that use the ingredient
+     * @return number of ingredient amounts in long
+     */
+    public long getAmountCount() {
+        return amountCount;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("ChefIngredientUsage[chef = %d, ingredient = %s, amounts = %d]", chefId, ingredientName, amountCount);
+    }
+}
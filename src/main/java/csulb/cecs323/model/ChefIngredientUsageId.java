@@ -0,0 +1,70 @@
+package csulb.cecs323.model;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * primary key of the ingredient usage of a chef, the chef together with the ingredient
+ * used by find and the cache of ChefIngredientUsage
+ */
+public class ChefIngredientUsageId implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private long chefId;
+
+    private String ingredientName;
+
+    /**
+     * an empty constructor for the key of an ingredient usage
+     */
+    public ChefIngredientUsageId() {}
+
+    /**
+     * stores the key of the usage of an ingredient by a chef
+     * @param chefId id of the chef
+     * @param ingredientName name of the ingredient
+     */
+    public ChefIngredientUsageId(long chefId, String ingredientName) {
+        this.chefId = chefId;
+        this.ingredientName = ingredientName;
+    }
+
+    /**
+     * get the id of the chef
+     * @return id of the chef in long
+     */
+    public long getChefId() {
+        return chefId;
+    }
+
+    /**
+     * get the name of the ingredient
+     * @return name of the ingredient in String
+     */
+    public String getIngredientName() {
+        return ingredientName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ChefIngredientUsageId)) {
+            return false;
+        }
+        ChefIngredientUsageId other = (ChefIngredientUsageId) o;
+        return chefId == other.chefId && Objects.equals(ingredientName, other.ingredientName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(chefId, ingredientName);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ChefIngredientUsageId[chef = %d, ingredient = %s]", chefId, ingredientName);
+    }
+}
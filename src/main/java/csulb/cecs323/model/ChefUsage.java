@@ -0,0 +1,63 @@
+package csulb.cecs323.model;
+
+import org.eclipse.persistence.annotations.ReadOnly;
+
+import javax.persistence.*;
+
+/**
+ * contain the ingredient usage of a chef: the number of ingredient amounts of the chef's recipes
+ * and the number of different ingredients they use, so the chefs using the fewest or the most ingredients
+ * are found without going through the recipes
+ * the rows are written with SQL in the same transaction as the ingredient amounts they count, see csulb.cecs323.app.IngredientUsage,
+ * every chef has a row, with zeros for a chef without recipes
+ */
+@Entity
+@ReadOnly
+@Cacheable(false)
+@Table(name = "chef_usage", indexes = @Index(name = "chef_usage_amounts", columnList = "amount_count"))
+public class ChefUsage {
+
+    @Id
+    @Column(name = "chef_id")
+    private long chefId;
+
+    @Column(name = "amount_count", nullable = false)
+    private long amountCount;
+
+    @Column(name = "ingredient_count", nullable = false)
+    private long ingredientCount;
+
+    /**
+     * an empty constructor for the ingredient usage
+     */
+    public ChefUsage() {}
+
+    /**
+     * get the id of the chef the usage is of
+     * @return id of the chef in long
+     */
+    public long getChefId() {
+        return chefId;
+    }
+
+    /**
+     * get the number of ingredient amounts of the chef's recipes
+     * @return number of ingredient amounts in long
+     */
+    public long getAmountCount() {
+        return amountCount;
+    }
+
+    /**
+     * get the number of different ingredients the chef's recipes use
+     * @return number of different ingredients in long
+     */
+    public long getIngredientCount() {
+        return ingredientCount;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("ChefUsage[chef = %d, amounts = %d, ingredients = %d]", chefId, amountCount, ingredientCount);
+    }
+}
@@ -16,7 +16,10 @@ import java.util.Set;
 @Table(uniqueConstraints = {@UniqueConstraint(columnNames = {"name","region"})})
 public class Cuisine {
 
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "cuisine_id_generator")
+    @TableGenerator(name = "cuisine_id_generator", table = "id_generator", pkColumnName = "sequence_name",
+            valueColumnName = "sequence_count", pkColumnValue = "cuisine", allocationSize = 50)
     @Column(name = "cuisine_id")
     private long cuisineId;
 
@@ -129,12 +132,14 @@ public class Cuisine {
     }
 
     /**
-     * Adds a new chef into the cuisine's chef list
-     * and that specific chef entity will also add the current cuisine into their cuisine list
+     * Adds a new chef into the cuisine's chef list if that list is loaded already
+     * and that specific chef entity will also add the current cuisine into their cuisine list, which writes the link
      * @param chef  the new chef that will be added into cuisine's chef list
      */
     public void addChef(Chef chef){
-        this.expertChefs.add(chef);
+        if (Associations.isLoaded(this, "expertChefs")) {
+            this.expertChefs.add(chef);
+        }
         chef.getFamiliarCuisines().add(this);
     }
 
@@ -157,13 +162,15 @@ public class Cuisine {
     }
 
     /**
-     * Adds new ingredient into the list of cuisine ingredients
-     * and the specific ingredient entity will add the current cuisine into their cuisine list
+     * Adds new ingredient into the list of cuisine ingredients, which writes the link and loads the list if needed,
+     * and the specific ingredient entity will add the current cuisine into their cuisine list if that list is loaded already
      * @param ingredient  the ingredient that will be added into the ingredient list
      */
     public void addIngredient(Ingredient ingredient){
         this.ingredientsUsed.add(ingredient);
-        ingredient.getCuisinesAffected().add(this);
+        if (Associations.isLoaded(ingredient, "cuisinesAffected")) {
+            ingredient.getCuisinesAffected().add(this);
+        }
     }
 
     /**
@@ -185,12 +192,14 @@ public class Cuisine {
     }
 
     /**
-     * Adds a new recipe into the recipe list of cuisine
+     * Adds a new recipe into the recipe list of cuisine if that list is loaded already
      * and that recipe entity will set their cuisine attribute to the current cuisine
      * @param recipe  the new recipe that will be added into the recipe list
      */
     public void addRecipe(Recipe recipe){
-        this.recipesCreated.add(recipe);
+        if (Associations.isLoaded(this, "recipesCreated")) {
+            this.recipesCreated.add(recipe);
+        }
         recipe.setCuisine(this);
     }
 
@@ -21,7 +21,8 @@ public class FoodCritic extends User{
     @Column(name = "current_platform")
     private String currentPlatform;
 
-    @Column(name = "number_of_reviews")
+    // counted in the database as the reviews are written, see csulb.cecs323.app.Counters, never written back from here
+    @Column(name = "number_of_reviews", updatable = false)
     private int numberOfReviews;
 
     @OneToMany(mappedBy = "foodCritic", cascade = {CascadeType.REMOVE}, orphanRemoval = true)
@@ -71,7 +72,7 @@ public class FoodCritic extends User{
     }
 
     /**
-     * gets the total number of reviews done
+     * gets the total number of reviews done, as it was when the food critic was read
      * @return the value of reviews the food critic has done
      */
     public int getNumberOfReviews() {
@@ -85,22 +86,26 @@ public class FoodCritic extends User{
     public Set<Review> getSubmittedReviews(){ return submittedReviews; }
 
     /**
-     * adds a new review that the food critic has conducted into the review set.
+     * adds a new review that the food critic has conducted into the review set,
+     * only if the reviews are loaded already, the food critic of the review writes the link.
+     * the number of reviews goes up when the review is inserted
      * @param review the value of reviews done and object of a new review by the food critic
      */
     public void addReview(Review review){
-        this.submittedReviews.add(review);
-        this.numberOfReviews++;
+        if (Associations.isLoaded(this, "submittedReviews")) {
+            this.submittedReviews.add(review);
+        }
     }
 
     /**
-     * removes a review that the food critic has conducted
+     * removes a review that the food critic has conducted,
+     * only if the reviews are loaded already, a review that is not loaded is not read just to be removed.
+     * the number of reviews goes down when the review is deleted
      * @param review removes the value of reviews done as well as the object
      */
     public void removeReview(Review review){
-        if(this.submittedReviews.contains(review)){
+        if (Associations.isLoaded(this, "submittedReviews")) {
             this.submittedReviews.remove(review);
-            this.numberOfReviews--;
         }
     }
     /**
@@ -96,11 +96,14 @@ public class Ingredient {
     public Set<Cuisine> getCuisinesAffected() {return cuisinesAffected;}
 
     /**
-     * adds a new cuisine object from within the existing cuisine objects
+     * adds a new cuisine object from within the existing cuisine objects, to the cuisines of the ingredient
+     * only if they are loaded already, the ingredients of the cuisine write the link
      * @param cuisine the cuisine object that contains ingredients for it
      */
     public void addCuisine(Cuisine cuisine){
-        this.cuisinesAffected.add(cuisine);
+        if (Associations.isLoaded(this, "cuisinesAffected")) {
+            this.cuisinesAffected.add(cuisine);
+        }
         cuisine.getIngredientsUsed().add(this);
     }
 
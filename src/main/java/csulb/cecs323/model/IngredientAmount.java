@@ -86,12 +86,15 @@ public class IngredientAmount {
     }
 
     /**
-     * sets the recipe into the ingredient amount class
+     * sets the recipe into the ingredient amount class,
+     * the amount is added to the ingredient amounts of the recipe only if they are loaded already
      * @param recipe places the class into the ingredient amount class for reference to be used
      */
     public void setRecipe(Recipe recipe) {
         this.recipe = recipe;
-        recipe.addIngredientAmount(this);
+        if (recipe != null && Associations.isLoaded(recipe, "ingredientAmounts")) {
+            recipe.addIngredientAmount(this);
+        }
     }
 
     /**
@@ -103,12 +106,15 @@ public class IngredientAmount {
     }
 
     /**
-     * sets the ingredient object that needs to be accounted for
+     * sets the ingredient object that needs to be accounted for,
+     * the amount is added to the ingredient amounts of the ingredient only if they are loaded already
      * @param ingredient object that requires to be counted as a value and have units defined
      */
     public void setIngredient(Ingredient ingredient) {
         this.ingredient = ingredient;
-        ingredient.addIngredientAmount(this);
+        if (ingredient != null && Associations.isLoaded(ingredient, "ingredientAmounts")) {
+            ingredient.addIngredientAmount(this);
+        }
     }
 
     /**
@@ -0,0 +1,63 @@
+package csulb.cecs323.model;
+
+import org.eclipse.persistence.annotations.ReadOnly;
+
+import javax.persistence.*;
+
+/**
+ * contain the number of recipes using an ingredient, kept next to the ingredient's type
+ * so the unused ingredients, of every type or of one, are found in the index without going through the ingredient amounts
+ * the rows are written with SQL in the same transaction as the ingredient amounts they count, see csulb.cecs323.app.IngredientUsage,
+ * every ingredient has a row, with a count of zero for an ingredient no recipe uses
+ */
+@Entity
+@ReadOnly
+@Cacheable(false)
+@Table(name = "ingredient_recipe_count", indexes = @Index(name = "ingredient_recipe_count_unused", columnList = "recipe_count, ingredient_type"))
+public class IngredientRecipeCount {
+
+    @Id
+    @Column(name = "ingredient_name")
+    private String ingredientName;
+
+    @Column(name = "ingredient_type")
+    private String ingredientType;
+
+    @Column(name = "recipe_count", nullable = false)
+    private long recipeCount;
+
+    /**
+     * an empty constructor for the recipe count
+     */
+    public IngredientRecipeCount() {}
+
+    /**
+     * get the name of the ingredient the count is of
+     * @return name of the ingredient in String
+     */
+    public String getIngredientName() {
+        return ingredientName;
+    }
+
+    /**
+     * get the type of the ingredient
+     * @return type of the ingredient in String
+     */
+    public String getIngredientType() {
+        return ingredientType;
+    }
+
+    /**
+     * get the number of recipes using the ingredient
+     * @return number of recipes in long
+     */
+    public long getRecipeCount() {
+        return recipeCount;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("IngredientRecipeCount[ingredient = %s, type = %s, recipes = %d]",
+                ingredientName, ingredientType, recipeCount);
+    }
+}
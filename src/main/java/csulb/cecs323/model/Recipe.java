@@ -25,7 +25,9 @@ import java.util.Set;
 public class Recipe {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "recipe_id_generator")
+    @TableGenerator(name = "recipe_id_generator", table = "id_generator", pkColumnName = "sequence_name",
+            valueColumnName = "sequence_count", pkColumnValue = "recipe", allocationSize = 50)
     @Column(name = "recipe_id")
     private long recipeId;
 
@@ -67,6 +69,11 @@ public class Recipe {
     @Column(name = "number_of_serving", nullable = false)
     private int numberOfServings;
 
+    // rows inserted without a version, e.g. by the seed loader, start at 1
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 1")
+    private long version;
+
     /**
      * empty constructor to account for connected attributes is no beginning arguments were given
      */
@@ -105,6 +112,15 @@ public class Recipe {
         return recipeId;
     }
 
+    /**
+     * get the version of the recipe, it goes up by one with every committed change
+     * and an update based on an older version fails with an OptimisticLockException
+     * @return version of the recipe in long
+     */
+    public long getVersion() {
+        return version;
+    }
+
     /**
      * get the name of recipe
      * @return name of recipe in String format
@@ -0,0 +1,93 @@
+package csulb.cecs323.model;
+
+import org.eclipse.persistence.annotations.ReadOnly;
+
+import javax.persistence.*;
+
+/**
+ * contain the rating aggregate of a recipe: the number of its reviews and the sum, lowest and highest of their ratings,
+ * so the average rating of a recipe, and of all recipes together, is read without going through the reviews
+ * the rows are written with SQL in the same transaction as the reviews they count, see csulb.cecs323.app.RatingAggregates,
+ * a recipe without reviews has no row
+ */
+@Entity
+@ReadOnly
+@Cacheable(false)
+@Table(name = "recipe_rating")
+public class RecipeRating {
+
+    @Id
+    @Column(name = "recipe_id")
+    private long recipeId;
+
+    @Column(name = "review_count", nullable = false)
+    private long reviewCount;
+
+    @Column(name = "rating_sum", nullable = false)
+    private double ratingSum;
+
+    @Column(name = "min_rating", nullable = false)
+    private float minRating;
+
+    @Column(name = "max_rating", nullable = false)
+    private float maxRating;
+
+    /**
+     * an empty constructor for the rating aggregate
+     */
+    public RecipeRating() {}
+
+    /**
+     * get the id of the recipe the aggregate is of
+     * @return id of the recipe in long
+     */
+    public long getRecipeId() {
+        return recipeId;
+    }
+
+    /**
+     * get the number of reviews of the recipe
+     * @return number of reviews in long
+     */
+    public long getReviewCount() {
+        return reviewCount;
+    }
+
+    /**
+     * get the sum of the ratings of the recipe's reviews
+     * @return sum of the ratings in double
+     */
+    public double getRatingSum() {
+        return ratingSum;
+    }
+
+    /**
+     * get the lowest rating of the recipe's reviews
+     * @return lowest rating in float
+     */
+    public float getMinRating() {
+        return minRating;
+    }
+
+    /**
+     * get the highest rating of the recipe's reviews
+     * @return highest rating in float
+     */
+    public float getMaxRating() {
+        return maxRating;
+    }
+
+    /**
+     * get the average rating of the recipe's reviews
+     * @return average rating in double
+     */
+    public double getAverageRating() {
+        return ratingSum / reviewCount;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("RecipeRating[recipe = %d, reviews = %d, sum = %.2f, min = %.2f, max = %.2f]",
+                recipeId, reviewCount, ratingSum, minRating, maxRating);
+    }
+}
@@ -23,7 +23,9 @@ import java.time.LocalDate;
 public class Review{
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "review_id_generator")
+    @TableGenerator(name = "review_id_generator", table = "id_generator", pkColumnName = "sequence_name",
+            valueColumnName = "sequence_count", pkColumnValue = "review", allocationSize = 50)
     @Column(name = "review_id")
     private long reviewId;
 
@@ -35,7 +37,8 @@ public class Review{
     @JoinColumn(name = "recipe_id", nullable = false)
     private Recipe recipe;
 
-    @OneToOne
+    // lazy, an eager chain of recent reviews would cost one SELECT per review in every listing
+    @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "recent_review_id")
     private Review recentReview;
 
@@ -48,6 +51,11 @@ public class Review{
     @Column(nullable = false, length = 400)
     private String description;
 
+    // rows inserted without a version, e.g. by the seed loader, start at 1
+    @Version
+    @Column(nullable = false, columnDefinition = "BIGINT DEFAULT 1")
+    private long version;
+
     /**
      * an empty constructor for the review object
      */
@@ -67,6 +75,14 @@ public class Review{
         this.setRecipe(recipe);
     }
 
+    /**
+     * get the id of the review
+     * @return id of the review in long
+     */
+    public long getReviewId() {
+        return reviewId;
+    }
+
     /**
      * get the value of the recipe of this review
      * @return Recipe object that the review is about
@@ -76,12 +92,15 @@ public class Review{
     }
 
     /**
-     * set the value of the recipe of this review
+     * set the value of the recipe of this review,
+     * the review is added to the reviews of the recipe only if they are loaded already
      * @param recipe inputted Recipe object that to be set as the recipe of the review
      */
     public void setRecipe(Recipe recipe) {
         this.recipe = recipe;
-        recipe.addReview(this);
+        if (recipe != null && Associations.isLoaded(recipe, "reviewSet")) {
+            recipe.addReview(this);
+        }
     }
 
     /**
@@ -164,6 +183,15 @@ public class Review{
         this.description = description;
     }
 
+    /**
+     * get the version of the review, it goes up by one with every committed change
+     * and an update based on an older version fails with an OptimisticLockException
+     * @return version of the review in long
+     */
+    public long getVersion() {
+        return version;
+    }
+
     @Override
     /**
      * The string format for the Review if it is used as a string
@@ -17,7 +17,9 @@ import java.util.Set;
 public class User{
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "user_id_generator")
+    @TableGenerator(name = "user_id_generator", table = "id_generator", pkColumnName = "sequence_name",
+            valueColumnName = "sequence_count", pkColumnValue = "user", allocationSize = 50)
     @Column(name = "user_id")
     private long userID;
 
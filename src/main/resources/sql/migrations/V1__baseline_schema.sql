@@ -0,0 +1,32 @@
+CREATE TABLE INGREDIENTAMOUNT (AMOUNT FLOAT, UNITS VARCHAR(255), ingredient_name VARCHAR(255) NOT NULL, recipe_id BIGINT NOT NULL, PRIMARY KEY (ingredient_name, recipe_id))
+CREATE TABLE user_table (user_id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL, user_type VARCHAR(31), date_registered TIMESTAMP NOT NULL, EMAIL VARCHAR(255), first_name VARCHAR(255) NOT NULL, last_name VARCHAR(255) NOT NULL, PASSWORD VARCHAR(255), USERNAME VARCHAR(255), PRIMARY KEY (user_id))
+CREATE TABLE FOODCRITIC (critic_id BIGINT NOT NULL, current_platform VARCHAR(255), number_of_reviews INTEGER, PRIMARY KEY (critic_id))
+CREATE TABLE REVIEW (review_id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL, date_completed DATE NOT NULL, DESCRIPTION VARCHAR(400) NOT NULL, RATING FLOAT NOT NULL, critic_id BIGINT NOT NULL, recipe_id BIGINT NOT NULL, recent_review_id BIGINT, PRIMARY KEY (review_id))
+CREATE TABLE CUISINE (cuisine_id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL, NAME VARCHAR(255), REGION VARCHAR(255), RELIGION VARCHAR(255), PRIMARY KEY (cuisine_id))
+CREATE TABLE RECIPE (recipe_id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL, cook_time INTEGER NOT NULL, DESCRIPTION VARCHAR(400) NOT NULL, difficulty_rating INTEGER NOT NULL, NAME VARCHAR(17) NOT NULL, number_of_serving INTEGER NOT NULL, prep_time INTEGER NOT NULL, chef_id BIGINT, cuisine_id BIGINT, PRIMARY KEY (recipe_id))
+CREATE TABLE CHEF (chef_id BIGINT NOT NULL, years_of_experience INTEGER, PRIMARY KEY (chef_id))
+CREATE TABLE INGREDIENT (NAME VARCHAR(255) NOT NULL, DESCRIPTION VARCHAR(255), TYPE VARCHAR(255), PRIMARY KEY (NAME))
+CREATE TABLE followers (user_id BIGINT NOT NULL, follower_id BIGINT NOT NULL, PRIMARY KEY (user_id, follower_id))
+CREATE TABLE chef_cuisine (cuisine_id BIGINT NOT NULL, chef_id BIGINT NOT NULL, PRIMARY KEY (cuisine_id, chef_id))
+CREATE TABLE cuisine_ingredient (cuisine_id BIGINT NOT NULL, ingredient_name VARCHAR(255) NOT NULL, PRIMARY KEY (cuisine_id, ingredient_name))
+CREATE TABLE recipe_step (DESCRIPTION VARCHAR(500), order_number INTEGER NOT NULL, TIME INTEGER, recipe_id BIGINT)
+ALTER TABLE user_table ADD CONSTRAINT UNQ_user_table_0 UNIQUE (first_name, last_name, username, password)
+ALTER TABLE REVIEW ADD CONSTRAINT UNQ_REVIEW_0 UNIQUE (date_completed, description)
+ALTER TABLE CUISINE ADD CONSTRAINT UNQ_CUISINE_0 UNIQUE (name, region)
+ALTER TABLE RECIPE ADD CONSTRAINT UNQ_RECIPE_0 UNIQUE (name, description)
+ALTER TABLE INGREDIENTAMOUNT ADD CONSTRAINT NGRDENTAMOUNTrcpid FOREIGN KEY (recipe_id) REFERENCES RECIPE (recipe_id)
+ALTER TABLE INGREDIENTAMOUNT ADD CONSTRAINT NGRDNTMNTngrdntnme FOREIGN KEY (ingredient_name) REFERENCES INGREDIENT (NAME)
+ALTER TABLE FOODCRITIC ADD CONSTRAINT FOODCRITICcriticid FOREIGN KEY (critic_id) REFERENCES user_table (user_id)
+ALTER TABLE REVIEW ADD CONSTRAINT REVIEW_recipe_id FOREIGN KEY (recipe_id) REFERENCES RECIPE (recipe_id)
+ALTER TABLE REVIEW ADD CONSTRAINT REVIEW_critic_id FOREIGN KEY (critic_id) REFERENCES user_table (user_id)
+ALTER TABLE REVIEW ADD CONSTRAINT RVIEWrcentreviewid FOREIGN KEY (recent_review_id) REFERENCES REVIEW (review_id)
+ALTER TABLE RECIPE ADD CONSTRAINT RECIPE_cuisine_id FOREIGN KEY (cuisine_id) REFERENCES CUISINE (cuisine_id)
+ALTER TABLE RECIPE ADD CONSTRAINT FK_RECIPE_chef_id FOREIGN KEY (chef_id) REFERENCES user_table (user_id)
+ALTER TABLE CHEF ADD CONSTRAINT FK_CHEF_chef_id FOREIGN KEY (chef_id) REFERENCES user_table (user_id)
+ALTER TABLE followers ADD CONSTRAINT followers_user_id FOREIGN KEY (user_id) REFERENCES user_table (user_id)
+ALTER TABLE followers ADD CONSTRAINT fllowersfollowerid FOREIGN KEY (follower_id) REFERENCES user_table (user_id)
+ALTER TABLE chef_cuisine ADD CONSTRAINT chfcuisinecisineid FOREIGN KEY (cuisine_id) REFERENCES CUISINE (cuisine_id)
+ALTER TABLE chef_cuisine ADD CONSTRAINT chefcuisinechef_id FOREIGN KEY (chef_id) REFERENCES user_table (user_id)
+ALTER TABLE cuisine_ingredient ADD CONSTRAINT csnngrdentngrdntnm FOREIGN KEY (ingredient_name) REFERENCES INGREDIENT (NAME)
+ALTER TABLE cuisine_ingredient ADD CONSTRAINT csningredientcsnid FOREIGN KEY (cuisine_id) REFERENCES CUISINE (cuisine_id)
+ALTER TABLE recipe_step ADD CONSTRAINT recipesteprecipeid FOREIGN KEY (recipe_id) REFERENCES RECIPE (recipe_id)
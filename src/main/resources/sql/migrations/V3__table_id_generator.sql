@@ -0,0 +1,7 @@
+-- Entity ids are preallocated from the id_generator table instead of IDENTITY columns, so inserts can be batched
+-- Each counter starts at the highest id already in use, the old identity columns keep accepting explicit values
+CREATE TABLE id_generator (sequence_name VARCHAR(50) NOT NULL, sequence_count DECIMAL(15), PRIMARY KEY (sequence_name))
+INSERT INTO id_generator(sequence_name, sequence_count) SELECT 'user', COALESCE(MAX(user_id), 0) FROM user_table
+INSERT INTO id_generator(sequence_name, sequence_count) SELECT 'cuisine', COALESCE(MAX(cuisine_id), 0) FROM cuisine
+INSERT INTO id_generator(sequence_name, sequence_count) SELECT 'recipe', COALESCE(MAX(recipe_id), 0) FROM recipe
+INSERT INTO id_generator(sequence_name, sequence_count) SELECT 'review', COALESCE(MAX(review_id), 0) FROM review
@@ -0,0 +1,4 @@
+-- Recipes and reviews carry a version that EclipseLink checks and increments on every update and delete,
+-- so concurrent edits are detected at commit instead of being prevented by long held row locks
+ALTER TABLE recipe ADD COLUMN version BIGINT NOT NULL DEFAULT 1
+ALTER TABLE review ADD COLUMN version BIGINT NOT NULL DEFAULT 1
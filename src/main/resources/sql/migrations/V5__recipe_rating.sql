@@ -0,0 +1,3 @@
+-- The number of reviews of every recipe and the sum, lowest and highest of their ratings, see RatingAggregates
+-- The rows are filled in by the data migration that follows
+CREATE TABLE recipe_rating (recipe_id BIGINT NOT NULL, review_count BIGINT NOT NULL, rating_sum FLOAT NOT NULL, min_rating FLOAT NOT NULL, max_rating FLOAT NOT NULL, PRIMARY KEY (recipe_id))
@@ -0,0 +1,5 @@
+-- The number of ingredient amounts of the recipes of every chef, by ingredient and in total, see IngredientUsage
+-- The rows are filled in by the data migration that follows
+CREATE TABLE chef_ingredient_usage (chef_id BIGINT NOT NULL, ingredient_name VARCHAR(255) NOT NULL, amount_count BIGINT NOT NULL, PRIMARY KEY (chef_id, ingredient_name))
+CREATE TABLE chef_usage (chef_id BIGINT NOT NULL, amount_count BIGINT NOT NULL, ingredient_count BIGINT NOT NULL, PRIMARY KEY (chef_id))
+CREATE INDEX chef_usage_amounts ON chef_usage (amount_count)
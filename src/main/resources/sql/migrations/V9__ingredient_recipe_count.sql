@@ -0,0 +1,4 @@
+-- The number of recipes using every ingredient, with the ingredient's type, see IngredientUsage
+-- The rows are filled in by the data migration that follows
+CREATE TABLE ingredient_recipe_count (ingredient_name VARCHAR(255) NOT NULL, ingredient_type VARCHAR(255), recipe_count BIGINT NOT NULL, PRIMARY KEY (ingredient_name))
+CREATE INDEX ingredient_recipe_count_unused ON ingredient_recipe_count (recipe_count, ingredient_type)
@@ -1,21 +0,0 @@
-
-INSERT INTO user_table(user_type,first_name, last_name, username, password, email, date_registered) VALUES ('Chef','Anjum', 'Anand', 'anand123', 'anjum323', 'Anjum.Anand91@gmail.com', '2020-11-23 15:55:00'), ('FoodCritic','Roxanne', 'Bamboat', 'bamboat456', 'roxanneFood', 'Roxanne.Bamboat49@yahoo.com', '2019-9-10 09:05:30'), ('Chef','Andres', 'Jimenez', 'andresJ', 'jbro', 'Andres.jimenez59@gmail.com', '2021-09-14 16:32:44'), ('FoodCritic','Brianna', 'Cisneros', 'BCisneros125', 'Clover2569', 'Brianna.Cisneros88@hotmail.com', '2020-1-16 10:25:35'), ('FoodCritic','Kermit', 'The Frog', 'MissPiggy','Kermie','Kermit.Frog@gmail.com', '2020-6-18 20:15:30'), ('Chef','Gordon', 'Ramsay', 'gordonramsay', 'hellskitchen101', 'bestchef.gr@gmail.com', '2006-12-11 13:05:32'), ('FoodCritic','David', 'Lee', 'davidlee029', 'dvdllee', 'davidlee.strong@hotmail.com', '2020-10-21 9:15:17')
-INSERT INTO chef(chef_id, years_of_experience) VALUES (1,25), (6,20), (3,18)
-INSERT INTO foodcritic(critic_id, current_platform, number_of_reviews) VALUES (2,'Seamless', 2), (4,'Yelp', 2),(5,'Fritics', 1), (7, 'TravelCon',0)
-
-INSERT INTO followers(user_id, follower_id) VALUES (2, 1), (3, 2), (2, 5), (4, 6)
-
-INSERT INTO cuisine(name, region, religion) VALUES ('Cutlet','India','Hinduism'), ('Tamale','Mexico','Catholic'), ('Noodle Soup','Southeast Asia', 'Buddhism'), ('Spaghetti', 'Italy', 'Catholic'), ('Steak Dish', 'Europe', 'Christianity')
-INSERT INTO chef_cuisine(cuisine_id, chef_id) VALUES (1,1), (2,3), (3,6), (4,1), (5,6)
-
-INSERT INTO recipe(name, description, prep_time, cook_time, difficulty_rating, number_of_serving, chef_id, cuisine_id) VALUES ('Tikki', 'popular north indian snack of spiced, crisp, and tasty potato patties', 15, 15, 2, 8, 1, 1), ('Beef Tamales', 'popular Mexican dish that is often seen served during the holiday season in December', 60, 330, 2, 36, 3, 2), ('Pho','Vietnamese soup that is normally made with a bone-beef broth, banh pho noodles, and thinly sliced beef',30,120,4,10,6,3),('Spaghetti Cacio','spaghetti variation of Mac ''n cheese',5,18,1,4,1,4), ('Beef WellingTon', 'a dish of beef, typically coated in pâté de foie gras, wrapped in puff pastry, and baked.', 720, 180, 4, 4, 6,5)
-
-INSERT INTO recipe_step(order_number, description, time, recipe_id) VALUES (1, 'Add two cups of water to a pressure cooker, then place on stove and turn gas to medium high.', 2, 1), (2, 'Place four medium size potatoes inside the cooker and wait for two whistles.', 15, 1), (3, 'Take the potatoes out of the cooker and peel them.', 5, 1), (4, 'Mash the potatoes together and add all of the spices and seasoning then mix till even.', 15, 1), (5, 'On a pan, add the three tbsp of Vegetable Oil and put the gas to medium.', 1, 1), (6, 'Roll and flatten the mashed potatoes into patties.', 8, 1), (7, 'Once all of the potatoes are in patty form, then place them on the pan and flip occasionally till done.', 20, 1), (1, 'Place beef along with garlic in a pot. Boil the pot with water over high heat, cover the pot for 3.5 hours and reserve 5 cups of cooking liquid and discard garlic. Make sure to cool the meat before shredding with a fork', 210, 2), (2, 'place corn husks in a large container with warm water. Allow it to soak until soft.', 180, 2), (3, 'toast ancho chiles in a cast iron skillet while not burning them. Cool them down and remove stems and seeds. Grind them down', 10, 2), (4, 'heat oil in a large skillet, mix flour and let it brown slightly. pour 1 cup of beef broth and stir until smooth. put in grinded chiles, cumin seeds, ground cumin, minced garlic, oregano, red pepper flakes, vinegar and salt. stir beef into the skillet and cover the lid', 45, 2), (5, 'mix lard and salt with an electric mixer on high speed. Add dough flour and beat at low speed. pour in reserved liquid little by little until mixture is soft like cookie dough', 10, 2), (6, 'flatten our each corn husk placed earlier. Spread about 2 tablespoons dough mixture onto 2/3rds of the husk. Spread a tablespoon of meat mixture in the middle. roll up the corn husk by a long side, Then the narrow end onto the rolled tamale and tie it down.', 30, 2), (7, 'Place all tamales in a steamer basket over boiling water for an hour. Afterwards make sure to serve immediately', 60, 2), (1,'prepare onion and ginger',10,3),(2,'Toast the spices',5,3),(3,'Char the onions and ginger and remove charred bits',15,3), (4,'simmer broth on medium for an hour',60,3), (5,'Freeze the beef and thinly slice it',15,3), (6, 'strain the broth to remove solids and continue simmer',30,3), (7,'prepare pho bowl with noodles and lade the broth on top',5,3),(8,'serve with toppings and sauces',5,3),(1,'Cook spaghetti in the salted boiling water',10,4),(2,'Stir garlic and pepper ',2,4),(3,'Add spaghetti and Pecorino Romano cheese with water and stir',5,4),(4,'serve after sauce coast the spaghetti',5,4),(1, 'Wrap each piece of beef tightly in a triple layer of cling film to set its shape, then chill overnight.', 720,5), (2, 'Remove the cling film, then quickly sear the beef fillets in a hot pan with a little olive oil for 30-60 seconds until browned all over and rare in the middle. Remove from the pan and leave to cool.', 1,5),(3, 'Finely chop the mushrooms and fry in a hot pan with a little olive oil, the thyme leaves and some seasoning. When the mushrooms begin to release their juices, continue to cook over a high heat for about 10 minutes until all the excess moisture has evaporated and you are left with a mushroom paste (known as a duxelle). Remove the duxelle from the pan and leave to cool.', 10,5), (4, 'Cut the pastry in half, place on a lightly floured surface and roll each piece into a rectangle large enough to envelop one of the beef fillets. Chill in the refrigerator.', 10,5), (5, 'Lay a large sheet of cling film on a work surface and place 4 slices of Parma ham in the middle, overlapping them slightly, to create a square. Spread half the duxelle evenly over the ham.', 3,5), (6, 'Season the beef fillets, then place them on top of the mushroom-covered ham. Using the cling film, roll the Parma ham over the beef, then roll and tie the cling film to get a nice, evenly thick log. Repeat this step with the other beef fillet, then chill for at least 30 minutes.', 30,5), (7, 'Brush the pastry with the egg wash. Remove the cling film from the beef, then wrap the pastry around each ham-wrapped fillet. Trim the pastry and brush all over with the egg wash. Cover with cling film and chill for at least 30 minutes.', 30,5), (8, 'Meanwhile, make the red wine sauce. Heat the oil in a large pan, then fry the beef trimmings for a few minutes until browned on all sides. Stir in the shallots with the peppercorns, bay and thyme and continue to cook for about 5 minutes, stirring frequently, until the shallots turn golden brown.', 5, 5), (9, 'Pour in the vinegar and let it bubble for a few minutes until almost dry. Now add the wine and boil until almost completely reduced. Add the stock and bring to the boil again. Lower the heat and simmer gently for 1 hour, removing any scum from the surface of the sauce, until you have the desired consistency. Strain the liquid through a fine sieve lined with muslin. Check for seasoning and set aside.', 60,5), (10, 'When you are ready to cook the beef wellingtons, score the pastry lightly and brush with the egg wash again, then bake at 200°C/Gas 6 for 15-20 minutes until the pastry is golden brown and cooked. Rest for 10 minutes before carving.', 30,5), (11, 'Meanwhile, reheat the sauce. Serve the beef wellingtons sliced, with the sauce as an accompaniment.', 3, 5)
-
-INSERT INTO ingredient(name, type, description) VALUES ('Potato', 'Vegetable', 'herbaceous perennial plant that can either be the color red, yellow, brown, etc.'), ('Vegetable Oil', 'Oil', 'extracted from various types of fruits, seeds, grains, and nuts.'), ('Turmeric Powder', 'Spice', 'bright yellow spice made from the root of Curcuma longa'), ('Coriander Powder', 'Spice', 'a mild flavour derived from the seeds of the coriander plant'), ('Amchur Powder', 'Spice', 'mango spice powder made from dried unripe green mangoes'), ('Salt', 'Seasoning', 'composed of sodium chloride to give food flavour'), ('Red Chili Powder', 'Spice', 'consists of chili pepper with other spices to give it more heat'), ('Chana Masala Powder', 'Spice', 'contains different seeds, salt, and pepper ground together'), ('Poha', 'Grain', 'rice that has been parboiled, rolled, flattened, then dried to produce flakes'), ('Chuck Roast', 'meat', 'Specific cut from the shoulder to neck region of an animal'), ('Dried corn husks', 'Grain', 'Dried sheat that surrounds the ear of corn which is not edible'), ('Cloves Garlic', 'Vegetable', 'a small white colored wedge of a garlic bulb which is used as a common ingredient across many dishes'), ('Dried anchos chiles', 'Spice', 'Ripened poblano pepper that are now dry. Have a smoky flavor with mild spice. Skin looks wrinkly and look like big raisins'), ('All Purpose Flour', 'Grain', 'Either a blend of hard and soft wheats or is milled from red wheats which is used in everything from bread to pizzas'), ('Beef Broth', 'Broth', 'consists of beef bones, vegetable an acidic component with salt and water to cover it'), ('Cumin seeds', 'Spice', 'Come from cuminum cyminum plant and used to flavor many dishes'), ('Ground Cumin', 'Spice', 'Spice from the dried seed of cuminum cyminum that has been gorunded up and is commonly seen in Latin America, the Middle East and North Africa'), ('Chopped Fresh Oregano', 'Herb', 'Warm aromatic herb that lacks sweetness but has a more pungent flavor when used'), ('Red Pepper Flakes','Spice','Mix of peppers in which a particular pepper, the cayenne pepper, will be in the majority'), ('White vinegar','Solution','Comprised of acetic acid and water which yields a clean and strong taste'), ('Lard','Fat','Semi solid fat product that comprised of fat tissue of a pig.'),('Masa Harina','flour','A flour made from ground corn with a special method, it is the foundation of tortillas tamales and other mexican based dishes.'), ('Onion','Vegetable','an edible bulb with a pungent taste and smell, composed of several concentric layers, used in cooking'),('Ginger', 'Spice', 'a slightly peppery and sweet, with a pungent and spicy aroma inducing spice'),('Cinnamon','Spice','inner bark of several tree species act as an aromatic condiment and flavouring additive'), ('Sirloin Steak','Meat','a cut of beef from the bolar blade with a small brim of fat'),('Rice Noodles','Processed','noodles made from grinding rice grains and dried it in form of noodles'),('Limes','Fruit','sour, round, and bright green citrus fruits'),('Spaghetti','Processed','Long, thin, solid, cylindrical pasta made from wheat and water'),('Olive Oil', 'Oil', 'oil extracted from the fleshy part of the ripened fruit of the olive tree'),('Black Pepper','Spice', 'black peppercorns with spicy, woody, warm, terpy and herbaceous flavors'),('Cheese','Dairy', 'A dairy product that comprises proteins and fat from milk by coagulation'), ('Beef Fillet', 'Meat', 'a fleshy boneless piece of meat from near the loins or the ribs of an animal.'), ('Wild Mushrooms', 'Mushroom', 'A variety of mushrooms that are not cultivated commercially, but are gathered in the wild such as morel and chanterelle varieties.'), ('Thyme Leaves', 'Herb', 'a low-growing aromatic plant of the mint family. The small leaves are used as a culinary herb and the plant yields a medicinal oil.'), ('Puff Pastry', 'Pastry', 'light flaky pastry, used for pie crusts, canapés, etc.'), ('Parma Ham', 'Meat', 'a type of ham that is eaten uncooked.'), ('Egg Yolk', 'Egg', 'beaten with 1 tbsp water and a pinch of salt.'), ('Beef Trimmings', 'Meat', 'pieces of meat remaining after steaks, roasts, and other cuts are removed.'), ('Shallots', 'Vegetable', 'a small bulb which resembles an onion and is used for pickling or as a substitute for onion.'), ('Bay Leaf', 'Seasoning', 'the aromatic dried leaf of the bay tree, used in cooking.'), ('Red Wine Vinegar', 'Condiment', 'Vinegar made from red wine, which has a stronger and more robust flavor than vinegar made with white wine.'), ('Red Wine', 'Wine', 'Red wine is a type of wine made from dark-colored grape varieties.'), ('Canola Oil', 'Oil', 'Oil extracted from canola seeds')
-
-INSERT INTO ingredientamount(amount, units, ingredient_name, recipe_id) VALUES (4, 'units', 'Potato', 1), (3, 'tbsp', 'Vegetable Oil', 1), (0.5, 'tsp','Turmeric Powder', 1), (0.5, 'tsp', 'Coriander Powder', 1), (0.25, 'tsp', 'Amchur Powder', 1), (1.25, 'tsp', 'Salt', 1), (0.5, 'tsp', 'Red Chili Powder', 1), (1, 'tbsp', 'Chana Masala Powder', 1), (0.5, 'cup', 'Poha', 1), (1, 'tbsp', 'All Purpose Flour', 1), (4, 'pounds', 'Chuck Roast', 2), (2, 'tbsp', 'Vegetable Oil', 2), (8, 'ounces', 'Dried corn husks', 2), (4, 'units', 'Cloves Garlic', 2), (4, 'units', 'Dried anchos chiles', 2), (2, 'tbsp', 'All Purpose Flour', 2),(1,'cup','Beef Broth',2),(1,'tsp','Cumin seeds',2),(1,'tsp','Ground Cumin',2),(2,'tsp','Chopped Fresh Oregano',2),(1,'tsp','Red Pepper Flakes',2),(1,'tsp','White vinegar',2),(3,'cups','Lard',2),(1,'tblsp','Salt',2),(9,'cups','Masa Harina',2), (2,'units','Onion',3), (1,'units','Ginger',3), (2,'sticks','Cinnamon',3), (6,'cups','Beef Broth',3), (8,'ounces', 'Sirloin Steak',3), (8,'ounces','Rice Noodles',3), (2,'units','Limes',3), (1,'pound', 'Spaghetti',4), (6, 'tbsp', 'Olive Oil',4), (2,'units','Cloves Garlic',4), (2,'tbsp','Black Pepper',4),(1.75, 'cups', 'Cheese',4), (800, 'g','Beef Fillet', 5), (4, 'tbsp', 'Olive Oil', 5),(500, 'g','Wild Mushrooms',5), (2, 'sprig','Thyme Leaves',5), (500, 'g', 'Puff Pastry', 5), (8, 'slices', 'Parma Ham', 5), (2, 'Yolks', 'Egg Yolk',5), (200, 'g', 'Beef Trimmings',5), (4, 'units', 'Shallots', 5), (12,'tbsp','Black Pepper',5), (1,'units','Bay Leaf',5), (1, 'splash','Red Wine Vinegar',5), (750, 'ml', 'Red Wine', 5), (750, 'ml','Beef Broth',5)
-
-INSERT INTO cuisine_ingredient(cuisine_id, ingredient_name) VALUES (1, 'Potato'), (1, 'Vegetable Oil'), (1, 'Turmeric Powder'), (1, 'Coriander Powder'), (1, 'Amchur Powder'), (1, 'Salt'), (1, 'Red Chili Powder'), (1, 'Chana Masala Powder'), (1, 'Poha'), (1, 'All Purpose Flour'), (2, 'Chuck Roast'), (2, 'Vegetable Oil'), (2, 'Dried corn husks'), (2, 'Cloves Garlic'), (2, 'Dried anchos chiles'), (2, 'All Purpose Flour'), (2, 'Beef Broth'), (2, 'Cumin seeds'), (2, 'Ground Cumin'), (2, 'Chopped Fresh Oregano'),(2,'Red Pepper Flakes'),(2,'White vinegar'),(2,'Lard'),(2,'Salt'),(2,'Masa Harina'), (3,'Onion'), (3,'Ginger'), (3, 'Cinnamon'), (3,'Beef Broth'), (3, 'Sirloin Steak'), (3, 'Rice Noodles'), (3, 'Limes'), (4,'Spaghetti'), (4,'Cheese'), (5,'Beef Fillet'), (5 , 'Olive Oil'), (5, 'Parma Ham'), (5, 'Egg Yolk'), (5, 'Beef Trimmings'), (5, 'Red Wine Vinegar'), (5, 'Red Wine'), (5, 'Beef Broth')
-
-INSERT INTO review(date_completed, rating, description, critic_id, recipe_id) VALUES ('2019-10-29', 5, 'Well created food, very tasty and delicious', 2, 1), ('2020-12-15', 5, 'Well made tamale in which you can tell the amount of time and effort put into it. Perfect mix of spices and seasoning to give a great compliment to the beef.', 4, 2), ('2020-8-23', 3, 'The Spaghetti Cacio could have been better if they added more sauce into my meal but the food was well cooked and organized!', 5, 4), ('2021-1-21', 4, 'The dish is well prepared and cooked. Always up to Gordon standards.', 2, 5), ('2018-02-23', 4, 'This is my first time having pho and it just blew my mind. Great vietnamese food!', 4, 3)
\ No newline at end of file
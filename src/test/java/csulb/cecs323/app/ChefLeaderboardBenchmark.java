@@ -0,0 +1,184 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ChefLeaderboardBenchmark compares the report of the chef with the most reviews read off the ChefLeaderboard
+ * against the grouping query it replaced, for a growing number of reviews.
+ * It reports the latency of the grouping query, the time the leaderboard takes to build from the database,
+ * the latency of the report and of the first ten chefs read off it, and of counting one more review.
+ * The chefs, recipes and reviews are made up and loaded with JDBC batches into an in-memory Derby database, see TestDatabase,
+ * ten reviews per recipe and the recipes spread over the chefs with a skew, so a few chefs have most reviews.
+ * Usage: ChefLeaderboardBenchmark [reviewCounts...]
+ */
+public class ChefLeaderboardBenchmark {
+
+    private static final int CHEFS = 50;
+    private static final int REVIEWS_PER_RECIPE = 10;
+    private static final int QUERY_ROUNDS = 3;
+    private static final int READS = 10_000;
+    private static final long FIRST_ID = 1_000_000;
+
+    /** The report of the chef with the most reviews as it was read before the leaderboard */
+    private static final String GROUPED_REPORT =
+            "SELECT U.FIRST_NAME AS CHEF_FIRST_NAME, U.LAST_NAME AS CHEF_LAST_NAME, U.EMAIL AS CHEF_EMAIL, COUNT(*) AS NUMBER_OF_REVIEWS"
+            + " FROM USER_TABLE U INNER JOIN CHEF C on U.USER_ID = C.CHEF_ID"
+            + " INNER JOIN RECIPE R on C.CHEF_ID = R.CHEF_ID"
+            + " INNER JOIN REVIEW R2 on R.RECIPE_ID = R2.RECIPE_ID"
+            + " GROUP BY U.FIRST_NAME, U.LAST_NAME, U.EMAIL"
+            + " HAVING COUNT(*) >= ALL(SELECT COUNT(*)"
+            + " FROM USER_TABLE INNER JOIN CHEF on USER_TABLE.USER_ID = CHEF.CHEF_ID"
+            + " INNER JOIN RECIPE on CHEF.CHEF_ID = RECIPE.CHEF_ID"
+            + " INNER JOIN REVIEW on RECIPE.RECIPE_ID = REVIEW.RECIPE_ID"
+            + " GROUP BY USER_TABLE.USER_ID)";
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> counts = new ArrayList<>();
+        for (String arg : args) {
+            counts.add(Integer.parseInt(arg));
+        }
+        if (counts.isEmpty()) {
+            counts = List.of(10_000, 100_000, 1_000_000);
+        }
+
+        for (int count : counts) {
+            EntityManagerFactory factory = TestDatabase.start("chef-leaderboard-" + count);
+            try {
+                int recipes = load(factory, count);
+                measure(factory, count, recipes);
+            } finally {
+                factory.close();
+            }
+        }
+    }
+
+    private static void measure(EntityManagerFactory factory, int count, int recipes) {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            LatencyRecorder query = new LatencyRecorder(QUERY_ROUNDS);
+            List<?> expected = null;
+            // one unmeasured round
+            for (int round = 0; round <= QUERY_ROUNDS; round++) {
+                long start = System.nanoTime();
+                expected = entityManager.createNativeQuery(GROUPED_REPORT).getResultList();
+                if (round > 0) {
+                    query.record(System.nanoTime() - start);
+                }
+            }
+
+            ChefLeaderboard leaderboard = ChefLeaderboard.of(factory);
+            long start = System.nanoTime();
+            leaderboard.build(entityManager);
+            double buildMillis = (System.nanoTime() - start) / 1e6;
+
+            LatencyRecorder report = new LatencyRecorder(READS);
+            LatencyRecorder top = new LatencyRecorder(READS);
+            List<Object[]> rows = null;
+            for (int i = 0; i < READS; i++) {
+                long reportStart = System.nanoTime();
+                rows = leaderboard.report(entityManager);
+                report.record(System.nanoTime() - reportStart);
+                long topStart = System.nanoTime();
+                leaderboard.top(10);
+                top.record(System.nanoTime() - topStart);
+            }
+            if (expected == null || rows.size() != expected.size()
+                    || ((Number) ((Object[]) expected.get(0))[3]).longValue() != ((Number) rows.get(0)[3]).longValue()) {
+                throw new IllegalStateException("The leaderboard does not agree with the query");
+            }
+
+            LatencyRecorder review = new LatencyRecorder(READS);
+            Random random = new Random(count);
+            for (int i = 0; i < READS; i++) {
+                long recipeId = FIRST_ID + random.nextInt(recipes);
+                long reviewStart = System.nanoTime();
+                leaderboard.reviewed(recipeId, 1);
+                review.record(System.nanoTime() - reviewStart);
+            }
+
+            System.out.printf("%9d reviews  query %s%n", count, query);
+            System.out.printf("%9d reviews  leaderboard built in %.1f ms (%d chefs)  report %s  top 10 %s  one more review %s%n",
+                    count, buildMillis, leaderboard.size(), report, top, review);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Adds the chefs, their recipes and the reviews by one of the seeded food critics
+     * @return the number of recipes
+     */
+    private static int load(EntityManagerFactory factory, int count) throws Exception {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            List<UserView> critics = Listing.FOOD_CRITICS.page(entityManager, null, 100).getRows();
+            entityManager.getTransaction().begin();
+            Connection connection = entityManager.unwrap(Connection.class);
+            try (PreparedStatement user = connection.prepareStatement("INSERT INTO user_table (user_id, user_type, first_name, last_name, username, password, email, date_registered) VALUES (?, 'Chef', ?, ?, ?, 'secret', ?, ?)");
+                 PreparedStatement chef = connection.prepareStatement("INSERT INTO chef (chef_id, years_of_experience) VALUES (?, 1)")) {
+                Timestamp registered = Timestamp.valueOf(LocalDate.now().atStartOfDay());
+                for (int i = 0; i < CHEFS; i++) {
+                    long id = FIRST_ID + i;
+                    user.setLong(1, id);
+                    user.setString(2, "first " + i);
+                    user.setString(3, "last " + i);
+                    user.setString(4, "chef" + i);
+                    user.setString(5, "chef" + i + "@example.com");
+                    user.setTimestamp(6, registered);
+                    user.addBatch();
+                    chef.setLong(1, id);
+                    chef.addBatch();
+                }
+                user.executeBatch();
+                chef.executeBatch();
+            }
+
+            Random random = new Random(count);
+            int recipes = Math.max(1, count / REVIEWS_PER_RECIPE);
+            try (PreparedStatement recipe = connection.prepareStatement("INSERT INTO recipe (recipe_id, name, description, prep_time, cook_time, difficulty_rating, number_of_serving, chef_id) VALUES (?, ?, ?, 1, 1, 1, 1, ?)")) {
+                for (int i = 0; i < recipes; i++) {
+                    recipe.setLong(1, FIRST_ID + i);
+                    recipe.setString(2, "recipe " + i);
+                    recipe.setString(3, "recipe " + i);
+                    // a skewed pick, so some chefs have many recipes and most have a few
+                    recipe.setLong(4, FIRST_ID + (int) (Math.pow(random.nextDouble(), 2) * CHEFS));
+                    recipe.addBatch();
+                    if (i % 1000 == 999) {
+                        recipe.executeBatch();
+                    }
+                }
+                recipe.executeBatch();
+            }
+
+            try (PreparedStatement review = connection.prepareStatement("INSERT INTO review (review_id, date_completed, description, rating, critic_id, recipe_id) VALUES (?, ?, ?, ?, ?, ?)")) {
+                Date today = Date.valueOf(LocalDate.now());
+                for (int i = 0; i < count; i++) {
+                    review.setLong(1, FIRST_ID + i);
+                    review.setDate(2, today);
+                    review.setString(3, "review " + i);
+                    review.setFloat(4, 1 + random.nextInt(5));
+                    review.setLong(5, critics.get(i % critics.size()).getUserId());
+                    review.setLong(6, FIRST_ID + random.nextInt(recipes));
+                    review.addBatch();
+                    if (i % 1000 == 999) {
+                        review.executeBatch();
+                    }
+                }
+                review.executeBatch();
+            }
+            entityManager.getTransaction().commit();
+            return recipes;
+        } finally {
+            entityManager.close();
+        }
+    }
+}
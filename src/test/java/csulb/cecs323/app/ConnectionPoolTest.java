@@ -0,0 +1,77 @@
+package csulb.cecs323.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies that a connection given back to the pool is handed to the next borrower with the settings it was opened with,
+ * whatever the borrower before changed, and that a cached statement whose execution failed is not used again.
+ * The pools have a single connection, so every borrower gets the same one.
+ */
+class ConnectionPoolTest {
+
+    private static final String MERGE = "MERGE INTO pooled t USING SYSIBM.SYSDUMMY1 ON t.id = ? "
+            + "WHEN NOT MATCHED THEN INSERT (id, code) VALUES (?, ?)";
+
+    @Test
+    void returnedConnectionIsResetToItsDefaults() throws SQLException {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings(1, 1, 1000, false, 1, 10);
+        try (ConnectionPool pool = new ConnectionPool("jdbc:derby:memory:connection-pool;create=true", "", "", settings)) {
+            Connection physical;
+            int isolation;
+            try (Connection connection = pool.getConnection()) {
+                physical = connection.unwrap(Connection.class);
+                isolation = connection.getTransactionIsolation();
+                connection.setAutoCommit(false);
+                connection.setReadOnly(true);
+                connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+            }
+            try (Connection connection = pool.getConnection()) {
+                assertSame(physical, connection.unwrap(Connection.class), "the pool lends its only connection again");
+                assertTrue(connection.getAutoCommit(), "autocommit is on again");
+                assertFalse(connection.isReadOnly(), "the connection is writable again");
+                assertEquals(isolation, connection.getTransactionIsolation(), "the isolation level is the one it was opened with");
+                assertNull(connection.getWarnings(), "the warnings are cleared");
+            }
+        }
+    }
+
+    @Test
+    void failedStatementIsPreparedAgain() throws SQLException {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings(1, 1, 1000, false, 1, 10);
+        try (ConnectionPool pool = new ConnectionPool("jdbc:derby:memory:statement-cache;create=true", "", "", settings)) {
+            try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE pooled (id BIGINT PRIMARY KEY, code INT UNIQUE)");
+                statement.executeUpdate("INSERT INTO pooled VALUES (1, 7)");
+            }
+            try (Connection connection = pool.getConnection()) {
+                try (PreparedStatement merge = connection.prepareStatement(MERGE)) {
+                    bind(merge, 2, 7);
+                    assertThrows(SQLException.class, merge::executeUpdate, "the code is taken");
+                }
+                // Derby would insert the rows of the failed MERGE again if the statement were reused
+                try (PreparedStatement merge = connection.prepareStatement(MERGE)) {
+                    bind(merge, 3, 8);
+                    assertEquals(1, merge.executeUpdate(), "the row is inserted");
+                }
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement merge, long id, int code) throws SQLException {
+        merge.setLong(1, id);
+        merge.setLong(2, id);
+        merge.setInt(3, code);
+    }
+}
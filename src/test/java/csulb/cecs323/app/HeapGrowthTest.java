@@ -0,0 +1,118 @@
+package csulb.cecs323.app;
+
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs thousands of CookBook menu commands in a row and samples the heap in use after each round, to show that
+ * the persistence context of a command does not outlive it. The commands create, list and update recipes, list reviews
+ * and run reports, they are fed to the menu as scripted user input. As recipes are added the data keeps growing,
+ * but what a command loads must become garbage once the command returns.
+ * <p>
+ * The shared cache is turned off, and the components that keep state per row on purpose, the report cache,
+ * the recipe search index, the ingredient dictionary and the chef leaderboard, are emptied before every sample,
+ * see BulkLoader.refresh, and the page cache of the database is kept small, so the growth measured is what
+ * the persistence contexts leave behind.
+ */
+class HeapGrowthTest {
+
+    /**
+     * Menu input of the commands that are repeated, each one returns to the main menu when done.
+     * %1$d is replaced by the number of the command, to keep the names of new recipes and ingredients unique.
+     */
+    private static final String[] COMMANDS = {
+            // create a recipe with one new ingredient and one step, for the first cuisine and chef
+            "1\nR%1$d\nrecipe %1$d\n10\n20\n3\n4\ningredient %1$d\nSpice\nmade up\ng\n2\ny\nstep %1$d\n5\ny\n1\n1",
+            "5 1 1 1",          // run the first three reports
+            "4 8 n n",          // list the reviews without deleting one
+            "2 a 1 3 30 y n",   // set the cook time of the first recipe containing an a
+            "4 3 n n",          // list the recipes without deleting one
+    };
+
+    private static final int COMMANDS_RUN = 4000;
+    private static final int COMMANDS_PER_ROUND = 500;
+    private static final double ALLOWED_GROWTH_MEGABYTES = 1;
+
+    /** The number of pages Derby caches per database, read when the database boots */
+    private static final String PAGE_CACHE_SIZE = "derby.storage.pageCacheSize";
+
+    @Test
+    void persistenceContextsDoNotOutliveTheirCommands() throws IOException {
+        Map<String, Object> overrides = new HashMap<>();
+        // an in-memory database would keep the new rows on the heap as well, so a throwaway database on disk is used
+        Path directory = Files.createTempDirectory("heap-growth-test");
+        overrides.put("javax.persistence.jdbc.url", "jdbc:derby:" + directory.resolve("cookbook") + ";create=true");
+        overrides.put("eclipselink.cache.shared.default", "false");
+        overrides.put(ReferenceCache.ENTITIES, "");
+        // the embedded database caches the pages it reads on the same heap, at its smallest the cache is full after the first round
+        System.setProperty(PAGE_CACHE_SIZE, "40");
+        EntityManagerFactory factory;
+        try {
+            factory = TestDatabase.start("heap-growth", overrides);
+        } finally {
+            System.clearProperty(PAGE_CACHE_SIZE);
+        }
+        PrintStream console = System.out;
+        double first = 0;
+        double last = 0;
+        try {
+            StringBuilder script = new StringBuilder();
+            for (int i = 0; i < COMMANDS_RUN; i++) {
+                script.append(String.format(COMMANDS[i % COMMANDS.length], i)).append('\n');
+            }
+            Scanner input = new Scanner(script.toString());
+            CookBook cookBook = new CookBook(factory, input);
+
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (int done = 0; done < COMMANDS_RUN; ) {
+                for (int i = 0; i < COMMANDS_PER_ROUND && done < COMMANDS_RUN; i++, done++) {
+                    cookBook.execute(input.nextInt());
+                }
+                BulkLoader.refresh(factory);
+                double used = usedHeapMegabytes();
+                if (first == 0) {
+                    first = used;
+                }
+                last = used;
+                console.printf("%6d commands  heap in use %7.1f MB%n", done, used);
+            }
+        } finally {
+            System.setOut(console);
+            factory.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+
+        double growth = last - first;
+        assertTrue(growth <= ALLOWED_GROWTH_MEGABYTES,
+                String.format("the heap grew by %.1f MB after the first round, allowed %.1f MB", growth, ALLOWED_GROWTH_MEGABYTES));
+    }
+
+    /**
+     * Collects the garbage and measures the heap still in use
+     */
+    private static double usedHeapMegabytes() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed() / (1024.0 * 1024.0);
+    }
+}
@@ -0,0 +1,95 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * InsertBenchmark compares insert throughput of the old one-row-per-round-trip path
+ * (no batch writing, one id reserved at a time) with JDBC batch writing and preallocated ids.
+ * Each configuration runs against its own in-memory Derby database, see TestDatabase.
+ * Usage: InsertBenchmark [recipes] [recipesPerTransaction]
+ */
+public class InsertBenchmark {
+
+    private static final int STEPS_PER_RECIPE = 3;
+    private static final int INGREDIENTS_PER_RECIPE = 3;
+    private static final int REVIEWS_PER_RECIPE = 2;
+
+    public static void main(String[] args) {
+        int recipes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int perTransaction = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        Map<String, Object> rowByRow = new HashMap<>();
+        rowByRow.put("eclipselink.jdbc.batch-writing", "None");
+        rowByRow.put(CookBookCustomizer.ID_ALLOCATION_SIZE, "1");
+        Map<String, Object> batched = new HashMap<>();
+        batched.put("eclipselink.jdbc.batch-writing", "JDBC");
+        batched.put("eclipselink.jdbc.batch-writing.size", "500");
+        batched.put(CookBookCustomizer.ID_ALLOCATION_SIZE, "500");
+
+        run("row by row", rowByRow, recipes, perTransaction);
+        run("batched", batched, recipes, perTransaction);
+    }
+
+    /**
+     * Inserts the recipes with their steps, ingredients, ingredient amounts and reviews and prints the throughput
+     */
+    private static void run(String name, Map<String, Object> overrides, int recipes, int perTransaction) {
+        EntityManagerFactory factory = TestDatabase.start("insert-benchmark-" + name.replace(' ', '-'), overrides);
+        try {
+            BulkPersister persister = new BulkPersister();
+            long rows = 0;
+            long start = System.nanoTime();
+            for (int first = 0; first < recipes; first += perTransaction) {
+                EntityManager entityManager = factory.createEntityManager();
+                List<Object> entities = graph(entityManager, first, Math.min(perTransaction, recipes - first));
+                persister.persistAll(entityManager, entities);
+                rows += entities.size() + (long) Math.min(perTransaction, recipes - first) * STEPS_PER_RECIPE;
+                entityManager.close();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%-10s %8d rows in %7.2f s  %10.0f inserts/sec%n", name, rows, seconds, rows / seconds);
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * Builds new recipes for a seeded chef, cuisine and food critic, listing referenced entities before the ones that use them
+     */
+    private static List<Object> graph(EntityManager entityManager, int first, int count) {
+        Chef chef = entityManager.find(Chef.class, 1L);
+        FoodCritic critic = entityManager.find(FoodCritic.class, 2L);
+        Cuisine cuisine = entityManager.find(Cuisine.class, 1L);
+        List<Object> ingredients = new ArrayList<>();
+        List<Object> others = new ArrayList<>();
+        for (int r = first; r < first + count; r++) {
+            Recipe recipe = new Recipe("bench " + r, "benchmark recipe " + r, 10, 20, 3, 4);
+            chef.addRecipe(recipe);
+            cuisine.addRecipe(recipe);
+            for (int s = 1; s <= STEPS_PER_RECIPE; s++) {
+                recipe.addStep(new Step(s, "step " + s + " of recipe " + r, 5));
+            }
+            others.add(recipe);
+            for (int i = 0; i < INGREDIENTS_PER_RECIPE; i++) {
+                Ingredient ingredient = new Ingredient("bench ingredient " + r + "-" + i, "Spice", "benchmark ingredient");
+                ingredients.add(ingredient);
+                others.add(new IngredientAmount(1.5f, "tsp", recipe, ingredient));
+            }
+            for (int v = 0; v < REVIEWS_PER_RECIPE; v++) {
+                Review review = new Review(LocalDate.of(2021, 1, 1), 4, "benchmark review " + r + "-" + v, critic, recipe);
+                critic.addReview(review);
+                others.add(review);
+            }
+        }
+        ingredients.addAll(others);
+        return ingredients;
+    }
+}
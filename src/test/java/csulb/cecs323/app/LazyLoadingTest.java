@@ -0,0 +1,79 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.IngredientAmount;
+import csulb.cecs323.model.Review;
+import org.eclipse.persistence.internal.weaving.PersistenceWeavedLazy;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies that the woven entities load their LAZY @ManyToOne fields on first access and not before.
+ * The reviews and ingredient amounts of the sample data are listed from an empty cache and the SQL statements
+ * are counted: the listing is one SELECT, and every related entity costs one more only once its getter is used.
+ * It fails when the classes were compiled without the static weaving step.
+ */
+class LazyLoadingTest {
+
+    private static EntityManagerFactory factory;
+
+    @BeforeAll
+    static void start() {
+        factory = TestDatabase.start("lazy-loading");
+    }
+
+    @AfterAll
+    static void stop() {
+        factory.close();
+    }
+
+    @Test
+    void entitiesAreWoven() {
+        assertTrue(PersistenceWeavedLazy.class.isAssignableFrom(Review.class), "the entity classes are not woven, build them with mvn compile");
+    }
+
+    @Test
+    void reviewReadsRecipeAndCriticOnFirstAccess() {
+        factory.getCache().evictAll();
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            long start = TestDatabase.statements(factory);
+            List<Review> reviews = entityManager.createNamedQuery(QueryCatalog.findAll("Review"), Review.class).getResultList();
+            assertEquals(1, TestDatabase.statements(factory) - start, "listing the reviews reads neither recipes nor critics");
+
+            Review first = reviews.get(0);
+            first.getRecipe().getName();
+            assertEquals(2, TestDatabase.statements(factory) - start, "Review.recipe is read once it is accessed");
+            first.getFoodCritic().getFirstName();
+            assertEquals(3, TestDatabase.statements(factory) - start, "Review.foodCritic is read once it is accessed");
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    @Test
+    void ingredientAmountReadsIngredientAndRecipeOnFirstAccess() {
+        factory.getCache().evictAll();
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            long start = TestDatabase.statements(factory);
+            List<IngredientAmount> amounts = entityManager.createNamedQuery(QueryCatalog.findAll("IngredientAmount"), IngredientAmount.class).getResultList();
+            assertEquals(1, TestDatabase.statements(factory) - start, "listing the ingredient amounts reads neither recipes nor ingredients");
+
+            IngredientAmount first = amounts.get(0);
+            first.getIngredient().getName();
+            assertEquals(2, TestDatabase.statements(factory) - start, "IngredientAmount.ingredient is read once it is accessed");
+            first.getRecipe().getName();
+            assertEquals(3, TestDatabase.statements(factory) - start, "IngredientAmount.recipe is read once it is accessed");
+        } finally {
+            entityManager.close();
+        }
+    }
+}
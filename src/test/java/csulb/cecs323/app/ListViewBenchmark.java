@@ -0,0 +1,199 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Recipe;
+import csulb.cecs323.model.Review;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * ListViewBenchmark compares the list screens of recipes and reviews read as views with constructor expressions,
+ * the way the Listings read them, against the same rows read as entities with the findAll queries.
+ * Every round lists all rows and formats the line the console prints for each, from a fresh entity manager.
+ * For every listing it reports the latency of a round, the bytes a round allocates on its thread
+ * and the heap still held while the entity manager of the round is open, that is while the list is on the screen.
+ * The recipes and reviews are made up and loaded with JDBC batches into an in-memory Derby database, see TestDatabase.
+ * Usage: ListViewBenchmark [recipeCounts...]
+ */
+public class ListViewBenchmark {
+
+    private static final int ROUNDS = 20;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final long FIRST_ID = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> counts = new ArrayList<>();
+        for (String arg : args) {
+            counts.add(Integer.parseInt(arg));
+        }
+        if (counts.isEmpty()) {
+            counts = List.of(1_000, 10_000, 50_000);
+        }
+
+        // the same lines entityDeletion prints for the rows
+        Function<EntityManager, List<String>> recipeEntities = entityManager -> {
+            List<String> lines = new ArrayList<>();
+            for (Recipe recipe : entityManager.createNamedQuery(QueryCatalog.findAll("Recipe"), Recipe.class).getResultList()) {
+                lines.add(recipe.getName() + ", description: " + recipe.getDescription() + ", number of servings: " + recipe.getNumberOfServings());
+            }
+            return lines;
+        };
+        Function<EntityManager, List<String>> recipeViews = entityManager -> {
+            List<String> lines = new ArrayList<>();
+            for (RecipeView recipe : Listing.RECIPES.page(entityManager, null, Integer.MAX_VALUE - 1).getRows()) {
+                lines.add(recipe.getName() + ", description: " + recipe.getDescription() + ", number of servings: " + recipe.getNumberOfServings());
+            }
+            return lines;
+        };
+        Function<EntityManager, List<String>> reviewEntities = entityManager -> {
+            List<String> lines = new ArrayList<>();
+            for (Review review : entityManager.createNamedQuery(QueryCatalog.findAll("Review"), Review.class).getResultList()) {
+                lines.add("food critic: " + review.getFoodCritic().getFirstName() + " " + review.getFoodCritic().getLastName()
+                        + ", recipe: " + review.getRecipe().getName() + ", description: " + review.getDescription() + ", rating: " + review.getRating());
+            }
+            return lines;
+        };
+        Function<EntityManager, List<String>> reviewViews = entityManager -> {
+            List<String> lines = new ArrayList<>();
+            for (ReviewView review : Listing.REVIEWS.page(entityManager, null, Integer.MAX_VALUE - 1).getRows()) {
+                lines.add("food critic: " + review.getFoodCriticFirstName() + " " + review.getFoodCriticLastName()
+                        + ", recipe: " + review.getRecipeName() + ", description: " + review.getDescription() + ", rating: " + review.getRating());
+            }
+            return lines;
+        };
+
+        for (int count : counts) {
+            EntityManagerFactory factory = TestDatabase.start("list-view-" + count);
+            try {
+                load(factory, count);
+                measure(factory, "recipes", "entities", recipeEntities);
+                measure(factory, "recipes", "views", recipeViews);
+                measure(factory, "reviews", "entities", reviewEntities);
+                measure(factory, "reviews", "views", reviewViews);
+            } finally {
+                factory.close();
+            }
+        }
+    }
+
+    /**
+     * Lists the rows ROUNDS times after WARMUP_ROUNDS unmeasured ones and prints the averages
+     */
+    private static void measure(EntityManagerFactory factory, String listing, String as, Function<EntityManager, List<String>> lines) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        LatencyRecorder latency = new LatencyRecorder(ROUNDS);
+        long allocated = 0;
+        int rows = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            factory.getCache().evictAll();
+            EntityManager entityManager = factory.createEntityManager();
+            try {
+                long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                rows = lines.apply(entityManager).size();
+                long nanos = System.nanoTime() - start;
+                if (round >= WARMUP_ROUNDS) {
+                    latency.record(nanos);
+                    allocated += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+                }
+            } finally {
+                entityManager.close();
+            }
+        }
+
+        factory.getCache().evictAll();
+        long usedBefore = usedHeap();
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            List<String> shown = lines.apply(entityManager);
+            long retained = usedHeap() - usedBefore;
+            System.out.printf("%-7s as %-8s %7d rows  %9.1f KB allocated  %9.1f KB retained  list %s%n",
+                    listing, as, shown.size(), allocated / (double) ROUNDS / 1024, retained / 1024.0, latency);
+        } finally {
+            entityManager.close();
+        }
+        if (rows == 0) {
+            throw new IllegalStateException("Nothing was listed for " + listing);
+        }
+    }
+
+    /**
+     * Collects until the used heap stops shrinking, so garbage of the rounds before does not count
+     */
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        while (true) {
+            System.gc();
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) {
+                return used;
+            }
+            used = now;
+        }
+    }
+
+    /**
+     * Adds the recipes, each with one review by one of the seeded food critics
+     */
+    private static void load(EntityManagerFactory factory, int count) throws Exception {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            List<UserView> critics = Listing.FOOD_CRITICS.page(entityManager, null, 100).getRows();
+            entityManager.getTransaction().begin();
+            Connection connection = entityManager.unwrap(Connection.class);
+            Random random = new Random(count);
+            try (PreparedStatement recipe = connection.prepareStatement("INSERT INTO recipe (recipe_id, name, description, prep_time, cook_time, difficulty_rating, number_of_serving) VALUES (?, ?, ?, 1, 1, 1, ?)");
+                 PreparedStatement review = connection.prepareStatement("INSERT INTO review (review_id, date_completed, description, rating, critic_id, recipe_id) VALUES (?, ?, ?, ?, ?, ?)")) {
+                Date today = Date.valueOf(LocalDate.now());
+                for (int i = 0; i < count; i++) {
+                    long id = FIRST_ID + i;
+                    recipe.setLong(1, id);
+                    recipe.setString(2, "recipe " + i);
+                    recipe.setString(3, text(random, 300) + i);
+                    recipe.setInt(4, 1 + random.nextInt(12));
+                    recipe.addBatch();
+                    review.setLong(1, id);
+                    review.setDate(2, today);
+                    review.setString(3, text(random, 300) + i);
+                    review.setFloat(4, 1 + random.nextInt(5));
+                    review.setLong(5, critics.get(i % critics.size()).getUserId());
+                    review.setLong(6, id);
+                    review.addBatch();
+                    if (i % 1000 == 999) {
+                        recipe.executeBatch();
+                        review.executeBatch();
+                    }
+                }
+                recipe.executeBatch();
+                review.executeBatch();
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static String text(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        while (text.length() < length - 10) {
+            int word = 3 + random.nextInt(6);
+            for (int c = 0; c < word; c++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+            text.append(' ');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.FoodCritic;
+import csulb.cecs323.model.Ingredient;
+import csulb.cecs323.model.IngredientAmount;
+import csulb.cecs323.model.Recipe;
+import csulb.cecs323.model.Review;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Verifies that a page of the ingredient amount and review listings costs the same number of SQL statements
+ * however many rows it holds. Every page is printed the way entityDeletion does, once on the sample data
+ * and once after more rows were added, and the statements prepared on the connection pool are counted for each.
+ */
+class ListingStatementCountTest {
+
+    /** Rows added for the second round of every listing */
+    private static final int ADDED_ROWS = 20;
+
+    /** Large enough for every row to be on the first page */
+    private static final int PAGE_SIZE = 1000;
+
+    /** The same getters entityDeletion prints for every row */
+    private static final Consumer<IngredientAmountView> AMOUNT_LINE = amount -> String.join(" ", amount.getRecipeName(), amount.getIngredientName());
+    private static final Consumer<ReviewView> REVIEW_LINE = review -> String.join(" ", review.getFoodCriticFirstName(),
+            review.getFoodCriticLastName(), review.getRecipeName());
+
+    private static final Function<EntityManager, List<IngredientAmountView>> AMOUNT_PAGE =
+            entityManager -> Listing.INGREDIENT_AMOUNTS.page(entityManager, null, PAGE_SIZE).getRows();
+    private static final Function<EntityManager, List<ReviewView>> REVIEW_PAGE =
+            entityManager -> Listing.REVIEWS.page(entityManager, null, PAGE_SIZE).getRows();
+
+    private static EntityManagerFactory factory;
+
+    @BeforeAll
+    static void start() {
+        factory = TestDatabase.start("listing-statement-count");
+    }
+
+    @AfterAll
+    static void stop() {
+        factory.close();
+    }
+
+    @Test
+    void pageReadsItsRelatedNamesInOneSelect() {
+        assertEquals(1, statements(AMOUNT_PAGE, AMOUNT_LINE), "a page of ingredient amounts reads the recipes and ingredients in its own SELECT");
+        assertEquals(1, statements(REVIEW_PAGE, REVIEW_LINE), "a page of reviews reads the critics and recipes in its own SELECT");
+    }
+
+    @Test
+    void pageCostsTheSameForMoreRows() {
+        long amountsBefore = statements(AMOUNT_PAGE, AMOUNT_LINE);
+        long reviewsBefore = statements(REVIEW_PAGE, REVIEW_LINE);
+        addRows();
+        assertEquals(amountsBefore, statements(AMOUNT_PAGE, AMOUNT_LINE), "a page of ingredient amounts costs the same for more rows");
+        assertEquals(reviewsBefore, statements(REVIEW_PAGE, REVIEW_LINE), "a page of reviews costs the same for more rows");
+    }
+
+    /**
+     * Lists the rows of a page from an empty cache, prints them and counts the SQL statements it took
+     */
+    private static <T> long statements(Function<EntityManager, List<T>> rows, Consumer<T> line) {
+        factory.getCache().evictAll();
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            long before = TestDatabase.statements(factory);
+            rows.apply(entityManager).forEach(line);
+            return TestDatabase.statements(factory) - before;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Adds reviews, each pointing at the one before as its recent review, and ingredient amounts for the first recipe
+     */
+    private static void addRows() {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            List<FoodCritic> critics = entityManager.createNamedQuery(QueryCatalog.findAll("FoodCritic"), FoodCritic.class).getResultList();
+            List<Recipe> recipes = entityManager.createNamedQuery(QueryCatalog.findAll("Recipe"), Recipe.class).getResultList();
+            Review previous = null;
+            for (int i = 0; i < ADDED_ROWS; i++) {
+                Review review = new Review(LocalDate.now(), 3, "listing statement count test " + i,
+                        critics.get(i % critics.size()), recipes.get(i % recipes.size()));
+                review.setRecentReview(previous);
+                entityManager.persist(review);
+                previous = review;
+            }
+            Recipe recipe = recipes.get(0);
+            Set<String> used = new HashSet<>();
+            for (IngredientAmount amount : recipe.getIngredientAmounts()) {
+                used.add(amount.getIngredient().getName());
+            }
+            int added = 0;
+            for (Ingredient ingredient : entityManager.createNamedQuery(QueryCatalog.findAll("Ingredient"), Ingredient.class).getResultList()) {
+                if (added == ADDED_ROWS) {
+                    break;
+                }
+                if (used.add(ingredient.getName())) {
+                    entityManager.persist(new IngredientAmount(1, "g", recipe, ingredient));
+                    added++;
+                }
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Chef;
+import csulb.cecs323.model.Cuisine;
+import csulb.cecs323.model.FoodCritic;
+import csulb.cecs323.model.Recipe;
+import csulb.cecs323.model.Review;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Verifies that two transactions adding the first review of the same recipe at the same time both commit,
+ * and that the row of the recipe in recipe_rating counts both reviews. Every round uses a new recipe without reviews,
+ * the two reviews come from different food critics so the review counts of the critics do not line them up.
+ */
+class RatingAggregatesTest {
+
+    private static final int ROUNDS = 10;
+
+    private static EntityManagerFactory factory;
+
+    @BeforeAll
+    static void start() {
+        factory = TestDatabase.start("rating-aggregates");
+    }
+
+    @AfterAll
+    static void stop() {
+        factory.close();
+    }
+
+    @Test
+    void concurrentFirstReviewsOfARecipeBothCommit() throws Exception {
+        List<Long> critics = critics();
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                long recipeId = newRecipe(round);
+                CyclicBarrier barrier = new CyclicBarrier(2);
+                List<Future<?>> reviewers = new ArrayList<>();
+                for (int i = 0; i < 2; i++) {
+                    long criticId = critics.get(i);
+                    float rating = 3 + 2 * i;
+                    String description = "first review " + round + "-" + i;
+                    reviewers.add(pool.submit(() -> {
+                        review(criticId, recipeId, rating, description, barrier);
+                        return null;
+                    }));
+                }
+                for (Future<?> reviewer : reviewers) {
+                    reviewer.get();
+                }
+                assertEquals(List.of(2L, 8.0, 3.0f, 5.0f), aggregate(recipeId), "the row of recipe " + recipeId + " counts both reviews");
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try (Connection connection = new Database(factory).connect()) {
+            connection.setAutoCommit(false);
+            assertEquals(0, RatingAggregates.rebuild(connection), "no row of recipe_rating is off");
+            connection.rollback();
+        }
+    }
+
+    private static List<Long> critics() {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            List<Long> ids = new ArrayList<>();
+            for (UserView critic : Listing.FOOD_CRITICS.page(entityManager, null, 2).getRows()) {
+                ids.add(critic.getUserId());
+            }
+            assertTrue(ids.size() == 2, "the sample data has two food critics");
+            return ids;
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private static long newRecipe(int round) {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            Recipe recipe = new Recipe("first review " + round, "rating aggregates test " + round, 10, 20, 3, 4);
+            entityManager.find(Chef.class, 1L).addRecipe(recipe);
+            entityManager.find(Cuisine.class, 1L).addRecipe(recipe);
+            entityManager.persist(recipe);
+            entityManager.getTransaction().commit();
+            return recipe.getRecipeId();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Adds a review of the recipe and commits once the other thread has added its review as well
+     */
+    private static void review(long criticId, long recipeId, float rating, String description, CyclicBarrier barrier) throws Exception {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            FoodCritic critic = entityManager.find(FoodCritic.class, criticId);
+            Review review = new Review(LocalDate.now(), rating, description, critic, entityManager.getReference(Recipe.class, recipeId));
+            critic.addReview(review);
+            entityManager.persist(review);
+            barrier.await();
+            entityManager.getTransaction().commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+        }
+    }
+
+    private static List<Object> aggregate(long recipeId) throws SQLException {
+        try (Connection connection = new Database(factory).connect();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT review_count, rating_sum, min_rating, max_rating FROM recipe_rating WHERE recipe_id = ?")) {
+            statement.setLong(1, recipeId);
+            try (ResultSet result = statement.executeQuery()) {
+                assertTrue(result.next(), "recipe " + recipeId + " has a row in recipe_rating");
+                return List.of(result.getLong(1), result.getDouble(2), result.getFloat(3), result.getFloat(4));
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.Recipe;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RecipeEditBenchmark compares concurrent recipe editing with one transaction held open for a whole edit session,
+ * as changeRecipe used to do, against a short transaction per change checked by the @Version of the recipe.
+ * Every session picks one of the seeded recipes and makes a few changes to it, waiting a moment before each change
+ * to stand in for the time the user takes to type it. Both variants run against their own in-memory Derby database,
+ * see TestDatabase.
+ * Usage: RecipeEditBenchmark [threads] [sessionsPerThread] [changesPerSession] [thinkMillis]
+ */
+public class RecipeEditBenchmark {
+
+    private static final long[] RECIPE_IDS = {1, 2, 3, 4, 5};
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int sessions = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int changes = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        long thinkMillis = args.length > 3 ? Long.parseLong(args[3]) : 10;
+
+        run("session transaction", threads, sessions, changes, thinkMillis, false);
+        run("per-change optimistic", threads, sessions, changes, thinkMillis, true);
+    }
+
+    private static void run(String name, int threads, int sessions, int changes, long thinkMillis, boolean optimistic) throws Exception {
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put(ConnectionPoolCustomizer.MAX_SIZE, String.valueOf(threads));
+        overrides.put(ConnectionPoolCustomizer.ACQUIRE_TIMEOUT, "120000");
+        EntityManagerFactory factory = TestDatabase.start("recipe-edit-benchmark-" + (optimistic ? "optimistic" : "session"), overrides);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            LatencyRecorder latency = new LatencyRecorder(threads * sessions);
+            AtomicLong conflicts = new AtomicLong();
+            List<Future<?>> workers = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    CookBook cookBook = new CookBook(factory, null);
+                    for (int s = 0; s < sessions; s++) {
+                        long recipeId = RECIPE_IDS[ThreadLocalRandom.current().nextInt(RECIPE_IDS.length)];
+                        long sessionStart = System.nanoTime();
+                        if (optimistic) {
+                            cookBook.runCommand(() -> editOptimistically(cookBook, recipeId, changes, thinkMillis, conflicts));
+                        } else {
+                            editInSessionTransaction(factory, recipeId, changes, thinkMillis);
+                        }
+                        latency.record(System.nanoTime() - sessionStart);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long total = (long) threads * sessions;
+            System.out.printf("%-22s %5d sessions in %6.2f s  %7.1f changes/sec  conflicts retried = %d%n    session latency %s%n",
+                    name, total, seconds, total * changes / seconds, conflicts.get(), latency);
+        } finally {
+            executor.shutdown();
+            factory.close();
+        }
+    }
+
+    /**
+     * The old changeRecipe: the transaction is opened before the recipe is looked up and committed after the last change,
+     * every change is a bulk update that keeps the row locked until then
+     */
+    private static void editInSessionTransaction(EntityManagerFactory factory, long recipeId, int changes, long thinkMillis) {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            EntityTransaction update = entityManager.getTransaction();
+            update.begin();
+            entityManager.createQuery("SELECT r FROM Recipe r WHERE r.recipeId = :recipeId")
+                    .setParameter("recipeId", recipeId).getResultList();
+            for (int c = 0; c < changes; c++) {
+                think(thinkMillis);
+                entityManager.createQuery("UPDATE Recipe r SET r.cookTime = :cookTime WHERE r.recipeId = :recipeId")
+                        .setParameter("cookTime", ThreadLocalRandom.current().nextInt(1, 500))
+                        .setParameter("recipeId", recipeId)
+                        .executeUpdate();
+            }
+            update.commit();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * The new changeRecipe: nothing is locked while the user types, each change is committed on its own
+     * and made again on the reloaded recipe if someone else changed it first
+     */
+    private static void editOptimistically(CookBook cookBook, long recipeId, int changes, long thinkMillis, AtomicLong conflicts) {
+        Recipe recipe = cookBook.reloadRecipe(recipeId);
+        for (int c = 0; c < changes; c++) {
+            think(thinkMillis);
+            int cookTime = ThreadLocalRandom.current().nextInt(1, 500);
+            while (!cookBook.commitRecipeChange(recipe, r -> r.setCookTime(cookTime))) {
+                conflicts.incrementAndGet();
+                recipe = cookBook.reloadRecipe(recipeId);
+            }
+        }
+    }
+
+    private static void think(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * RecipeSearchBenchmark measures how the latency of a recipe search grows with the number of recipes,
+ * for the RecipeSearchIndex and for the LOWER(name) LIKE '%word%' query it replaced.
+ * The recipes are made up from a fixed vocabulary, with a name of two words, a description of eight and three steps of four.
+ * The LIKE query runs against an in-memory Derby database, see TestDatabase, and is only measured up to the given number of recipes,
+ * as loading the table takes much longer than building the index.
+ * Usage: RecipeSearchBenchmark [maxRecipesForLike] [recipeCounts...]
+ */
+public class RecipeSearchBenchmark {
+
+    private static final int VOCABULARY = 20_000;
+    private static final int SEARCHES = 2_000;
+    private static final long FIRST_ID = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int maxForLike = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        List<Integer> counts = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            counts.add(Integer.parseInt(args[i]));
+        }
+        if (counts.isEmpty()) {
+            counts = List.of(10_000, 100_000, 1_000_000);
+        }
+        String[] words = vocabulary();
+
+        for (int count : counts) {
+            RecipeSearchIndex index = new RecipeSearchIndex();
+            Random random = new Random(count);
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                List<String> steps = new ArrayList<>();
+                for (int s = 0; s < 3; s++) {
+                    steps.add(text(words, random, 4));
+                }
+                index.put(FIRST_ID + i, text(words, random, 2), text(words, random, 8), steps);
+            }
+            double buildSeconds = (System.nanoTime() - start) / 1e9;
+
+            LatencyRecorder latency = new LatencyRecorder(SEARCHES);
+            long found = 0;
+            for (int i = 0; i < SEARCHES; i++) {
+                String query = query(words, random, i);
+                long searchStart = System.nanoTime();
+                found += index.search(query, 20).size();
+                latency.record(System.nanoTime() - searchStart);
+            }
+            System.out.printf("index %9d recipes  built in %6.2f s (%d words)  %5.1f results/search  search %s%n",
+                    count, buildSeconds, index.words(), (double) found / SEARCHES, latency);
+
+            if (count <= maxForLike) {
+                like(words, count);
+            }
+        }
+    }
+
+    /**
+     * Loads the recipe names into an in-memory database and measures the LIKE query
+     */
+    private static void like(String[] words, int count) throws SQLException {
+        EntityManagerFactory factory = TestDatabase.start("recipe-search-" + count);
+        try {
+            EntityManager entityManager = factory.createEntityManager();
+            try {
+                entityManager.getTransaction().begin();
+                Connection connection = entityManager.unwrap(Connection.class);
+                Random random = new Random(count);
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO recipe (recipe_id, name, description, prep_time, cook_time, difficulty_rating, number_of_serving) VALUES (?, ?, ?, 1, 1, 1, 1)")) {
+                    for (int i = 0; i < count; i++) {
+                        String name = text(words, random, 2);
+                        insert.setLong(1, FIRST_ID + i);
+                        insert.setString(2, name.length() > 17 ? name.substring(0, 17) : name);
+                        insert.setString(3, text(words, random, 8));
+                        insert.addBatch();
+                        if (i % 1000 == 999) {
+                            insert.executeBatch();
+                        }
+                    }
+                    insert.executeBatch();
+                }
+                entityManager.getTransaction().commit();
+
+                entityManager.getTransaction().begin();
+                connection = entityManager.unwrap(Connection.class);
+                LatencyRecorder latency = new LatencyRecorder(SEARCHES);
+                long found = 0;
+                Random queries = new Random(count);
+                try (PreparedStatement search = connection.prepareStatement("SELECT recipe_id FROM recipe WHERE LOWER(name) LIKE ?")) {
+                    for (int i = 0; i < SEARCHES; i++) {
+                        // the old search took a single word
+                        search.setString(1, "%" + words[queries.nextInt(VOCABULARY)] + "%");
+                        long searchStart = System.nanoTime();
+                        try (ResultSet result = search.executeQuery()) {
+                            while (result.next()) {
+                                found++;
+                            }
+                        }
+                        latency.record(System.nanoTime() - searchStart);
+                    }
+                }
+                entityManager.getTransaction().rollback();
+                System.out.printf("LIKE  %9d recipes  %5.1f results/search  search %s%n", count, (double) found / SEARCHES, latency);
+            } finally {
+                entityManager.close();
+            }
+        } finally {
+            factory.close();
+        }
+    }
+
+    /**
+     * Queries alternate between a whole word, the beginning of a word and two whole words
+     */
+    private static String query(String[] words, Random random, int i) {
+        String word = words[random.nextInt(VOCABULARY)];
+        switch (i % 3) {
+            case 0:
+                return word;
+            case 1:
+                return word.substring(0, Math.min(4, word.length()));
+            default:
+                return word + " " + words[random.nextInt(VOCABULARY)];
+        }
+    }
+
+    private static String text(String[] words, Random random, int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            // a skewed pick, so some words are common and most are rare like in real text
+            int pick = (int) (Math.pow(random.nextDouble(), 3) * VOCABULARY);
+            text.append(words[pick]);
+        }
+        return text.toString();
+    }
+
+    private static String[] vocabulary() {
+        Random random = new Random(42);
+        String[] words = new String[VOCABULARY];
+        for (int i = 0; i < VOCABULARY; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 3 + random.nextInt(6);
+            for (int c = 0; c < length; c++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[i] = word.toString();
+        }
+        return words;
+    }
+}
@@ -0,0 +1,124 @@
+package csulb.cecs323.app;
+
+import csulb.cecs323.model.FoodCritic;
+import csulb.cecs323.model.Recipe;
+import csulb.cecs323.model.Review;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * ReviewCounterBenchmark has one food critic post reviews from a growing number of threads at the same time,
+ * each review in a transaction of its own, and checks that the number of reviews the critic holds, see Counters,
+ * is the number of review rows afterwards. It reports the throughput and the latency of posting a review.
+ * The reviews are spread over the seeded recipes, so the threads meet on the row of the critic.
+ * Every number of threads runs on a new in-memory Derby database.
+ * Usage: ReviewCounterBenchmark [reviewsPerThread] [threads...]
+ */
+public class ReviewCounterBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int reviews = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<Integer> levels = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            levels.add(Integer.parseInt(args[i]));
+        }
+        if (levels.isEmpty()) {
+            levels = List.of(1, 4, 16, 32);
+        }
+
+        for (int threads : levels) {
+            Map<String, Object> overrides = new HashMap<>();
+            overrides.put(ConnectionPoolCustomizer.MAX_SIZE, String.valueOf(threads + 1));
+            EntityManagerFactory factory = TestDatabase.start("review-counter-" + threads, overrides);
+            try {
+                measure(factory, threads, reviews);
+            } finally {
+                factory.close();
+            }
+        }
+    }
+
+    private static void measure(EntityManagerFactory factory, int threads, int reviews) throws Exception {
+        EntityManager entityManager = factory.createEntityManager();
+        long criticId;
+        List<Long> recipeIds;
+        try {
+            criticId = Listing.FOOD_CRITICS.page(entityManager, null, 1).getRows().get(0).getUserId();
+            recipeIds = entityManager.createQuery("SELECT r.recipeId FROM Recipe r", Long.class).getResultList();
+        } finally {
+            entityManager.close();
+        }
+
+        LatencyRecorder post = new LatencyRecorder(threads * reviews);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> posters = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                posters.add(pool.submit(() -> {
+                    for (int i = 0; i < reviews; i++) {
+                        long postStart = System.nanoTime();
+                        post(factory, criticId, recipeIds.get((thread + i) % recipeIds.size()), "benchmark review " + thread + "-" + i);
+                        post.record(System.nanoTime() - postStart);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> poster : posters) {
+                poster.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long counted;
+        long rows;
+        try (Connection connection = new Database(factory).connect();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT number_of_reviews, (SELECT COUNT(*) FROM review WHERE critic_id = ?) FROM foodcritic WHERE critic_id = ?")) {
+            statement.setLong(1, criticId);
+            statement.setLong(2, criticId);
+            try (ResultSet result = statement.executeQuery()) {
+                result.next();
+                counted = result.getLong(1);
+                rows = result.getLong(2);
+            }
+        }
+        if (counted != rows) {
+            throw new IllegalStateException("The critic counts " + counted + " reviews, there are " + rows);
+        }
+        System.out.printf("%3d threads  %6d reviews  %7.0f reviews/sec  post %s  counted %d of %d%n",
+                threads, threads * reviews, threads * reviews / seconds, post, counted, rows);
+    }
+
+    private static void post(EntityManagerFactory factory, long criticId, long recipeId, String description) {
+        EntityManager entityManager = factory.createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            FoodCritic critic = entityManager.find(FoodCritic.class, criticId);
+            Review review = new Review(LocalDate.now(), 4, description, critic, entityManager.getReference(Recipe.class, recipeId));
+            critic.addReview(review);
+            entityManager.persist(review);
+            entityManager.getTransaction().commit();
+        } finally {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+            entityManager.close();
+        }
+    }
+}
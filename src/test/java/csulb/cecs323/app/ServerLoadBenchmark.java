@@ -0,0 +1,123 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManagerFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ServerLoadBenchmark starts a CookBookServer on an in-memory Derby database, see TestDatabase, and measures how its throughput
+ * scales with the number of clients sending requests at the same time.
+ * Every client sends a mix of reports, recipe searches, recipe reads and recipe changes, one request after the other.
+ * Usage: ServerLoadBenchmark [requestsPerClient] [serverThreads] [clients...]
+ */
+public class ServerLoadBenchmark {
+
+    private static final long[] RECIPE_IDS = {1, 2, 3, 4, 5};
+    private static final String[] SEARCHES = {"a", "e", "soup", "chicken", "o"};
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int serverThreads = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        List<Integer> levels = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            levels.add(Integer.parseInt(args[i]));
+        }
+        if (levels.isEmpty()) {
+            levels = List.of(1, 2, 4, 8, 16, 32);
+        }
+
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put(ConnectionPoolCustomizer.MAX_SIZE, String.valueOf(serverThreads));
+        overrides.put(ConnectionPoolCustomizer.ACQUIRE_TIMEOUT, "120000");
+        EntityManagerFactory factory = TestDatabase.start("server-load-benchmark", overrides);
+
+        if (System.getProperty(CookBookServer.NODELAY) == null) {
+            System.setProperty(CookBookServer.NODELAY, "true");
+        }
+
+        CookBookServer server = new CookBookServer(factory, 0, serverThreads);
+        server.start();
+        ExecutorService clients = Executors.newCachedThreadPool();
+        HttpClient http = HttpClient.newBuilder().executor(clients).connectTimeout(Duration.ofSeconds(10)).build();
+        String base = "http://localhost:" + server.getPort();
+        try {
+            // warm up the statements and the caches before measuring
+            run(http, clients, base, 4, requests / 2, false);
+            for (int level : levels) {
+                run(http, clients, base, level, requests, true);
+            }
+        } finally {
+            server.stop();
+            clients.shutdown();
+            factory.close();
+        }
+    }
+
+    private static void run(HttpClient http, ExecutorService clients, String base, int concurrency, int requests, boolean print) throws Exception {
+        LatencyRecorder latency = new LatencyRecorder(concurrency * requests);
+        AtomicLong failures = new AtomicLong();
+        AtomicLong conflicts = new AtomicLong();
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            workers.add(clients.submit(() -> {
+                for (int r = 0; r < requests; r++) {
+                    HttpRequest request = nextRequest(base);
+                    long requestStart = System.nanoTime();
+                    HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+                    latency.record(System.nanoTime() - requestStart);
+                    if (response.statusCode() == 409) {
+                        conflicts.incrementAndGet();
+                    } else if (response.statusCode() >= 400) {
+                        failures.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (print) {
+            long total = (long) concurrency * requests;
+            System.out.printf("%3d clients  %6d requests in %6.2f s  %8.1f requests/sec  conflicts = %d  failures = %d%n    latency %s%n",
+                    concurrency, total, seconds, total / seconds, conflicts.get(), failures.get(), latency);
+        }
+    }
+
+    /**
+     * Picks the next request of the mix: 40% recipe reads, 25% searches, 25% reports and 10% changes
+     */
+    private static HttpRequest nextRequest(String base) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long recipeId = RECIPE_IDS[random.nextInt(RECIPE_IDS.length)];
+        int pick = random.nextInt(100);
+        String path;
+        if (pick < 40) {
+            path = "/recipes/" + recipeId;
+        } else if (pick < 65) {
+            path = "/recipes?search=" + SEARCHES[random.nextInt(SEARCHES.length)];
+        } else if (pick < 90) {
+            int report = 1 + random.nextInt(6);
+            path = "/reports/" + report + (report == 6 ? "?recipeId=" + recipeId : "");
+        } else {
+            return HttpRequest.newBuilder(URI.create(base + "/recipes/" + recipeId))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"prepTime\":" + (5 + random.nextInt(60)) + "}"))
+                    .build();
+        }
+        return HttpRequest.newBuilder(URI.create(base + path)).GET().build();
+    }
+}
@@ -0,0 +1,67 @@
+package csulb.cecs323.app;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * TestDatabase starts the CookBook persistence unit on a new in-memory Derby database, for the tests and benchmarks.
+ * The schema is generated from the entities and the sample data is loaded, the way CookBook starts
+ * in REBUILD mode. Each name is a database of its own for as long as the JVM runs.
+ * <p>
+ * The benchmarks are main programs next to the tests, they are not shipped in the jar. Run them on the test classpath,
+ * e.g. after mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ * with java -cp target/test-classes:target/classes:$(cat target/classpath.txt) csulb.cecs323.app.InsertBenchmark
+ */
+final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    /**
+     * Starts the persistence unit on a new in-memory database
+     * @param name the name of the database
+     * @return the factory of the persistence unit, the caller closes it
+     */
+    static EntityManagerFactory start(String name) {
+        return start(name, Collections.emptyMap());
+    }
+
+    /**
+     * Starts the persistence unit on a new in-memory database
+     * @param name the name of the database
+     * @param overrides persistence properties that replace the ones of REBUILD mode
+     * @return the factory of the persistence unit, the caller closes it
+     */
+    static EntityManagerFactory start(String name, Map<String, ?> overrides) {
+        SchemaMigrator.Mode mode = SchemaMigrator.Mode.REBUILD;
+        Map<String, Object> properties = mode.persistenceProperties();
+        properties.put("javax.persistence.jdbc.url", "jdbc:derby:memory:" + name + ";create=true");
+        properties.put("eclipselink.logging.level", "OFF");
+        properties.putAll(overrides);
+        EntityManagerFactory factory = Persistence.createEntityManagerFactory("CookBook", properties);
+        try {
+            // the first entity manager logs in, which generates the schema
+            factory.createEntityManager().close();
+            new SchemaMigrator(factory).run(mode);
+            return factory;
+        } catch (RuntimeException e) {
+            factory.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Obtains the number of SQL statements the persistence unit has prepared so far, on the connection pool
+     * @param factory the factory of the persistence unit
+     * @return the number of statements, subtract two readings to count the statements in between
+     */
+    static long statements(EntityManagerFactory factory) {
+        ConnectionPool pool = ConnectionPoolCustomizer.poolOf(factory);
+        if (pool == null) {
+            throw new IllegalStateException("The statements are counted on the connection pool, which is not installed");
+        }
+        return pool.getStatementCacheHits() + pool.getStatementCacheMisses();
+    }
+}